@@ -0,0 +1,77 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-row aggregation of hours by student ID in to a {@code StudentStore}
+ * on its own, the same lookup and add {@code Teams} does for each row, without
+ * any of the Excel reading around it.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class AggregateBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Rows {
+		@Param({ "100", "10000", "1000000" })
+		public int rows;
+
+		String[] names;
+		String[] ids;
+		double[] hours;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			PeakMemory.reset();
+			int students = SyntheticExport.students(rows);
+			Random rand = new Random(rows);
+			names = new String[rows];
+			ids = new String[rows];
+			hours = new double[rows];
+			for (int r = 0; r < rows; r++) {
+				int student = r % students;
+				names[r] = "First" + student + " Last" + student;
+				ids[r] = String.valueOf(100000 + student);
+				hours[r] = Math.round(rand.nextDouble() * 16) / 4.0;
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			PeakMemory.report("aggregate rows=" + rows);
+		}
+	}
+
+	@Benchmark
+	public int studentStore(Rows in) {
+		StudentStore store = new StudentStore();
+		int hash = 0;
+		for (int r = 0; r < in.rows; r++) {
+			int slot = store.slotOf(in.ids[r]);
+			if ( slot < 0 )
+				slot = store.add(in.ids[r], in.names[r], 0);
+			hash += store.addSeconds(slot, Student.toSeconds(in.hours[r]), DailySeconds.NO_DAY);
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,51 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A synthetic export file on disk, in both formats.  The .xls format tops out
+ * at 65,535 data rows, see {@code LargeExportInput} for the bigger sizes.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+@State(Scope.Benchmark)
+public class ExportInput {
+	@Param({ "xls", "xlsx" })
+	public String format;
+
+	@Param({ "100", "10000", "60000" })
+	public int rows;
+
+	@Param({ "10", "100", "1000" })
+	public int teams;
+
+	Path file;
+	ConfigProperties config;
+
+	boolean isXls() {
+		return "xls".equals(format);
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		PeakMemory.reset();
+		file = Files.createTempFile("bench-export", "." + format);
+		SyntheticExport.write(file, isXls(), rows, teams);
+		config = SyntheticExport.config(isXls(), teams);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		PeakMemory.report(format + " rows=" + rows + " teams=" + teams);
+		Files.deleteIfExists(file);
+	}
+}
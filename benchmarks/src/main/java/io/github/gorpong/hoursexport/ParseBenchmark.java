@@ -0,0 +1,41 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code Teams.parseExcel} on synthetic exports:  open the workbook, find the
+ * columns and build the team lists.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class ParseBenchmark {
+
+	@Benchmark
+	public Teams parseExcel(ExportInput input) throws Exception {
+		Teams teams = new Teams(input.file.toString(), input.config);
+		teams.parseExcel();
+		return teams;
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+	@Measurement(iterations = 3, time = 5)
+	public Teams parseExcelLarge(LargeExportInput input) throws Exception {
+		Teams teams = new Teams(input.file.toString(), input.config);
+		teams.parseExcel();
+		return teams;
+	}
+}
@@ -0,0 +1,37 @@
+package io.github.gorpong.hoursexport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Peak heap tracking for the benchmarks, JMH's GC profiler gives the allocation
+ * rate but not how high the heap got.  The peak is reset when the trial starts
+ * and printed when it ends, so it covers setup as well as the measured calls.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+final class PeakMemory {
+	private PeakMemory() {
+	}
+
+	static void reset() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ( pool.getType() == MemoryType.HEAP )
+				pool.resetPeakUsage();
+		}
+	}
+
+	/**
+	 * Print the sum of the heap pools' peak usage.  The pools peak at different
+	 * times, so this is an upper bound on the real peak.
+	 */
+	static void report(String label) {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ( pool.getType() == MemoryType.HEAP )
+				peak += pool.getPeakUsage().getUsed();
+		}
+		System.out.println(String.format("%n[peak heap] %s: %,d MB", label, peak / (1024 * 1024)));
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+/**
+ * The rendering side:  {@code Output.fillSheet} for one team, {@code Output.createSheet}
+ * for a whole sheet, and {@code Output.close} to serialize the finished workbook.
+ * Each invocation gets a fresh {@code Output}, built outside the measured call.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class RenderBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Parsed {
+		Teams teams;
+		ArrayList<Student> largestTeam;
+		int largestTeamNum;
+
+		@Setup(Level.Trial)
+		public void setUp(ExportInput input) throws Exception {
+			teams = new Teams(input.file.toString(), input.config);
+			teams.parseExcel();
+			for (Integer team : teams.getTeams()) {
+				ArrayList<Student> list = teams.getHoursByTeam(team);
+				if ( largestTeam == null || list.size() > largestTeam.size() ) {
+					largestTeam = list;
+					largestTeamNum = team;
+				}
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Fresh {
+		Output out;
+		Sheet sheet;
+
+		@Setup(Level.Invocation)
+		public void setUp(ExportInput input) {
+			out = Output.create(input.isXls(), input.config, 1.0, 3.0);
+			sheet = out.getWorkbook().createSheet("Bench");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Rendered {
+		Output out;
+		Path file;
+
+		@Setup(Level.Invocation)
+		public void setUp(ExportInput input, Parsed parsed) throws IOException {
+			file = Files.createTempFile("bench-report", "." + input.format);
+			out = Output.initialize(file.toString(), input.config, 1.0, 3.0);
+			out.createSheet(parsed.teams, SheetType.COACHES);
+			out.createSheet(parsed.teams, SheetType.PARENTS);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws IOException {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Benchmark
+	public int fillSheet(Parsed parsed, Fresh fresh) {
+		return fresh.out.fillSheet(fresh.sheet, parsed.largestTeam, parsed.largestTeamNum, SheetType.PARENTS, 1, 0);
+	}
+
+	@Benchmark
+	public Output createSheet(Parsed parsed, Fresh fresh) {
+		fresh.out.createSheet(parsed.teams, SheetType.COACHES);
+		return fresh.out;
+	}
+
+	@Benchmark
+	public Output close(Rendered rendered) throws IOException {
+		rendered.out.close();
+		return rendered.out;
+	}
+}
@@ -0,0 +1,64 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Synthetic scanner exports and matching configurations for the benchmarks.
+ * Every student gets {@code ROWS_PER_STUDENT} rows, and students are dealt out
+ * round-robin to teams numbered from {@code FIRST_TEAM}.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+final class SyntheticExport {
+	static final int ROWS_PER_STUDENT = 5;
+	static final int FIRST_TEAM = 1000;
+
+	private SyntheticExport() {
+	}
+
+	static int students(int rows) {
+		return Math.max(1, rows / ROWS_PER_STUDENT);
+	}
+
+	/**
+	 * Write an export with {@code rows} data rows in .xls or .xlsx format, through
+	 * {@code ExportGenerator} so the .xlsx is streamed and millions of rows don't need the heap.
+	 */
+	static void write(Path file, boolean xls, int rows, int teams) throws IOException {
+		new ExportGenerator()
+			.students(students(rows))
+			.rowsPerStudent(ROWS_PER_STUDENT)
+			.teams(teams, FIRST_TEAM)
+			.seed(rows * 31L + teams)
+			.write(file, xls ? ExportGenerator.Format.XLS : ExportGenerator.Format.XLSX);
+	}
+
+	/**
+	 * Configuration laying the teams out across the three sections of both sheets,
+	 * as many as fit in the format's columns (an .xls sheet only has 256).
+	 */
+	static ConfigProperties config(boolean xls, int teams) {
+		ConfigProperties cfg = new ConfigProperties();
+		int maxCols = xls ? 255 : 16383;
+		for (String type : new String[] { "coaches", "parents" }) {
+			int width = type.equals("coaches") ? 3 : 4;
+			int perSection = Math.min((teams + 2) / 3, (maxCols - 1) / width);
+			cfg.setConfig(type + "StartRow", "3");
+			String[] sections = { "TopRow", "MidRow", "BotRow" };
+			int team = 0;
+			for (String section : sections) {
+				StringBuilder list = new StringBuilder();
+				for (int i = 0; i < perSection && team < teams; i++, team++) {
+					int num = FIRST_TEAM + team;
+					if ( list.length() > 0 ) list.append(',');
+					list.append(num);
+					cfg.setConfig(type + "Column-" + num, String.valueOf(1 + i * width));
+				}
+				if ( list.length() > 0 )
+					cfg.setConfig(type + section, list.toString());
+			}
+		}
+		return cfg;
+	}
+}
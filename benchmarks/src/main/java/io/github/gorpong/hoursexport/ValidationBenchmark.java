@@ -0,0 +1,102 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-row cost of the {@code ExportValidator} checks:  aggregating rows
+ * in to a {@code StudentStore} the way {@code Teams} does, with and without
+ * the checks, on clean rows (the usual case) with a date on each.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class ValidationBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Rows {
+		@Param({ "10000", "1000000" })
+		public int rows;
+
+		String[] names;
+		String[] ids;
+		int[] teams;
+		int[] seconds;
+		int[] days;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			int students = SyntheticExport.students(rows);
+			Random rand = new Random(rows);
+			names = new String[rows];
+			ids = new String[rows];
+			teams = new int[rows];
+			seconds = new int[rows];
+			days = new int[rows];
+			for (int r = 0; r < rows; r++) {
+				int student = r % students;
+				names[r] = "Last" + student + ", First" + student;
+				ids[r] = String.valueOf(100000 + student);
+				teams[r] = SyntheticExport.FIRST_TEAM + student % 100;
+				seconds[r] = (15 + rand.nextInt(226)) * 60;
+				days[r] = 17777 + r / students;
+			}
+		}
+	}
+
+	@Benchmark
+	public int aggregate(Rows in) {
+		StudentStore store = new StudentStore();
+		int hash = 0;
+		for (int r = 0; r < in.rows; r++) {
+			int slot = store.slotOf(in.ids[r]);
+			if ( slot < 0 )
+				slot = store.add(in.ids[r], in.names[r], in.teams[r]);
+			hash += store.addSeconds(slot, in.seconds[r], in.days[r]);
+		}
+		return hash / in.rows;
+	}
+
+	/*
+	 * The same as Teams.addRow without a roster:  the row is checked against
+	 * the name and team already in the store, then its day total afterwards
+	 */
+	@Benchmark
+	public int aggregateAndValidate(Rows in) {
+		StudentStore store = new StudentStore();
+		ExportValidator validator = new ExportValidator();
+		int hash = 0;
+		for (int r = 0; r < in.rows; r++) {
+			int slot = store.slotOf(in.ids[r]);
+			int team = slot < 0
+					? validator.check(r, in.ids[r], in.names[r], in.teams[r], in.seconds[r], in.days[r], null, ExportValidator.NO_TEAM)
+					: validator.check(r, in.ids[r], in.names[r], in.teams[r], in.seconds[r], in.days[r],
+							store.getName(slot), store.getTeam(slot));
+			if ( team == ExportValidator.NO_TEAM )
+				continue;
+			if ( slot < 0 )
+				slot = store.add(in.ids[r], in.names[r], team);
+			int total = store.addSeconds(slot, in.seconds[r], in.days[r]);
+			validator.checkDay(r, in.ids[r], in.days[r], total);
+			hash += total;
+		}
+		return hash / in.rows;
+	}
+}
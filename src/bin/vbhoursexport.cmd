@@ -0,0 +1,13 @@
+@echo off
+rem
+rem Launch VBHoursExport with the AppCDS archive built by "mvn package".  If the
+rem archive is missing, this run writes one for next time.  A report is a short
+rem run, so the JVM stops at the C1 compiler.  Extra JVM options can be given in
+rem VBHOURS_JAVA_OPTS.
+rem
+setlocal
+set JAR=%~dp0@project.build.finalName@-jar-with-dependencies.jar
+set JSA=%~dp0@project.build.finalName@.jsa
+set CDS=-XX:ArchiveClassesAtExit="%JSA%"
+if exist "%JSA%" set CDS=-XX:SharedArchiveFile="%JSA%"
+java %CDS% -Xlog:cds=off -XX:TieredStopAtLevel=1 %VBHOURS_JAVA_OPTS% -jar "%JAR%" %*
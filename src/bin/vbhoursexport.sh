@@ -0,0 +1,24 @@
+#!/bin/sh
+#
+# Launch VBHoursExport with the AppCDS archive built by "mvn package", so the
+# POI, commons-cli and XMLBeans classes are mapped in already parsed and
+# verified instead of loaded from the jar on every run.  If the archive is
+# missing or older than the jar, this run writes a new one for next time.
+#
+# A report is a short run, so the JVM also stops at the C1 compiler, which
+# starts faster than waiting on C2 for code that won't run long enough to
+# need it.  Extra JVM options can be given in VBHOURS_JAVA_OPTS (e.g., for
+# --serve, where the full JIT is worth more:  VBHOURS_JAVA_OPTS=-XX:TieredStopAtLevel=4).
+#
+DIR=$(cd "$(dirname "$0")" && pwd)
+JAR="$DIR/@project.build.finalName@-jar-with-dependencies.jar"
+JSA="$DIR/@project.build.finalName@.jsa"
+JAVA=java
+[ -n "$JAVA_HOME" ] && JAVA="$JAVA_HOME/bin/java"
+
+if [ -f "$JSA" ] && [ "$JSA" -nt "$JAR" ]; then
+	CDS="-XX:SharedArchiveFile=$JSA"
+else
+	CDS="-XX:ArchiveClassesAtExit=$JSA"
+fi
+exec "$JAVA" $CDS -Xlog:cds=off -XX:TieredStopAtLevel=1 $VBHOURS_JAVA_OPTS -jar "$JAR" "$@"
@@ -0,0 +1,139 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An output stream that does the actual writing to the stream it wraps on a
+ * thread of its own, so that whatever is producing the bytes (serializing and
+ * zipping the workbook) isn't held up waiting on the disk.
+ *
+ * Bytes are collected in to chunks that go through a bounded queue; once
+ * {@code DEPTH} chunks are waiting, writing here blocks until the writer
+ * thread catches up.  An error from the wrapped stream comes back out of the
+ * next {@code write()}, {@code flush()} or {@code close()} here.  Closing
+ * waits for everything to be written and then closes the wrapped stream.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class AsyncOutputStream extends OutputStream {
+	static final int CHUNK = 64 * 1024;
+	static final int DEPTH = 8;
+	private static final byte[] END = new byte[0];
+
+	private final OutputStream out;
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(DEPTH);
+	private final Thread writer;
+	private volatile IOException failure = null;
+	private byte[] chunk = new byte[CHUNK];
+	private int used = 0;
+	private boolean closed = false;
+
+	AsyncOutputStream(OutputStream out) {
+		this.out = out;
+		writer = new Thread(this::drain, "report-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if ( used == chunk.length )
+			send();
+		chunk[used++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while ( len > 0 ) {
+			if ( used == chunk.length )
+				send();
+			int n = Math.min(len, chunk.length - used);
+			System.arraycopy(b, off, chunk, used, n);
+			used += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Hands what's been written so far to the writer thread (it isn't waited
+	 * for, only {@code close()} waits).
+	 */
+	@Override
+	public void flush() throws IOException {
+		if ( used > 0 )
+			send();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if ( closed )
+			return;
+		closed = true;
+		try {
+			flush();
+			put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted writing the report");
+		} finally {
+			if ( writer.isAlive() )
+				writer.interrupt();
+		}
+		if ( failure != null )
+			throw failed();
+	}
+
+	/*
+	 * Queue the current chunk and start a new one
+	 */
+	private void send() throws IOException {
+		byte[] full = used == chunk.length ? chunk : Arrays.copyOf(chunk, used);
+		try {
+			put(full);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted writing the report");
+		}
+		chunk = new byte[CHUNK];
+		used = 0;
+	}
+
+	/*
+	 * Wait for room in the queue, giving up if the writer has failed
+	 */
+	private void put(byte[] b) throws IOException, InterruptedException {
+		do {
+			if ( failure != null )
+				throw failed();
+		} while ( ! queue.offer(b, 50, TimeUnit.MILLISECONDS) );
+	}
+
+	/*
+	 * The writer's error, fresh for each time it's reported
+	 */
+	private IOException failed() {
+		return new IOException(failure.getMessage(), failure);
+	}
+
+	/*
+	 * Body of the writer thread
+	 */
+	private void drain() {
+		try ( OutputStream target = out ) {
+			for (byte[] b = queue.take(); b != END; b = queue.take())
+				target.write(b);
+		} catch (IOException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Interrupted writing the report");
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run many reports in one JVM, in parallel, from a manifest file.  This is for
+ * regenerating several programs or weeks at once (e.g., backfilling a season)
+ * without paying for a JVM start per report.
+ *
+ * The manifest has one job per line, with comma separated fields:
+ * <pre>
+ *   input, config, output, lowThreshold, highThreshold, previousInput
+ * </pre>
+ * Only input and output are required; an empty config uses the default
+ * properties file and empty thresholds use the values from the configuration.
+ * A previous input (last week's export) adds the "Changes" sheet, the same as
+ * {@code -w} does for a single report.
+ * Blank lines and lines starting with {@code #} are ignored, and relative paths
+ * are taken relative to the manifest's directory.
+ *
+ * Each job gets its own {@code ConfigProperties}, {@code Teams} and {@code Output},
+ * so nothing is shared between jobs running at the same time.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class BatchRunner {
+
+	/**
+	 * One line of the manifest.
+	 */
+	public static class Job {
+		final int line;
+		final String input;
+		final String config;
+		final String output;
+		final String low;
+		final String high;
+		final String previous;		// Null for no Changes sheet
+
+		Job(int line, String input, String config, String output, String low, String high, String previous) {
+			this.line = line;
+			this.input = input;
+			this.config = config;
+			this.output = output;
+			this.low = low;
+			this.high = high;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * The outcome of one job, for the result table.
+	 */
+	public static class Result {
+		final Job job;
+		int teams = 0;
+		int students = 0;
+		int lowCount = 0;
+		int highCount = 0;
+		long millis = 0;
+		HoursStats stats = null;
+		String error = null;
+
+		Result(Job job) {
+			this.job = job;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+		public String getError() {
+			return error;
+		}
+		public int getStudents() {
+			return students;
+		}
+		/**
+		 * @return
+		 * 		The hours stats for the job's export, null if it failed
+		 */
+		public HoursStats getStats() {
+			return stats;
+		}
+	}
+
+	private final int threads;
+
+	/**
+	 * Create a batch runner with a bounded pool of workers.
+	 *
+	 * @param threads
+	 * 		Maximum number of jobs to run at the same time
+	 */
+	public BatchRunner(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Read the jobs from a manifest file.
+	 *
+	 * @param manifest
+	 * 		The manifest file to read
+	 * @return
+	 * 		The list of jobs, in the order listed
+	 * @throws IOException
+	 * 		Can't read the manifest
+	 * @throws IllegalArgumentException
+	 * 		A line doesn't have at least an input and output
+	 */
+	public static List<Job> readManifest(Path manifest) throws IOException {
+		List<Job> jobs = new ArrayList<>();
+		Path base = manifest.toAbsolutePath().getParent();
+		int lineNum = 0;
+		for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+			lineNum++;
+			String trimmed = line.trim();
+			if ( trimmed.isEmpty() || trimmed.startsWith("#") )
+				continue;
+			String[] fields = trimmed.split(",", -1);
+			String input  = field(fields, 0);
+			String output = field(fields, 2);
+			if ( input == null || output == null )
+				throw new IllegalArgumentException("Manifest line " + lineNum + " needs at least an input and output file");
+			String config = field(fields, 1);
+			String previous = field(fields, 5);
+			jobs.add(new Job(lineNum, resolve(base, input), config == null ? null : resolve(base, config),
+					resolve(base, output), field(fields, 3), field(fields, 4),
+					previous == null ? null : resolve(base, previous)));
+		}
+		return jobs;
+	}
+
+	private static String field(String[] fields, int i) {
+		if ( i >= fields.length )
+			return null;
+		String val = fields[i].trim();
+		return val.isEmpty() ? null : val;
+	}
+
+	private static String resolve(Path base, String file) {
+		return base.resolve(file).toString();
+	}
+
+	/**
+	 * Run all of the jobs on the worker pool and wait for them to finish.
+	 * A failing job doesn't stop the others.
+	 *
+	 * @param jobs
+	 * 		The jobs to run
+	 * @return
+	 * 		The results, in the same order as {@code jobs}
+	 * @throws InterruptedException
+	 * 		Interrupted while waiting for the jobs
+	 */
+	public List<Result> run(List<Job> jobs) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, jobs.size())));
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (Job job : jobs)
+				futures.add(pool.submit(() -> runJob(job)));
+			List<Result> results = new ArrayList<>();
+			for (int i = 0; i < jobs.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					Result failed = new Result(jobs.get(i));
+					failed.error = String.valueOf(e.getCause());
+					results.add(failed);
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/*
+	 * Run a single job start to finish, with all of its own state.
+	 */
+	static Result runJob(Job job) {
+		Result result = new Result(job);
+		long start = System.nanoTime();
+		try {
+			ConfigProperties config = new ConfigProperties();
+			if ( job.config != null )
+				config.getPropValues(job.config);
+			else
+				config.getPropValues();
+			double low  = Double.parseDouble(job.low != null ? job.low : config.getConfig("hoursLowThreshold", "3.0"));
+			double high = Double.parseDouble(job.high != null ? job.high : config.getConfig("hoursHighThreshold", "7.0"));
+
+			Teams teams = new Teams(job.input, config);
+			teams.parseExcel();
+			for (Integer team : teams.getTeams()) {
+				result.teams++;
+				result.students += teams.getHoursByTeam(team).size();
+			}
+			result.stats = teams.getStats();
+			Output out = Output.initialize(job.output, config, low, high);
+			if ( job.previous != null ) {
+				Teams previous = new Teams(job.previous, config);
+				previous.parseExcel();
+				out.setPrevious(previous);
+			}
+			out.createReport(teams);
+			out.close();
+			result.lowCount = out.getLowCount();
+			result.highCount = out.getHighCount();
+		} catch (NumberFormatException e) {
+			result.error = "Illegal number format for low/high threshold";
+		} catch (Exception e) {
+			result.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+		result.millis = (System.nanoTime() - start) / 1_000_000;
+		return result;
+	}
+
+	/**
+	 * Print the per-job result table, then the hours stats of every job's
+	 * students together.
+	 *
+	 * @param results
+	 * 		The results from {@code run()}
+	 * @param wallMillis
+	 * 		Elapsed time for the whole batch
+	 * @param out
+	 * 		Where to print the table
+	 */
+	public static void printResults(List<Result> results, long wallMillis, PrintStream out) {
+		String fmt = "%-4s %-40s %5s %8s %5s %5s %8s  %s\n";
+		out.print(String.format(fmt, "Line", "Input", "Teams", "Students", "Low", "High", "ms", "Status"));
+		long jobMillis = 0;
+		int failed = 0;
+		HoursStats all = HoursStats.empty();
+		for (Result r : results) {
+			jobMillis += r.millis;
+			if ( ! r.isSuccess() ) failed++;
+			if ( r.stats != null ) all.merge(r.stats);
+			out.print(String.format(fmt, r.job.line, shorten(r.job.input, 40), r.teams, r.students,
+					r.lowCount, r.highCount, r.millis, r.isSuccess() ? "OK -> " + r.job.output : "FAILED: " + r.error));
+		}
+		out.print(String.format("%d jobs, %d failed, %d ms elapsed (%d ms of job time)\n",
+				results.size(), failed, wallMillis, jobMillis));
+		if ( all.getProgram().getStudents() > 0 )
+			out.println("All jobs:  " + all.getProgram());
+	}
+
+	private static String shorten(String s, int max) {
+		return s.length() <= max ? s : "..." + s.substring(s.length() - max + 3);
+	}
+}
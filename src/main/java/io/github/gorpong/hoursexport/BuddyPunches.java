@@ -0,0 +1,230 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Pairs of students who keep punching in (or out) on the same scanner within
+ * a few seconds of each other, which is what it looks like when one of them
+ * is scanning the other's card.  Arriving together now and then is normal,
+ * so a pair is only listed once it's happened {@code minimum} times.
+ *
+ * The punches are grouped by scanner with a counting pass over the log
+ * already sorted by time, so each scanner's are in time order.  Going through
+ * the punches by time, each is then only compared with the punches just
+ * before it at its own scanner, back to {@code window} seconds earlier (so a
+ * pair either side of midnight is still found), and each pair found is
+ * counted in a hash of the pairs.  That's the punches plus the close pairs,
+ * rather than every punch against every other.  A pair's near-misses within
+ * one window (e.g., a double punch) count as one time.
+ *
+ * The students' names and teams are the ones they're counted under in the
+ * export (the roster's, if there is one), not the log's.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class BuddyPunches {
+
+	/**
+	 * Two students who punched together, and how often.
+	 */
+	public static class Pair implements Comparable<Pair> {
+		private final int[] teams = new int[2];
+		private final String[] ids = new String[2];
+		private final String[] names = new String[2];
+		private int times = 0;
+		private int days = 0;
+		private long gapSeconds = 0;
+		private int lastDay = Integer.MIN_VALUE;
+		private long lastTime = 0;
+
+		public int getTeam(int which) {
+			return teams[which];
+		}
+		/**
+		 * @param which
+		 * 		0 or 1, the student with the lower ID is 0
+		 */
+		public String getId(int which) {
+			return ids[which];
+		}
+		/**
+		 * @return
+		 * 		The name the way the rest of the report shows it, e.g., "Doe, John"
+		 */
+		public String getName(int which) {
+			return names[which];
+		}
+		/**
+		 * @return
+		 * 		How many times they punched together
+		 */
+		public int getTimes() {
+			return times;
+		}
+		/**
+		 * @return
+		 * 		How many different days they did
+		 */
+		public int getDays() {
+			return days;
+		}
+		public double getAverageGapSeconds() {
+			return times == 0 ? 0 : (double) gapSeconds / times;
+		}
+
+		/*
+		 * Most times first, then most days, then by ID
+		 */
+		public int compareTo(Pair that) {
+			if ( times != that.times )
+				return Integer.compare(that.times, times);
+			if ( days != that.days )
+				return Integer.compare(that.days, days);
+			int c = ids[0].compareTo(that.ids[0]);
+			return c != 0 ? c : ids[1].compareTo(that.ids[1]);
+		}
+
+		public String toString() {
+			return String.format("%s (%s) and %s (%s):  %d times on %d days, %.1f seconds apart on average",
+					names[0], ids[0], names[1], ids[1], times, days, getAverageGapSeconds());
+		}
+	}
+
+	private final List<Pair> pairs;
+	private final int window;
+	private final int minimum;
+
+	private BuddyPunches(List<Pair> pairs, int window, int minimum) {
+		this.pairs = pairs;
+		this.window = window;
+		this.minimum = minimum;
+	}
+
+	/**
+	 * @return
+	 * 		No pairs, e.g., for an export that isn't a punch log
+	 */
+	static BuddyPunches none() {
+		return new BuddyPunches(Collections.emptyList(), 0, 0);
+	}
+
+	/**
+	 * Look through a punch log for students punching together.
+	 *
+	 * @param log
+	 * 		The punches
+	 * @param store
+	 * 		The students counted from them, for their names and teams (a
+	 * 		student who isn't has the log's)
+	 * @param window
+	 * 		Seconds apart that count as together (0 or less to not look)
+	 * @param minimum
+	 * 		Times a pair has to have punched together to be listed
+	 * @return
+	 * 		The pairs that did, most times first
+	 * @throws IOException
+	 * 		The log spans too long a time to sort
+	 */
+	static BuddyPunches find(PunchLog log, StudentStore store, int window, int minimum) throws IOException {
+		if ( log.size() == 0 || window <= 0 )
+			return new BuddyPunches(Collections.emptyList(), window, minimum);
+		int[] order = log.byTime();
+		int[] scannerOf = new int[log.size()];
+		for (int p = 0; p < scannerOf.length; p++)
+			scannerOf[p] = log.getScanner(p);
+		int[] byScanner = PunchLog.scatter(order, scannerOf, log.scanners());
+		int[] at = new int[log.size()];		// Where each punch is in byScanner
+		for (int k = 0; k < byScanner.length; k++)
+			at[byScanner[k]] = k;
+
+		// By time, so each pair's times (and days) are counted in order
+		HashMap<Long, Pair> found = new HashMap<>();
+		for (int p : order) {
+			long t = log.getTime(p);
+			for (int j = at[p] - 1; j >= 0; j--) {
+				int q = byScanner[j];
+				long gap = t - log.getTime(q);
+				if ( scannerOf[q] != scannerOf[p] || gap > window )
+					break;
+				if ( log.getStudent(q) != log.getStudent(p) )
+					count(found, log, store, p, q, t, gap, window);
+			}
+		}
+
+		List<Pair> pairs = new ArrayList<>();
+		for (Pair pair : found.values())
+			if ( pair.times >= minimum )
+				pairs.add(pair);
+		Collections.sort(pairs);
+		return new BuddyPunches(pairs, window, minimum);
+	}
+
+	/*
+	 * Punches p and q (by different students) were gap seconds apart at t
+	 */
+	private static void count(HashMap<Long, Pair> found, PunchLog log, StudentStore store, int p, int q, long t,
+			long gap, int window) {
+		int a = log.getStudent(p);
+		int b = log.getStudent(q);
+		long key = a < b ? ( (long) a << 32 ) | b : ( (long) b << 32 ) | a;
+		Pair pair = found.get(key);
+		if ( pair == null ) {
+			pair = new Pair();
+			boolean pFirst = log.getId(a).compareTo(log.getId(b)) < 0;
+			setStudent(pair, pFirst ? 0 : 1, log, store, p);
+			setStudent(pair, pFirst ? 1 : 0, log, store, q);
+			found.put(key, pair);
+		}
+		if ( pair.times > 0 && Math.abs(t - pair.lastTime) <= window )
+			return;		// Same time as the last one, e.g., one of them punched twice
+		pair.lastTime = t;
+		pair.times++;
+		pair.gapSeconds += gap;
+		int day = (int) dayOf(t);
+		if ( day != pair.lastDay ) {
+			pair.days++;
+			pair.lastDay = day;
+		}
+	}
+
+	private static void setStudent(Pair pair, int which, PunchLog log, StudentStore store, int punch) {
+		String id = log.getId(log.getStudent(punch));
+		int slot = store.slotOf(id);
+		pair.ids[which] = id;
+		pair.names[which] = Student.formatName(slot < 0 ? log.getName(punch) : store.getName(slot));
+		pair.teams[which] = slot < 0 ? log.getTeam(punch) : store.getTeam(slot);
+	}
+
+	private static long dayOf(long seconds) {
+		return Math.floorDiv(seconds, 86400L);
+	}
+
+	/**
+	 * @return
+	 * 		The pairs that punched together at least {@code getMinimum()} times, most first
+	 */
+	public List<Pair> getPairs() {
+		return Collections.unmodifiableList(pairs);
+	}
+
+	/**
+	 * @return
+	 * 		Seconds apart that count as punching together
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	public int getMinimum() {
+		return minimum;
+	}
+
+	public String summary() {
+		return pairs.size() + " pairs punched within " + window + " seconds of each other at least " + minimum
+				+ " times";
+	}
+}
@@ -0,0 +1,64 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over the remaining bytes of a {@code ByteBuffer}, read in
+ * place rather than copied out first.  The buffer's own position and limit
+ * are left alone.  Supports {@code mark()}, so POI can check the file type
+ * without wrapping this in a {@code BufferedInputStream}.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer buf;
+
+	ByteBufferInputStream(ByteBuffer buf) {
+		this.buf = buf.duplicate();
+		this.buf.mark();		// reset() without a mark() goes back to the start
+	}
+
+	@Override
+	public int read() {
+		return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if ( len == 0 )
+			return 0;
+		if ( ! buf.hasRemaining() )
+			return -1;
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+		buf.position(buf.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buf.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		buf.mark();
+	}
+
+	@Override
+	public void reset() {
+		buf.reset();
+	}
+}
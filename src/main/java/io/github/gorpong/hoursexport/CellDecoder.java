@@ -0,0 +1,212 @@
+package io.github.gorpong.hoursexport;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Turn export cells in to the values the parse loop needs by looking at the
+ * cell's type first, rather than calling a getter and catching what it throws
+ * when the type is wrong.  A formula cell is decoded by the type of its cached
+ * result.  Nothing here throws for a bad or missing cell; each method has a
+ * value that means "not usable" instead, so a dirty export costs no more to
+ * read than a clean one.
+ *
+ * The same rules apply to cells from the workbook ({@code Cell}) and to the
+ * value and type pairs from {@code XlsxRowReader}.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+final class CellDecoder {
+	/** Team value for a cell that isn't a team number */
+	static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+	private CellDecoder() {
+	}
+
+	/*
+	 * The type of the value in the cell, the cached result's type for a formula
+	 */
+	private static CellType typeOf(Cell cell) {
+		if ( cell == null )
+			return null;
+		CellType type = cell.getCellTypeEnum();
+		return type == CellType.FORMULA ? cell.getCachedFormulaResultTypeEnum() : type;
+	}
+
+	/**
+	 * A team number:  a string of digits (an optional sign and surrounding
+	 * blanks are allowed), or a numeric cell holding a whole number.
+	 *
+	 * @param cell
+	 * 		The cell, may be null
+	 * @return
+	 * 		The team, or {@code NOT_A_NUMBER}
+	 */
+	static int team(Cell cell) {
+		CellType type = typeOf(cell);
+		if ( type == CellType.STRING )
+			return parseInt(cell.getStringCellValue());
+		if ( type == CellType.NUMERIC )
+			return wholeNumber(cell.getNumericCellValue());
+		return NOT_A_NUMBER;
+	}
+
+	/**
+	 * Same as {@code team(Cell)} for a value from the streaming reader.
+	 */
+	static int team(String value, CellType type) {
+		if ( type == CellType.STRING )
+			return parseInt(value);
+		if ( type == CellType.NUMERIC )
+			return wholeNumber(parseDouble(value));
+		return NOT_A_NUMBER;
+	}
+
+	/**
+	 * A text value (the name and ID columns):  a string, or "" for a blank cell.
+	 *
+	 * @param cell
+	 * 		The cell, may be null
+	 * @return
+	 * 		The text, or null if the cell is missing or isn't text
+	 */
+	static String string(Cell cell) {
+		CellType type = typeOf(cell);
+		if ( type == CellType.STRING )
+			return cell.getStringCellValue();
+		return type == CellType.BLANK ? "" : null;
+	}
+
+	/**
+	 * Same as {@code string(Cell)} for a value from the streaming reader.
+	 */
+	static String string(String value, CellType type) {
+		if ( type == CellType.STRING )
+			return value;
+		return type == CellType.BLANK ? "" : null;
+	}
+
+	/**
+	 * A number (the hours column):  a numeric cell, or 0 for a blank one.
+	 *
+	 * @param cell
+	 * 		The cell, may be null
+	 * @return
+	 * 		The number, or NaN if the cell is missing or isn't a number
+	 */
+	static double number(Cell cell) {
+		CellType type = typeOf(cell);
+		if ( type == CellType.NUMERIC )
+			return cell.getNumericCellValue();
+		return type == CellType.BLANK ? 0.0 : Double.NaN;
+	}
+
+	/**
+	 * Same as {@code number(Cell)} for a value from the streaming reader.
+	 */
+	static double number(String value, CellType type) {
+		if ( type == CellType.NUMERIC )
+			return parseDouble(value);
+		return type == CellType.BLANK ? 0.0 : Double.NaN;
+	}
+
+	/**
+	 * A date as an epoch day:  a numeric cell is an Excel date, a string is
+	 * yyyy-mm-dd or m/d/yyyy.
+	 *
+	 * @param cell
+	 * 		The cell, may be null
+	 * @return
+	 * 		The day, or {@code DailySeconds.NO_DAY}
+	 */
+	static int day(Cell cell) {
+		CellType type = typeOf(cell);
+		if ( type == CellType.NUMERIC )
+			return Teams.excelDay(cell.getNumericCellValue());
+		if ( type == CellType.STRING )
+			return Teams.parseDay(cell.getStringCellValue());
+		return DailySeconds.NO_DAY;
+	}
+
+	/**
+	 * Same as {@code day(Cell)} for a value from the streaming reader.
+	 */
+	static int day(String value, CellType type) {
+		if ( type == CellType.NUMERIC ) {
+			double date = parseDouble(value);
+			return Double.isNaN(date) ? DailySeconds.NO_DAY : Teams.excelDay(date);
+		}
+		return type == CellType.STRING ? Teams.parseDay(value) : DailySeconds.NO_DAY;
+	}
+
+	/**
+	 * A date and time (a punch in the raw log):  a numeric cell is an Excel
+	 * date and time, a string is "yyyy-mm-dd hh:mm[:ss]" or "m/d/yyyy h:mm[:ss]".
+	 *
+	 * @param cell
+	 * 		The cell, may be null
+	 * @return
+	 * 		The seconds since 1/1/1970 (local), or {@code PunchLog.NO_TIME}
+	 */
+	static long time(Cell cell) {
+		CellType type = typeOf(cell);
+		if ( type == CellType.NUMERIC )
+			return PunchLog.excelSeconds(cell.getNumericCellValue());
+		if ( type == CellType.STRING )
+			return PunchLog.parseTime(cell.getStringCellValue());
+		return PunchLog.NO_TIME;
+	}
+
+	/**
+	 * Parse a whole number without throwing.
+	 *
+	 * @param s
+	 * 		Digits with an optional sign, blanks around it are ignored (may be null)
+	 * @return
+	 * 		The number, or {@code NOT_A_NUMBER} if it isn't one or won't fit in an int
+	 */
+	static int parseInt(String s) {
+		if ( s == null )
+			return NOT_A_NUMBER;
+		int start = 0;
+		int end = s.length();
+		while ( start < end && s.charAt(start) <= ' ' )
+			start++;
+		while ( end > start && s.charAt(end - 1) <= ' ' )
+			end--;
+		boolean negative = false;
+		if ( start < end && ( s.charAt(start) == '-' || s.charAt(start) == '+' ) )
+			negative = s.charAt(start++) == '-';
+		if ( start == end || end - start > 10 )
+			return NOT_A_NUMBER;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if ( c < '0' || c > '9' )
+				return NOT_A_NUMBER;
+			value = value * 10 + ( c - '0' );
+		}
+		value = negative ? -value : value;
+		return value > Integer.MAX_VALUE || value <= Integer.MIN_VALUE ? NOT_A_NUMBER : (int) value;
+	}
+
+	private static int wholeNumber(double d) {
+		if ( d != Math.rint(d) || d > Integer.MAX_VALUE || d <= Integer.MIN_VALUE )
+			return NOT_A_NUMBER;		// Also NaN
+		return (int) d;
+	}
+
+	/*
+	 * The streaming reader's numeric values come straight from the file, so
+	 * they're almost never bad, NaN if one is
+	 */
+	private static double parseDouble(String value) {
+		if ( value == null || value.isEmpty() )
+			return Double.NaN;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+}
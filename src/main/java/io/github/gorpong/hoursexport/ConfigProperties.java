@@ -53,20 +53,23 @@ public class ConfigProperties {
      * 		Can't find properties file
      */
     public void getPropValues(String propFileName) throws IOException, FileNotFoundException {
-        InputStream stream = null;
+        CountingInputStream stream = null;
+        PipelineEvents.ConfigLoad event = new PipelineEvents.ConfigLoad();
+        event.start();
 
         try {
             Path path = FileSystems.getDefault().getPath(propFileName);
             if (Files.exists(path)) {
-                stream = Files.newInputStream(path);
+                stream = new CountingInputStream(Files.newInputStream(path));
                 source = Source.FILESYSTEM;
                 loadedPath = path;
             } else {
                 // fallback to classpath resource
-                stream = getClass().getClassLoader().getResourceAsStream(propFileName);
-                if (stream == null) {
+                InputStream resource = getClass().getClassLoader().getResourceAsStream(propFileName);
+                if (resource == null) {
                     throw new FileNotFoundException("Cannot find properties file <" + propFileName + "> in ClassPath.");
                 }
+                stream = new CountingInputStream(resource);
                 source = Source.CLASSPATH;
                 loadedResource = propFileName;
             }
@@ -76,6 +79,10 @@ public class ConfigProperties {
             for (Object key : prop.keySet()) {
                 propList.put((String) key, (String) prop.get(key));
             }
+            event.file = propFileName;
+            event.entries = propList.size();
+            event.bytesRead = stream.getCount();
+            event.finish();
         } catch (NoSuchFileException e) {
             throw new FileNotFoundException("Cannot find properties file <" + propFileName + "> in ClassPath.");
         } finally {
@@ -128,6 +135,14 @@ public class ConfigProperties {
         return value != null ? value : defVal;
     }
 
+    /**
+     * @return
+     * 		true if there are no configuration entries at all (e.g., an empty file)
+     */
+    public boolean isEmpty() {
+        return propList.isEmpty();
+    }
+
     /**
      * Set a configuration entry with the specified key and value.
      *
@@ -155,6 +170,16 @@ public class ConfigProperties {
         }
     }
 
+    /**
+     * Get the filesystem path the properties were loaded from.
+     *
+     * @return
+     * 		The path of the loaded file (or null if loaded from the classpath or not loaded)
+     */
+    public Path getLoadedPath() {
+        return source == Source.FILESYSTEM ? loadedPath : null;
+    }
+
     /**
      * Save the properties to the default properties file, only if it was a file.
      *
@@ -0,0 +1,56 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that keeps track of how many bytes were read through it.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class CountingInputStream extends FilterInputStream {
+	private long count = 0;
+	private long mark = 0;
+
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if ( b >= 0 ) count++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buf, int off, int len) throws IOException {
+		int n = in.read(buf, off, len);
+		if ( n > 0 ) count += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		in.mark(readlimit);
+		mark = count;
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		in.reset();
+		count = mark;
+	}
+}
@@ -0,0 +1,34 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that keeps track of how many bytes were written through it.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class CountingOutputStream extends FilterOutputStream {
+	private long count = 0;
+
+	CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		out.write(buf, off, len);
+		count += len;
+	}
+}
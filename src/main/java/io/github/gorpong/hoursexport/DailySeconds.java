@@ -0,0 +1,123 @@
+package io.github.gorpong.hoursexport;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A student's seconds broken down by day, kept as two parallel primitive arrays
+ * (day as an epoch day, and the seconds for it) sorted by day.  A week of
+ * exports is only a handful of days per student, and rows almost always arrive
+ * in date order, so adding is usually just an append.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class DailySeconds {
+	/** Day value for a row that doesn't have a (usable) date */
+	public static final int NO_DAY = Integer.MIN_VALUE;
+
+	private int[] days = new int[4];
+	private int[] seconds = new int[4];
+	private int size = 0;
+
+	/**
+	 * Add {@code secs} to {@code day}.
+	 *
+	 * @param day
+	 * 		The day, as a {@code LocalDate.toEpochDay()} value
+	 * @param secs
+	 * 		The seconds to add for that day
+	 * @return
+	 * 		The seconds for that day, now
+	 */
+	public int add(int day, int secs) {
+		if ( size > 0 && days[size - 1] == day )
+			return seconds[size - 1] += secs;
+		int at = ( size == 0 || days[size - 1] < day ) ? -(size + 1) : Arrays.binarySearch(days, 0, size, day);
+		if ( at >= 0 )
+			return seconds[at] += secs;
+		at = -(at + 1);
+		if ( size == days.length ) {
+			days = Arrays.copyOf(days, size * 2);
+			seconds = Arrays.copyOf(seconds, size * 2);
+		}
+		System.arraycopy(days, at, days, at + 1, size - at);
+		System.arraycopy(seconds, at, seconds, at + 1, size - at);
+		days[at] = day;
+		seconds[at] = secs;
+		size++;
+		return secs;
+	}
+
+	/**
+	 * Add every day of {@code that} breakdown to this one.
+	 *
+	 * @param that
+	 * 		The breakdown to add in (may be null)
+	 */
+	public void addAll(DailySeconds that) {
+		if ( that == null )
+			return;
+		for (int i = 0; i < that.size; i++)
+			add(that.days[i], that.seconds[i]);
+	}
+
+	/**
+	 * @return
+	 * 		The number of days with seconds
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i
+	 * 		Index of the day, 0 to {@code size() - 1}, in date order
+	 * @return
+	 * 		The day as a {@code LocalDate.toEpochDay()} value
+	 */
+	public int getDay(int i) {
+		return days[i];
+	}
+
+	/**
+	 * @param i
+	 * 		Index of the day, 0 to {@code size() - 1}, in date order
+	 * @return
+	 * 		The date for that day
+	 */
+	public LocalDate getDate(int i) {
+		return LocalDate.ofEpochDay(days[i]);
+	}
+
+	/**
+	 * @param i
+	 * 		Index of the day, 0 to {@code size() - 1}, in date order
+	 * @return
+	 * 		The seconds for that day
+	 */
+	public int getSeconds(int i) {
+		return seconds[i];
+	}
+
+	/**
+	 * @param day
+	 * 		The day, as a {@code LocalDate.toEpochDay()} value
+	 * @return
+	 * 		The seconds for that day (0 if none)
+	 */
+	public int getSecondsForDay(int day) {
+		int at = Arrays.binarySearch(days, 0, size, day);
+		return at >= 0 ? seconds[at] : 0;
+	}
+
+	/**
+	 * @return
+	 * 		The seconds across all the days
+	 */
+	public int total() {
+		int sum = 0;
+		for (int i = 0; i < size; i++)
+			sum += seconds[i];
+		return sum;
+	}
+}
@@ -0,0 +1,80 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.PrintStream;
+
+/**
+ * Collects the per-row complaints from parsing an export so that they don't
+ * each go straight to {@code System.err}.  Only the first {@code MAX_SHOWN}
+ * are kept, in a buffer, and the rest are just counted; {@code flush()} then
+ * prints the kept ones in one write with a line for how many more there were.
+ * A dirty export with thousands of bad rows gives a short report instead of
+ * thousands of unbuffered lines.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class Diagnostics {
+	static final int MAX_SHOWN = 20;
+
+	private final PrintStream out;
+	private final StringBuilder shown = new StringBuilder();
+	private int count = 0;
+
+	/**
+	 * Collect diagnostics for {@code System.err}.
+	 */
+	Diagnostics() {
+		this(System.err);
+	}
+
+	/**
+	 * @param out
+	 * 		Where {@code flush()} prints to
+	 */
+	Diagnostics(PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Note a problem, e.g., "Parse Error:  row 12, invalid Team number:  TBD".
+	 *
+	 * @param message
+	 * 		The line to print
+	 */
+	void report(String message) {
+		if ( count++ < MAX_SHOWN )
+			shown.append(message).append(System.lineSeparator());
+	}
+
+	/**
+	 * Same as {@code report(String)}, but the message is only built if it's
+	 * going to be shown.
+	 */
+	void report(String format, Object... args) {
+		if ( count < MAX_SHOWN )
+			report(String.format(format, args));
+		else
+			count++;
+	}
+
+	/**
+	 * @return
+	 * 		How many problems have been reported in all
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * Print the problems that were kept, and a count of the rest, then start over.
+	 */
+	void flush() {
+		if ( count > MAX_SHOWN )
+			shown.append(String.format("Parse Error:  %d more rows had problems, not shown%n", count - MAX_SHOWN));
+		if ( shown.length() > 0 ) {
+			out.print(shown);
+			out.flush();
+		}
+		shown.setLength(0);
+		count = 0;
+	}
+}
@@ -0,0 +1,424 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Generate synthetic fingerprint scanner exports for scale and soak testing of
+ * the ingestion code.  Writes .xls, .xlsx or .csv with the configured header
+ * columns, realistic looking names in either "Last, First" or "First Last"
+ * form, and a chosen fraction of malformed rows (bad or missing team numbers,
+ * missing cells, text where the hours should be).
+ *
+ * The .xlsx and .csv outputs are streamed, only a small window of rows is ever
+ * in memory, so multi-GB files can be produced, though an .xlsx sheet holds
+ * at most 1,048,575 data rows.  The .xls format can't be streamed and holds at
+ * most 65,535 data rows.
+ *
+ * Usable from tests (set the options and call {@code write()}) or from the
+ * command line, see {@code main()}.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class ExportGenerator {
+
+	public enum NameFormat {
+		LAST_FIRST, FIRST_LAST, MIXED,
+	}
+
+	public enum Format {
+		XLS, XLSX, CSV;
+
+		/**
+		 * @param file
+		 * 		The output file name
+		 * @return
+		 * 		The format matching the file extension (.xlsx if not .xls or .csv)
+		 */
+		public static Format forFile(String file) {
+			String lower = file.toLowerCase();
+			if ( lower.endsWith(".xls") ) return XLS;
+			if ( lower.endsWith(".csv") ) return CSV;
+			return XLSX;
+		}
+	}
+
+	static final int XLS_MAX_ROWS = 65535;
+	static final int XLSX_MAX_ROWS = 1048575;		// Data rows, after the header, same as XLS_MAX_ROWS
+	private static final String[] firstNames = { "Aiden", "Amara", "Ben", "Camila", "Diego", "Elena", "Ethan",
+			"Fatima", "Gabriel", "Grace", "Hiro", "Isabella", "Jamal", "Jia", "Kai", "Layla", "Liam", "Maya",
+			"Mateo", "Noah", "Olivia", "Omar", "Priya", "Quinn", "Rosa", "Sofia", "Tariq", "Uma", "Victor",
+			"Wen", "Ximena", "Yusuf", "Zoe" };
+	private static final String[] lastNames = { "Adams", "Baker", "Chen", "Davis", "Evans", "Flores", "Garcia",
+			"Hernandez", "Ibrahim", "Johnson", "Kim", "Lopez", "Martinez", "Nguyen", "Okafor", "Patel", "Quintero",
+			"Rodriguez", "Smith", "Tran", "Usman", "Vasquez", "Williams", "Xu", "Young", "Zhang" };
+
+	private int students = 100;
+	private int teams = 9;
+	private int firstTeam = 1000;
+	private int rowsPerStudent = 5;
+	private NameFormat nameFormat = NameFormat.MIXED;
+	private double malformedRate = 0.0;
+	private long seed = 1;
+	private String columnHours = "workday_w";
+	private String columnName  = "Name";
+	private String columnID    = "empno";
+	private String columnTeam  = "Department";
+
+	private long rowsWritten = 0;
+	private long malformedRows = 0;
+
+	/**
+	 * Create a generator with the default options (100 students, 9 teams, 5 rows each).
+	 */
+	public ExportGenerator() {
+	}
+
+	/**
+	 * Take the header column labels from the configuration, the same way {@code Teams} does.
+	 *
+	 * @param cfg
+	 * 		The configuration object
+	 * @return
+	 * 		This generator
+	 */
+	public ExportGenerator columns(ConfigProperties cfg) {
+		columnHours = cfg.getConfig("inputColumnHours", columnHours);
+		columnName  = cfg.getConfig("inputColumnName", columnName);
+		columnID    = cfg.getConfig("inputColumnID", columnID);
+		columnTeam  = cfg.getConfig("inputColumnTeam", columnTeam);
+		return this;
+	}
+
+	public ExportGenerator students(int count) {
+		students = Math.max(1, count);
+		return this;
+	}
+
+	/**
+	 * @param count
+	 * 		Number of teams, students are dealt out to them round-robin
+	 * @param first
+	 * 		The first team number, the rest are numbered consecutively
+	 * @return
+	 * 		This generator
+	 */
+	public ExportGenerator teams(int count, int first) {
+		teams = Math.max(1, count);
+		firstTeam = first;
+		return this;
+	}
+
+	public ExportGenerator rowsPerStudent(int count) {
+		rowsPerStudent = Math.max(1, count);
+		return this;
+	}
+
+	public ExportGenerator nameFormat(NameFormat format) {
+		nameFormat = format;
+		return this;
+	}
+
+	/**
+	 * @param rate
+	 * 		Fraction of rows (0.0 to 1.0) to write malformed
+	 * @return
+	 * 		This generator
+	 */
+	public ExportGenerator malformedRate(double rate) {
+		malformedRate = Math.max(0.0, Math.min(1.0, rate));
+		return this;
+	}
+
+	public ExportGenerator seed(long value) {
+		seed = value;
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Number of data rows written by the last {@code write()}
+	 */
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	/**
+	 * @return
+	 * 		How many of those rows were written malformed
+	 */
+	public long getMalformedRows() {
+		return malformedRows;
+	}
+
+	/**
+	 * Get the name of a student as it shows up in the export.
+	 *
+	 * @param student
+	 * 		The student number (0 to students-1)
+	 * @return
+	 * 		The name, formatted according to the name format
+	 */
+	public String nameOf(int student) {
+		String first = firstNames[student % firstNames.length];
+		String last  = lastNames[(student / firstNames.length) % lastNames.length];
+		boolean lastFirst = nameFormat == NameFormat.LAST_FIRST
+				|| (nameFormat == NameFormat.MIXED && student % 2 == 0);
+		return lastFirst ? last + ", " + first : first + " " + last;
+	}
+
+	/**
+	 * @param student
+	 * 		The student number (0 to students-1)
+	 * @return
+	 * 		The student's ID as it shows up in the export
+	 */
+	public String idOf(int student) {
+		return String.valueOf(100000 + student);
+	}
+
+	/**
+	 * @param student
+	 * 		The student number (0 to students-1)
+	 * @return
+	 * 		The team the student is on
+	 */
+	public int teamOf(int student) {
+		return firstTeam + student % teams;
+	}
+
+	/**
+	 * Write the export to {@code file}, in the format given by its extension.
+	 *
+	 * @param file
+	 * 		The file to create
+	 * @throws IOException
+	 * 		Error writing the file
+	 * @throws IllegalArgumentException
+	 * 		Too many rows for an .xls or .xlsx sheet
+	 */
+	public void write(Path file) throws IOException {
+		write(file, Format.forFile(file.toString()));
+	}
+
+	/**
+	 * Write the export to {@code file} in the given format.
+	 *
+	 * @param file
+	 * 		The file to create
+	 * @param format
+	 * 		The format to write
+	 * @throws IOException
+	 * 		Error writing the file
+	 * @throws IllegalArgumentException
+	 * 		Too many rows for an .xls or .xlsx sheet
+	 */
+	public void write(Path file, Format format) throws IOException {
+		long total = (long) students * rowsPerStudent;
+		if ( format == Format.XLS && total > XLS_MAX_ROWS )
+			throw new IllegalArgumentException("An .xls sheet holds at most " + XLS_MAX_ROWS + " data rows, not " + total);
+		if ( format == Format.XLSX && total > XLSX_MAX_ROWS )
+			throw new IllegalArgumentException("An .xlsx sheet holds at most " + XLSX_MAX_ROWS + " data rows, not " + total);
+		rowsWritten = 0;
+		malformedRows = 0;
+		if ( format == Format.CSV ) {
+			try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+				writeCsv(out);
+			}
+		} else {
+			try (OutputStream out = Files.newOutputStream(file)) {
+				writeWorkbook(out, format == Format.XLS);
+			}
+		}
+	}
+
+	/*
+	 * The header and rows as CSV, one student at a time
+	 */
+	private void writeCsv(Writer out) throws IOException {
+		BufferedWriter csv = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+		csv.write(csvField(columnID) + "," + csvField(columnName) + "," + csvField(columnTeam) + "," + csvField(columnHours));
+		csv.newLine();
+		Random rand = new Random(seed);
+		String[] fields = new String[4];
+		for (int s = 0; s < students; s++) {
+			for (int r = 0; r < rowsPerStudent; r++) {
+				nextRow(rand, s, fields);
+				csv.write(csvField(fields[0]) + "," + csvField(fields[1]) + "," + csvField(fields[2]) + "," + csvField(fields[3]));
+				csv.newLine();
+			}
+		}
+		csv.flush();
+	}
+
+	private static String csvField(String val) {
+		if ( val == null )
+			return "";
+		if ( val.indexOf(',') >= 0 || val.indexOf('"') >= 0 )
+			return "\"" + val.replace("\"", "\"\"") + "\"";
+		return val;
+	}
+
+	/*
+	 * The header and rows as a workbook, .xlsx through the streaming SXSSF model
+	 */
+	private void writeWorkbook(OutputStream out, boolean xls) throws IOException {
+		SXSSFWorkbook streaming = null;
+		Workbook wb;
+		if ( xls ) {
+			wb = new HSSFWorkbook();
+		} else {
+			streaming = new SXSSFWorkbook(100);
+			streaming.setCompressTempFiles(true);
+			wb = streaming;
+		}
+		try {
+			Sheet sheet = wb.createSheet("Export");
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue(columnID);
+			header.createCell(1).setCellValue(columnName);
+			header.createCell(2).setCellValue(columnTeam);
+			header.createCell(3).setCellValue(columnHours);
+			Random rand = new Random(seed);
+			String[] fields = new String[4];
+			int rowNum = 1;
+			for (int s = 0; s < students; s++) {
+				for (int r = 0; r < rowsPerStudent; r++) {
+					nextRow(rand, s, fields);
+					Row row = sheet.createRow(rowNum++);
+					for (int c = 0; c < 3; c++) {
+						if ( fields[c] != null )
+							row.createCell(c).setCellValue(fields[c]);
+					}
+					if ( fields[3] != null ) {
+						try {
+							row.createCell(3).setCellValue(Double.parseDouble(fields[3]));
+						} catch (NumberFormatException e) {
+							row.createCell(3).setCellValue(fields[3]);
+						}
+					}
+				}
+			}
+			wb.write(out);
+		} finally {
+			if ( streaming != null )
+				streaming.dispose();
+			wb.close();
+		}
+	}
+
+	/*
+	 * Fill in the ID, name, team and hours fields (null is a missing cell) for
+	 * one row of student s, possibly breaking it.
+	 */
+	private void nextRow(Random rand, int s, String[] fields) {
+		fields[0] = idOf(s);
+		fields[1] = nameOf(s);
+		fields[2] = String.valueOf(teamOf(s));
+		int minutes = 15 + rand.nextInt(226);		// 15 minutes to just under 4 hours
+		fields[3] = String.valueOf(Math.round(minutes / 60.0 * 100) / 100.0);
+		rowsWritten++;
+		if ( malformedRate > 0.0 && rand.nextDouble() < malformedRate ) {
+			malformedRows++;
+			switch (rand.nextInt(5)) {
+			case 0:  fields[2] = "TBD"; break;			// Team isn't a number
+			case 1:  fields[2] = null; break;			// Team missing
+			case 2:  fields[3] = "n/a"; break;			// Hours aren't a number
+			case 3:  fields[3] = null; break;			// Hours missing
+			default: fields[0] = null; break;			// ID missing
+			}
+		}
+	}
+
+	/**
+	 * Command line front end.
+	 *
+	 * @param argv<br>
+	 * 		-o outfile	-- The export to create (.xls, .xlsx or .csv)<br>
+	 * 		-s num		-- Number of students (default: 100)<br>
+	 * 		-t num		-- Number of teams (default: 9)<br>
+	 * 		-r num		-- Rows per student (default: 5)<br>
+	 * 		-n format	-- Name format: LAST_FIRST, FIRST_LAST or MIXED (default)<br>
+	 * 		-m rate		-- Fraction of malformed rows, 0.0 to 1.0 (default: 0)<br>
+	 * 		-c cfgFile	-- Configuration file to take the column labels from<br>
+	 * 		--seed num	-- Random seed, the same seed gives the same file<br>
+	 * @throws IOException
+	 * 		Error writing the file
+	 */
+	public static void main(String[] argv) throws IOException {
+		Options options = new Options();
+		options.addOption( Option.builder("o").hasArg().required().argName("output file").longOpt("outFile")
+				.desc("Export file to create (.xls, .xlsx or .csv)").build());
+		options.addOption( Option.builder("s").hasArg().argName("students").longOpt("students")
+				.desc("Number of students").build());
+		options.addOption( Option.builder("t").hasArg().argName("teams").longOpt("teams")
+				.desc("Number of teams").build());
+		options.addOption( Option.builder("r").hasArg().argName("rows").longOpt("rowsPerStudent")
+				.desc("Rows per student").build());
+		options.addOption( Option.builder("n").hasArg().argName("format").longOpt("nameFormat")
+				.desc("LAST_FIRST, FIRST_LAST or MIXED").build());
+		options.addOption( Option.builder("m").hasArg().argName("rate").longOpt("malformedRate")
+				.desc("Fraction of malformed rows (0.0 - 1.0)").build());
+		options.addOption( Option.builder("c").hasArg().argName("configuration file").longOpt("cfgFile")
+				.desc("Configuration file for the column labels").build());
+		options.addOption( Option.builder().hasArg().argName("seed").longOpt("seed")
+				.desc("Random seed").build());
+		CommandLine cmd = null;
+		try {
+			CommandLineParser parser = new DefaultParser();
+			cmd = parser.parse(options, argv);
+		} catch (ParseException exp) {
+			System.out.println(exp.getMessage());
+			new HelpFormatter().printHelp("ExportGenerator", options);
+			System.exit(1);
+		}
+
+		ExportGenerator gen = new ExportGenerator();
+		try {
+			gen.students(Integer.parseInt(cmd.getOptionValue("s", "100")))
+				.teams(Integer.parseInt(cmd.getOptionValue("t", "9")), 1000)
+				.rowsPerStudent(Integer.parseInt(cmd.getOptionValue("r", "5")))
+				.malformedRate(Double.parseDouble(cmd.getOptionValue("m", "0")))
+				.seed(Long.parseLong(cmd.getOptionValue("seed", "1")))
+				.nameFormat(NameFormat.valueOf(cmd.getOptionValue("n", "MIXED").toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			System.err.println("Illegal value for an option: " + e.getMessage());
+			System.exit(1);
+		}
+		if ( cmd.hasOption("c") ) {
+			ConfigProperties config = new ConfigProperties();
+			config.getPropValues(cmd.getOptionValue("c"));
+			gen.columns(config);
+		}
+		long start = System.nanoTime();
+		String file = cmd.getOptionValue("o");
+		try {
+			gen.write(Paths.get(file));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		System.out.print(String.format("Wrote %d rows (%d malformed) to %s in %d ms\n", gen.getRowsWritten(),
+				gen.getMalformedRows(), file, (System.nanoTime() - start) / 1_000_000));
+	}
+}
@@ -0,0 +1,294 @@
+package io.github.gorpong.hoursexport;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks on the scanner export that run as each row is read, so there's no
+ * second pass over the data.  Besides the rows that can't be read at all, it
+ * finds:
+ * <ul>
+ * <li>the same ID with a different name than it had before</li>
+ * <li>negative hours (the row is left out)</li>
+ * <li>more than 24 hours in one day for a student (or in one row, if the
+ * export has no dates)</li>
+ * <li>the same ID under more than one team; the student stays on the team they
+ * were first seen on and their other rows count toward that team</li>
+ * </ul>
+ * Each problem is kept as an {@code Anomaly} for the report's "Anomalies"
+ * sheet.  The same problem for the same student is only noted once.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class ExportValidator {
+	/** Team value for a student that hasn't been seen yet, or a row to leave out */
+	public static final int NO_TEAM = Integer.MIN_VALUE;
+	static final int SECONDS_PER_DAY = 24 * 60 * 60;
+	static final int MAX_LISTED = 1000;		// Anomalies kept for the report, the rest are only counted
+
+	public enum Kind {
+		INVALID_TEAM("Invalid team"),
+		UNREADABLE_ROW("Unreadable row"),
+		NAME_MISMATCH("Name mismatch"),
+		NEGATIVE_HOURS("Negative hours"),
+		IMPOSSIBLE_HOURS("Over 24 hours in a day"),
+		MULTIPLE_TEAMS("On multiple teams"),
+		DOUBLE_PUNCH("Double punch"),
+		OPEN_PUNCH("Missing clock-out"),
+		ORPHAN_PUNCH("Clock-out without clock-in"),
+		NOT_ON_ROSTER("Not on the roster");
+
+		private final String label;
+
+		Kind(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * One problem found in the export.
+	 */
+	public static class Anomaly {
+		private final Kind kind;
+		private final int row;
+		private final String id;
+		private final String detail;
+		private final String key;		// For the problems only noted once, null for the rest
+
+		Anomaly(Kind kind, int row, String id, String detail) {
+			this(kind, row, id, detail, null);
+		}
+
+		Anomaly(Kind kind, int row, String id, String detail, String key) {
+			this.kind = kind;
+			this.row = row;
+			this.id = id;
+			this.detail = detail;
+			this.key = key;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+		/**
+		 * @return
+		 * 		The row in the export (0 is the header row)
+		 */
+		public int getRow() {
+			return row;
+		}
+		/**
+		 * @return
+		 * 		The student ID, or null if the row didn't have one
+		 */
+		public String getId() {
+			return id;
+		}
+		public String getDetail() {
+			return detail;
+		}
+
+		public String toString() {
+			return "row " + row + ":  " + kind.getLabel() + (id != null ? " [" + id + "]" : "") + ":  " + detail;
+		}
+	}
+
+	private final HashSet<String> reported = new HashSet<>();
+	private final List<Anomaly> anomalies = new ArrayList<>();
+	private final int[] counts = new int[Kind.values().length];
+
+	/**
+	 * Note a row that couldn't be read.
+	 *
+	 * @param kind
+	 * 		INVALID_TEAM or UNREADABLE_ROW
+	 * @param row
+	 * 		The row in the export
+	 * @param detail
+	 * 		What was wrong with it
+	 */
+	void rejected(Kind kind, int row, String detail) {
+		add(kind, row, null, detail);
+	}
+
+	/**
+	 * Note a problem with a student's row that was found some other way, e.g.,
+	 * while pairing up punches.
+	 *
+	 * @param kind
+	 * 		What's wrong
+	 * @param row
+	 * 		The row in the export
+	 * @param id
+	 * 		The student ID
+	 * @param detail
+	 * 		What was wrong with it
+	 */
+	void note(Kind kind, int row, String id, String detail) {
+		add(kind, row, id, detail);
+	}
+
+	/**
+	 * Note that an ID isn't on the roster, the first time it's seen.
+	 *
+	 * @param name
+	 * 		The name the export has for it
+	 * @param team
+	 * 		The team the export has for it
+	 */
+	void notOnRoster(int row, String id, String name, int team) {
+		String once = firstTime(Kind.NOT_ON_ROSTER, id, "");
+		if ( once != null )
+			noteOnce(Kind.NOT_ON_ROSTER, row, id, once, "\"" + name + "\" on team " + team + ", counted as the export has them");
+	}
+
+	/**
+	 * Check a row against the name and team the caller has for the ID so far.
+	 *
+	 * @param knownName
+	 * 		The student's name so far, null if this is the first row for the ID
+	 * @param knownTeam
+	 * 		The student's team so far, or {@code NO_TEAM}
+	 * @return
+	 * 		The team to count the row under, or {@code NO_TEAM} to leave it out
+	 */
+	int check(int row, String id, String name, int team, int seconds, int day, String knownName, int knownTeam) {
+		if ( seconds < 0 ) {
+			add(Kind.NEGATIVE_HOURS, row, id, String.format("%.2f hours", seconds / 3600.0));
+			return NO_TEAM;
+		}
+		if ( day == DailySeconds.NO_DAY && seconds > SECONDS_PER_DAY )
+			add(Kind.IMPOSSIBLE_HOURS, row, id, String.format("%.2f hours in one row", seconds / 3600.0));
+		if ( knownName != null && ! knownName.equals(name) ) {
+			String once = firstTime(Kind.NAME_MISMATCH, id, "");
+			if ( once != null )
+				noteOnce(Kind.NAME_MISMATCH, row, id, once, "\"" + name + "\", first seen as \"" + knownName + "\"");
+		}
+		if ( knownTeam != NO_TEAM && knownTeam != team ) {
+			String once = firstTime(Kind.MULTIPLE_TEAMS, id, "/" + team);
+			if ( once != null )
+				noteOnce(Kind.MULTIPLE_TEAMS, row, id, once, "Also on team " + team + ", counted on team " + knownTeam);
+			return knownTeam;
+		}
+		return team;
+	}
+
+	/**
+	 * Check a student's running total for one day after adding a row to it.
+	 *
+	 * @param dayTotal
+	 * 		The student's seconds for {@code day}, including this row
+	 */
+	void checkDay(int row, String id, int day, int dayTotal) {
+		if ( dayTotal > SECONDS_PER_DAY ) {
+			String once = firstTime(Kind.IMPOSSIBLE_HOURS, id, "@" + day);
+			if ( once != null )
+				noteOnce(Kind.IMPOSSIBLE_HOURS, row, id, once,
+						String.format("%.2f hours on %s", dayTotal / 3600.0, LocalDate.ofEpochDay(day)));
+		}
+	}
+
+	/*
+	 * For a problem that's only noted once, count it and return the key it's
+	 * kept under the first time for this ID (and key), null after that.  The
+	 * caller only builds the detail when it gets a key back.
+	 */
+	private String firstTime(Kind kind, String id, String key) {
+		String once = kind.ordinal() + ":" + id + key;
+		if ( ! reported.add(once) )
+			return null;
+		counts[kind.ordinal()]++;
+		return once;
+	}
+
+	private void noteOnce(Kind kind, int row, String id, String once, String detail) {
+		if ( anomalies.size() < MAX_LISTED )
+			anomalies.add(new Anomaly(kind, row, id, detail, once));
+	}
+
+	private void add(Kind kind, int row, String id, String detail) {
+		counts[kind.ordinal()]++;
+		if ( anomalies.size() < MAX_LISTED )
+			anomalies.add(new Anomaly(kind, row, id, detail));
+	}
+
+	/**
+	 * Take in what another validator found, e.g., one that checked another
+	 * sheet of the export on its own.  A problem that's only noted once for a
+	 * student still is, if both found it.
+	 *
+	 * @param other
+	 * 		The other validator
+	 * @param where
+	 * 		Put in front of each of the other's details (e.g., the sheet name), or null
+	 */
+	void addAll(ExportValidator other, String where) {
+		for (Anomaly a : other.anomalies) {
+			if ( a.key != null && reported.contains(a.key) )
+				continue;
+			if ( anomalies.size() < MAX_LISTED )
+				anomalies.add(new Anomaly(a.kind, a.row, a.id, where == null ? a.detail : where + ":  " + a.detail, a.key));
+		}
+		for (int k = 0; k < counts.length; k++)
+			counts[k] += other.counts[k];
+		for (String key : other.reported) {
+			if ( ! reported.add(key) )
+				counts[Integer.parseInt(key.substring(0, key.indexOf(':')))]--;		// Counted by both
+		}
+	}
+
+	/**
+	 * @return
+	 * 		The anomalies found, in row order (only the first {@code MAX_LISTED})
+	 */
+	public List<Anomaly> getAnomalies() {
+		List<Anomaly> sorted = new ArrayList<>(anomalies);
+		sorted.sort(Comparator.comparingInt(Anomaly::getRow));
+		return Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * @param kind
+	 * 		The kind of anomaly
+	 * @return
+	 * 		How many of that kind were found
+	 */
+	public int getCount(Kind kind) {
+		return counts[kind.ordinal()];
+	}
+
+	/**
+	 * @return
+	 * 		How many anomalies were found in all
+	 */
+	public int getTotal() {
+		int total = 0;
+		for (int count : counts)
+			total += count;
+		return total;
+	}
+
+	/**
+	 * @return
+	 * 		A one line summary, e.g. "2 Name mismatch, 1 On multiple teams"
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		for (Kind kind : Kind.values()) {
+			if ( counts[kind.ordinal()] == 0 )
+				continue;
+			if ( sb.length() > 0 )
+				sb.append(", ");
+			sb.append(counts[kind.ordinal()]).append(' ').append(kind.getLabel());
+		}
+		return sb.toString();
+	}
+}
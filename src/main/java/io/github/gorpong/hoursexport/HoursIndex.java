@@ -0,0 +1,401 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The students' totals from a parsed export, saved to a file that can be
+ * memory-mapped and queried straight away, without POI and without reading
+ * the export again.  Looking up a student by ID or a team by number goes
+ * through an open-addressed hash table in the file, and the students are also
+ * kept sorted by seconds so that "everyone over 7 hours" is a binary search.
+ * Nothing is read in to the heap up front, so opening even a big index only
+ * costs the mapping.
+ *
+ * The file is (all ints big-endian):
+ * <pre>
+ *   header       magic, version, students, teams, ID buckets, team buckets,
+ *                string bytes, total seconds (a long)
+ *   students     per student:  ID offset, name offset, team, seconds
+ *   bySeconds    student numbers, fewest seconds first
+ *   byTeam       student numbers grouped by team, most seconds first in each
+ *   teams        per team, in order:  team, start in byTeam, count, seconds (a long)
+ *   ID hash      student number + 1 per bucket, 0 for an empty bucket
+ *   team hash    team record + 1 per bucket
+ *   strings      each a 2-byte length then UTF-8, offsets are from here
+ * </pre>
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class HoursIndex {
+	static final int MAGIC = 0x56424849;	// "VBHI"
+	static final int VERSION = 2;			// 2:  totals in seconds, not minutes
+	private static final int HEADER = 36;
+	private static final int STUDENT = 16;
+	private static final int TEAM = 20;
+
+	private final ByteBuffer buf;
+	private final int students;
+	private final int teams;
+	private final int idBuckets;
+	private final int teamBuckets;
+	private final long totalSeconds;
+	private final int studentsAt;
+	private final int bySecondsAt;
+	private final int byTeamAt;
+	private final int teamsAt;
+	private final int idHashAt;
+	private final int teamHashAt;
+	private final int stringsAt;
+
+	private HoursIndex(ByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if ( buf.capacity() < HEADER || buf.getInt(0) != MAGIC )
+			throw new IOException("Not an hours index");
+		if ( buf.getInt(4) != VERSION )
+			throw new IOException("Hours index is version " + buf.getInt(4) + ", expected " + VERSION);
+		students = buf.getInt(8);
+		teams = buf.getInt(12);
+		idBuckets = buf.getInt(16);
+		teamBuckets = buf.getInt(20);
+		int stringBytes = buf.getInt(24);
+		totalSeconds = buf.getLong(28);
+		studentsAt = HEADER;
+		bySecondsAt = studentsAt + students * STUDENT;
+		byTeamAt = bySecondsAt + students * 4;
+		teamsAt = byTeamAt + students * 4;
+		idHashAt = teamsAt + teams * TEAM;
+		teamHashAt = idHashAt + idBuckets * 4;
+		stringsAt = teamHashAt + teamBuckets * 4;
+		if ( (long) stringsAt + stringBytes != buf.capacity() )
+			throw new IOException("Hours index is truncated or damaged");
+	}
+
+	/**
+	 * Map an index written by {@code write()}.
+	 *
+	 * @param file
+	 * 		The index file
+	 * @return
+	 * 		The index, ready to query
+	 * @throws IOException
+	 * 		Can't read the file, or it isn't an index
+	 */
+	static HoursIndex open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if ( channel.size() > Integer.MAX_VALUE )
+				throw new IOException("Hours index is too big:  " + file);
+			// The mapping stays valid after the channel is closed
+			return new HoursIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Save the students' totals to {@code file}.  The index is written to a
+	 * temporary file next to it and moved in to place, so a query running at
+	 * the same time sees either the old index or the new one.
+	 *
+	 * @param teams
+	 * 		The parsed export
+	 * @param file
+	 * 		The index file to write (replaced if it's there)
+	 * @throws IOException
+	 * 		Can't write the file
+	 */
+	static void write(Teams teams, Path file) throws IOException {
+		StudentStore store = teams.getStore();
+		int n = store.size();
+		int[] teamList = store.getTeams();
+		int t = teamList.length;
+		int idBuckets = buckets(n);
+		int teamBuckets = buckets(t);
+
+		// The strings first, since the student records point in to them
+		byte[][] idBytes = new byte[n][];
+		byte[][] nameBytes = new byte[n][];
+		long stringBytes = 0;
+		for (int s = 0; s < n; s++) {
+			idBytes[s] = utf8(store.getId(s));
+			nameBytes[s] = utf8(store.getName(s));
+			stringBytes += 4 + idBytes[s].length + nameBytes[s].length;
+		}
+		long size = HEADER + (long) n * (STUDENT + 8) + (long) t * TEAM + 4L * (idBuckets + teamBuckets) + stringBytes;
+		if ( size > Integer.MAX_VALUE )
+			throw new IOException("Too many students for an hours index");
+		ByteBuffer buf = ByteBuffer.allocate((int) size);
+
+		long total = 0;
+		for (int s = 0; s < n; s++)
+			total += store.getSeconds(s);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(t).putInt(idBuckets).putInt(teamBuckets)
+				.putInt((int) stringBytes).putLong(total);
+
+		int at = 0;
+		for (int s = 0; s < n; s++) {
+			buf.putInt(at);
+			at += 2 + idBytes[s].length;
+			buf.putInt(at);
+			at += 2 + nameBytes[s].length;
+			buf.putInt(store.getTeam(s)).putInt(store.getSeconds(s));
+		}
+
+		long[] keys = new long[n];
+		for (int s = 0; s < n; s++)
+			keys[s] = ((long) store.getSeconds(s) << 32) | s;
+		Arrays.sort(keys);
+		for (long key : keys)
+			buf.putInt((int) key);
+
+		int[][] byTeam = new int[t][];
+		for (int i = 0; i < t; i++) {
+			byTeam[i] = store.sortedBySeconds(teamList[i]);
+			for (int s : byTeam[i])
+				buf.putInt(s);
+		}
+		int start = 0;
+		for (int i = 0; i < t; i++) {
+			long seconds = 0;
+			for (int s : byTeam[i])
+				seconds += store.getSeconds(s);
+			buf.putInt(teamList[i]).putInt(start).putInt(byTeam[i].length).putLong(seconds);
+			start += byTeam[i].length;
+		}
+
+		int[] idHash = new int[idBuckets];
+		for (int s = 0; s < n; s++) {
+			int b = mix(store.getId(s).hashCode()) & (idBuckets - 1);
+			while ( idHash[b] != 0 )
+				b = (b + 1) & (idBuckets - 1);
+			idHash[b] = s + 1;
+		}
+		buf.asIntBuffer().put(idHash);
+		buf.position(buf.position() + idBuckets * 4);
+		int[] teamHash = new int[teamBuckets];
+		for (int i = 0; i < t; i++) {
+			int b = mix(teamList[i]) & (teamBuckets - 1);
+			while ( teamHash[b] != 0 )
+				b = (b + 1) & (teamBuckets - 1);
+			teamHash[b] = i + 1;
+		}
+		buf.asIntBuffer().put(teamHash);
+		buf.position(buf.position() + teamBuckets * 4);
+
+		for (int s = 0; s < n; s++) {
+			buf.putShort((short) idBytes[s].length).put(idBytes[s]);
+			buf.putShort((short) nameBytes[s].length).put(nameBytes[s]);
+		}
+		buf.flip();
+		writeAtomically(buf, file);
+	}
+
+	/**
+	 * Write {@code buf} to a temporary file next to {@code file} and move it
+	 * in to place, so anyone reading {@code file} at the same time sees either
+	 * the old one or the new one.
+	 */
+	static void writeAtomically(ByteBuffer buf, Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				while ( buf.hasRemaining() )
+					channel.write(buf);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/*
+	 * A power of two at least twice the entries, so the probes stay short
+	 */
+	static int buckets(int entries) {
+		return Math.max(2, Integer.highestOneBit(Math.max(1, entries)) << 2);
+	}
+
+	/*
+	 * Spread the bits, since team numbers and String hashes of numeric IDs are
+	 * close together
+	 */
+	static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	static byte[] utf8(String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		if ( b.length > 0xFFFF )
+			throw new IOException("String too long to index:  " + s.substring(0, 40) + "...");
+		return b;
+	}
+
+	int size() {
+		return students;
+	}
+	int teamCount() {
+		return teams;
+	}
+	long getTotalSeconds() {
+		return totalSeconds;
+	}
+
+	/**
+	 * @param id
+	 * 		The student ID
+	 * @return
+	 * 		The student's number in the index, or -1 if they aren't in it
+	 */
+	int find(String id) {
+		int b = mix(id.hashCode()) & (idBuckets - 1);
+		for (int s; (s = buf.getInt(idHashAt + b * 4)) != 0; b = (b + 1) & (idBuckets - 1)) {
+			if ( equalsAt(buf, stringsAt + buf.getInt(studentsAt + (s - 1) * STUDENT), id) )
+				return s - 1;
+		}
+		return -1;
+	}
+
+	/*
+	 * Whether the length-prefixed string at {@code at} is {@code want}, decoding
+	 * the UTF-8 as it's compared so a lookup doesn't make a byte[] of its own
+	 */
+	static boolean equalsAt(ByteBuffer buf, int at, String want) {
+		int end = at + 2 + ( buf.getShort(at) & 0xFFFF );
+		int i = 0;
+		for (int p = at + 2; p < end; ) {
+			int b = buf.get(p++);
+			int c;
+			if ( b >= 0 ) {
+				c = b;
+			} else if ( ( b & 0xE0 ) == 0xC0 ) {
+				c = ( b & 0x1F ) << 6 | ( buf.get(p++) & 0x3F );
+			} else if ( ( b & 0xF0 ) == 0xE0 ) {
+				c = ( b & 0x0F ) << 12 | ( buf.get(p++) & 0x3F ) << 6 | ( buf.get(p++) & 0x3F );
+			} else {		// Four bytes, two chars
+				int code = ( b & 0x07 ) << 18 | ( buf.get(p++) & 0x3F ) << 12 | ( buf.get(p++) & 0x3F ) << 6
+						| ( buf.get(p++) & 0x3F );
+				if ( i >= want.length() || want.charAt(i++) != Character.highSurrogate(code) )
+					return false;
+				c = Character.lowSurrogate(code);
+			}
+			if ( i >= want.length() || want.charAt(i++) != c )
+				return false;
+		}
+		return i == want.length();
+	}
+
+	static String stringAt(ByteBuffer buf, int at) {
+		byte[] b = new byte[buf.getShort(at) & 0xFFFF];
+		for (int i = 0; i < b.length; i++)
+			b[i] = buf.get(at + 2 + i);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	String getId(int student) {
+		return stringAt(buf, stringsAt + buf.getInt(studentsAt + student * STUDENT));
+	}
+	/**
+	 * @return
+	 * 		The name as it was in the export
+	 */
+	String getName(int student) {
+		return stringAt(buf, stringsAt + buf.getInt(studentsAt + student * STUDENT + 4));
+	}
+	int getTeam(int student) {
+		return buf.getInt(studentsAt + student * STUDENT + 8);
+	}
+	int getSeconds(int student) {
+		return buf.getInt(studentsAt + student * STUDENT + 12);
+	}
+
+	/*
+	 * Where team's record is, or -1
+	 */
+	private int teamAt(int team) {
+		int b = mix(team) & (teamBuckets - 1);
+		for (int i; (i = buf.getInt(teamHashAt + b * 4)) != 0; b = (b + 1) & (teamBuckets - 1)) {
+			int at = teamsAt + (i - 1) * TEAM;
+			if ( buf.getInt(at) == team )
+				return at;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param team
+	 * 		The team
+	 * @return
+	 * 		The students on it, most seconds first, or null if there's no such team
+	 */
+	int[] getTeamStudents(int team) {
+		int at = teamAt(team);
+		if ( at < 0 )
+			return null;
+		int from = byTeamAt + buf.getInt(at + 4) * 4;
+		int[] list = new int[buf.getInt(at + 8)];
+		for (int i = 0; i < list.length; i++)
+			list[i] = buf.getInt(from + i * 4);
+		return list;
+	}
+
+	/**
+	 * @return
+	 * 		The team's total seconds, or -1 if there's no such team
+	 */
+	long getTeamSeconds(int team) {
+		int at = teamAt(team);
+		return at < 0 ? -1 : buf.getLong(at + 12);
+	}
+
+	/**
+	 * @param seconds
+	 * 		The limit
+	 * @return
+	 * 		The students with more than {@code seconds}, most first
+	 */
+	int[] over(int seconds) {
+		int from = firstAbove(seconds);
+		int[] list = new int[students - from];
+		for (int i = 0; i < list.length; i++)
+			list[i] = buf.getInt(bySecondsAt + (students - 1 - i) * 4);
+		return list;
+	}
+
+	/**
+	 * @param seconds
+	 * 		The minimum
+	 * @return
+	 * 		The students with fewer than {@code seconds}, fewest first
+	 */
+	int[] under(int seconds) {
+		int[] list = new int[firstAbove(seconds - 1)];
+		for (int i = 0; i < list.length; i++)
+			list[i] = buf.getInt(bySecondsAt + i * 4);
+		return list;
+	}
+
+	/*
+	 * The first place in bySeconds with more than {@code seconds}
+	 */
+	private int firstAbove(int seconds) {
+		int lo = 0;
+		int hi = students;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( getSeconds(buf.getInt(bySecondsAt + mid * 4)) > seconds )
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+}
@@ -2,13 +2,18 @@ package io.github.gorpong.hoursexport;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import org.apache.commons.cli.*;
 import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 
-import io.github.gorpong.hoursexport.Output.SheetType;
-
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Program to scan an Excel-formatted file from a fingerprint scanner and
@@ -30,6 +35,12 @@ public class HoursMain {
 	 * 		-o outfile -- The output file to write/create, containing formatted data<br>
 	 * 		-lt hrs	   -- The low hours threshold, under which are flagged in bold-red<br>
 	 * 	    -ht hrs	   -- The high hours threshold, over which are highlighted, bold-red<br>
+	 * 	    -s port	   -- Serve reports over HTTP on port rather than processing a file<br>
+	 * 	    -b file	   -- Run every report listed in the batch manifest file<br>
+	 * 	    -t num	   -- Number of batch jobs to run at the same time<br>
+	 * 	    -p [file]  -- Record a JFR file and print a per-phase time/allocation breakdown<br>
+	 * 	    -x file	   -- Also save the totals to an index file for {@code query}<br>
+	 * 	    query ...  -- Look up students and teams in a saved index (see {@code query()})<br>
 	 * <p>
 	 * All command line arguments override any configuration file settings for similar values.
 	 * </p>
@@ -38,6 +49,11 @@ public class HoursMain {
 	 * @throws FileNotFoundException Can't open file or can't write file
 	 */
 	public static void main(String[] argv) throws FileNotFoundException, IOException {
+		if ( argv.length > 0 && argv[0].equals("query") ) {
+			if ( ! query(Arrays.copyOfRange(argv, 1, argv.length)) )
+				System.exit(1);
+			return;
+		}
 		Options options = new Options();
 		options.addOption( Option.builder("c").hasArg()
 				.argName("configuration file")
@@ -64,6 +80,41 @@ public class HoursMain {
 				.longOpt("highThreshold")
 				.desc("Threshold for hours too high")
 				.build());
+		options.addOption( Option.builder("s").hasArg()
+				.argName("port")
+				.longOpt("serve")
+				.desc("Serve reports over HTTP on this port instead of processing a file")
+				.build());
+		options.addOption( Option.builder("b").hasArg()
+				.argName("manifest file")
+				.longOpt("batch")
+				.desc("Run every job (input, config, output, low, high, previous input) listed in the manifest")
+				.build());
+		options.addOption( Option.builder("t").hasArg()
+				.argName("threads")
+				.longOpt("threads")
+				.desc("Number of batch jobs to run at once (default: number of CPUs)")
+				.build());
+		options.addOption( Option.builder("w").hasArg()
+				.argName("previous input file")
+				.longOpt("previous")
+				.desc("Last week's input file, to add a sheet of what changed since")
+				.build());
+		options.addOption( Option.builder("x").hasArg()
+				.argName("index file")
+				.longOpt("index")
+				.desc("Also save the totals to an index file, for the query command")
+				.build());
+		options.addOption( Option.builder("r").hasArg()
+				.argName("roster file")
+				.longOpt("roster")
+				.desc("A .csv or Excel roster of IDs with the names and teams to count them under")
+				.build());
+		options.addOption( Option.builder("p").hasArg().optionalArg(true)
+				.argName("JFR file")
+				.longOpt("profile")
+				.desc("Record a JFR file (default: VBHoursExport.jfr) and print a per-phase breakdown")
+				.build());
 		CommandLineParser parser = new DefaultParser();
 		CommandLine cmd = null;
 		try {
@@ -76,11 +127,34 @@ public class HoursMain {
 			System.exit(1);
 		}
 		
+		PhaseProfiler profiler = null;
+		if ( cmd.hasOption("p") && ! cmd.hasOption("s") )
+			profiler = PhaseProfiler.start(Paths.get(cmd.getOptionValue("p", "VBHoursExport.jfr")));
+
+		if ( cmd.hasOption("b") ) {
+			boolean ok = batch(cmd);
+			if ( profiler != null )
+				profiler.stop(System.out);
+			if ( ! ok )
+				System.exit(1);
+			return;
+		}
+
 		ConfigProperties config = new ConfigProperties();
 		if ( cmd.hasOption("c") )
 			config.getPropValues(cmd.getOptionValue('c'));
 		else
 			config.getPropValues();
+		Map<String, String> overrides = new LinkedHashMap<>();		// Kept when a served config is reloaded
+		if ( cmd.hasOption("r") )
+			overrides.put("rosterFile", cmd.getOptionValue("r"));
+		for (Map.Entry<String, String> setting : overrides.entrySet())
+			config.setConfig(setting.getKey(), setting.getValue());
+
+		if ( cmd.hasOption("s") ) {
+			serve(cmd, config, overrides);
+			return;
+		}
 		
 		Calendar date = Calendar.getInstance();
 		String datestr = String.format("%02d/%02d/%04d %02d:%02d %s",  date.get(Calendar.MONTH)+1, 
@@ -110,6 +184,22 @@ public class HoursMain {
 			numStudents += scanner.getHoursByTeam(team).size();
 		}
 		System.out.print(String.format("Successfully parsed Input file:  %d teams and %d students\n", numTeams, numStudents)); 
+		for (Teams.SheetStats sheet : scanner.getSheetStats())
+			System.out.println("    Sheet " + sheet);
+		if ( scanner.getRoster() != null )
+			System.out.println(String.format("Names and teams from the roster:  %d students%s", scanner.getRoster().size(),
+					scanner.getRoster().wasCached() ? " (saved from an earlier run)" : ""));
+		if ( scanner.getValidator().getTotal() > 0 )
+			System.out.println("Anomalies found in the export (see the Anomalies sheet):  " + scanner.getValidator().summary());
+		if ( ! scanner.getBuddyPunches().getPairs().isEmpty() )
+			System.out.println("Possible buddy punches (see the Buddy Punches sheet):  " + scanner.getBuddyPunches().summary());
+		if ( Boolean.parseBoolean(config.getConfig("statistics", "false")) )
+			System.out.println("Hours for the program:  " + scanner.getStats().getProgram());
+		String indexFile = cmd.getOptionValue("x", config.getConfig("indexFile"));
+		if ( indexFile != null ) {
+			HoursIndex.write(scanner, Paths.get(indexFile));
+			System.out.println("Index saved to:  " + indexFile);
+		}
 				
 		String outputFile = cmd.getOptionValue("o", config.getConfig("outputFile")); 
 		double hrsLow = 0.0;  
@@ -122,8 +212,19 @@ public class HoursMain {
 			System.exit(1);
 		}
 		Output out = Output.initialize(outputFile, config, hrsLow, hrsHigh);
-		out.createSheet(scanner, SheetType.COACHES);
-		out.createSheet(scanner, SheetType.PARENTS);
+		if ( cmd.hasOption("w") ) {
+			String previousFile = cmd.getOptionValue("w");
+			Teams previous = new Teams(previousFile, config);
+			try {
+				previous.parseExcel();
+			} catch (EncryptedDocumentException | InvalidFormatException e) {
+				System.err.println("Cannot parse last week's file " + previousFile + ":  " + e.getMessage());
+				System.exit(1);
+			}
+			out.setPrevious(previous);
+			System.out.println("Changes since " + previousFile + ":  " + out.compare(scanner).summary());
+		}
+		out.createReport(scanner);
 		out.close();
 		System.out.print(String.format("Noted %d students with low hours and %d students with high hours\n",
 				out.getLowCount(), out.getHighCount()));
@@ -134,6 +235,190 @@ public class HoursMain {
 				date.get(Calendar.AM_PM) == 1 ? "PM" : "AM");
 		System.out.println("Processing Complete at:  " + datestr);
 		System.out.println("File Created:  " + outputFile);
+		if ( profiler != null )
+			profiler.stop(System.out);
+	}
+
+	/**
+	 * Run all the jobs in a batch manifest in this JVM and print the results.
+	 * 
+	 * @param cmd
+	 * 		The parsed command line
+	 * @return
+	 * 		true if every job succeeded
+	 * @throws IOException
+	 * 		Can't read the manifest
+	 */
+	private static boolean batch(CommandLine cmd) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<BatchRunner.Job> jobs = null;
+		try {
+			threads = Integer.parseInt(cmd.getOptionValue("t", String.valueOf(threads)));
+			jobs = BatchRunner.readManifest(Paths.get(cmd.getOptionValue("b")));
+		} catch (NumberFormatException e) {
+			System.err.println("Illegal number format for -t threads");
+			System.exit(1);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Running " + jobs.size() + " jobs on " + threads + " threads");
+		long start = System.nanoTime();
+		List<BatchRunner.Result> results;
+		try {
+			results = new BatchRunner(threads).run(jobs);
+		} catch (InterruptedException e) {
+			System.err.println("Batch interrupted");
+			return false;
+		}
+		BatchRunner.printResults(results, (System.nanoTime() - start) / 1_000_000, System.out);
+		for (BatchRunner.Result r : results) {
+			if ( ! r.isSuccess() )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Answer questions from an index saved with {@code -x}, without reading the
+	 * export again:
+	 * <pre>
+	 *   query -x file --id ID      -- A student's team and hours
+	 *   query -x file --team TEAM  -- A team's total, and its students
+	 *   query -x file --over HRS   -- Everyone over HRS hours, most first
+	 *   query -x file --under HRS  -- Everyone under HRS hours, fewest first
+	 * </pre>
+	 * Any number of these can be given at once.
+	 * 
+	 * @param argv
+	 * 		The arguments after "query"
+	 * @return
+	 * 		true if everything asked for was found
+	 */
+	private static boolean query(String[] argv) {
+		Options options = new Options();
+		options.addOption( Option.builder("x").hasArg().required()
+				.argName("index file")
+				.longOpt("index")
+				.desc("Index file saved with -x")
+				.build());
+		options.addOption( Option.builder().hasArg()
+				.argName("student ID")
+				.longOpt("id")
+				.desc("Show this student's team and hours")
+				.build());
+		options.addOption( Option.builder().hasArg()
+				.argName("team")
+				.longOpt("team")
+				.desc("Show this team's total hours and its students")
+				.build());
+		options.addOption( Option.builder().hasArg()
+				.argName("hours")
+				.longOpt("over")
+				.desc("Show the students with more than this many hours")
+				.build());
+		options.addOption( Option.builder().hasArg()
+				.argName("hours")
+				.longOpt("under")
+				.desc("Show the students with fewer than this many hours")
+				.build());
+		CommandLine cmd = null;
+		try {
+			cmd = new DefaultParser().parse(options, argv);
+		}
+		catch ( org.apache.commons.cli.ParseException exp ) {
+			System.out.println(exp.getMessage());
+			new HelpFormatter().printHelp("VBHoursExport query", options);
+			return false;
+		}
+		HoursIndex index;
+		try {
+			index = HoursIndex.open(Paths.get(cmd.getOptionValue("x")));
+		} catch (IOException e) {
+			System.err.println("Cannot read index file " + cmd.getOptionValue("x") + ":  " + e);
+			return false;
+		}
+		boolean found = true;
+		try {
+			if ( cmd.hasOption("id") ) {
+				int student = index.find(cmd.getOptionValue("id"));
+				if ( student < 0 ) {
+					System.out.println("No student with ID " + cmd.getOptionValue("id"));
+					found = false;
+				} else
+					System.out.println(describe(index, student));
+			}
+			if ( cmd.hasOption("team") ) {
+				int team = Integer.parseInt(cmd.getOptionValue("team"));
+				int[] students = index.getTeamStudents(team);
+				if ( students == null ) {
+					System.out.println("No team " + team);
+					found = false;
+				} else {
+					System.out.println(String.format("Team %d:  %d students, %.2f hours", team, students.length,
+							index.getTeamSeconds(team) / 3600.0));
+					for (int student : students)
+						System.out.println("    " + describe(index, student));
+				}
+			}
+			if ( cmd.hasOption("over") ) {
+				double hours = Double.parseDouble(cmd.getOptionValue("over"));
+				int[] students = index.over(Student.toSeconds(hours));
+				System.out.println(students.length + " students over " + hours + " hours");
+				for (int student : students)
+					System.out.println("    " + describe(index, student));
+			}
+			if ( cmd.hasOption("under") ) {
+				double hours = Double.parseDouble(cmd.getOptionValue("under"));
+				int[] students = index.under(Student.toSeconds(hours));
+				System.out.println(students.length + " students under " + hours + " hours");
+				for (int student : students)
+					System.out.println("    " + describe(index, student));
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Illegal number format for --team, --over and/or --under");
+			return false;
+		}
+		return found;
+	}
+
+	private static String describe(HoursIndex index, int student) {
+		String name = Student.formatName(index.getName(student));
+		return String.format("%-12s %-30s Team %-6d %7.2f hours", index.getId(student), name,
+				index.getTeam(student), index.getSeconds(student) / 3600.0);
+	}
+
+	/**
+	 * Run the embedded HTTP report service until the JVM is stopped.  When the
+	 * configuration came from a file, edits to it are picked up without a restart.
+	 * 
+	 * @param cmd
+	 * 		The parsed command line
+	 * @param config
+	 * 		The configuration already loaded
+	 * @param overrides
+	 * 		The settings from the command line, kept when the file is reloaded
+	 * @throws IOException
+	 * 		Can't listen on the port or watch the configuration file
+	 */
+	private static void serve(CommandLine cmd, ConfigProperties config, Map<String, String> overrides)
+			throws IOException {
+		int port = 0;
+		long cacheBytes = 0;
+		try {
+			port = Integer.parseInt(cmd.getOptionValue("s"));
+			String size = config.getConfig("serverCacheSize", "64M").trim();
+			cacheBytes = size.equals("0") ? 0 : SpillingAggregator.parseSize(size);
+		} catch (NumberFormatException e) {
+			System.err.println("Illegal number format for -s port and/or Config serverCacheSize");
+			System.exit(1);
+		}
+		Supplier<ConfigProperties> source = () -> config;
+		if ( config.getLoadedPath() != null )
+			source = ReloadableConfig.watch(config, overrides)::snapshot;
+		ReportServer server = ReportServer.start(new InetSocketAddress(port), source, cacheBytes);
+		server.setThresholds(cmd.getOptionValue("lt"), cmd.getOptionValue("ht"));
+		System.out.println("Serving reports at:  http://localhost:" + server.getPort() + "/");
 	}
 	
 }
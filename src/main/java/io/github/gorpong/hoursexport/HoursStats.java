@@ -0,0 +1,196 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Totals, means, medians and 90th percentiles of the students' hours, for
+ * each team and for the whole program.  For one export they're all exact:
+ * each team's totals are already kept in order by the {@code StudentStore},
+ * and a median or percentile that falls between two students is
+ * interpolated between them (so 2, 4, 6 and 8 hours have a median of 5).
+ *
+ * The stats for separate exports can be merged, e.g., for a batch of them.
+ * Each team (and the program) also has a {@code QuantileSketch}, and once a
+ * second export is merged in only the sketches are kept, rather than every
+ * student of every export.  A merged median or percentile is then within 1%
+ * of the exact one; the counts, totals and means stay exact.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class HoursStats {
+
+	/**
+	 * The numbers for one team, or the program.
+	 */
+	public static class Summary {
+		private final int[] sorted;
+		private final QuantileSketch sketch;
+
+		Summary(Values values) {
+			this.sorted = values.sorted;
+			this.sketch = values.sketch;
+		}
+
+		public long getStudents() {
+			return sketch.getCount();
+		}
+		public double getTotalHours() {
+			return sketch.getSum() / 3600.0;
+		}
+		public double getMeanHours() {
+			return sketch.getMean() / 3600.0;
+		}
+		public double getMedianHours() {
+			return getPercentileHours(50);
+		}
+		/**
+		 * @param percent
+		 * 		The percentile, 0 to 100 (e.g., 90)
+		 * @return
+		 * 		The hours that {@code percent} of the students are at or under
+		 */
+		public double getPercentileHours(double percent) {
+			double q = percent / 100.0;
+			return ( sorted != null ? quantile(sorted, q) : sketch.quantile(q) ) / 3600.0;
+		}
+		public double getMinHours() {
+			return sketch.getMin() / 3600.0;
+		}
+		public double getMaxHours() {
+			return sketch.getMax() / 3600.0;
+		}
+		public String toString() {
+			return String.format("%d students, %.2f hours, mean %.2f, median %.2f, 90th percentile %.2f",
+					getStudents(), getTotalHours(), getMeanHours(), getMedianHours(), getPercentileHours(90));
+		}
+	}
+
+	/*
+	 * One team's (or the program's) seconds:  every student's, in order, while
+	 * they're all from one export, and the sketch of them for merging
+	 */
+	private static class Values {
+		int[] sorted = new int[0];		// Ascending, null once a second export is merged in
+		final QuantileSketch sketch = new QuantileSketch();
+
+		void add(int[] ascending) {
+			sorted = ascending;
+			for (int seconds : ascending)
+				sketch.add(seconds);
+		}
+
+		void merge(Values that) {
+			if ( that.sketch.getCount() == 0 )
+				return;
+			sorted = sketch.getCount() == 0 ? that.sorted : null;
+			sketch.merge(that.sketch);
+		}
+	}
+
+	private final TreeMap<Integer, Values> teams = new TreeMap<>();
+	private final Values program = new Values();
+
+	private HoursStats() {
+	}
+
+	/**
+	 * Work out the stats for a parsed export.
+	 *
+	 * @param parsed
+	 * 		The export
+	 * @return
+	 * 		The stats for each of its teams and all of them together
+	 */
+	static HoursStats of(Teams parsed) {
+		HoursStats stats = new HoursStats();
+		StudentStore store = parsed.getStore();
+		int[] all = new int[store.size()];
+		int n = 0;
+		for (int team : store.getTeams()) {
+			int[] slots = store.sortedBySeconds(team);		// Most first
+			int[] sorted = new int[slots.length];
+			for (int i = 0; i < slots.length; i++)
+				sorted[i] = store.getSeconds(slots[slots.length - 1 - i]);
+			Values values = new Values();
+			values.add(sorted);
+			stats.teams.put(team, values);
+			System.arraycopy(sorted, 0, all, n, sorted.length);
+			n += sorted.length;
+		}
+		Arrays.sort(all);
+		stats.program.add(all);
+		return stats;
+	}
+
+	/**
+	 * Add the stats of another export to these, e.g., to see a batch of them
+	 * together.  A team in both has its two sets of students combined.
+	 *
+	 * @param that
+	 * 		The stats to add in, which aren't changed
+	 */
+	public void merge(HoursStats that) {
+		for (Map.Entry<Integer, Values> team : that.teams.entrySet())
+			teams.computeIfAbsent(team.getKey(), t -> new Values()).merge(team.getValue());
+		program.merge(that.program);
+	}
+
+	/**
+	 * The exact quantile of some values, interpolated between the two on
+	 * either side of it.
+	 *
+	 * @param sorted
+	 * 		The values, ascending
+	 * @param q
+	 * 		The quantile, 0 to 1 (0.5 for the median)
+	 * @return
+	 * 		The value at that quantile (0 if there aren't any)
+	 */
+	static double quantile(int[] sorted, double q) {
+		if ( sorted.length == 0 )
+			return 0;
+		double at = q * (sorted.length - 1);
+		int below = (int) Math.floor(at);
+		int above = Math.min(below + 1, sorted.length - 1);
+		return sorted[below] + ( at - below ) * ( sorted[above] - sorted[below] );
+	}
+
+	/**
+	 * @return
+	 * 		A new, empty set of stats, for merging others in to
+	 */
+	public static HoursStats empty() {
+		return new HoursStats();
+	}
+
+	/**
+	 * @return
+	 * 		The teams, in order
+	 */
+	public List<Integer> getTeams() {
+		return new ArrayList<>(teams.keySet());
+	}
+
+	/**
+	 * @param team
+	 * 		The team
+	 * @return
+	 * 		Its numbers, or null if there's no such team
+	 */
+	public Summary getTeam(int team) {
+		Values values = teams.get(team);
+		return values == null ? null : new Summary(values);
+	}
+
+	/**
+	 * @return
+	 * 		The numbers for every student on every team
+	 */
+	public Summary getProgram() {
+		return new Summary(program);
+	}
+}
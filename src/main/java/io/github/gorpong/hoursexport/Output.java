@@ -2,19 +2,31 @@ package io.github.gorpong.hoursexport;
 
 import java.lang.String;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.time.ZoneId;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
 
 /**
  * Output class for creating the output file in Excel format. Uses the Team
@@ -28,27 +40,56 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 public class Output {
 
 	public enum SheetType {
-		COACHES, PARENTS,
+		COACHES, PARENTS, DAILY, ANOMALIES, LEADERBOARD, CHANGES, SUMMARY, BUDDY_PUNCHES,
 	}
 
-	/*
-	 * Class variables
-	 */
-	private static Map<String, CellStyle> styles = null;		// Set the first time in initialize() only
-	
 	/*
 	 * Instance variables
 	 */
 	private String fileName;
 	private Workbook workbook;
+	private Map<String, CellStyle> styles;		// Styles belong to the workbook, set in create()
 	private Calendar date;
 	private String datestr;
 	private ConfigProperties config;
-	private double lowHours = 0.0;
-	private double highHours = 0.0;
+	private int lowSeconds = 0;		// Thresholds in whole seconds, same as Student totals
+	private int highSeconds = 0;
 	private int countLow = 0;		// Counter for providing stats on # too low hours
 	private int countHigh = 0;		// Ditto for # of too high hours
 	private List<String> highLowList; 
+	private Teams previous = null;		// Last week's export, for the CHANGES sheet
+
+	/*
+	 * For .xlsx, each student's ID and name (by their ints in the StringDictionary
+	 * of the Teams being written) and each header string is put in the workbook's
+	 * shared-strings table once, and cells after that just get its index.  POI's
+	 * setCellValue (String or rich text) serializes the string to XML to look it
+	 * up every time.  Only SharedStringsTable.addEntry() counts the cells, so the
+	 * ones given an index here are added to the table's count before it's written.
+	 */
+	private SharedStringsTable sst;				// Null for .xls (or without SST_COUNT)
+	private StringDictionary dictionary;
+	private int[] idShared = new int[0];		// Shared-string index by dictionary int, -1 until used
+	private int[] nameShared = new int[0];
+	private Map<String, Integer> textShared = new HashMap<>();
+	private int sharedCells = 0;				// Cells given an index without addEntry()
+
+	/*
+	 * SharedStringsTable's count, which POI 3.17 has no setter for, looked up
+	 * reflectively.  Null if this POI doesn't have it, and then every cell goes
+	 * through setCellValue().
+	 */
+	private static final Field SST_COUNT = sstCount();
+
+	private static Field sstCount() {
+		try {
+			Field count = SharedStringsTable.class.getDeclaredField("count");
+			count.setAccessible(true);
+			return count.getType() == int.class ? count : null;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
 
 	/**
 	 * Private constructor, use the initialize() factory method to create and start
@@ -82,15 +123,41 @@ public class Output {
 	 * 		Factory method, creates new {@code Output} object and returns it
 	 */
 	public static Output initialize(String fname, ConfigProperties cfg, double low, double hi) {
-		Output out = new Output(fname, cfg);
-		out.lowHours = low;
-		out.highHours = hi;
-		out.highLowList = new ArrayList<String>();
 		Pattern regexXLS = Pattern.compile("^.*.xls$");
+		Output out = create(regexXLS.matcher(fname).matches(), cfg, low, hi);
+		out.fileName = fname;
+		return out;
+	}
+
+	/**
+	 * Create an output workbook that isn't tied to a file, use {@code write()}
+	 * to send it wherever it needs to go.
+	 * 
+	 * @param xls
+	 * 		true for an Excel-97 (.xls) workbook, false for Excel-2007+ (.xlsx)
+	 * @param cfg
+	 * 		The configuration object (in case we need configuration bits)
+	 * @param low
+	 * 		The low water mark for hours that are too low
+	 * @param hi
+	 * 		The high water mark for hours that are too high
+	 * @return Output
+	 * 		Factory method, creates new {@code Output} object and returns it
+	 */
+	public static Output create(boolean xls, ConfigProperties cfg, double low, double hi) {
+		Output out = new Output(null, cfg);
+		out.lowSeconds = Student.toSeconds(low);
+		out.highSeconds = Student.toSeconds(hi);
+		out.highLowList = new ArrayList<String>();
 
-		if ( regexXLS.matcher(fname).matches() ) out.workbook = new HSSFWorkbook();
-		else out.workbook = new XSSFWorkbook();
-		if ( styles == null ) styles = createStyles(out.workbook);
+		if ( xls ) out.workbook = new HSSFWorkbook();
+		else {
+			XSSFWorkbook wb = new XSSFWorkbook();
+			out.workbook = wb;
+			if ( SST_COUNT != null )
+				out.sst = wb.getSharedStringSource();
+		}
+		out.styles = createStyles(out.workbook);
 		
 		out.date = Calendar.getInstance();
 		out.datestr = String.format("%02d/%02d/%04d %02d:%02d %s",  out.date.get(Calendar.MONTH)+1, 
@@ -101,19 +168,90 @@ public class Output {
 
 	/**
 	 * Write out and close the Excel file. Throws exceptions if there is an error
-	 * writing or formatting the sheet.
+	 * writing or formatting the sheet.  With {@code pipeline} configured, the
+	 * writes to the file are done on a thread of their own while the workbook
+	 * is being serialized.
 	 * 
 	 * @throws IOException
 	 * 		Error writing/closing file
 	 * 
 	 */
 	public void close() throws IOException {
-		FileOutputStream out = new FileOutputStream(this.fileName);
-		workbook.write(out);
-		out.close();
+		OutputStream out = new FileOutputStream(this.fileName);
+		if ( Boolean.parseBoolean(config.getConfig("pipeline", "false")) )
+			out = new AsyncOutputStream(out);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the Excel data to {@code out} and close the workbook.  The stream
+	 * itself is left open for the caller to close.  With {@code compressionLevel}
+	 * configured, an .xlsx is zipped at that level on every core instead of by
+	 * POI on this thread.
+	 * 
+	 * @param out
+	 * 		The stream to write the workbook to
+	 * @throws IOException
+	 * 		Error writing the workbook
+	 */
+	public void write(OutputStream out) throws IOException {
+		PipelineEvents.Write event = new PipelineEvents.Write();
+		event.start();
+		CountingOutputStream counted = new CountingOutputStream(out);
+		if ( sst != null && sharedCells > 0 ) {
+			try {
+				SST_COUNT.setInt(sst, sst.getCount() + sharedCells);
+			} catch (IllegalAccessException e) {
+				throw new IOException("Can't count the shared strings", e);
+			}
+			sharedCells = 0;
+		}
+		int level = compressionLevel();
+		if ( level >= 0 && workbook instanceof XSSFWorkbook ) {
+			ParallelZipOutputStream zip = new ParallelZipOutputStream(counted, level, Runtime.getRuntime().availableProcessors());
+			try {
+				workbook.write(zip);
+			} finally {
+				zip.shutdown();		// Closed by POI unless it failed part way
+			}
+		} else
+			workbook.write(counted);
 		workbook.close();
+		event.file = fileName;
+		event.bytesWritten = counted.getCount();
+		event.finish();
 	}
 	
+	/*
+	 * The configured compressionLevel for an .xlsx, or -1 to leave the zipping
+	 * to POI
+	 */
+	private int compressionLevel() {
+		String val = config.getConfig("compressionLevel");
+		if ( val == null )
+			return -1;
+		try {
+			int level = Integer.parseInt(val.trim());
+			if ( level >= 0 && level <= 9 )
+				return level;
+		} catch (NumberFormatException e) {
+		}
+		System.err.println("Config Error:  compressionLevel must be 0 to 9:  " + val);
+		return -1;
+	}
+
+	/**
+	 * @return
+	 * 		The workbook being built (for adding sheets outside {@code createSheet})
+	 */
+	Workbook getWorkbook() {
+		return workbook;
+	}
+
 	public int getLowCount() {
 		return this.countLow;
 	}
@@ -142,7 +280,6 @@ public class Output {
 	public int fillSheet(Sheet sheet, ArrayList<Student> students, Integer team, SheetType type, int rowStart, int colStart)  {
 		int row = rowStart;
 		int col = colStart;
-		double hrs;
 
 		if ( students == null )		// Team doesn't exist, so don't do anything 
 			return rowStart;
@@ -156,7 +293,7 @@ public class Output {
 			cell.setCellStyle(type == SheetType.PARENTS 
 					? styles.get("cell_normal_centered") 
 					: styles.get("cell_normal"));
-			cell.setCellValue(nameOrID);
+			setStudentCell(cell, p, nameOrID, type == SheetType.COACHES);
 			
 			if ( type == SheetType.PARENTS ) {
 				cell = sheetRow.createCell(col++);
@@ -164,38 +301,141 @@ public class Output {
 				cell.setCellValue(team);
 			}
 			cell = sheetRow.createCell(col++);
-			hrs = p.getHours();
-			if (hrs > this.highHours) {
+			cell.setCellStyle(thresholdStyle(p));
+			if (p.getSeconds() > this.highSeconds) {
 				if ( ! this.highLowList.contains(p.getId()) )
 				{
 					this.countHigh++;
 					highLowList.add(p.getId());
 				}
-				cell.setCellStyle(styles.get("cell_highlight_right"));
-			} else if (hrs < this.lowHours) {
+			} else if (p.getSeconds() < this.lowSeconds) {
 				if ( ! this.highLowList.contains(p.getId()) ) {
 					this.countLow++;
 					highLowList.add(p.getId());
 				}
-				cell.setCellStyle(styles.get("cell_bold_red_right"));
-			} else {
-				cell.setCellStyle(styles.get("cell_normal_right"));
 			}
-			cell.setCellValue(hrs);
+			cell.setCellValue(p.getHours());
 			row++;
 		}
 		return row;
 	}
 
+	/*
+	 * Highlight the student's total if it's over or under the thresholds
+	 */
+	private CellStyle thresholdStyle(Student p) {
+		return thresholdStyle(p.getSeconds());
+	}
+
+	private CellStyle thresholdStyle(int seconds) {
+		if ( seconds > this.highSeconds )
+			return styles.get("cell_highlight_right");
+		if ( seconds < this.lowSeconds )
+			return styles.get("cell_bold_red_right");
+		return styles.get("cell_normal_right");
+	}
+
+	/*
+	 * Use the shared-string indexes for the students of {@code teams} from here on
+	 */
+	private void useStrings(Teams teams) {
+		StringDictionary strings = teams.getStrings();
+		if ( sst == null || strings == dictionary )
+			return;
+		dictionary = strings;
+		idShared = new int[0];
+		nameShared = new int[0];
+	}
+
+	/*
+	 * Put a student's name (or ID) in a cell, from the shared-strings table if
+	 * the student came from the dictionary in use.  {@code text} is always made
+	 * from the same one of the student's strings, so it's kept by that string's
+	 * int.
+	 */
+	private void setStudentCell(Cell cell, Student p, String text, boolean name) {
+		int ref = name ? p.getNameRef() : p.getIdRef();
+		if ( sst == null || dictionary == null || p.getStrings() != dictionary || ref < 0 ) {	// Not one of ours
+			setText(cell, text);
+			return;
+		}
+		int[] shared = name ? nameShared : idShared;
+		if ( ref >= shared.length ) {
+			int from = shared.length;
+			shared = Arrays.copyOf(shared, dictionary.size());
+			Arrays.fill(shared, from, shared.length, -1);
+			if ( name ) nameShared = shared;
+			else idShared = shared;
+		}
+		if ( shared[ref] < 0 )
+			shared[ref] = sst.addEntry(new XSSFRichTextString(text).getCTRst());	// Counts this cell
+		else
+			sharedCells++;
+		setShared(cell, shared[ref]);
+	}
+
+	/*
+	 * Put a string that's used over and over (a header) in a cell
+	 */
+	private void setText(Cell cell, String text) {
+		if ( sst == null ) {
+			cell.setCellValue(text);
+			return;
+		}
+		Integer index = textShared.get(text);
+		if ( index == null ) {
+			index = sst.addEntry(new XSSFRichTextString(text).getCTRst());
+			textShared.put(text, index);
+		} else {
+			sharedCells++;
+		}
+		setShared(cell, index);
+	}
+
+	private static void setShared(Cell cell, int index) {
+		CTCell ct = ((XSSFCell) cell).getCTCell();
+		ct.setT(STCellType.S);
+		ct.setV(Integer.toString(index));
+	}
+
+	/**
+	 * Create every sheet of the report for {@code teams}, in the order they
+	 * appear in the workbook.  Each sheet leaves itself out if it doesn't apply
+	 * (see {@code createSheet}); DAILY is only added with {@code dailySheet}
+	 * configured.  Write the report with {@code close()} or {@code write()}.
+	 * 
+	 * @param teams
+	 * 		The teams to report on
+	 */
+	public void createReport(Teams teams) {
+		createSheet(teams, SheetType.COACHES);
+		createSheet(teams, SheetType.BUDDY_PUNCHES);
+		createSheet(teams, SheetType.PARENTS);
+		if ( Boolean.parseBoolean(config.getConfig("dailySheet", "false")) )
+			createSheet(teams, SheetType.DAILY);
+		createSheet(teams, SheetType.LEADERBOARD);
+		createSheet(teams, SheetType.SUMMARY);
+		createSheet(teams, SheetType.CHANGES);
+		createSheet(teams, SheetType.ANOMALIES);
+	}
+
 	/**
 	 * Create the worksheet passed as type and put the data into it.
 	 * 
 	 * @param teams
 	 * 		The list of teams
 	 * @param type
-	 * 		The sheet type we are to create based on enum
+	 * 		The sheet type we are to create based on enum (DAILY is only added
+	 * 		if the export had a date column, ANOMALIES only if there were any,
+	 * 		LEADERBOARD only if leaderboardSize is configured, SUMMARY only if
+	 * 		statistics is, CHANGES only with a previous export, BUDDY_PUNCHES
+	 * 		only if a punch log had any)
 	 */
 	public void createSheet(Teams teams, SheetType type) {
+		PipelineEvents.Sheet event = new PipelineEvents.Sheet();
+		event.start();
+		event.sheet = type.name();
+		useStrings(teams);
 		Sheet sheet;
 		int maxRow = 0;
 		int row;
@@ -237,21 +477,36 @@ public class Output {
 						row = fillSheet(sheet, teams.getHoursByTeam(Integer.parseInt(team)), Integer.parseInt(team),
 								type, startRow + 1, startCol);
 						if ( row > startRow + 1 ) {		// Put headers in, if necessary
+							event.teams++;
+							event.students += row - (startRow + 1);
 							cell = sheetRow.createCell(startCol);
 							cell.setCellStyle(styles.get("cell_normal_title_grey40"));
-							cell.setCellValue("Team " + team);
+							setText(cell, "Team " + team);
 							cell = sheetRow.createCell(startCol + 1);
 							cell.setCellStyle(styles.get("cell_normal_title_grey40"));;
-							cell.setCellValue("Hours");
+							setText(cell, "Hours");
+							if ( statistics() )
+								row = fillTeamStats(sheet, teams.getStats().getTeam(Integer.parseInt(team)), row,
+										startCol, startCol + 1);
 							if (row > maxRow)
 								maxRow = row;
 						}
 					}
 				}
 			}
-			for (Integer i : columns) {
-				sheet.autoSizeColumn(i);
-			}
+			autoSizeColumns(sheet, columns);
+		} else if (type == SheetType.DAILY) {
+			createDailySheet(teams, event);
+		} else if (type == SheetType.ANOMALIES) {
+			createAnomaliesSheet(teams.getValidator());
+		} else if (type == SheetType.LEADERBOARD) {
+			createLeaderboardSheet(teams, event);
+		} else if (type == SheetType.CHANGES) {
+			createChangesSheet(teams, event);
+		} else if (type == SheetType.SUMMARY) {
+			createSummarySheet(teams, event);
+		} else if (type == SheetType.BUDDY_PUNCHES) {
+			createBuddyPunchesSheet(teams.getBuddyPunches(), event);
 		} else {
 			sheet = workbook.createSheet("Parents");
 			sheet.setDisplayGridlines(false);
@@ -288,25 +543,511 @@ public class Output {
 						row = fillSheet(sheet, teams.getHoursByTeam(Integer.parseInt(team)), Integer.parseInt(team),
 								type, startRow + 1, startCol);
 						if ( row > startRow + 1 ) {			// Put headers if there was data
+							event.teams++;
+							event.students += row - (startRow + 1);
 							cell = sheetRow.createCell(startCol);
 							cell.setCellStyle(styles.get("cell_normal_title_grey40"));
-							cell.setCellValue("ID");
+							setText(cell, "ID");
 							cell = sheetRow.createCell(startCol + 1);
 							cell.setCellStyle(styles.get("cell_normal_title_grey40"));
-							cell.setCellValue("Team");
+							setText(cell, "Team");
 							cell = sheetRow.createCell(startCol + 2);
 							cell.setCellStyle(styles.get("cell_normal_title_grey40"));
-							cell.setCellValue("Hours");
+							setText(cell, "Hours");
+							if ( statistics() )
+								row = fillTeamStats(sheet, teams.getStats().getTeam(Integer.parseInt(team)), row,
+										startCol, startCol + 2);
 							if (row > maxRow)
 								maxRow = row;
 						}
 					}
 				}
 			}
-			for (Integer i : columns) {
-				sheet.autoSizeColumn(i);;
+			autoSizeColumns(sheet, columns);
+		}
+		event.finish();
+	}
+
+	/*
+	 * The DAILY sheet:  one row per student on each team with their hours for
+	 * each day in the export and their total.  Nothing is added if the export
+	 * had no dates.
+	 */
+	private void createDailySheet(Teams teams, PipelineEvents.Sheet event) {
+		TreeSet<Integer> allDays = new TreeSet<>();
+		for (Integer team : teams.getTeams()) {
+			for (Student p : teams.getHoursByTeam(team)) {
+				DailySeconds daily = p.getDaily();
+				for (int i = 0; daily != null && i < daily.size(); i++)
+					allDays.add(daily.getDay(i));
 			}
 		}
+		if ( allDays.isEmpty() )
+			return;
+		int[] days = allDays.stream().mapToInt(Integer::intValue).toArray();
+		int totalCol = days.length + 2;
+
+		Sheet sheet = workbook.createSheet("Daily");
+		sheet.setDisplayGridlines(false);
+		sheet.setPrintGridlines(false);
+		sheet.setFitToPage(true);
+		sheet.setHorizontallyCenter(true);
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, Math.max(totalCol, 4)));
+		sheet.getPrintSetup().setLandscape(days.length > 7);
+		Row headerRow = sheet.createRow(0);
+		headerRow.setHeightInPoints(30.60f);
+		Cell cell = headerRow.createCell(0);
+		cell.setCellValue("DAILY Hours Report " + datestr);
+		cell.setCellStyle(styles.get("header"));
+
+		Row titles = sheet.createRow(2);
+		String[] labels = { "Team", "Name" };
+		for (int c = 0; c < labels.length; c++) {
+			cell = titles.createCell(c);
+			cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+			cell.setCellValue(labels[c]);
+		}
+		for (int d = 0; d < days.length; d++) {
+			cell = titles.createCell(d + 2);
+			cell.setCellStyle(styles.get("cell_g"));
+			cell.setCellValue(Date.from(LocalDate.ofEpochDay(days[d]).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+		}
+		cell = titles.createCell(totalCol);
+		cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+		cell.setCellValue("Total");
+
+		int row = 3;
+		for (Integer team : teams.getTeams()) {
+			ArrayList<Student> students = teams.getHoursByTeam(team);
+			event.teams++;
+			event.students += students.size();
+			for (Student p : students) {
+				Row sheetRow = sheet.createRow(row++);
+				cell = sheetRow.createCell(0);
+				cell.setCellStyle(styles.get("cell_normal_centered"));
+				cell.setCellValue(team);
+				cell = sheetRow.createCell(1);
+				cell.setCellStyle(styles.get("cell_normal"));
+				setStudentCell(cell, p, p.getName(), true);
+				DailySeconds daily = p.getDaily();
+				for (int d = 0; d < days.length; d++) {
+					cell = sheetRow.createCell(d + 2);
+					cell.setCellStyle(styles.get("cell_normal_right"));
+					int seconds = daily == null ? 0 : daily.getSecondsForDay(days[d]);
+					if ( seconds != 0 )
+						cell.setCellValue(seconds / 3600.0);
+				}
+				cell = sheetRow.createCell(totalCol);
+				cell.setCellStyle(thresholdStyle(p));
+				cell.setCellValue(p.getHours());
+			}
+		}
+		List<Integer> columns = new ArrayList<>();
+		for (int c = 0; c <= totalCol; c++)
+			columns.add(c);
+		autoSizeColumns(sheet, columns);
+	}
+
+	/*
+	 * The LEADERBOARD sheet:  the leaderboardSize students with the most hours
+	 * across the whole program, and beside them the ones with the fewest.
+	 */
+	private void createLeaderboardSheet(Teams teams, PipelineEvents.Sheet event) {
+		int size;
+		try {
+			size = Integer.parseInt(config.getConfig("leaderboardSize", "0").trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Config Error:  leaderboardSize is not a number:  " + config.getConfig("leaderboardSize"));
+			return;
+		}
+		if ( size <= 0 )
+			return;
+		Sheet sheet = workbook.createSheet("Leaderboard");
+		sheet.setDisplayGridlines(false);
+		sheet.setPrintGridlines(false);
+		sheet.setFitToPage(true);
+		sheet.setHorizontallyCenter(true);
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 8));
+		sheet.getPrintSetup().setLandscape(false);
+		Row headerRow = sheet.createRow(0);
+		headerRow.setHeightInPoints(30.60f);
+		Cell cell = headerRow.createCell(0);
+		cell.setCellValue("LEADERBOARD Hours Report " + datestr);
+		cell.setCellStyle(styles.get("header"));
+
+		List<Teams.Ranked> top = teams.getTop(size);
+		fillLeaderboard(sheet, "Top " + size, top, 0);
+		fillLeaderboard(sheet, "Bottom " + size, teams.getBottom(size), 5);
+		event.students = top.size();
+		autoSizeColumns(sheet, Arrays.asList(0, 1, 2, 3, 5, 6, 7, 8));
+	}
+
+	/*
+	 * One list for the LEADERBOARD sheet, starting at column colStart:  its title,
+	 * then a Rank, Team, Name and Hours row for each student
+	 */
+	private void fillLeaderboard(Sheet sheet, String title, List<Teams.Ranked> ranked, int colStart) {
+		Row sheetRow = sheet.getRow(2) != null ? sheet.getRow(2) : sheet.createRow(2);
+		sheet.addMergedRegion(new CellRangeAddress(2, 2, colStart, colStart + 3));
+		Cell cell = sheetRow.createCell(colStart);
+		cell.setCellStyle(styles.get("cell_h"));
+		cell.setCellValue(title);
+		sheetRow = sheet.getRow(3) != null ? sheet.getRow(3) : sheet.createRow(3);
+		String[] labels = { "Rank", "Team", "Name", "Hours" };
+		for (int c = 0; c < labels.length; c++) {
+			cell = sheetRow.createCell(colStart + c);
+			cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+			cell.setCellValue(labels[c]);
+		}
+		int row = 4;
+		for (Teams.Ranked r : ranked) {
+			sheetRow = sheet.getRow(row) != null ? sheet.getRow(row) : sheet.createRow(row);
+			cell = sheetRow.createCell(colStart);
+			cell.setCellStyle(styles.get("cell_normal_centered"));
+			cell.setCellValue(row - 3);
+			cell = sheetRow.createCell(colStart + 1);
+			cell.setCellStyle(styles.get("cell_normal_centered"));
+			cell.setCellValue(r.getTeam());
+			cell = sheetRow.createCell(colStart + 2);
+			cell.setCellStyle(styles.get("cell_normal"));
+			setStudentCell(cell, r.getStudent(), r.getStudent().getName(), true);
+			cell = sheetRow.createCell(colStart + 3);
+			cell.setCellStyle(thresholdStyle(r.getStudent()));
+			cell.setCellValue(r.getStudent().getHours());
+			row++;
+		}
+	}
+
+	/*
+	 * The ANOMALIES sheet:  a count of each kind of problem found in the export,
+	 * then a line for each one (up to ExportValidator.MAX_LISTED).
+	 */
+	private void createAnomaliesSheet(ExportValidator validator) {
+		if ( validator.getTotal() == 0 )
+			return;
+		Sheet sheet = workbook.createSheet("Anomalies");
+		sheet.setDisplayGridlines(false);
+		sheet.setPrintGridlines(false);
+		sheet.setFitToPage(true);
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 3));
+		Row headerRow = sheet.createRow(0);
+		headerRow.setHeightInPoints(30.60f);
+		Cell cell = headerRow.createCell(0);
+		cell.setCellValue("Export Anomalies " + datestr);
+		cell.setCellStyle(styles.get("header"));
+
+		int row = 2;
+		for (ExportValidator.Kind kind : ExportValidator.Kind.values()) {
+			if ( validator.getCount(kind) == 0 )
+				continue;
+			Row sheetRow = sheet.createRow(row++);
+			cell = sheetRow.createCell(0);
+			cell.setCellStyle(styles.get("cell_b"));
+			cell.setCellValue(kind.getLabel());
+			cell = sheetRow.createCell(1);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(validator.getCount(kind));
+		}
+
+		row++;
+		Row titles = sheet.createRow(row++);
+		String[] labels = { "Row", "ID", "Problem", "Detail" };
+		for (int c = 0; c < labels.length; c++) {
+			cell = titles.createCell(c);
+			cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+			cell.setCellValue(labels[c]);
+		}
+		for (ExportValidator.Anomaly a : validator.getAnomalies()) {
+			Row sheetRow = sheet.createRow(row++);
+			cell = sheetRow.createCell(0);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(a.getRow() + 1);		// As Excel numbers the rows
+			cell = sheetRow.createCell(1);
+			cell.setCellStyle(styles.get("cell_normal_centered"));
+			cell.setCellValue(a.getId() != null ? a.getId() : "");
+			cell = sheetRow.createCell(2);
+			cell.setCellStyle(styles.get("cell_normal"));
+			cell.setCellValue(a.getKind().getLabel());
+			cell = sheetRow.createCell(3);
+			cell.setCellStyle(styles.get("cell_normal"));
+			cell.setCellValue(a.getDetail());
+		}
+		int unlisted = validator.getTotal() - validator.getAnomalies().size();
+		if ( unlisted > 0 ) {
+			cell = sheet.createRow(row).createCell(3);
+			cell.setCellStyle(styles.get("cell_normal"));
+			cell.setCellValue("... and " + unlisted + " more");
+		}
+		autoSizeColumns(sheet, Arrays.asList(0, 1, 2, 3));
+	}
+
+	/*
+	 * The BUDDY_PUNCHES sheet, for the coaches only since it names students:
+	 * each pair of students who kept punching on the same scanner within
+	 * seconds of each other, most times first.  Nothing is added if there
+	 * aren't any.
+	 */
+	private void createBuddyPunchesSheet(BuddyPunches buddies, PipelineEvents.Sheet event) {
+		if ( buddies.getPairs().isEmpty() )
+			return;
+		Sheet sheet = workbook.createSheet("Buddy Punches");
+		sheet.setDisplayGridlines(false);
+		sheet.setPrintGridlines(false);
+		sheet.setFitToPage(true);
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 8));
+		sheet.getPrintSetup().setLandscape(true);
+		Row headerRow = sheet.createRow(0);
+		headerRow.setHeightInPoints(30.60f);
+		Cell cell = headerRow.createCell(0);
+		cell.setCellValue("COACHES ONLY - Possible Buddy Punches " + datestr);
+		cell.setCellStyle(styles.get("header"));
+		cell = sheet.createRow(1).createCell(0);
+		cell.setCellStyle(styles.get("cell_normal"));
+		cell.setCellValue("Students who punched on the same scanner within " + buddies.getWindow()
+				+ " seconds of each other at least " + buddies.getMinimum() + " times");
+
+		Row titles = sheet.createRow(3);
+		String[] labels = { "Team", "ID", "Name", "Team", "ID", "Name", "Times", "Days", "Seconds Apart" };
+		for (int c = 0; c < labels.length; c++) {
+			cell = titles.createCell(c);
+			cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+			setText(cell, labels[c]);
+		}
+		int row = 4;
+		for (BuddyPunches.Pair pair : buddies.getPairs()) {
+			Row sheetRow = sheet.createRow(row++);
+			for (int which = 0; which < 2; which++) {
+				cell = sheetRow.createCell(3 * which);
+				cell.setCellStyle(styles.get("cell_normal_right"));
+				cell.setCellValue(pair.getTeam(which));
+				cell = sheetRow.createCell(3 * which + 1);
+				cell.setCellStyle(styles.get("cell_normal_centered"));
+				setText(cell, pair.getId(which));
+				cell = sheetRow.createCell(3 * which + 2);
+				cell.setCellStyle(styles.get("cell_normal"));
+				setText(cell, pair.getName(which));
+			}
+			cell = sheetRow.createCell(6);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(pair.getTimes());
+			cell = sheetRow.createCell(7);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(pair.getDays());
+			cell = sheetRow.createCell(8);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(Math.round(pair.getAverageGapSeconds() * 10) / 10.0);
+			event.students += 2;
+		}
+		autoSizeColumns(sheet, Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8));
+	}
+
+	/**
+	 * Set last week's export, to compare this week's against on the CHANGES sheet.
+	 * 
+	 * @param previous
+	 * 		Last week's parsed export, or null for no CHANGES sheet
+	 */
+	public void setPrevious(Teams previous) {
+		this.previous = previous;
+	}
+
+	/**
+	 * @return
+	 * 		How this week compares to last week's export at the report's
+	 * 		thresholds, or null if there's no last week set
+	 */
+	public WeekDiff compare(Teams teams) {
+		return previous == null ? null : WeekDiff.compare(teams, previous, lowSeconds, highSeconds);
+	}
+
+	/*
+	 * The CHANGES sheet:  a count of each kind of change from last week, then
+	 * every student who's new, missing or had their hours go up or down, with
+	 * a note for the ones who crossed a threshold.  Nothing is added without
+	 * a previous export.
+	 */
+	private void createChangesSheet(Teams teams, PipelineEvents.Sheet event) {
+		WeekDiff diff = compare(teams);
+		if ( diff == null )
+			return;
+		Sheet sheet = workbook.createSheet("Changes");
+		sheet.setDisplayGridlines(false);
+		sheet.setPrintGridlines(false);
+		sheet.setFitToPage(true);
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 7));
+		Row headerRow = sheet.createRow(0);
+		headerRow.setHeightInPoints(30.60f);
+		Cell cell = headerRow.createCell(0);
+		cell.setCellValue("Changes From Last Week " + datestr);
+		cell.setCellStyle(styles.get("header"));
+
+		int row = 2;
+		for (WeekDiff.Kind kind : WeekDiff.Kind.values()) {
+			Row sheetRow = sheet.createRow(row++);
+			cell = sheetRow.createCell(0);
+			cell.setCellStyle(styles.get("cell_b"));
+			cell.setCellValue(kind.getLabel());
+			cell = sheetRow.createCell(1);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(diff.getCount(kind));
+		}
+		for (WeekDiff.Crossing crossing : WeekDiff.Crossing.values()) {
+			if ( crossing == WeekDiff.Crossing.NONE || diff.getCount(crossing) == 0 )
+				continue;
+			Row sheetRow = sheet.createRow(row++);
+			cell = sheetRow.createCell(0);
+			cell.setCellStyle(styles.get("cell_b"));
+			cell.setCellValue(crossing.getLabel());
+			cell = sheetRow.createCell(1);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(diff.getCount(crossing));
+		}
+
+		row++;
+		Row titles = sheet.createRow(row++);
+		String[] labels = { "Change", "Team", "Name", "ID", "Last Week", "This Week", "Difference", "Note" };
+		for (int c = 0; c < labels.length; c++) {
+			cell = titles.createCell(c);
+			cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+			setText(cell, labels[c]);
+		}
+		for (WeekDiff.Change change : diff.getChanges()) {
+			Row sheetRow = sheet.createRow(row++);
+			cell = sheetRow.createCell(0);
+			cell.setCellStyle(styles.get("cell_normal"));
+			setText(cell, change.getKind().getLabel());
+			cell = sheetRow.createCell(1);
+			cell.setCellStyle(styles.get("cell_normal_centered"));
+			cell.setCellValue(change.getTeam());
+			cell = sheetRow.createCell(2);
+			cell.setCellStyle(styles.get("cell_normal"));
+			cell.setCellValue(change.getName());
+			cell = sheetRow.createCell(3);
+			cell.setCellStyle(styles.get("cell_normal_centered"));
+			cell.setCellValue(change.getId());
+			cell = sheetRow.createCell(4);
+			cell.setCellStyle(change.getKind() == WeekDiff.Kind.NEW
+					? styles.get("cell_normal_right") : thresholdStyle(change.getPreviousSeconds()));
+			cell.setCellValue(change.getPreviousSeconds() / 3600.0);
+			cell = sheetRow.createCell(5);
+			cell.setCellStyle(change.getKind() == WeekDiff.Kind.MISSING
+					? styles.get("cell_normal_right") : thresholdStyle(change.getCurrentSeconds()));
+			cell.setCellValue(change.getCurrentSeconds() / 3600.0);
+			cell = sheetRow.createCell(6);
+			cell.setCellStyle(styles.get("cell_normal_right"));
+			cell.setCellValue(change.getDeltaSeconds() / 3600.0);
+			if ( change.getCrossing() != WeekDiff.Crossing.NONE ) {
+				cell = sheetRow.createCell(7);
+				cell.setCellStyle(styles.get("cell_normal"));
+				setText(cell, change.getCrossing().getLabel());
+			}
+			event.students++;
+		}
+		autoSizeColumns(sheet, Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+	}
+
+	/*
+	 * Whether to add the stats rows under each team and the SUMMARY sheet
+	 */
+	private boolean statistics() {
+		return Boolean.parseBoolean(config.getConfig("statistics", "false"));
+	}
+
+	/*
+	 * Under a team's block on the COACHES or PARENTS sheet:  the team's total,
+	 * mean, median and 90th percentile hours, labeled in labelCol with the
+	 * hours in hoursCol.  Returns the row after them.
+	 */
+	private int fillTeamStats(Sheet sheet, HoursStats.Summary summary, int row, int labelCol, int hoursCol) {
+		String[] labels = { "Total", "Mean", "Median", "90th Percentile" };
+		double[] hours = { summary.getTotalHours(), summary.getMeanHours(), summary.getMedianHours(),
+				summary.getPercentileHours(90) };
+		for (int i = 0; i < labels.length; i++) {
+			Row sheetRow = sheet.getRow(row) != null ? sheet.getRow(row) : sheet.createRow(row);
+			Cell cell = sheetRow.createCell(labelCol);
+			cell.setCellStyle(styles.get("cell_b"));
+			setText(cell, labels[i]);
+			for (int c = labelCol + 1; c < hoursCol; c++)
+				sheetRow.createCell(c).setCellStyle(styles.get("cell_b"));
+			cell = sheetRow.createCell(hoursCol);
+			cell.setCellStyle(styles.get("cell_b_right"));
+			cell.setCellValue(round(hours[i]));
+			row++;
+		}
+		return row;
+	}
+
+	private static double round(double hours) {
+		return Math.round(hours * 100.0) / 100.0;
+	}
+
+	/*
+	 * The SUMMARY sheet:  for each team, and then the whole program, how many
+	 * students there are and their total, mean, median, 90th percentile,
+	 * fewest and most hours.  Only added if statistics is configured.
+	 */
+	private void createSummarySheet(Teams teams, PipelineEvents.Sheet event) {
+		if ( ! statistics() )
+			return;
+		HoursStats stats = teams.getStats();
+		Sheet sheet = workbook.createSheet("Summary");
+		sheet.setDisplayGridlines(false);
+		sheet.setPrintGridlines(false);
+		sheet.setFitToPage(true);
+		sheet.setHorizontallyCenter(true);
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 7));
+		sheet.getPrintSetup().setLandscape(false);
+		Row headerRow = sheet.createRow(0);
+		headerRow.setHeightInPoints(30.60f);
+		Cell cell = headerRow.createCell(0);
+		cell.setCellValue("SUMMARY Hours Report " + datestr);
+		cell.setCellStyle(styles.get("header"));
+
+		Row titles = sheet.createRow(2);
+		String[] labels = { "Team", "Students", "Total", "Mean", "Median", "90th Percentile", "Fewest", "Most" };
+		for (int c = 0; c < labels.length; c++) {
+			cell = titles.createCell(c);
+			cell.setCellStyle(styles.get("cell_normal_title_grey40"));
+			setText(cell, labels[c]);
+		}
+		int row = 3;
+		for (Integer team : stats.getTeams()) {
+			fillSummaryRow(sheet.createRow(row++), String.valueOf(team), stats.getTeam(team), false);
+			event.teams++;
+		}
+		fillSummaryRow(sheet.createRow(row), "Program", stats.getProgram(), true);
+		event.students = (int) stats.getProgram().getStudents();
+		autoSizeColumns(sheet, Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+	}
+
+	private void fillSummaryRow(Row sheetRow, String label, HoursStats.Summary summary, boolean bold) {
+		Cell cell = sheetRow.createCell(0);
+		cell.setCellStyle(styles.get(bold ? "cell_b" : "cell_normal_centered"));
+		setText(cell, label);
+		cell = sheetRow.createCell(1);
+		cell.setCellStyle(styles.get(bold ? "cell_b_right" : "cell_normal_right"));
+		cell.setCellValue(summary.getStudents());
+		double[] hours = { summary.getTotalHours(), summary.getMeanHours(), summary.getMedianHours(),
+				summary.getPercentileHours(90), summary.getMinHours(), summary.getMaxHours() };
+		for (int i = 0; i < hours.length; i++) {
+			cell = sheetRow.createCell(2 + i);
+			cell.setCellStyle(styles.get(bold ? "cell_b_right" : "cell_normal_right"));
+			cell.setCellValue(round(hours[i]));
+		}
+	}
+
+	/*
+	 * Size the listed columns to fit their contents
+	 */
+	private void autoSizeColumns(Sheet sheet, List<Integer> columns) {
+		PipelineEvents.AutoSize event = new PipelineEvents.AutoSize();
+		event.start();
+		for (Integer i : columns) {
+			sheet.autoSizeColumn(i);
+		}
+		event.sheet = sheet.getSheetName();
+		event.columns = columns.size();
+		event.finish();
 	}
 	
 	/**
@@ -373,6 +1114,11 @@ public class Output {
 		style.setFont(boldFont);
 		styles.put("cell_b_centered", style);
 
+		style = createBorderedStyle(wb);
+		style.setAlignment(HorizontalAlignment.RIGHT);
+		style.setFont(boldFont);
+		styles.put("cell_b_right", style);
+
 		style = createBorderedStyle(wb);
 		style.setAlignment(HorizontalAlignment.RIGHT);
 		style.setFont(boldFont);
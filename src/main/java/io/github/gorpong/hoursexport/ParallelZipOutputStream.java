@@ -0,0 +1,400 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A {@code ZipOutputStream} that compresses on a pool of threads.  POI saves
+ * an .xlsx by writing each package part (the sheets, styles, shared strings)
+ * to a {@code ZipOutputStream}, and uses the one it's given if it's handed
+ * one, so this goes in its place.
+ *
+ * The bytes of each entry are cut in to {@code CHUNK} sized pieces and each
+ * piece is deflated on its own, with the last 32K of the piece before it as
+ * its dictionary, the same way pigz does it.  The pieces are sync-flushed
+ * raw deflate streams, so put back to back they're one ordinary deflate
+ * stream and any unzip reads the entry as usual.  A big sheet is compressed
+ * on every core instead of one, and the small parts are compressed while the
+ * next one is being serialized.
+ *
+ * Each piece is written out as soon as it and everything before it are
+ * done, so an entry never has to be held whole.  That means the CRC and
+ * sizes aren't known when an entry's local header goes out, so the header
+ * has general purpose bit 3 set and they follow the entry's data in a data
+ * descriptor (and are in the central directory as usual).  At most
+ * {@code 2 * threads + 2} pieces are waiting at a time, so POI is held up
+ * rather than letting them pile up.
+ *
+ * Level 0 doesn't compress at all (for intermediate files), 1 is the
+ * fastest compression and 9 the smallest.  Even level 0 entries are
+ * DEFLATED, as deflate's own stored blocks (5 bytes per 64K), since a
+ * STORED entry has to have its sizes in the local header.  Archives over
+ * 4G or 65,535 entries (ZIP64) aren't supported.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class ParallelZipOutputStream extends ZipOutputStream {
+	static final int CHUNK = 128 * 1024;
+	private static final int WINDOW = 32 * 1024;
+
+	private static final int FLAGS = 0x0808;		// Data descriptor (bit 3), UTF-8 names (bit 11)
+
+	private final int level;
+	private final ExecutorService pool;
+	private final int maxPending;
+	private final ArrayDeque<Part> parts = new ArrayDeque<>();
+	private int pending = 0;		// Pieces in parts
+	private final List<Entry> writtenEntries = new ArrayList<>();
+	private Entry current = null;
+	private byte[] chunk = null;
+	private int used = 0;
+	private byte[] previous = null;
+	private int previousUsed = 0;
+	private long offset = 0;
+	private boolean finished = false;
+	private boolean closed = false;
+
+	/*
+	 * An entry's header fields
+	 */
+	private static class Entry {
+		final byte[] name;
+		final long time;
+		final CRC32 crc = new CRC32();
+		long size = 0;
+		long compressedSize = 0;
+		long offset = 0;
+
+		Entry(ZipEntry e) {
+			name = e.getName().getBytes(StandardCharsets.UTF_8);
+			time = e.getTime() == -1 ? System.currentTimeMillis() : e.getTime();
+		}
+	}
+
+	/*
+	 * The next thing to write out:  an entry's local header, one of its
+	 * compressed pieces, or its data descriptor
+	 */
+	private static class Part {
+		final Entry entry;
+		final Future<byte[]> piece;		// Null for the header and the descriptor
+		final boolean header;
+
+		Part(Entry entry, Future<byte[]> piece, boolean header) {
+			this.entry = entry;
+			this.piece = piece;
+			this.header = header;
+		}
+	}
+
+	/**
+	 * @param out
+	 * 		Where the zip file goes (closed when this is)
+	 * @param level
+	 * 		0 (stored) to 9 (smallest)
+	 * @param threads
+	 * 		How many threads compress
+	 */
+	ParallelZipOutputStream(OutputStream out, int level, int threads) {
+		super(out);
+		if ( level < 0 || level > 9 )
+			throw new IllegalArgumentException("Compression level must be 0 to 9:  " + level);
+		this.level = level;
+		this.maxPending = 2 * threads + 2;
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "zip-deflate");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void putNextEntry(ZipEntry e) throws IOException {
+		if ( finished )
+			throw new IOException("Zip file already finished");
+		if ( current != null )
+			closeEntry();
+		current = new Entry(e);
+		parts.add(new Part(current, null, true));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if ( current == null )
+			throw new ZipException("No current zip entry");
+		current.crc.update(b, off, len);
+		current.size += len;
+		while ( len > 0 ) {
+			if ( chunk != null && used == chunk.length )
+				send(false);
+			if ( chunk == null )
+				chunk = new byte[CHUNK];
+			int n = Math.min(len, chunk.length - used);
+			System.arraycopy(b, off, chunk, used, n);
+			used += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void closeEntry() throws IOException {
+		if ( current == null )
+			return;
+		if ( chunk == null )
+			chunk = new byte[0];
+		send(true);
+		parts.add(new Part(current, null, false));
+		current = null;
+		previous = null;
+		writeParts(maxPending);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Wait for everything to be compressed and write the rest of the zip
+	 * file, without closing the stream it's going to.
+	 */
+	@Override
+	public void finish() throws IOException {
+		if ( finished )
+			return;
+		closeEntry();
+		writeParts(-1);
+		writeDirectory();
+		finished = true;
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if ( closed )
+			return;
+		closed = true;
+		try {
+			finish();
+		} finally {
+			shutdown();
+			def.end();		// ZipOutputStream's own, never used
+			out.close();
+		}
+	}
+
+	/**
+	 * Stop the compressing threads, e.g., when the workbook couldn't be
+	 * written and this is never going to be closed.
+	 */
+	void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/*
+	 * Hand the chunk being filled off to be compressed and start a new one
+	 */
+	private void send(boolean last) throws IOException {
+		final byte[] data = chunk;
+		final int length = used;
+		final byte[] dict = previous;
+		final int dictEnd = previousUsed;
+		parts.add(new Part(current, pool.submit(() -> deflate(level, dict, dictEnd, data, length, last)), false));
+		pending++;
+		writeParts(maxPending);
+		previous = data;
+		previousUsed = length;
+		chunk = null;
+		used = 0;
+	}
+
+	/**
+	 * Deflate one piece of an entry as a raw deflate stream.
+	 *
+	 * @param level
+	 * 		0 to 9
+	 * @param dict
+	 * 		The piece before this one in the entry (null for the first)
+	 * @param dictEnd
+	 * 		How much of {@code dict} was used
+	 * @param data
+	 * 		The bytes
+	 * @param length
+	 * 		How many of them
+	 * @param last
+	 * 		Whether this is the end of the entry (finished, not sync-flushed)
+	 * @return
+	 * 		The compressed piece
+	 */
+	static byte[] deflate(int level, byte[] dict, int dictEnd, byte[] data, int length, boolean last) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if ( dict != null ) {
+				int n = Math.min(WINDOW, dictEnd);
+				deflater.setDictionary(dict, dictEnd - n, n);
+			}
+			deflater.setInput(data, 0, length);
+			if ( last )
+				deflater.finish();
+			byte[] buf = new byte[length / 2 + 64];
+			int n = 0;
+			while ( true ) {
+				if ( n == buf.length )
+					buf = Arrays.copyOf(buf, buf.length * 2);
+				int space = buf.length - n;
+				int got = deflater.deflate(buf, n, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				n += got;
+				if ( last ? deflater.finished() : got < space )
+					break;
+			}
+			return Arrays.copyOf(buf, n);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/*
+	 * Write out the parts in order while they're done, and wait for them while
+	 * more than {@code keep} pieces are still to go (-1 to wait for them all)
+	 */
+	private void writeParts(int keep) throws IOException {
+		while ( ! parts.isEmpty() ) {
+			Part part = parts.peek();
+			if ( part.piece != null && pending <= keep && ! part.piece.isDone() )
+				return;
+			parts.poll();
+			Entry e = part.entry;
+			if ( part.piece != null ) {
+				byte[] b = get(part.piece);
+				pending--;
+				e.compressedSize += b.length;
+				writeRaw(b);
+			} else if ( part.header ) {
+				if ( offset > 0xFFFFFFFFL )
+					throw new ZipException("Zip file too large, would need ZIP64:  " + new String(e.name, StandardCharsets.UTF_8));
+				e.offset = offset;
+				byte[] header = new byte[30];
+				put(header, 0, 0x04034b50, 4);
+				put(header, 4, 20, 2);			// Version needed
+				put(header, 6, FLAGS, 2);
+				put(header, 8, ZipEntry.DEFLATED, 2);
+				put(header, 10, dosTime(e.time), 4);
+				// The CRC and sizes are left 0, they're in the descriptor
+				put(header, 26, e.name.length, 2);
+				put(header, 28, 0, 2);
+				writeRaw(header);
+				writeRaw(e.name);
+				writtenEntries.add(e);
+			} else {
+				if ( e.size > 0xFFFFFFFFL || e.compressedSize > 0xFFFFFFFFL )
+					throw new ZipException("Zip file too large, would need ZIP64:  " + new String(e.name, StandardCharsets.UTF_8));
+				byte[] descriptor = new byte[16];
+				put(descriptor, 0, 0x08074b50, 4);
+				put(descriptor, 4, e.crc.getValue(), 4);
+				put(descriptor, 8, e.compressedSize, 4);
+				put(descriptor, 12, e.size, 4);
+				writeRaw(descriptor);
+			}
+		}
+	}
+
+	private void writeDirectory() throws IOException {
+		if ( writtenEntries.size() > 0xFFFF || offset > 0xFFFFFFFFL )
+			throw new ZipException("Zip file too large, would need ZIP64");
+		long start = offset;
+		for (Entry e : writtenEntries) {
+			byte[] header = new byte[46];
+			put(header, 0, 0x02014b50, 4);
+			put(header, 4, 20, 2);			// Made by
+			putCommon(header, 6, e);
+			put(header, 28, e.name.length, 2);
+			put(header, 30, 0, 2);			// Extra
+			put(header, 32, 0, 2);			// Comment
+			put(header, 34, 0, 2);			// Disk
+			put(header, 36, 0, 2);			// Internal attributes
+			put(header, 38, 0, 4);			// External attributes
+			put(header, 42, e.offset, 4);
+			writeRaw(header);
+			writeRaw(e.name);
+		}
+		byte[] end = new byte[22];
+		put(end, 0, 0x06054b50, 4);
+		put(end, 4, 0, 4);					// Disk numbers
+		put(end, 8, writtenEntries.size(), 2);
+		put(end, 10, writtenEntries.size(), 2);
+		put(end, 12, offset - start, 4);
+		put(end, 16, start, 4);
+		put(end, 20, 0, 2);					// Comment
+		writeRaw(end);
+	}
+
+	/*
+	 * The central directory's fields for an entry, version needed through the
+	 * uncompressed size (22 bytes)
+	 */
+	private static void putCommon(byte[] b, int at, Entry e) {
+		put(b, at, 20, 2);
+		put(b, at + 2, FLAGS, 2);
+		put(b, at + 4, ZipEntry.DEFLATED, 2);
+		put(b, at + 6, dosTime(e.time), 4);
+		put(b, at + 10, e.crc.getValue(), 4);
+		put(b, at + 14, e.compressedSize, 4);
+		put(b, at + 18, e.size, 4);
+	}
+
+	/*
+	 * Little-endian
+	 */
+	private static void put(byte[] b, int at, long value, int bytes) {
+		for (int i = 0; i < bytes; i++)
+			b[at + i] = (byte) ( value >>> ( 8 * i ) );
+	}
+
+	private static long dosTime(long millis) {
+		LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+		if ( t.getYear() < 1980 )
+			return ( 1 << 21 ) | ( 1 << 16 );
+		return ( (long) ( t.getYear() - 1980 ) << 25 ) | ( t.getMonthValue() << 21 ) | ( t.getDayOfMonth() << 16 )
+				| ( t.getHour() << 11 ) | ( t.getMinute() << 5 ) | ( t.getSecond() >> 1 );
+	}
+
+	private void writeRaw(byte[] b) throws IOException {
+		out.write(b);
+		offset += b.length;
+	}
+
+	private static byte[] get(Future<byte[]> piece) throws IOException {
+		try {
+			return piece.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted compressing the zip file");
+		} catch (ExecutionException e) {
+			throw new IOException("Error compressing the zip file", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * The {@code --profile} support:  record the {@code PipelineEvents} (plus the
+ * JVM's GC events) to a JFR file for the run, and print a per-phase breakdown
+ * of time and allocation once it's done.  The file can be opened in JDK
+ * Mission Control for the full detail.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class PhaseProfiler {
+	private final Recording recording;
+	private final Path file;
+
+	/**
+	 * Private constructor, use the start() factory method instead.
+	 */
+	private PhaseProfiler(Path file) throws IOException {
+		this.file = file;
+		recording = new Recording();
+		recording.setName("VBHoursExport");
+		for (Class<? extends Event> type : PipelineEvents.all())
+			recording.enable(type);
+		recording.enable("jdk.GarbageCollection");
+		recording.setDestination(file);
+	}
+
+	/**
+	 * Start recording the pipeline events.
+	 *
+	 * @param file
+	 * 		The JFR file to write when the recording stops
+	 * @return
+	 * 		The running profiler
+	 * @throws IOException
+	 * 		Can't use {@code file} for the recording
+	 */
+	public static PhaseProfiler start(Path file) throws IOException {
+		PhaseProfiler profiler = new PhaseProfiler(file);
+		profiler.recording.start();
+		return profiler;
+	}
+
+	/**
+	 * Stop recording, write the JFR file and print the per-phase breakdown.
+	 *
+	 * @param out
+	 * 		Where to print the breakdown
+	 * @throws IOException
+	 * 		Error writing or reading back the recording
+	 */
+	public void stop(PrintStream out) throws IOException {
+		recording.stop();
+		recording.close();
+		report(file, out);
+	}
+
+	/*
+	 * Running totals for one kind of event
+	 */
+	private static class Totals {
+		String label;
+		int count = 0;
+		Duration time = Duration.ZERO;
+		long allocated = 0;
+		long rows = 0;
+		long rejected = 0;
+		long bytes = 0;
+	}
+
+	/**
+	 * Read the pipeline events from a JFR file and print time, allocation and
+	 * the main counts for each phase, in the order they first happened.
+	 *
+	 * @param jfr
+	 * 		The recording file
+	 * @param out
+	 * 		Where to print the breakdown
+	 * @return
+	 * 		The number of pipeline events found
+	 * @throws IOException
+	 * 		Can't read the recording
+	 */
+	static int report(Path jfr, PrintStream out) throws IOException {
+		Map<String, Totals> phases = new LinkedHashMap<>();
+		int gcCount = 0;
+		Duration gcTime = Duration.ZERO;
+		int events = 0;
+		for (RecordedEvent e : RecordingFile.readAllEvents(jfr)) {
+			String name = e.getEventType().getName();
+			if ( name.equals("jdk.GarbageCollection") ) {
+				gcCount++;
+				gcTime = gcTime.plus(e.getDuration());
+				continue;
+			}
+			if ( ! name.startsWith(PipelineEvents.PREFIX) )
+				continue;
+			events++;
+			Totals t = phases.computeIfAbsent(name, k -> new Totals());
+			t.label = e.getEventType().getLabel();
+			t.count++;
+			t.time = t.time.plus(e.getDuration());
+			t.allocated += e.getLong("allocated");
+			if ( e.hasField("rows") ) t.rows += e.getInt("rows");
+			if ( e.hasField("students") && ! e.hasField("rows") ) t.rows += e.getInt("students");
+			if ( e.hasField("rejectedRows") ) t.rejected += e.getInt("rejectedRows");
+			if ( e.hasField("bytesRead") ) t.bytes += e.getLong("bytesRead");
+			if ( e.hasField("bytesWritten") ) t.bytes += e.getLong("bytesWritten");
+		}
+
+		String fmt = "%-18s %6s %10s %12s %10s %9s %12s\n";
+		out.print(String.format(fmt, "Phase", "Events", "Time (ms)", "Alloc (KB)", "Rows", "Rejected", "Bytes I/O"));
+		for (Totals t : phases.values()) {
+			out.print(String.format(fmt, t.label, t.count, String.format("%.1f", t.time.toNanos() / 1e6),
+					t.allocated / 1024, t.rows, t.rejected, t.bytes));
+		}
+		out.print(String.format("GC: %d collections, %.1f ms.  Recording saved to %s\n",
+				gcCount, gcTime.toNanos() / 1e6, jfr));
+		return events;
+	}
+}
@@ -0,0 +1,177 @@
+package io.github.gorpong.hoursexport;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for each phase of producing a report, so a slow
+ * run can be broken down into config load, parsing, sorting, sheet creation,
+ * column sizing and writing.  Each event carries the bytes allocated by the
+ * thread during the phase along with the phase's own counts.
+ *
+ * The events cost next to nothing unless a recording is running, either from
+ * {@code --profile} (see {@code PhaseProfiler}) or from an outside
+ * {@code -XX:StartFlightRecording}.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public final class PipelineEvents {
+	static final String PREFIX = "io.github.gorpong.hoursexport.";
+
+	private PipelineEvents() {
+	}
+
+	/**
+	 * @return
+	 * 		All of the pipeline event types, for enabling them in a recording
+	 */
+	static List<Class<? extends Event>> all() {
+		return Arrays.asList(ConfigLoad.class, Parse.class, ParseSheet.class, Sort.class, Sheet.class, AutoSize.class, Write.class);
+	}
+
+	/**
+	 * Common part of the phase events, tracks what the thread allocated between
+	 * {@code start()} and {@code finish()}.
+	 */
+	@Category("VBHoursExport")
+	@StackTrace(false)
+	abstract static class Phase extends Event {
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+
+		private transient long allocStart;
+
+		void start() {
+			if ( isEnabled() ) {
+				allocStart = allocatedBytes();
+				begin();
+			}
+		}
+
+		void finish() {
+			end();
+			if ( shouldCommit() ) {
+				allocated = allocatedBytes() - allocStart;
+				commit();
+			}
+		}
+
+		private static long allocatedBytes() {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if ( bean instanceof com.sun.management.ThreadMXBean )
+				return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+			return 0;
+		}
+	}
+
+	@Name(PREFIX + "ConfigLoad")
+	@Label("Config Load")
+	@Description("Reading the properties file")
+	static class ConfigLoad extends Phase {
+		@Label("File")
+		String file;
+
+		@Label("Entries")
+		int entries;
+
+		@Label("Bytes Read")
+		@DataAmount
+		long bytesRead;
+	}
+
+	@Name(PREFIX + "Parse")
+	@Label("Parse")
+	@Description("Reading the scanner export and building the teams")
+	static class Parse extends Phase {
+		@Label("Source")
+		String source;
+
+		@Label("Rows")
+		int rows;
+
+		@Label("Rejected Rows")
+		int rejectedRows;
+
+		@Label("Teams")
+		int teams;
+
+		@Label("Students")
+		int students;
+
+		@Label("Bytes Read")
+		@DataAmount
+		long bytesRead;
+
+		@Label("Spills")
+		@Description("Times the totals went over aggregationBudget and were written to disk")
+		int spills;
+
+		@Label("Bytes Spilled")
+		@DataAmount
+		long spilledBytes;
+	}
+
+	@Name(PREFIX + "ParseSheet")
+	@Label("Parse Sheet")
+	@Description("Reading one sheet of the scanner export, with allSheets (on a thread of its own for an .xlsx file)")
+	static class ParseSheet extends Parse {
+	}
+
+	@Name(PREFIX + "Sort")
+	@Label("Sort")
+	@Description("Sorting one team's students by hours")
+	static class Sort extends Phase {
+		@Label("Team")
+		int team;
+
+		@Label("Students")
+		int students;
+	}
+
+	@Name(PREFIX + "Sheet")
+	@Label("Create Sheet")
+	@Description("Filling in one worksheet of the report")
+	static class Sheet extends Phase {
+		@Label("Sheet")
+		String sheet;
+
+		@Label("Teams")
+		int teams;
+
+		@Label("Students")
+		int students;
+	}
+
+	@Name(PREFIX + "AutoSize")
+	@Label("Auto-size Columns")
+	@Description("Sizing the columns of one worksheet to fit")
+	static class AutoSize extends Phase {
+		@Label("Sheet")
+		String sheet;
+
+		@Label("Columns")
+		int columns;
+	}
+
+	@Name(PREFIX + "Write")
+	@Label("Write")
+	@Description("Serializing the report workbook")
+	static class Write extends Phase {
+		@Label("File")
+		String file;
+
+		@Label("Bytes Written")
+		@DataAmount
+		long bytesWritten;
+	}
+}
@@ -0,0 +1,426 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Work out each student's hours from the scanner's raw log of clock-in and
+ * clock-out punches, rather than trusting its own hours column.
+ *
+ * The punches are collected as they're read, in parallel arrays, then sorted
+ * by time (with {@code Arrays.parallelSort} for a big log) and spread out by
+ * student, which keeps each student's punches in time order.  Each student's
+ * punches are then walked in order:
+ * <ul>
+ * <li>A second punch of the same kind within {@code punchDoubleMinutes} of
+ * the first is a double punch and is left out.</li>
+ * <li>A clock-out goes with the earliest clock-in still open.  A log without
+ * a type column alternates:  a punch is a clock-in unless one is open.</li>
+ * <li>A clock-in still open {@code punchMaxHours} later (a forgotten clock-out)
+ * is closed without one, and counted as {@code openPunchHours} (none unless
+ * that's set).</li>
+ * <li>A clock-out with nothing open is left out.</li>
+ * </ul>
+ * The resulting intervals are merged where they overlap (e.g., clocked in at
+ * two scanners) so no time is counted twice, and each is credited to the day
+ * it started on.  Every problem is passed on to be listed with the others
+ * from the export.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class PunchLog {
+	static final byte UNKNOWN = 0;
+	static final byte IN = 1;
+	static final byte OUT = 2;
+	/** Time value for a cell that isn't a date and time */
+	static final long NO_TIME = Long.MIN_VALUE;
+
+	private static final int INDEX_BITS = 27;		// Punch number in the low bits of a sort key
+	private static final long EXCEL_EPOCH_DAY = 25569;
+	private static final DateTimeFormatter US_TIME = DateTimeFormatter.ofPattern("M/d/yyyy H:mm[:ss]");
+	private static final DateTimeFormatter ISO_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd[ ]['T']H:mm[:ss]");
+
+	/**
+	 * Where the totals and problems go.
+	 */
+	interface Sink {
+		/**
+		 * A student's seconds for one day (or, with {@code DailySeconds.NO_DAY},
+		 * a student with no complete intervals at all, with 0 seconds).
+		 *
+		 * @param row
+		 * 		The log row of the first punch counted
+		 */
+		void seconds(int row, int team, String name, String id, int seconds, int day) throws IOException;
+
+		/**
+		 * A punch that couldn't be used as it was.
+		 */
+		void problem(ExportValidator.Kind kind, int row, String id, String detail);
+	}
+
+	private final StringDictionary ids = new StringDictionary();		// Their ints are the students
+	private final StringDictionary names = new StringDictionary();
+	private final StringDictionary scanners = new StringDictionary();
+	private long[] times = new long[1024];		// Seconds since 1/1/1970, local time
+	private byte[] types = new byte[1024];
+	private int[] rows = new int[1024];
+	private int[] students = new int[1024];
+	private int[] nameRefs = new int[1024];
+	private int[] teams = new int[1024];
+	private int[] scannerRefs = new int[1024];
+	private int size = 0;
+	private boolean typed = false;		// Whether any punch said which kind it was
+
+	private final long maxSeconds;
+	private final long doubleSeconds;
+	private final long openSeconds;
+
+	/**
+	 * @param maxHours
+	 * 		Longest a student can be clocked in before it's taken as a missing clock-out
+	 * @param doubleMinutes
+	 * 		Punches of the same kind closer together than this are double punches
+	 * @param openHours
+	 * 		Hours to count for a clock-in without a clock-out
+	 */
+	PunchLog(double maxHours, double doubleMinutes, double openHours) {
+		this.maxSeconds = Math.round(maxHours * 3600);
+		this.doubleSeconds = Math.round(doubleMinutes * 60);
+		this.openSeconds = Math.min(maxSeconds, Math.round(openHours * 3600));
+	}
+
+	/**
+	 * Add one punch from the log.
+	 *
+	 * @param row
+	 * 		The row it's on
+	 * @param seconds
+	 * 		When, from {@code excelSeconds()} or {@code parseTime()}
+	 * @param type
+	 * 		{@code IN}, {@code OUT} or {@code UNKNOWN}
+	 * @param scanner
+	 * 		Which scanner it was punched on, null if the log doesn't say
+	 * @throws IOException
+	 * 		The log has more punches than can be sorted
+	 */
+	void add(int row, int team, String name, String id, long seconds, byte type, String scanner)
+			throws IOException {
+		if ( size == times.length ) {
+			if ( size == 1 << INDEX_BITS )
+				throw new IOException("Too many punches in the log, the most is " + ( 1 << INDEX_BITS ));
+			int grow = size * 2;
+			times = Arrays.copyOf(times, grow);
+			types = Arrays.copyOf(types, grow);
+			rows = Arrays.copyOf(rows, grow);
+			students = Arrays.copyOf(students, grow);
+			nameRefs = Arrays.copyOf(nameRefs, grow);
+			teams = Arrays.copyOf(teams, grow);
+			scannerRefs = Arrays.copyOf(scannerRefs, grow);
+		}
+		times[size] = seconds;
+		types[size] = type;
+		rows[size] = row;
+		students[size] = ids.intern(id);
+		nameRefs[size] = names.intern(name);
+		teams[size] = team;
+		scannerRefs[size] = scanners.intern(scanner == null ? "" : scanner);
+		typed |= type != UNKNOWN;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/*
+	 * For looking through the punches some other way, e.g., BuddyPunches
+	 */
+	long getTime(int punch) {
+		return times[punch];
+	}
+	/**
+	 * @return
+	 * 		The student who punched, as an int from 0 to {@code students() - 1}
+	 */
+	int getStudent(int punch) {
+		return students[punch];
+	}
+	int getScanner(int punch) {
+		return scannerRefs[punch];
+	}
+	int getRow(int punch) {
+		return rows[punch];
+	}
+	int getTeam(int punch) {
+		return teams[punch];
+	}
+	String getName(int punch) {
+		return names.get(nameRefs[punch]);
+	}
+	String getId(int student) {
+		return ids.get(student);
+	}
+	int students() {
+		return ids.size();
+	}
+	int scanners() {
+		return scanners.size();
+	}
+
+	/**
+	 * Pair up the punches and pass each student's seconds for each day to
+	 * {@code sink}, students in the order they first punched.
+	 *
+	 * @param sink
+	 * 		Where the seconds and problems go
+	 * @throws IOException
+	 * 		From the sink
+	 */
+	void compute(Sink sink) throws IOException {
+		int[] order = byStudent();
+		int[] start = new int[ids.size() + 1];
+		for (int i = 0; i < size; i++)
+			start[students[i] + 1]++;
+		for (int s = 0; s < ids.size(); s++)
+			start[s + 1] += start[s];
+		for (int s = 0; s < ids.size(); s++)
+			student(order, start[s], start[s + 1], sink);
+	}
+
+	/*
+	 * The punch numbers sorted by time, then (keeping that order) by student
+	 */
+	private int[] byStudent() throws IOException {
+		return scatter(byTime(), students, ids.size());
+	}
+
+	/**
+	 * @return
+	 * 		The punch numbers in time order (in the order they were added, for
+	 * 		the same second)
+	 * @throws IOException
+	 * 		The punches span more than a few thousand years
+	 */
+	int[] byTime() throws IOException {
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			first = Math.min(first, times[i]);
+			last = Math.max(last, times[i]);
+		}
+		if ( size > 0 && last - first >= 1L << ( 63 - INDEX_BITS ) )
+			throw new IOException("The punches span too long a time to sort");
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = ( ( times[i] - first ) << INDEX_BITS ) | i;
+		if ( size >= StudentStore.PARALLEL_SORT )
+			Arrays.parallelSort(keys);
+		else
+			Arrays.sort(keys);
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = (int) ( keys[i] & ( ( 1 << INDEX_BITS ) - 1 ) );
+		return order;
+	}
+
+	/**
+	 * Group punches by some int of theirs with a counting pass, keeping their
+	 * order within each group.
+	 *
+	 * @param order
+	 * 		The punch numbers, in order
+	 * @param groupOf
+	 * 		Each punch's group, 0 to {@code groups - 1}
+	 * @return
+	 * 		The punch numbers, group 0's first
+	 */
+	static int[] scatter(int[] order, int[] groupOf, int groups) {
+		int[] next = new int[groups + 1];
+		for (int i : order)
+			next[groupOf[i] + 1]++;
+		for (int g = 0; g < groups; g++)
+			next[g + 1] += next[g];
+		int[] grouped = new int[order.length];
+		for (int i : order)
+			grouped[next[groupOf[i]]++] = i;
+		return grouped;
+	}
+
+	/*
+	 * One student's punches, order[from..to) in time order
+	 */
+	private void student(int[] order, int from, int to, Sink sink) throws IOException {
+		String id = ids.get(students[order[from]]);
+		int[] open = new int[4];		// Clock-ins not yet closed, earliest first
+		int openFrom = 0;
+		int openTo = 0;
+		Intervals intervals = new Intervals();
+		int previous = -1;
+
+		for (int k = from; k < to; k++) {
+			int p = order[k];
+			long t = times[p];
+			if ( previous >= 0 && t - times[previous] < doubleSeconds && types[p] == types[previous] ) {
+				sink.problem(ExportValidator.Kind.DOUBLE_PUNCH, rows[p], id,
+						kindOf(types[p]) + " at " + format(t) + ", " + ( t - times[previous] ) + " seconds after the last");
+				continue;
+			}
+			previous = p;
+			// Close out the clock-ins that have been open too long
+			while ( openFrom < openTo && t - times[open[openFrom]] > maxSeconds ) {
+				int in = open[openFrom++];
+				missingOut(in, id, sink);
+				if ( openSeconds > 0 )
+					intervals.add(times[in], times[in] + openSeconds, in);
+			}
+			byte type = types[p];
+			if ( type == UNKNOWN )
+				type = typed ? UNKNOWN : openFrom < openTo ? OUT : IN;
+			if ( type == IN ) {
+				if ( openTo == open.length ) {
+					int n = openTo - openFrom;
+					if ( openFrom > 0 )
+						System.arraycopy(open, openFrom, open, 0, n);
+					else
+						open = Arrays.copyOf(open, open.length * 2);
+					openFrom = 0;
+					openTo = n;
+				}
+				open[openTo++] = p;
+			} else if ( type == OUT ) {
+				if ( openFrom == openTo ) {
+					sink.problem(ExportValidator.Kind.ORPHAN_PUNCH, rows[p], id, "Clock-out at " + format(t));
+					continue;
+				}
+				int in = open[openFrom++];
+				intervals.add(times[in], t, in);
+			} else {
+				sink.problem(ExportValidator.Kind.UNREADABLE_ROW, rows[p], id, "Not a clock-in or clock-out");
+			}
+		}
+		for (int i = openFrom; i < openTo; i++) {
+			int in = open[i];
+			missingOut(in, id, sink);
+			if ( openSeconds > 0 )
+				intervals.add(times[in], times[in] + openSeconds, in);
+		}
+
+		if ( intervals.count == 0 ) {
+			int p = order[from];
+			sink.seconds(rows[p], teams[p], names.get(nameRefs[p]), id, 0, DailySeconds.NO_DAY);
+			return;
+		}
+		// Merge the overlaps, the starts are already in order, then total up by day
+		long[] bounds = intervals.bounds;
+		int dayStart = intervals.punches[0];
+		int day = dayOf(bounds[0]);
+		long seconds = 0;
+		long mergedStart = bounds[0];
+		long mergedEnd = bounds[1];
+		for (int i = 1; i <= intervals.count; i++) {
+			boolean more = i < intervals.count;
+			if ( more && bounds[2 * i] <= mergedEnd ) {
+				mergedEnd = Math.max(mergedEnd, bounds[2 * i + 1]);
+				continue;
+			}
+			seconds += mergedEnd - mergedStart;
+			if ( ! more || dayOf(bounds[2 * i]) != day ) {
+				sink.seconds(rows[dayStart], teams[dayStart], names.get(nameRefs[dayStart]), id,
+						(int) seconds, day);
+				if ( ! more )
+					break;
+				dayStart = intervals.punches[i];
+				day = dayOf(bounds[2 * i]);
+				seconds = 0;
+			}
+			mergedStart = bounds[2 * i];
+			mergedEnd = bounds[2 * i + 1];
+		}
+	}
+
+	/*
+	 * One student's clocked-in intervals, in the order they started
+	 */
+	private static final class Intervals {
+		long[] bounds = new long[8];		// Start, end pairs
+		int[] punches = new int[4];			// The punch each one started with
+		int count = 0;
+
+		void add(long start, long end, int punch) {
+			if ( count == punches.length ) {
+				bounds = Arrays.copyOf(bounds, bounds.length * 2);
+				punches = Arrays.copyOf(punches, punches.length * 2);
+			}
+			bounds[2 * count] = start;
+			bounds[2 * count + 1] = end;
+			punches[count++] = punch;
+		}
+	}
+
+	private void missingOut(int in, String id, Sink sink) {
+		sink.problem(ExportValidator.Kind.OPEN_PUNCH, rows[in], id, "Clock-in at " + format(times[in])
+				+ ( openSeconds > 0 ? String.format(", counted as %.2f hours", openSeconds / 3600.0) : ", not counted" ));
+	}
+
+	private static String kindOf(byte type) {
+		return type == IN ? "Clock-in" : type == OUT ? "Clock-out" : "Punch";
+	}
+
+	private static int dayOf(long seconds) {
+		return (int) Math.floorDiv(seconds, 86400L);
+	}
+
+	private static String format(long seconds) {
+		return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC).toString().replace('T', ' ');
+	}
+
+	/**
+	 * @param date
+	 * 		An Excel date and time
+	 * @return
+	 * 		The seconds since 1/1/1970, on the same (local) clock
+	 */
+	static long excelSeconds(double date) {
+		return Math.round(( date - EXCEL_EPOCH_DAY ) * 86400.0);
+	}
+
+	/**
+	 * @param value
+	 * 		A "yyyy-mm-dd hh:mm[:ss]" or "m/d/yyyy h:mm[:ss]" date and time
+	 * @return
+	 * 		The seconds since 1/1/1970 (local), or {@code NO_TIME} if it isn't one
+	 */
+	static long parseTime(String value) {
+		String time = value.trim();
+		if ( time.isEmpty() || ! Character.isDigit(time.charAt(0)) )
+			return NO_TIME;
+		try {
+			LocalDateTime when = LocalDateTime.parse(time, time.indexOf('/') > 0 ? US_TIME : ISO_TIME);
+			return when.toEpochSecond(ZoneOffset.UTC);
+		} catch (DateTimeParseException e) {
+			return NO_TIME;
+		}
+	}
+
+	/**
+	 * @param value
+	 * 		The punch type column, e.g., "In", "Clock Out", "O"
+	 * @return
+	 * 		{@code IN}, {@code OUT}, or {@code UNKNOWN} if it's neither (or null)
+	 */
+	static byte parseType(String value) {
+		if ( value == null )
+			return UNKNOWN;
+		String type = value.trim().toLowerCase();
+		if ( type.equals("o") || type.endsWith("out") )
+			return OUT;
+		if ( type.equals("i") || type.endsWith("in") )
+			return IN;
+		return UNKNOWN;
+	}
+}
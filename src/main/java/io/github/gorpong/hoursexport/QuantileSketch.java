@@ -0,0 +1,153 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.Arrays;
+
+/**
+ * Approximate quantiles (median, 90th percentile, ...) of a stream of totals
+ * in seconds, without keeping or sorting the values, for when the stats of
+ * separate exports are merged.  Each value is counted in a bucket whose
+ * bounds grow by a fixed ratio, and a bucket stands for all of its values, so
+ * each one is off by no more than {@code ACCURACY} of its own size (0s are
+ * kept exactly).  A quantile is interpolated between the two values on either
+ * side of it the same as the exact one is, so it's also within
+ * {@code ACCURACY} of the exact quantile, however many values are added; the
+ * count, sum, minimum and maximum are exact.  Two sketches merge by adding
+ * their bucket counts, which gives the same sketch as adding all the values
+ * to one, so the teams' sketches add up to the program's and sketches from
+ * separate exports can be combined.
+ *
+ * (This is the bucketing from the DDSketch paper, without its bucket limit:
+ * a week's seconds only span several hundred buckets.)
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class QuantileSketch {
+	static final double ACCURACY = 0.01;
+	private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+
+	private int[] buckets = new int[0];
+	private int offset = 0;				// The bucket index of buckets[0]
+	private long zeros = 0;				// Values of 0 (or less), which have no bucket
+	private long count = 0;
+	private long sum = 0;
+	private int min = Integer.MAX_VALUE;
+	private int max = Integer.MIN_VALUE;
+
+	/**
+	 * @param seconds
+	 * 		A student's total
+	 */
+	void add(int seconds) {
+		count++;
+		sum += seconds;
+		min = Math.min(min, seconds);
+		max = Math.max(max, seconds);
+		if ( seconds <= 0 ) {
+			zeros++;
+			return;
+		}
+		int index = (int) Math.ceil(Math.log(seconds) / LOG_GAMMA);
+		grow(index, index);
+		buckets[index - offset]++;
+	}
+
+	/**
+	 * Add everything counted in {@code that} to this one.
+	 *
+	 * @param that
+	 * 		The sketch to merge in, which isn't changed
+	 */
+	void merge(QuantileSketch that) {
+		if ( that.count == 0 )
+			return;
+		count += that.count;
+		sum += that.sum;
+		zeros += that.zeros;
+		min = Math.min(min, that.min);
+		max = Math.max(max, that.max);
+		if ( that.buckets.length == 0 )
+			return;
+		grow(that.offset, that.offset + that.buckets.length - 1);
+		for (int i = 0; i < that.buckets.length; i++)
+			buckets[that.offset + i - offset] += that.buckets[i];
+	}
+
+	/*
+	 * Make room for the bucket indexes from..to
+	 */
+	private void grow(int from, int to) {
+		if ( buckets.length == 0 ) {
+			buckets = new int[to - from + 1];
+			offset = from;
+			return;
+		}
+		int end = offset + buckets.length - 1;
+		if ( from >= offset && to <= end )
+			return;
+		int newOffset = Math.min(from, offset);
+		int[] grown = new int[Math.max(to, end) - newOffset + 1];
+		System.arraycopy(buckets, 0, grown, offset - newOffset, buckets.length);
+		buckets = grown;
+		offset = newOffset;
+	}
+
+	/**
+	 * @param q
+	 * 		The quantile, 0 to 1 (0.5 for the median)
+	 * @return
+	 * 		The value at that quantile, in seconds (0 if nothing's been added)
+	 */
+	double quantile(double q) {
+		if ( count == 0 )
+			return 0;
+		double at = q * (count - 1);
+		long below = (long) Math.floor(at);
+		long above = Math.min(below + 1, count - 1);
+		double low = valueAt(below);
+		return low + ( at - below ) * ( valueAt(above) - low );
+	}
+
+	/*
+	 * The value of the rank'th smallest value's bucket
+	 */
+	private double valueAt(long rank) {
+		if ( rank < zeros )
+			return Math.min(0, max);
+		long seen = zeros;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if ( seen > rank ) {
+				// The middle of the bucket (in relative terms), kept inside what was seen
+				double value = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+				return Math.max(min, Math.min(max, value));
+			}
+		}
+		return max;
+	}
+
+	long getCount() {
+		return count;
+	}
+	long getSum() {
+		return sum;
+	}
+	/**
+	 * @return
+	 * 		The smallest value added, 0 if there weren't any
+	 */
+	int getMin() {
+		return count == 0 ? 0 : min;
+	}
+	int getMax() {
+		return count == 0 ? 0 : max;
+	}
+	double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	public String toString() {
+		return count + " values, " + buckets.length + " buckets from " + offset + ", "
+				+ Arrays.stream(buckets).filter(b -> b > 0).count() + " used";
+	}
+}
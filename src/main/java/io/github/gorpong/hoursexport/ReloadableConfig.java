@@ -0,0 +1,310 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holder for a {@code ConfigProperties} that was loaded from the filesystem and
+ * that should be picked up again whenever the file is edited, so long-running
+ * processes don't need a JVM restart to see the new layout or thresholds.
+ *
+ * A background thread watches the directory holding the loaded file.  When the
+ * file changes it is parsed into a brand new {@code ConfigProperties}, validated,
+ * and only then swapped in.  The old instance is never modified, so a report that
+ * grabbed a {@code snapshot()} before the swap keeps working with the values it
+ * started with.  If the new file doesn't validate, the previous configuration
+ * stays in place.  Settings given on the command line (e.g., {@code -r} for
+ * the roster) are put back on each reloaded configuration, since the file
+ * doesn't have them.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class ReloadableConfig implements Closeable {
+	private static final String[] sheetTypes = { "coaches", "parents" };
+	private static final String[] sections  = { "TopRow", "MidRow", "BotRow" };
+	private static final long SETTLE_MILLIS = 200;	// Quiet time after a change before reloading
+
+	private final AtomicReference<ConfigProperties> current;
+	private final Map<String, String> overrides;
+	private final Path path;
+	private final WatchService watcher;
+	private final Thread watchThread;
+	private volatile long reloadCount = 0;
+
+	/**
+	 * Private constructor, use the watch() factory method instead.
+	 *
+	 * @param cfg
+	 * 		The already loaded configuration
+	 * @param file
+	 * 		The filesystem path {@code cfg} was loaded from
+	 * @param overrides
+	 * 		The settings to put on each reloaded configuration
+	 * @throws IOException
+	 * 		Can't register a watch on the directory holding {@code file}
+	 */
+	private ReloadableConfig(ConfigProperties cfg, Path file, Map<String, String> overrides) throws IOException {
+		current = new AtomicReference<>(cfg);
+		this.overrides = new LinkedHashMap<>(overrides);
+		path = file.toAbsolutePath();
+		watcher = FileSystems.getDefault().newWatchService();
+		path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		watchThread = new Thread(this::watchLoop, "config-watcher");
+		watchThread.setDaemon(true);
+	}
+
+	/**
+	 * Factory method to start watching the file a configuration was loaded from.
+	 *
+	 * @param cfg
+	 * 		The configuration, already loaded with {@code getPropValues()}
+	 * @return
+	 * 		The holder, with its watcher thread already running
+	 * @throws IllegalStateException
+	 * 		The configuration wasn't loaded from the filesystem (e.g., classpath)
+	 * @throws IOException
+	 * 		Can't register a watch on the directory holding the file
+	 */
+	public static ReloadableConfig watch(ConfigProperties cfg) throws IOException {
+		return watch(cfg, new LinkedHashMap<>());
+	}
+
+	/**
+	 * Same as {@code watch(cfg)}, with settings from the command line that the
+	 * file doesn't have.
+	 *
+	 * @param cfg
+	 * 		The configuration, already loaded with {@code getPropValues()} and
+	 * 		with {@code overrides} already set on it
+	 * @param overrides
+	 * 		The settings to set again on each reloaded configuration
+	 * @return
+	 * 		The holder, with its watcher thread already running
+	 * @throws IllegalStateException
+	 * 		The configuration wasn't loaded from the filesystem (e.g., classpath)
+	 * @throws IOException
+	 * 		Can't register a watch on the directory holding the file
+	 */
+	public static ReloadableConfig watch(ConfigProperties cfg, Map<String, String> overrides) throws IOException {
+		Path file = cfg.getLoadedPath();
+		if ( file == null )
+			throw new IllegalStateException("Only configuration loaded from the filesystem can be watched for changes");
+		ReloadableConfig holder = new ReloadableConfig(cfg, file, overrides);
+		holder.watchThread.start();
+		return holder;
+	}
+
+	/**
+	 * Get the configuration currently in effect.  Callers should grab this once
+	 * per report and use that same object throughout, so the whole report sees
+	 * one consistent set of values even if a reload happens part way through.
+	 *
+	 * @return
+	 * 		The current configuration snapshot
+	 */
+	public ConfigProperties snapshot() {
+		return current.get();
+	}
+
+	/**
+	 * Get the number of successful reloads since the watch started.
+	 *
+	 * @return
+	 * 		The number of times a new configuration was swapped in
+	 */
+	public long getReloadCount() {
+		return reloadCount;
+	}
+
+	/**
+	 * Parse and validate the watched file and, if it is good, make it the current
+	 * configuration.  Called by the watcher thread, but may also be called directly.
+	 *
+	 * @return
+	 * 		true if the new configuration was swapped in, false if it was rejected
+	 */
+	public boolean reload() {
+		ConfigProperties fresh = new ConfigProperties();
+		try {
+			fresh.getPropValues(path.toString());
+		} catch (IOException e) {
+			System.err.println("Config Error:  Cannot reload " + path + ": " + e.getMessage());
+			return false;
+		}
+		for (Map.Entry<String, String> setting : overrides.entrySet())
+			fresh.setConfig(setting.getKey(), setting.getValue());
+		List<String> problems = validate(fresh);
+		if ( ! problems.isEmpty() ) {
+			System.err.println("Config Error:  Keeping previous configuration, " + path + " is invalid: "
+					+ String.join("; ", problems));
+			return false;
+		}
+		current.set(fresh);
+		reloadCount++;
+		System.out.println("Reloaded configuration from:  " + path);
+		return true;
+	}
+
+	/**
+	 * Stop watching the file.  The last configuration stays available via {@code snapshot()}.
+	 *
+	 * @throws IOException
+	 * 		Error closing the underlying watch service
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+		watchThread.interrupt();
+	}
+
+	/**
+	 * Check the values the report layout depends on, so a half-edited file
+	 * doesn't take down a running process.  A file with no settings at all is
+	 * rejected, then each setting that's there is given to its own check in
+	 * {@code checks}.
+	 *
+	 * @param cfg
+	 * 		The configuration to check
+	 * @return
+	 * 		The list of problems found (empty if the configuration is usable)
+	 */
+	static List<String> validate(ConfigProperties cfg) {
+		List<String> problems = new ArrayList<>();
+		if ( cfg.isEmpty() ) {
+			problems.add("there are no settings in it");
+			return problems;
+		}
+		for (Map.Entry<String, Check> check : checks.entrySet()) {
+			String val = cfg.getConfig(check.getKey());
+			if ( val == null )
+				continue;
+			String problem = check.getValue().problem(val, cfg);
+			if ( problem != null )
+				problems.add(check.getKey() + " " + problem);
+		}
+		return problems;
+	}
+
+	/*
+	 * The check of one setting's value:  what's wrong with it, or null if it's
+	 * usable.  The whole configuration is there for a setting that depends on
+	 * another one.
+	 */
+	private interface Check {
+		String problem(String val, ConfigProperties cfg);
+	}
+
+	private static final Map<String, Check> checks = new LinkedHashMap<>();
+	static {
+		checks.put("hoursLowThreshold", number(false));
+		checks.put("hoursHighThreshold", number(false));
+		checks.put("aggregationBudget", (val, cfg) -> {
+			try {
+				SpillingAggregator.parseSize(val);
+				return null;
+			} catch (NumberFormatException e) {
+				return "is not a size: " + val;
+			}
+		});
+		checks.put("inputFormat", (val, cfg) -> val.trim().equalsIgnoreCase("hours")
+				|| val.trim().equalsIgnoreCase("punches") ? null : "is not hours or punches: " + val);
+		for (String key : new String[] { "punchMaxHours", "punchDoubleMinutes", "openPunchHours",
+				"buddyPunchSeconds", "buddyPunchTimes" })
+			checks.put(key, number(false));
+		checks.put("sortOrder", (val, cfg) -> {
+			if ( val.trim().isEmpty() )
+				return null;
+			try {
+				SortOrder.parse(val, cfg.getConfig("sortLocale"));
+				return null;
+			} catch (IllegalArgumentException e) {
+				return e.getMessage();
+			}
+		});
+		checks.put("leaderboardSize", number(true));
+		checks.put("compressionLevel", (val, cfg) -> isNumber(val, true) && Integer.parseInt(val.trim()) >= 0
+				&& Integer.parseInt(val.trim()) <= 9 ? null : "is not 0 to 9: " + val);
+		for (String type : sheetTypes) {
+			checks.put(type + "StartRow", number(true));
+			for (String section : sections)
+				checks.put(type + section, columns(type));
+		}
+	}
+
+	private static Check number(boolean integer) {
+		return (val, cfg) -> isNumber(val, integer) ? null : "is not a number: " + val;
+	}
+
+	/*
+	 * Every team in a section is a number with a column configured for it
+	 */
+	private static Check columns(String type) {
+		return (val, cfg) -> {
+			List<String> problems = new ArrayList<>();
+			for (String team : val.split(",")) {
+				if ( ! isNumber(team, true) )
+					problems.add("has an invalid team: " + team);
+				else if ( ! isNumber(cfg.getConfig(type + "Column-" + team.trim(), ""), true) )
+					problems.add("has no valid " + type + "Column-" + team.trim() + " line");
+			}
+			return problems.isEmpty() ? null : String.join(", ", problems);
+		};
+	}
+
+	private static boolean isNumber(String val, boolean integer) {
+		try {
+			if ( integer ) Integer.parseInt(val.trim());
+			else Double.parseDouble(val.trim());
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Body of the watcher thread:  wait for changes in the directory and reload
+	 * when one of them is for our file.  Saving a file is often a truncate and
+	 * then one or more writes, so once our file changes, further events are
+	 * gathered up until it's been quiet for SETTLE_MILLIS, rather than reloading
+	 * a half written file.
+	 */
+	private void watchLoop() {
+		Path fname = path.getFileName();
+		try {
+			while ( true ) {
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				while ( key != null ) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if ( event.kind() == StandardWatchEventKinds.OVERFLOW || fname.equals(event.context()) )
+							changed = true;
+					}
+					if ( ! key.reset() ) {
+						if ( changed )
+							reload();
+						return;
+					}
+					key = changed ? watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS) : null;
+				}
+				if ( changed )
+					reload();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Closed, just fall out and let the thread end
+		}
+	}
+}
@@ -0,0 +1,433 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.apache.poi.EmptyFileException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP front end so a sponsor can upload the scanner export from a
+ * browser and get the formatted report straight back, without running the
+ * command line program.  Uses the JDK's built-in {@code com.sun.net.httpserver}
+ * and runs each request on its own virtual thread when the JVM supports them
+ * (a plain cached thread pool otherwise).
+ *
+ * <ul>
+ * <li>{@code GET /} returns a small upload form</li>
+ * <li>{@code POST /report} takes the .xls/.xlsx export, either as the raw request
+ * body or as the file field of a {@code multipart/form-data} form, and returns the
+ * report.  Query parameters {@code format} (xls/xlsx), {@code low} and {@code high}
+ * override the output format and thresholds.</li>
+ * </ul>
+ *
+ * The whole pipeline ({@code Teams} to {@code Output}) runs in memory.  Rendered
+ * reports are kept in a bounded LRU cache keyed by a digest of the upload and
+ * the request options, so the same export uploaded again is answered from cache.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class ReportServer {
+	private static final String XLSX_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+	private static final String XLS_TYPE  = "application/vnd.ms-excel";
+	private static final String FORM = "<!DOCTYPE html>\n<html><head><title>VBHoursExport</title></head><body>\n"
+			+ "<h1>Hours Report</h1>\n"
+			+ "<form method=\"post\" action=\"/report\" enctype=\"multipart/form-data\">\n"
+			+ "<p>Scanner export (.xls/.xlsx): <input type=\"file\" name=\"export\" accept=\".xls,.xlsx\"></p>\n"
+			+ "<p><input type=\"submit\" value=\"Create Report\"></p>\n"
+			+ "</form>\n</body></html>\n";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Supplier<ConfigProperties> config;
+	private final ReportCache cache;
+	private int maxUpload = 50 * 1024 * 1024;
+	private String lowDefault = null;
+	private String highDefault = null;
+
+	/**
+	 * Private constructor, use the start() factory method instead.
+	 */
+	private ReportServer(InetSocketAddress addr, Supplier<ConfigProperties> cfg, long cacheBytes) throws IOException {
+		config = cfg;
+		cache = new ReportCache(cacheBytes);
+		executor = newRequestExecutor();
+		server = HttpServer.create(addr, 0);
+		server.setExecutor(executor);
+		server.createContext("/", this::handleForm);
+		server.createContext("/report", this::handleReport);
+	}
+
+	/**
+	 * Start serving reports on {@code addr}.
+	 *
+	 * @param addr
+	 * 		The address to listen on (port 0 picks a free port)
+	 * @param cfg
+	 * 		Where to get the configuration for each request, the snapshot is
+	 * 		taken once per request
+	 * @param cacheBytes
+	 * 		Maximum total size of the rendered reports kept in the cache (0 disables it)
+	 * @return
+	 * 		The running server
+	 * @throws IOException
+	 * 		Can't bind to the address
+	 */
+	public static ReportServer start(InetSocketAddress addr, Supplier<ConfigProperties> cfg, long cacheBytes) throws IOException {
+		ReportServer rs = new ReportServer(addr, cfg, cacheBytes);
+		rs.server.start();
+		return rs;
+	}
+
+	/**
+	 * Set the threshold values used when a request doesn't give them, taking
+	 * precedence over the configuration file (e.g., from -lt/-ht).
+	 *
+	 * @param low
+	 * 		The low hours threshold (null to use the configuration)
+	 * @param high
+	 * 		The high hours threshold (null to use the configuration)
+	 */
+	public void setThresholds(String low, String high) {
+		lowDefault = low;
+		highDefault = high;
+	}
+
+	/**
+	 * Set the largest upload that will be accepted.
+	 *
+	 * @param bytes
+	 * 		Maximum size of the request body in bytes
+	 */
+	public void setMaxUpload(int bytes) {
+		maxUpload = bytes;
+	}
+
+	/**
+	 * @return
+	 * 		The port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stop accepting requests and shut down the request threads.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return
+	 * 		The total size of the reports in the cache right now
+	 */
+	long getCacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Run the {@code Teams} to {@code Output} pipeline entirely in memory.
+	 *
+	 * @param upload
+	 * 		The bytes of the scanner export
+	 * @param xls
+	 * 		true to create an Excel-97 (.xls) report, false for .xlsx
+	 * @param cfg
+	 * 		The configuration to use for the whole report
+	 * @param low
+	 * 		The low hours threshold
+	 * @param high
+	 * 		The high hours threshold
+	 * @return
+	 * 		The bytes of the finished report workbook
+	 * @throws IOException
+	 * 		Error reading the upload or writing the workbook
+	 * @throws InvalidFormatException
+	 * 		The upload isn't an Excel workbook
+	 */
+	static byte[] renderReport(byte[] upload, boolean xls, ConfigProperties cfg, double low, double high)
+			throws IOException, InvalidFormatException {
+		Teams teams = new Teams(cfg);
+		teams.parseExcel(upload);
+		Output out = Output.create(xls, cfg, low, high);
+		out.createReport(teams);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		out.write(bytes);
+		return bytes.toByteArray();
+	}
+
+	/*
+	 * GET / -- hand back the upload form
+	 */
+	private void handleForm(HttpExchange exchange) throws IOException {
+		try {
+			if ( ! exchange.getRequestURI().getPath().equals("/") ) {
+				sendText(exchange, 404, "Not found");
+				return;
+			}
+			byte[] page = FORM.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, page.length);
+			exchange.getResponseBody().write(page);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * POST /report -- parse the upload and send the report back
+	 */
+	private void handleReport(HttpExchange exchange) throws IOException {
+		try {
+			if ( ! "POST".equals(exchange.getRequestMethod()) ) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				sendText(exchange, 405, "Use POST to upload an export");
+				return;
+			}
+			byte[] body = readBody(exchange.getRequestBody());
+			if ( body == null ) {
+				sendText(exchange, 413, "Upload larger than " + maxUpload + " bytes");
+				return;
+			}
+			String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			byte[] upload = (contentType != null && contentType.startsWith("multipart/form-data"))
+					? extractFilePart(body, contentType)
+					: body;
+			if ( upload == null || upload.length == 0 ) {
+				sendText(exchange, 400, "No export file found in the upload");
+				return;
+			}
+
+			ConfigProperties cfg = config.get();
+			Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			boolean xls = "xls".equalsIgnoreCase(params.get("format"));
+			double low, high;
+			try {
+				low  = Double.parseDouble(threshold(params.get("low"), lowDefault, cfg, "hoursLowThreshold", "3.0"));
+				high = Double.parseDouble(threshold(params.get("high"), highDefault, cfg, "hoursHighThreshold", "7.0"));
+			} catch (NumberFormatException e) {
+				sendText(exchange, 400, "Illegal number format for low/high threshold");
+				return;
+			}
+
+			String key = digest(upload) + ":" + (xls ? "xls" : "xlsx") + ":" + low + ":" + high;
+			byte[] report = cache.get(key, cfg);
+			String hit = "HIT";
+			if ( report == null ) {
+				hit = "MISS";
+				try {
+					report = renderReport(upload, xls, cfg, low, high);
+				} catch (InvalidFormatException | EmptyFileException | IllegalStateException e) {
+					sendText(exchange, 400, "Cannot create report from upload: " + e.getMessage());
+					return;
+				}
+				cache.put(key, cfg, report);
+			}
+			exchange.getResponseHeaders().set("Content-Type", xls ? XLS_TYPE : XLSX_TYPE);
+			exchange.getResponseHeaders().set("Content-Disposition",
+					"attachment; filename=\"TeamsHours." + (xls ? "xls" : "xlsx") + "\"");
+			exchange.getResponseHeaders().set("X-Report-Cache", hit);
+			exchange.sendResponseHeaders(200, report.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(report);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Request Error:  " + e);
+			sendText(exchange, 500, "Error creating report: " + e.getMessage());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Read the whole request body, or return null if it's bigger than maxUpload
+	 */
+	private byte[] readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[64 * 1024];
+		int n;
+		while ( (n = in.read(buf)) > 0 ) {
+			if ( bytes.size() + n > maxUpload )
+				return null;
+			bytes.write(buf, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String threshold(String param, String override, ConfigProperties cfg, String key, String defVal) {
+		if ( param != null ) return param;
+		if ( override != null ) return override;
+		return cfg.getConfig(key, defVal);
+	}
+
+	/*
+	 * Send a short plain-text response, if the headers haven't already gone out
+	 */
+	private static void sendText(HttpExchange exchange, int status, String msg) {
+		try {
+			byte[] text = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(status, text.length);
+			exchange.getResponseBody().write(text);
+		} catch (IOException e) {
+			// Headers already sent or client went away, nothing more to tell it
+		}
+	}
+
+	static Map<String, String> parseQuery(String query) {
+		Map<String, String> params = new HashMap<>();
+		if ( query == null )
+			return params;
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if ( eq > 0 )
+				params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	/**
+	 * Pull the contents of the first file field out of a {@code multipart/form-data} body.
+	 *
+	 * @param body
+	 * 		The full request body
+	 * @param contentType
+	 * 		The request's Content-Type header (holds the boundary)
+	 * @return
+	 * 		The bytes of the uploaded file (or null if there isn't one)
+	 */
+	static byte[] extractFilePart(byte[] body, String contentType) {
+		int b = contentType.indexOf("boundary=");
+		if ( b < 0 )
+			return null;
+		String boundary = contentType.substring(b + 9).split(";")[0].trim();
+		if ( boundary.startsWith("\"") && boundary.endsWith("\"") )
+			boundary = boundary.substring(1, boundary.length() - 1);
+		byte[] delim = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+		int pos = indexOf(body, delim, 0);
+		while ( pos >= 0 ) {
+			int hdrStart = pos + delim.length + 2;		// Skip the CRLF after the boundary
+			int hdrStop = indexOf(body, headerEnd, hdrStart);
+			if ( hdrStop < 0 )
+				return null;
+			String headers = new String(body, hdrStart, hdrStop - hdrStart, StandardCharsets.ISO_8859_1);
+			int dataStart = hdrStop + headerEnd.length;
+			int next = indexOf(body, delim, dataStart);
+			if ( next < 0 )
+				return null;
+			if ( headers.contains("filename=") )
+				return Arrays.copyOfRange(body, dataStart, next - 2);	// Drop the CRLF before the boundary
+			pos = next;
+		}
+		return null;
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern, int from) {
+		outer:
+		for (int i = from; i <= data.length - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if ( data[i + j] != pattern[j] )
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private static String digest(byte[] data) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+			StringBuilder sb = new StringBuilder();
+			for (byte x : hash)
+				sb.append(String.format("%02x", x));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	/*
+	 * One virtual thread per request if this JVM has them (Java 21+), looked up
+	 * reflectively since the project still builds for Java 17.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "report-request");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * LRU cache of rendered reports, bounded by their total size since one
+	 * report from a big upload can be many megabytes.  The entries belong to
+	 * one configuration snapshot, and are dropped when a new snapshot shows up
+	 * (e.g., the configuration file was reloaded) since the layout may differ.
+	 */
+	private static class ReportCache {
+		private final long maxBytes;
+		private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+		private long bytes = 0;
+		private ConfigProperties owner = null;
+
+		ReportCache(long max) {
+			maxBytes = max;
+		}
+
+		synchronized byte[] get(String key, ConfigProperties cfg) {
+			if ( cfg != owner ) {
+				entries.clear();
+				bytes = 0;
+				owner = cfg;
+			}
+			return entries.get(key);
+		}
+
+		/*
+		 * Keep the report, dropping the least recently used ones until they all
+		 * fit.  A report bigger than the whole cache isn't kept.
+		 */
+		synchronized void put(String key, ConfigProperties cfg, byte[] report) {
+			if ( cfg != owner || report.length > maxBytes )
+				return;
+			byte[] old = entries.put(key, report);
+			bytes += report.length - ( old == null ? 0 : old.length );
+			Iterator<byte[]> eldest = entries.values().iterator();
+			while ( bytes > maxBytes ) {
+				bytes -= eldest.next().length;
+				eldest.remove();
+			}
+		}
+
+		synchronized long size() {
+			return bytes;
+		}
+	}
+}
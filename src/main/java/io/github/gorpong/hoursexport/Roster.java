@@ -0,0 +1,369 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+import org.apache.poi.EncryptedDocumentException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+/**
+ * The program's roster:  each student's ID with the name and team they
+ * really have, from a .csv, .xls or .xlsx file kept by the coaches.  With a
+ * roster, an export's rows are counted under the roster's name and team for
+ * their ID rather than whatever the scanner had (see {@code Teams}), and the
+ * IDs that aren't on it are reported.
+ *
+ * The roster is read in to the same kind of file as {@code HoursIndex}:  an
+ * open-addressed hash of the IDs in a buffer, looked up in place, with the
+ * names and teams beside them.  That file is saved in a cache directory
+ * (the temp directory's VBHoursExport, by default), not next to the
+ * coaches' roster, named for the roster and where it is, along with a
+ * checksum of the roster and the column labels used to read it, so later
+ * runs just check the sum and map the saved file instead of reading the
+ * roster again.  A changed roster (or labels) doesn't match and is read
+ * again.
+ *
+ * The saved file is (all ints big-endian):
+ * <pre>
+ *   header       magic, version, checksum (a long), students, ID buckets, string bytes
+ *   students     per student:  ID offset, name offset, team
+ *   ID hash      student number + 1 per bucket, 0 for an empty bucket
+ *   strings      each a 2-byte length then UTF-8, offsets are from here
+ * </pre>
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class Roster {
+	static final int MAGIC = 0x5642524F;	// "VBRO"
+	static final int VERSION = 1;
+	static final int NOT_FOUND = -1;
+	private static final int HEADER = 28;
+	private static final int STUDENT = 12;
+
+	private final ByteBuffer buf;
+	private final int students;
+	private final int idBuckets;
+	private final int idHashAt;
+	private final int stringsAt;
+	private final boolean cached;
+
+	private Roster(ByteBuffer buf, boolean cached) throws IOException {
+		this.buf = buf;
+		this.cached = cached;
+		if ( buf.capacity() < HEADER || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION )
+			throw new IOException("Not a saved roster");
+		students = buf.getInt(16);
+		idBuckets = buf.getInt(20);
+		int stringBytes = buf.getInt(24);
+		idHashAt = HEADER + students * STUDENT;
+		stringsAt = idHashAt + idBuckets * 4;
+		if ( (long) stringsAt + stringBytes != buf.capacity() )
+			throw new IOException("Saved roster is truncated or damaged");
+	}
+
+	/**
+	 * Load a roster, from the file saved for it if that's still up to date.
+	 *
+	 * @param file
+	 * 		The roster, a .csv (with a header line) or a workbook, whose first
+	 * 		sheet is read
+	 * @param cache
+	 * 		The directory to save it in (made if it isn't there)
+	 * @param diagnostics
+	 * 		Where the rows that are skipped are reported
+	 * @param idLabel
+	 * 		The label of the ID column
+	 * @param nameLabel
+	 * 		The label of the name column
+	 * @param teamLabel
+	 * 		The label of the team column
+	 * @return
+	 * 		The roster
+	 * @throws IOException
+	 * 		Can't read the roster
+	 * @throws IllegalStateException
+	 * 		The roster doesn't have the columns
+	 */
+	static Roster load(Path file, Path cache, Diagnostics diagnostics, String idLabel, String nameLabel, String teamLabel)
+			throws IOException {
+		byte[] data = Files.readAllBytes(file);
+		CRC32C crc = new CRC32C();
+		crc.update(data);
+		crc.update(( "\n" + idLabel + "\n" + nameLabel + "\n" + teamLabel ).getBytes(StandardCharsets.UTF_8));
+		long checksum = crc.getValue();
+
+		Path saved = savedAs(file, cache);
+		try (FileChannel channel = FileChannel.open(saved, StandardOpenOption.READ)) {
+			if ( channel.size() >= HEADER && channel.size() <= Integer.MAX_VALUE ) {
+				ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if ( map.getInt(0) == MAGIC && map.getInt(4) == VERSION && map.getLong(8) == checksum )
+					return new Roster(map, true);
+			}
+		} catch (NoSuchFileException e) {
+			// Not saved yet
+		} catch (IOException e) {
+			System.err.println("Cannot read the saved roster " + saved + ", reading the roster again:  " + e.getMessage());
+		}
+
+		List<String[]> entries = new ArrayList<>();		// ID, name, team
+		FileMagic magic = FileMagic.valueOf(new ByteArrayInputStream(data));
+		if ( magic == FileMagic.OOXML || magic == FileMagic.OLE2 )
+			readWorkbook(new ByteArrayInputStream(data), file, diagnostics, idLabel, nameLabel, teamLabel, entries);
+		else
+			readCsv(new String(data, StandardCharsets.UTF_8), file, diagnostics, idLabel, nameLabel, teamLabel, entries);
+		ByteBuffer built = build(entries, checksum);
+		try {
+			Files.createDirectories(cache);
+			HoursIndex.writeAtomically(built.duplicate(), saved);
+		} catch (IOException e) {
+			System.err.println("Cannot save the roster to " + saved + ", it will be read again next time:  " + e);
+		}
+		return new Roster(built, false);
+	}
+
+	/**
+	 * @param file
+	 * 		A roster
+	 * @param cache
+	 * 		The directory it's saved in
+	 * @return
+	 * 		The file it's saved as:  its name, then a hash of where it is, so
+	 * 		two rosters with the same name don't share one
+	 */
+	static Path savedAs(Path file, Path cache) {
+		CRC32C crc = new CRC32C();
+		crc.update(file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+		return cache.resolve(String.format("%s-%08x.idx", file.getFileName(), crc.getValue()));
+	}
+
+	/*
+	 * The first sheet of a roster workbook.  IDs may be text or whole numbers.
+	 */
+	private static void readWorkbook(InputStream in, Path file, Diagnostics diagnostics, String idLabel,
+			String nameLabel, String teamLabel, List<String[]> entries) throws IOException {
+		try (Workbook workbook = WorkbookFactory.create(in)) {
+			Sheet sheet = workbook.getSheetAt(0);
+			Row header = sheet.getRow(0);
+			String[] labels = new String[header == null ? 0 : Math.max(0, header.getLastCellNum())];
+			for (int c = 0; c < labels.length; c++) {
+				Cell cell = header.getCell(c);
+				labels[c] = cell != null && cell.getCellTypeEnum() == CellType.STRING ? cell.getStringCellValue() : null;
+			}
+			int[] cols = columns(labels, file, idLabel, nameLabel, teamLabel);
+			Set<String> seen = new HashSet<>();
+			for (Row row : sheet) {
+				if ( row.getRowNum() == 0 )
+					continue;
+				Cell idCell = row.getCell(cols[0]);
+				String id = CellDecoder.string(idCell);
+				if ( id == null && CellDecoder.team(idCell) != CellDecoder.NOT_A_NUMBER )
+					id = String.valueOf(CellDecoder.team(idCell));
+				add(entries, seen, file, diagnostics, row.getRowNum(), id, CellDecoder.string(row.getCell(cols[1])),
+						CellDecoder.team(row.getCell(cols[2])));
+			}
+		} catch (InvalidFormatException | EncryptedDocumentException e) {
+			throw new IOException("Cannot read the roster " + file + ":  " + e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * A comma-separated roster, with a header line.  Fields may be quoted
+	 * ("Doe, John"), with "" for a quote inside one.
+	 */
+	private static void readCsv(String text, Path file, Diagnostics diagnostics, String idLabel, String nameLabel,
+			String teamLabel, List<String[]> entries) {
+		int at = text.startsWith("\uFEFF") ? 1 : 0;		// A byte order mark from Excel
+		List<String> fields = new ArrayList<>();
+		int[] cols = null;
+		Set<String> seen = new HashSet<>();
+		for (int line = 0; at < text.length(); line++) {
+			at = readRecord(text, at, fields);
+			if ( cols == null ) {
+				cols = columns(fields.toArray(new String[0]), file, idLabel, nameLabel, teamLabel);
+				continue;
+			}
+			if ( fields.size() == 1 && fields.get(0).trim().isEmpty() )
+				continue;		// Blank line
+			String id = field(fields, cols[0]);
+			String team = field(fields, cols[2]);
+			add(entries, seen, file, diagnostics, line, id == null ? null : id.trim(), field(fields, cols[1]),
+					team == null ? CellDecoder.NOT_A_NUMBER : CellDecoder.team(team.trim(), CellType.STRING));
+		}
+		if ( cols == null )
+			throw new IllegalStateException("The roster " + file + " is empty");
+	}
+
+	/*
+	 * Read the record starting at {@code at} in to {@code fields}, returning where the next one starts
+	 */
+	private static int readRecord(String text, int at, List<String> fields) {
+		fields.clear();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		while ( at < text.length() ) {
+			char c = text.charAt(at++);
+			if ( quoted ) {
+				if ( c != '"' )
+					field.append(c);
+				else if ( at < text.length() && text.charAt(at) == '"' )
+					field.append(text.charAt(at++));
+				else
+					quoted = false;
+			} else if ( c == '"' ) {
+				quoted = true;
+			} else if ( c == ',' ) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if ( c == '\n' || c == '\r' ) {
+				if ( c == '\r' && at < text.length() && text.charAt(at) == '\n' )
+					at++;
+				break;
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return at;
+	}
+
+	private static String field(List<String> fields, int col) {
+		return col < fields.size() ? fields.get(col) : null;
+	}
+
+	/*
+	 * Where the ID, name and team columns are among the labels
+	 */
+	private static int[] columns(String[] labels, Path file, String idLabel, String nameLabel, String teamLabel) {
+		String[] want = { idLabel, nameLabel, teamLabel };
+		int[] cols = { -1, -1, -1 };
+		String missing = "";
+		for (int i = 0; i < want.length; i++) {
+			for (int c = 0; c < labels.length && cols[i] < 0; c++)
+				if ( labels[c] != null && labels[c].trim().equals(want[i]) )
+					cols[i] = c;
+			if ( cols[i] < 0 )
+				missing += want[i] + " ";
+		}
+		if ( ! missing.isEmpty() )
+			throw new IllegalStateException("Can't find appropriate columns in the roster " + file + ", missing:  "
+					+ missing.trim());
+		return cols;
+	}
+
+	private static void add(List<String[]> entries, Set<String> seen, Path file, Diagnostics diagnostics, int row,
+			String id, String name, int team) {
+		if ( id == null || id.isEmpty() || name == null || team == CellDecoder.NOT_A_NUMBER ) {
+			diagnostics.report("Parse Error:  roster %s row %d skipped, it needs an ID, name and team",
+					file.getFileName(), row + 1);
+			return;
+		}
+		if ( ! seen.add(id) ) {
+			diagnostics.report("Parse Error:  roster %s row %d skipped, %s is already on the roster",
+					file.getFileName(), row + 1, id);
+			return;
+		}
+		entries.add(new String[] { id, name.trim(), String.valueOf(team) });
+	}
+
+	/*
+	 * Lay out the entries the way they're saved
+	 */
+	private static ByteBuffer build(List<String[]> entries, long checksum) throws IOException {
+		int n = entries.size();
+		int idBuckets = HoursIndex.buckets(n);
+		byte[][] idBytes = new byte[n][];
+		byte[][] nameBytes = new byte[n][];
+		long stringBytes = 0;
+		for (int s = 0; s < n; s++) {
+			idBytes[s] = HoursIndex.utf8(entries.get(s)[0]);
+			nameBytes[s] = HoursIndex.utf8(entries.get(s)[1]);
+			stringBytes += 4 + idBytes[s].length + nameBytes[s].length;
+		}
+		long size = HEADER + (long) n * STUDENT + 4L * idBuckets + stringBytes;
+		if ( size > Integer.MAX_VALUE )
+			throw new IOException("Too many students on the roster");
+		ByteBuffer buf = ByteBuffer.allocate((int) size);
+		buf.putInt(MAGIC).putInt(VERSION).putLong(checksum).putInt(n).putInt(idBuckets).putInt((int) stringBytes);
+
+		int at = 0;
+		for (int s = 0; s < n; s++) {
+			buf.putInt(at);
+			at += 2 + idBytes[s].length;
+			buf.putInt(at);
+			at += 2 + nameBytes[s].length;
+			buf.putInt(Integer.parseInt(entries.get(s)[2]));
+		}
+		int[] idHash = new int[idBuckets];
+		for (int s = 0; s < n; s++) {
+			int b = HoursIndex.mix(entries.get(s)[0].hashCode()) & (idBuckets - 1);
+			while ( idHash[b] != 0 )
+				b = (b + 1) & (idBuckets - 1);
+			idHash[b] = s + 1;
+		}
+		buf.asIntBuffer().put(idHash);
+		buf.position(buf.position() + idBuckets * 4);
+		for (int s = 0; s < n; s++) {
+			buf.putShort((short) idBytes[s].length).put(idBytes[s]);
+			buf.putShort((short) nameBytes[s].length).put(nameBytes[s]);
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * @return
+	 * 		Whether this came from the file saved by an earlier run
+	 */
+	boolean wasCached() {
+		return cached;
+	}
+
+	int size() {
+		return students;
+	}
+
+	/**
+	 * @param id
+	 * 		The student ID
+	 * @return
+	 * 		The student's number on the roster, or {@code NOT_FOUND}
+	 */
+	int find(String id) {
+		int b = HoursIndex.mix(id.hashCode()) & (idBuckets - 1);
+		for (int s; (s = buf.getInt(idHashAt + b * 4)) != 0; b = (b + 1) & (idBuckets - 1)) {
+			if ( HoursIndex.equalsAt(buf, stringsAt + buf.getInt(HEADER + (s - 1) * STUDENT), id) )
+				return s - 1;
+		}
+		return NOT_FOUND;
+	}
+
+	String getId(int student) {
+		return HoursIndex.stringAt(buf, stringsAt + buf.getInt(HEADER + student * STUDENT));
+	}
+	String getName(int student) {
+		return HoursIndex.stringAt(buf, stringsAt + buf.getInt(HEADER + student * STUDENT + 4));
+	}
+	int getTeam(int student) {
+		return buf.getInt(HEADER + student * STUDENT + 8);
+	}
+}
@@ -0,0 +1,169 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Same as {@code XlsxRowReader.read()}, but with the unzipping and XML
+ * decoding of the rows on a thread of its own, so that it overlaps with
+ * whatever the handler does with them (totaling them up) on the calling thread.
+ *
+ * Rows are handed over in batches through a bounded queue.  When the handler
+ * falls behind, the reader blocks on the full queue, so no more than
+ * {@code DEPTH} batches of rows are ever held at once.  If the handler throws,
+ * the reader is stopped and the exception comes out of {@code read()}; an
+ * error on the reader's side comes out of {@code read()} the same way it
+ * would have from {@code XlsxRowReader}.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class RowPipeline {
+	static final int BATCH = 512;		// Rows handed over at a time
+	static final int DEPTH = 8;			// Batches that can be waiting
+
+	/*
+	 * A batch of copied rows, the last one (maybe empty) has {@code last} set
+	 */
+	private static class Batch {
+		final int[] rowNums = new int[BATCH];
+		final String[][] values = new String[BATCH][];
+		final CellType[][] types = new CellType[BATCH][];
+		int size = 0;
+		boolean last = false;
+	}
+
+	private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(DEPTH);
+	private volatile boolean cancelled = false;
+	private Throwable failure = null;		// From the reader, set before the last batch is queued
+
+	private RowPipeline() {
+	}
+
+	/**
+	 * Read the first sheet of {@code file} on another thread, passing each row
+	 * to {@code handler} on this one, in order.
+	 *
+	 * @param file
+	 * 		The .xlsx file
+	 * @param handler
+	 * 		Where to send the rows
+	 * @throws IOException
+	 * 		Error reading the file
+	 * @throws InvalidFormatException
+	 * 		The file isn't an .xlsx workbook
+	 */
+	static void read(File file, XlsxRowReader.RowHandler handler) throws IOException, InvalidFormatException {
+		read(h -> XlsxRowReader.read(file, h), handler);
+	}
+
+	/**
+	 * Same as {@code read(File, RowHandler)} for rows from anywhere, e.g., an
+	 * .xlsx workbook in memory.
+	 *
+	 * @param source
+	 * 		Where the rows come from (read on the other thread)
+	 * @param handler
+	 * 		Where to send the rows
+	 * @throws IOException
+	 * 		Error reading the rows
+	 * @throws InvalidFormatException
+	 * 		The source isn't an .xlsx workbook
+	 */
+	static void read(XlsxRowReader.Source source, XlsxRowReader.RowHandler handler) throws IOException, InvalidFormatException {
+		new RowPipeline().run(source, handler);
+	}
+
+	private void run(XlsxRowReader.Source source, XlsxRowReader.RowHandler handler) throws IOException, InvalidFormatException {
+		Thread reader = new Thread(() -> produce(source), "row-reader");
+		reader.setDaemon(true);
+		reader.start();
+		boolean done = false;
+		try {
+			while ( ! done ) {
+				Batch batch = queue.take();
+				for (int i = 0; i < batch.size; i++)
+					handler.row(batch.rowNums[i], batch.values[i], batch.types[i]);
+				done = batch.last;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading the rows", e);
+		} finally {
+			if ( ! done ) {
+				cancelled = true;
+				queue.clear();		// In case the reader is waiting for room
+			}
+			join(reader);
+		}
+		if ( failure instanceof IOException )
+			throw (IOException) failure;
+		if ( failure instanceof InvalidFormatException )
+			throw (InvalidFormatException) failure;
+		if ( failure instanceof RuntimeException )
+			throw (RuntimeException) failure;
+		if ( failure instanceof Error )
+			throw (Error) failure;
+	}
+
+	/*
+	 * Body of the reader thread
+	 */
+	private void produce(XlsxRowReader.Source source) {
+		Batch[] batch = { new Batch() };
+		try {
+			source.read((rowNum, values, types) -> {
+				Batch b = batch[0];
+				int width = types.length;
+				while ( width > 0 && types[width - 1] == null )
+					width--;
+				b.rowNums[b.size] = rowNum;
+				b.values[b.size] = Arrays.copyOf(values, width);
+				b.types[b.size] = Arrays.copyOf(types, width);
+				if ( ++b.size == BATCH ) {
+					put(b);
+					batch[0] = new Batch();
+				}
+			});
+		} catch (CancellationException e) {
+			return;			// The handler gave up, nobody is waiting for the rest
+		} catch (Throwable t) {
+			failure = t;
+		}
+		batch[0].last = true;
+		try {
+			put(batch[0]);
+		} catch (CancellationException e) {
+			// The handler gave up just as the reading finished
+		}
+	}
+
+	/*
+	 * Queue a batch, waiting for room but giving up if the handler has stopped
+	 */
+	private void put(Batch b) {
+		try {
+			do {
+				if ( cancelled )
+					throw new CancellationException();
+			} while ( ! queue.offer(b, 50, TimeUnit.MILLISECONDS) );
+		} catch (InterruptedException e) {
+			throw new CancellationException();
+		}
+	}
+
+	private static void join(Thread t) {
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
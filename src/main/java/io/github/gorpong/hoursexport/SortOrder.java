@@ -0,0 +1,163 @@
+package io.github.gorpong.hoursexport;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An order for the students in each team's list, from the {@code sortOrder}
+ * setting:  a comma-separated list of keys, each optionally followed by
+ * {@code asc} or {@code desc}, e.g., "hours desc, last, first" or "name" or
+ * "id".  The keys are
+ * <ul>
+ * <li>{@code hours}, most first unless it says {@code asc}</li>
+ * <li>{@code name}, last name then first name</li>
+ * <li>{@code last} and {@code first}, the last or first name alone</li>
+ * <li>{@code id}, numerically for IDs that are all digits (before any others)</li>
+ * <li>{@code team}</li>
+ * </ul>
+ * Anything still tied is put in ID order, so the same export always gives
+ * the same lists, whatever order its rows were in.
+ *
+ * Names are compared the way {@code sortLocale} (default en-US) alphabetizes
+ * them, ignoring case, but through a {@code CollationKey} made once per student, so sorting
+ * a big roster compares the keys' bytes rather than running the locale's
+ * rules for every comparison.  The whole program is ranked once and each
+ * team's list is then a sort of packed (rank, slot) longs, the same as
+ * sorting by seconds.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class SortOrder {
+
+	enum Key { HOURS, NAME, LAST, FIRST, ID, TEAM }
+
+	private final Key[] keys;
+	private final boolean[] descending;
+	private final Locale locale;
+
+	private SortOrder(Key[] keys, boolean[] descending, Locale locale) {
+		this.keys = keys;
+		this.descending = descending;
+		this.locale = locale;
+	}
+
+	/**
+	 * @param spec
+	 * 		The keys, e.g., "hours desc, name"
+	 * @param localeTag
+	 * 		The locale to alphabetize names in (e.g., "en-US"), or null for en-US
+	 * @return
+	 * 		The order
+	 * @throws IllegalArgumentException
+	 * 		A key isn't one of the ones above, or there aren't any
+	 */
+	static SortOrder parse(String spec, String localeTag) {
+		List<Key> keys = new ArrayList<>();
+		List<Boolean> descending = new ArrayList<>();
+		for (String part : spec.split(",")) {
+			String[] words = part.trim().toLowerCase(Locale.ROOT).split("\\s+");
+			if ( words[0].isEmpty() )
+				continue;
+			Key key;
+			try {
+				key = Key.valueOf(words[0].toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("\"" + words[0] + "\" isn't hours, name, last, first, id or team");
+			}
+			boolean desc = key == Key.HOURS;
+			if ( words.length > 2 || words.length == 2 && ! words[1].equals("asc") && ! words[1].equals("desc") )
+				throw new IllegalArgumentException("\"" + part.trim() + "\" should be a key then asc or desc");
+			if ( words.length == 2 )
+				desc = words[1].equals("desc");
+			keys.add(key);
+			descending.add(desc);
+		}
+		if ( keys.isEmpty() )
+			throw new IllegalArgumentException("no keys in \"" + spec + "\"");
+		boolean[] desc = new boolean[descending.size()];
+		for (int i = 0; i < desc.length; i++)
+			desc[i] = descending.get(i);
+		Locale locale = localeTag == null ? Locale.US : Locale.forLanguageTag(localeTag.trim());
+		return new SortOrder(keys.toArray(new Key[0]), desc, locale);
+	}
+
+	/**
+	 * Rank every student in the store.
+	 *
+	 * @param store
+	 * 		The students
+	 * @return
+	 * 		Each slot's place in this order, 0 first
+	 */
+	int[] rank(StudentStore store) {
+		int n = store.size();
+		Collator collator = Collator.getInstance(locale);
+		collator.setStrength(Collator.SECONDARY);		// "ADAMS" and "Adams" are the same name
+		CollationKey[] last = null;
+		CollationKey[] first = null;
+		if ( Arrays.asList(keys).stream().anyMatch(k -> k == Key.NAME || k == Key.LAST || k == Key.FIRST) ) {
+			last = new CollationKey[n];
+			first = new CollationKey[n];
+			for (int s = 0; s < n; s++) {
+				String[] name = Student.splitName(store.getName(s));
+				last[s] = collator.getCollationKey(name[0]);
+				first[s] = collator.getCollationKey(name[1]);
+			}
+		}
+		int[] idRanks = store.idRanks();
+
+		CollationKey[] lastKeys = last;
+		CollationKey[] firstKeys = first;
+		Comparator<Integer> order = (a, b) -> {
+			for (int k = 0; k < keys.length; k++) {
+				int c = compare(keys[k], store, lastKeys, firstKeys, idRanks, a, b);
+				if ( c != 0 )
+					return descending[k] ? -c : c;
+			}
+			return Integer.compare(idRanks[a], idRanks[b]);
+		};
+		Integer[] slots = new Integer[n];
+		for (int s = 0; s < n; s++)
+			slots[s] = s;
+		if ( n >= StudentStore.PARALLEL_SORT )
+			Arrays.parallelSort(slots, order);
+		else
+			Arrays.sort(slots, order);
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++)
+			rank[slots[i]] = i;
+		return rank;
+	}
+
+	private static int compare(Key key, StudentStore store, CollationKey[] last, CollationKey[] first, int[] idRanks,
+			int a, int b) {
+		switch (key) {
+		case HOURS:
+			return Integer.compare(store.getSeconds(a), store.getSeconds(b));
+		case NAME:
+			int c = last[a].compareTo(last[b]);
+			return c != 0 ? c : first[a].compareTo(first[b]);
+		case LAST:
+			return last[a].compareTo(last[b]);
+		case FIRST:
+			return first[a].compareTo(first[b]);
+		case TEAM:
+			return Integer.compare(store.getTeam(a), store.getTeam(b));
+		default:
+			return Integer.compare(idRanks[a], idRanks[b]);
+		}
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < keys.length; k++)
+			sb.append(k > 0 ? ", " : "").append(keys[k].name().toLowerCase(Locale.ROOT))
+					.append(descending[k] ? " desc" : "");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,340 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Add up each student's hours with a cap on the heap used to do it.
+ * Rows are totaled in memory until the estimated size of the totals goes over
+ * the budget, then the totals are sorted by ID, hash-partitioned by ID and
+ * written out as one run file per partition, and the in-memory totals start
+ * again empty.  {@code merge()} merges each partition's runs back together,
+ * giving one final {@code Entry} per student.
+ *
+ * Each entry remembers the row where the student was first seen so that the
+ * caller can put things back in the same order a straight in-memory pass
+ * would have.  Rows are run through the {@code ExportValidator} as they're
+ * added, and the partial totals are checked against each other as they're
+ * merged, so a student's name and team are compared across spills too.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class SpillingAggregator implements Closeable {
+	static final int PARTITIONS = 16;
+	private static final int ENTRY_OVERHEAD = 160;	// Rough bytes for an Entry, its map node and arrays
+	private static final int BUFFER = 8192;
+
+	private final long budget;
+	private final Path dir;
+	private final ExportValidator validator;
+	private final HashMap<String, Entry> totals = new HashMap<>();
+	private final List<List<Path>> runs = new ArrayList<>();
+	private long estimated = 0;
+	private int spills = 0;
+	private long spilledBytes = 0;
+
+	/**
+	 * The totals for one student.
+	 */
+	static class Entry {
+		final String id;
+		String name;
+		int team;
+		int seconds;
+		DailySeconds daily;		// Null until a row with a date
+		int firstRow;
+
+		Entry(String id, String name, int team, int firstRow) {
+			this.id = id;
+			this.name = name;
+			this.team = team;
+			this.firstRow = firstRow;
+		}
+
+		/*
+		 * Fold a later partial total for the same student in to this one, this
+		 * one's name and team are kept.
+		 */
+		void merge(Entry that, ExportValidator validator) {
+			validator.check(that.firstRow, id, that.name, that.team, 0, DailySeconds.NO_DAY, name, team);
+			seconds += that.seconds;
+			if ( that.daily != null ) {
+				if ( daily == null )
+					daily = new DailySeconds();
+				for (int i = 0; i < that.daily.size(); i++) {
+					int day = that.daily.getDay(i);
+					validator.checkDay(that.firstRow, id, day, daily.add(day, that.daily.getSeconds(i)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param budget
+	 * 		Estimated bytes of totals to hold in memory before spilling to disk
+	 * @param dir
+	 * 		Where to create the run files
+	 * @param validator
+	 * 		Checks each row and the merged totals
+	 */
+	SpillingAggregator(long budget, Path dir, ExportValidator validator) {
+		this.budget = budget;
+		this.dir = dir;
+		this.validator = validator;
+		for (int p = 0; p < PARTITIONS; p++)
+			runs.add(new ArrayList<>());
+	}
+
+	/**
+	 * Add the seconds from one row of the export, {@code day} is
+	 * {@code DailySeconds.NO_DAY} if the row has no date.
+	 *
+	 * @return
+	 * 		false if the validator left the row out
+	 * @throws IOException
+	 * 		Error writing out a run
+	 */
+	boolean add(int row, int team, String name, String id, int seconds, int day) throws IOException {
+		Entry e = totals.get(id);
+		int home = validator.check(row, id, name, team, seconds, day,
+				e == null ? null : e.name, e == null ? ExportValidator.NO_TEAM : e.team);
+		if ( home == ExportValidator.NO_TEAM )
+			return false;
+		if ( e == null ) {
+			e = new Entry(id, name, home, row);
+			totals.put(id, e);
+			estimated += ENTRY_OVERHEAD + 2L * (id.length() + name.length());
+		}
+		e.seconds += seconds;
+		if ( day != DailySeconds.NO_DAY ) {
+			if ( e.daily == null ) {
+				e.daily = new DailySeconds();
+				estimated += 64;
+			}
+			int days = e.daily.size();
+			validator.checkDay(row, id, day, e.daily.add(day, seconds));
+			if ( e.daily.size() > days )
+				estimated += 8;
+		}
+		if ( estimated > budget )
+			spill();
+		return true;
+	}
+
+	/*
+	 * Write the in-memory totals out as one sorted run per partition and start over
+	 */
+	private void spill() throws IOException {
+		if ( totals.isEmpty() )
+			return;
+		Entry[] sorted = totals.values().toArray(new Entry[0]);
+		Arrays.sort(sorted, Comparator.comparing(e -> e.id));
+		totals.clear();
+		estimated = 0;
+
+		DataOutputStream[] outs = new DataOutputStream[PARTITIONS];
+		try {
+			for (Entry e : sorted) {
+				int p = partition(e.id);
+				if ( outs[p] == null ) {
+					Path run = Files.createTempFile(dir, "vbhours-p" + p + "-", ".run");
+					runs.get(p).add(run);
+					outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER));
+				}
+				write(outs[p], e);
+			}
+		} finally {
+			for (DataOutputStream out : outs) {
+				if ( out != null ) {
+					spilledBytes += out.size();
+					out.close();
+				}
+			}
+		}
+		spills++;
+	}
+
+	static int partition(String id) {
+		return (id.hashCode() & 0x7fffffff) % PARTITIONS;
+	}
+
+	private static void write(DataOutputStream out, Entry e) throws IOException {
+		out.writeUTF(e.id);
+		out.writeUTF(e.name);
+		out.writeInt(e.team);
+		out.writeInt(e.seconds);
+		out.writeInt(e.firstRow);
+		int days = e.daily == null ? 0 : e.daily.size();
+		out.writeInt(days);
+		for (int i = 0; i < days; i++) {
+			out.writeInt(e.daily.getDay(i));
+			out.writeInt(e.daily.getSeconds(i));
+		}
+	}
+
+	private static Entry read(DataInputStream in) throws IOException {
+		String id;
+		try {
+			id = in.readUTF();
+		} catch (EOFException eof) {
+			return null;
+		}
+		Entry e = new Entry(id, in.readUTF(), in.readInt(), 0);
+		e.seconds = in.readInt();
+		e.firstRow = in.readInt();
+		int days = in.readInt();
+		if ( days > 0 ) {
+			e.daily = new DailySeconds();
+			for (int i = 0; i < days; i++)
+				e.daily.add(in.readInt(), in.readInt());
+		}
+		return e;
+	}
+
+	/*
+	 * One open run file and the entry at its head
+	 */
+	private static class RunReader {
+		final DataInputStream in;
+		Entry head;
+
+		RunReader(Path run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER));
+			head = read(in);
+		}
+
+		void advance() throws IOException {
+			head = read(in);
+		}
+	}
+
+	/**
+	 * Hand each student's final totals to {@code sink}.  If nothing was ever
+	 * spilled this is just the in-memory totals, otherwise what's left in memory
+	 * is spilled too and each partition's runs are merged by ID.
+	 *
+	 * @param sink
+	 * 		Gets one {@code Entry} per student
+	 * @throws IOException
+	 * 		Error reading the runs
+	 */
+	void merge(Consumer<Entry> sink) throws IOException {
+		if ( spills == 0 ) {
+			totals.values().forEach(sink);
+			return;
+		}
+		spill();
+		for (List<Path> partition : runs)
+			mergePartition(partition, sink);
+	}
+
+	private void mergePartition(List<Path> partition, Consumer<Entry> sink) throws IOException {
+		PriorityQueue<RunReader> heads = new PriorityQueue<>(Math.max(1, partition.size()),
+				Comparator.comparing((RunReader r) -> r.head.id));
+		try {
+			for (Path run : partition) {
+				RunReader reader = new RunReader(run);
+				if ( reader.head != null )
+					heads.add(reader);
+				else
+					reader.in.close();
+			}
+			List<Entry> parts = new ArrayList<>();
+			while ( ! heads.isEmpty() ) {
+				RunReader first = heads.poll();
+				parts.add(first.head);
+				advance(first, heads);
+				while ( ! heads.isEmpty() && heads.peek().head.id.equals(parts.get(0).id) ) {
+					RunReader next = heads.poll();
+					parts.add(next.head);
+					advance(next, heads);
+				}
+				if ( parts.size() > 1 )		// Fold them together in the order they were seen
+					parts.sort(Comparator.comparingInt((Entry e) -> e.firstRow));
+				Entry e = parts.get(0);
+				for (int i = 1; i < parts.size(); i++)
+					e.merge(parts.get(i), validator);
+				parts.clear();
+				sink.accept(e);
+			}
+		} finally {
+			for (RunReader r : heads)
+				r.in.close();
+		}
+	}
+
+	private static void advance(RunReader reader, PriorityQueue<RunReader> heads) throws IOException {
+		reader.advance();
+		if ( reader.head != null )
+			heads.add(reader);
+		else
+			reader.in.close();
+	}
+
+	/**
+	 * @return
+	 * 		How many times the totals were written out to disk
+	 */
+	int getSpills() {
+		return spills;
+	}
+
+	/**
+	 * @return
+	 * 		The total size of the run files written
+	 */
+	long getSpilledBytes() {
+		return spilledBytes;
+	}
+
+	/**
+	 * Remove the run files.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (List<Path> partition : runs) {
+			for (Path run : partition)
+				Files.deleteIfExists(run);
+			partition.clear();
+		}
+		totals.clear();
+	}
+
+	/**
+	 * Parse a size such as {@code 65536}, {@code 512K}, {@code 64M} or {@code 1G}.
+	 *
+	 * @param size
+	 * 		The size, with an optional K/M/G suffix
+	 * @return
+	 * 		The number of bytes
+	 * @throws NumberFormatException
+	 * 		Not a size
+	 */
+	static long parseSize(String size) {
+		String s = size.trim().toUpperCase();
+		long scale = 1;
+		if ( s.endsWith("K") ) scale = 1L << 10;
+		else if ( s.endsWith("M") ) scale = 1L << 20;
+		else if ( s.endsWith("G") ) scale = 1L << 30;
+		if ( scale > 1 )
+			s = s.substring(0, s.length() - 1).trim();
+		long bytes = Long.parseLong(s) * scale;
+		if ( bytes <= 0 )
+			throw new NumberFormatException("Size must be positive:  " + size);
+		return bytes;
+	}
+}
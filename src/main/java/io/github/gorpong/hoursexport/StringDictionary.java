@@ -0,0 +1,65 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Gives each distinct string an int, in the order they're first added, so
+ * the rest of the code can carry the int around instead of the string and
+ * only has to hash the string once.  The student IDs and names are added as
+ * the export is read; the report writer uses the same ints to put each
+ * string in a .xlsx shared-strings table only once.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class StringDictionary {
+	private final HashMap<String, Integer> refs = new HashMap<>();
+	private String[] strings = new String[128];
+	private int size = 0;
+
+	/**
+	 * @param s
+	 * 		The string to add
+	 * @return
+	 * 		Its int, the one it already had if it's been added before
+	 */
+	int intern(String s) {
+		Integer ref = refs.get(s);
+		if ( ref != null )
+			return ref;
+		if ( size == strings.length )
+			strings = Arrays.copyOf(strings, size * 2);
+		strings[size] = s;
+		refs.put(s, size);
+		return size++;
+	}
+
+	/**
+	 * @param s
+	 * 		The string to look for
+	 * @return
+	 * 		Its int, or -1 if it hasn't been added
+	 */
+	int find(String s) {
+		Integer ref = refs.get(s);
+		return ref == null ? -1 : ref;
+	}
+
+	/**
+	 * @param ref
+	 * 		An int from {@code intern()}
+	 * @return
+	 * 		The string for it
+	 */
+	String get(int ref) {
+		return strings[ref];
+	}
+
+	/**
+	 * @return
+	 * 		How many distinct strings there are (the ints are 0 to size() - 1)
+	 */
+	int size() {
+		return size;
+	}
+}
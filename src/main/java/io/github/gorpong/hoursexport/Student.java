@@ -1,6 +1,5 @@
 package io.github.gorpong.hoursexport;
 
-import java.util.HashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -22,7 +21,8 @@ public class Student implements Comparable<Student> {
 	 * Class variables
 	 */
 	
-	private static HashMap<String, Student> _students = new HashMap<String, Student>();
+	private static final Pattern REGEX_COMMA = Pattern.compile(".*, .*");
+	private static final Pattern REGEX_SPACE = Pattern.compile(".* .*");
 	
 	/*
 	 * Instance variables
@@ -30,18 +30,20 @@ public class Student implements Comparable<Student> {
 	private String lname;			// Last name
 	private String fname;			// First name
 	private String id;				// ID number (e.g., their school ID number)
-	private double hours = 0.0;		// The number of hours worked
+	private int seconds = 0;		// The time worked, in whole seconds so totals are exact
+	private DailySeconds daily;		// Seconds by day, null if the export has no dates
+	private int idRef = -1;			// The ID's and name's ints in the StringDictionary they came
+	private int nameRef = -1;		// from, -1 if they didn't
+	private StringDictionary strings;	// That dictionary, null if they didn't
 	
 		
 	/**
-	 * Private constructor, use the getStudent() factory method instead.
+	 * Private constructor, the others fill in the totals.
 	 * 
 	 * @param name
 	 * 		The student's full name (or whatever is in the file)
 	 * @param id
 	 * 		The student's ID (this is the only value on parent's report)
-	 * @param hours
-	 * 		The hours for that week.
 	 */
 /*
 	private Student(String name, String id, double hours) {
@@ -61,48 +63,100 @@ public class Student implements Comparable<Student> {
 		}
 	}
 */
-	private Student(String name, String id, double hours) {
-	    Pattern regexComma = Pattern.compile(".*, .*");
-	    Pattern regexSpace = Pattern.compile(".* .*");
+	private Student(String name, String id) {
 	    this.id = id;
-	    this.hours = hours;
-	    if (regexComma.matcher(name).matches()) {
+	    String[] parts = splitName(name);
+	    this.lname = parts[0];
+	    this.fname = parts[1];
+	}
+
+	/**
+	 * Split a name the way it is in the file in to its last and first names,
+	 * from "Last, First" or "First Last" (anything else is all last name).
+	 * 
+	 * @param name
+	 * 		The student's full name (or whatever is in the file)
+	 * @return
+	 * 		{ last, first }
+	 */
+	static String[] splitName(String name) {
+	    if (REGEX_COMMA.matcher(name).matches()) {
 	        String[] parts = name.split(", ");
-	        this.lname = parts[0].trim();
-	        this.fname = parts[1].trim();
-	    } else if (regexSpace.matcher(name).matches()) {
+	        return new String[] { parts[0].trim(), parts[1].trim() };
+	    } else if (REGEX_SPACE.matcher(name).matches()) {
 	        String[] parts = name.split(" ");
-	        this.lname = parts[1].trim();
-	        this.fname = parts[0].trim();
-	    } else {
-	        this.lname = name;
-	        this.fname = "";
+	        return new String[] { parts[1].trim(), parts[0].trim() };
 	    }
+	    return new String[] { name, "" };
+	}
+
+	/**
+	 * A name the way it is in the file, the way the report shows it (the same
+	 * as {@code getName()}).
+	 * 
+	 * @param name
+	 * 		The student's full name (or whatever is in the file)
+	 * @return
+	 * 		"Last, First"
+	 */
+	static String formatName(String name) {
+	    String[] parts = splitName(name);
+	    return parts[0] + ", " + parts[1];
 	}
 	
 	/**
-	 * Factory method to get a Student object, if one for that id exists, then add
-	 * the hours to its existing hours, otherwise create a new one, and then return it.
+	 * A student with their totals already worked out, e.g., as a view of one
+	 * slot of a {@code StudentStore}.
 	 * 
 	 * @param name
-	 * 		The name of the student
+	 * 		The student's full name (or whatever is in the file)
 	 * @param id
-	 * 		The ID of the student (must be unique across all Student instances)
+	 * 		The student's ID
+	 * @param seconds
+	 * 		Their total seconds
+	 * @param daily
+	 * 		Their seconds by day, or null
+	 */
+	Student(String name, String id, int seconds, DailySeconds daily) {
+		this(name, id);
+		this.seconds = seconds;
+		this.daily = daily;
+	}
+
+	/**
+	 * Same as {@code Student(name, id, seconds, daily)}, also noting the
+	 * {@code StringDictionary} the ID and name came from and their ints in it.
+	 */
+	Student(String name, String id, int seconds, DailySeconds daily, StringDictionary strings, int idRef, int nameRef) {
+		this(name, id, seconds, daily);
+		this.strings = strings;
+		this.idRef = idRef;
+		this.nameRef = nameRef;
+	}
+
+	/**
+	 * Convert hours from the export to whole seconds, to the nearest second
+	 * (which only takes up the floating point error, hours to two places are
+	 * always a whole number of seconds).
+	 * 
 	 * @param hours
-	 * 		The hours for that particular time period
+	 * 		The (fractional) hours
 	 * @return
-	 * 		The previously created/newly created Student object for that person
+	 * 		The seconds
 	 */
-	public static Student getStudent(String name, String id, double hours) {
-		Student person;
-		if ( _students.containsKey(id) ) {
-			person = _students.get(id);
-			person.hours += hours;
-		} else {
-			person = new Student(name, id, hours);
-			_students.put(id,  person);
-		}
-		return person;
+	static int toSeconds(double hours) {
+		return (int) Math.round(hours * 3600.0);
+	}
+
+	/*
+	 * Fold in a daily breakdown whose seconds are already in the total
+	 */
+	void addDaily(DailySeconds days) {
+		if ( days == null || days.size() == 0 )
+			return;
+		if ( daily == null )
+			daily = new DailySeconds();
+		daily.addAll(days);
 	}
 
 	public String getName() {
@@ -112,7 +166,27 @@ public class Student implements Comparable<Student> {
 		return id;
 	}
 	public double getHours() {
-		return hours;
+		return seconds / 3600.0;
+	}
+	public int getSeconds() {
+		return seconds;
+	}
+	int getIdRef() {
+		return idRef;
+	}
+	int getNameRef() {
+		return nameRef;
+	}
+	StringDictionary getStrings() {
+		return strings;
+	}
+
+	/**
+	 * @return
+	 * 		The seconds broken down by day, or null if the export had no dates
+	 */
+	public DailySeconds getDaily() {
+		return daily;
 	}
 	
 	/**
@@ -122,18 +196,15 @@ public class Student implements Comparable<Student> {
 	 * have them sorted in most hours to least hours.
 	 */
 	public int compareTo (Student that) {
-		if ( this.hours > that.hours ) return -1;
-		else if ( this.hours == that.hours ) return 0;
+		if ( this.seconds > that.seconds ) return -1;
+		else if ( this.seconds == that.seconds ) return 0;
 		else return 1;
 	}
 
-	public static void clearStudents() {
-		_students.clear();
-	}
 	/**
 	 * Pretty-print the structure in the form:  [firstname,lastname:id:hours]
 	 */
 	public String toString() {
-		return "[" + fname + " " + lname + ":" + id + ":" + hours + "]";
+		return "[" + fname + " " + lname + ":" + id + ":" + getHours() + "]";
 	}
 }
\ No newline at end of file
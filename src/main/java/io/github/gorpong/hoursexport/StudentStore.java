@@ -0,0 +1,411 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * The students read from an export, kept column-wise:  each student is a slot
+ * number (given out in the order they're first seen) in to parallel arrays of
+ * ID, name, team and seconds, rather than an object of its own.  The IDs and
+ * names are kept as their ints in a {@code StringDictionary}, which is also
+ * how a student is found by ID.  The only per-student objects are the
+ * dictionary's, and a {@code DailySeconds} if the export has dates.
+ *
+ * The teams and each team's order by seconds come from sorting packed
+ * {@code long} keys (the sort value in the high half, the slot in the low
+ * half).  For the order by seconds the low half is the student's place in
+ * ID order instead, so students with the same seconds are in ID order and
+ * the same export gives the same lists whatever order its rows were in.
+ * Large sorts are done with {@code Arrays.parallelSort}.  For only the top or
+ * bottom few the same keys go through a heap holding just that many, rather
+ * than sorting them all.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class StudentStore {
+	static final int PARALLEL_SORT = 1 << 13;	// Below this many keys a plain sort is quicker
+
+	private final StringDictionary strings = new StringDictionary();
+	private int[] slotOfRef = new int[128];		// By dictionary int, -1 unless it's an ID
+	private int[] ids = new int[64];			// Dictionary ints
+	private int[] names = new int[64];
+	private int[] teams = new int[64];
+	private int[] seconds = new int[64];
+	private DailySeconds[] daily = new DailySeconds[64];	// Null until a row with a date
+	private int size = 0;
+
+	StudentStore() {
+		Arrays.fill(slotOfRef, -1);
+	}
+
+	// Slots grouped by team, rebuilt when students have been added since
+	private int grouped = -1;
+	private int[] teamList;			// The distinct teams, in order
+	private int[] teamStart;		// Where each team's slots start in byTeam (one extra at the end)
+	private int[] byTeam;
+
+	// The slots in ID order and each slot's place in it, rebuilt the same way
+	private int idsRanked = -1;
+	private int[] idOrder;
+	private int[] idRank;
+
+	/**
+	 * @param id
+	 * 		The student ID
+	 * @return
+	 * 		The student's slot, or -1 if they haven't been added
+	 */
+	int slotOf(String id) {
+		int ref = strings.find(id);
+		return ref < 0 || ref >= slotOfRef.length ? -1 : slotOfRef[ref];
+	}
+
+	/**
+	 * Add a student with no seconds yet.
+	 *
+	 * @param id
+	 * 		The student ID, which must not already be in the store
+	 * @param name
+	 * 		The student's name as it is in the export
+	 * @param team
+	 * 		The team the student is counted under
+	 * @return
+	 * 		The student's slot
+	 */
+	int add(String id, String name, int team) {
+		if ( size == ids.length ) {
+			int grow = size * 2;
+			ids = Arrays.copyOf(ids, grow);
+			names = Arrays.copyOf(names, grow);
+			teams = Arrays.copyOf(teams, grow);
+			seconds = Arrays.copyOf(seconds, grow);
+			daily = Arrays.copyOf(daily, grow);
+		}
+		ids[size] = strings.intern(id);
+		names[size] = strings.intern(name);
+		teams[size] = team;
+		if ( strings.size() > slotOfRef.length ) {
+			int from = slotOfRef.length;
+			slotOfRef = Arrays.copyOf(slotOfRef, Math.max(strings.size(), from * 2));
+			Arrays.fill(slotOfRef, from, slotOfRef.length, -1);
+		}
+		slotOfRef[ids[size]] = size;
+		return size++;
+	}
+
+	/**
+	 * Add seconds to a student's total, and to {@code day} in their daily
+	 * breakdown.
+	 *
+	 * @param slot
+	 * 		The student's slot
+	 * @param secs
+	 * 		The seconds to add
+	 * @param day
+	 * 		The day the seconds were on (a {@code LocalDate.toEpochDay()}), or
+	 * 		{@code DailySeconds.NO_DAY}
+	 * @return
+	 * 		The student's seconds for {@code day}, now (their total if there's no day)
+	 */
+	int addSeconds(int slot, int secs, int day) {
+		seconds[slot] += secs;
+		if ( day == DailySeconds.NO_DAY )
+			return seconds[slot];
+		if ( daily[slot] == null )
+			daily[slot] = new DailySeconds();
+		return daily[slot].add(day, secs);
+	}
+
+	/*
+	 * Set a student's daily breakdown, for one that's already been totaled
+	 */
+	void setDaily(int slot, DailySeconds days) {
+		daily[slot] = days;
+	}
+
+	/*
+	 * Renumber the slots in order of {@code seen} (by slot, all different), for
+	 * students that were added out of the order they were first seen in
+	 */
+	void reorder(int[] seen) {
+		long[] keys = new long[size];
+		for (int slot = 0; slot < size; slot++)
+			keys[slot] = ((long) seen[slot] << 32) | slot;
+		sort(keys);
+		int[] order = slotsOf(keys);
+		int[] oldIds = ids, oldNames = names, oldTeams = teams, oldSeconds = seconds;
+		DailySeconds[] oldDaily = daily;
+		ids = new int[oldIds.length];
+		names = new int[oldIds.length];
+		teams = new int[oldIds.length];
+		seconds = new int[oldIds.length];
+		daily = new DailySeconds[oldIds.length];
+		for (int slot = 0; slot < size; slot++) {
+			int from = order[slot];
+			ids[slot] = oldIds[from];
+			names[slot] = oldNames[from];
+			teams[slot] = oldTeams[from];
+			seconds[slot] = oldSeconds[from];
+			daily[slot] = oldDaily[from];
+			slotOfRef[ids[slot]] = slot;
+		}
+		grouped = -1;
+		idsRanked = -1;
+	}
+
+	int size() {
+		return size;
+	}
+	String getId(int slot) {
+		return strings.get(ids[slot]);
+	}
+	String getName(int slot) {
+		return strings.get(names[slot]);
+	}
+	/*
+	 * The ID's and name's ints in the dictionary
+	 */
+	int getIdRef(int slot) {
+		return ids[slot];
+	}
+	int getNameRef(int slot) {
+		return names[slot];
+	}
+	StringDictionary getStrings() {
+		return strings;
+	}
+	int getTeam(int slot) {
+		return teams[slot];
+	}
+	int getSeconds(int slot) {
+		return seconds[slot];
+	}
+	DailySeconds getDaily(int slot) {
+		return daily[slot];
+	}
+
+	/**
+	 * @return
+	 * 		The distinct teams, in ascending order
+	 */
+	int[] getTeams() {
+		group();
+		return teamList.clone();
+	}
+
+	/**
+	 * The slots of the students on {@code team}, most seconds to least, and in
+	 * ID order (see {@code idRanks}) when the seconds are the same.
+	 *
+	 * @param team
+	 * 		The team
+	 * @return
+	 * 		The slots, or null if there's no such team
+	 */
+	int[] sortedBySeconds(int team) {
+		group();
+		int at = Arrays.binarySearch(teamList, team);
+		if ( at < 0 )
+			return null;
+		int[] rank = idRanks();
+		int from = teamStart[at];
+		int count = teamStart[at + 1] - from;
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			int slot = byTeam[from + i];
+			keys[i] = ((long) -seconds[slot] << 32) | rank[slot];
+		}
+		sort(keys);
+		return slotsOfRanks(keys);
+	}
+
+	/**
+	 * The slots of the students on {@code team} in the order of their ranks
+	 * (e.g., from a {@code SortOrder}).
+	 *
+	 * @param team
+	 * 		The team
+	 * @param rank
+	 * 		Each slot's place in the order, all different
+	 * @return
+	 * 		The slots, or null if there's no such team
+	 */
+	int[] sortedByRank(int team, int[] rank) {
+		group();
+		int at = Arrays.binarySearch(teamList, team);
+		if ( at < 0 )
+			return null;
+		int from = teamStart[at];
+		int count = teamStart[at + 1] - from;
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			int slot = byTeam[from + i];
+			keys[i] = ((long) rank[slot] << 32) | slot;
+		}
+		sort(keys);
+		return slotsOf(keys);
+	}
+
+	/**
+	 * The {@code k} students with the most (or fewest) seconds across every
+	 * team, the same order {@code sortedBySeconds} would give (fewest first
+	 * for the bottom, still in ID order on ties).
+	 *
+	 * @param k
+	 * 		How many students
+	 * @param most
+	 * 		true for the most seconds, false for the fewest
+	 * @return
+	 * 		The slots, up to {@code k} of them
+	 */
+	int[] ranked(int k, boolean most) {
+		return ranked(null, 0, size, k, most);
+	}
+
+	/**
+	 * Same as {@code ranked(k, most)}, for the students on one team.
+	 *
+	 * @return
+	 * 		The slots, or null if there's no such team
+	 */
+	int[] ranked(int team, int k, boolean most) {
+		group();
+		int at = Arrays.binarySearch(teamList, team);
+		if ( at < 0 )
+			return null;
+		return ranked(byTeam, teamStart[at], teamStart[at + 1], k, most);
+	}
+
+	/*
+	 * Keep the k smallest keys of the slots from..to (of {@code slotList}, or the
+	 * slots themselves if it's null) in a max-heap, only boxing a key when it
+	 * gets in.
+	 */
+	private int[] ranked(int[] slotList, int from, int to, int k, boolean most) {
+		if ( k <= 0 )
+			return new int[0];
+		int[] rank = idRanks();
+		PriorityQueue<Long> heap = new PriorityQueue<>(k, Collections.reverseOrder());
+		for (int i = from; i < to; i++) {
+			int slot = slotList == null ? i : slotList[i];
+			long key = ((long) ( most ? -seconds[slot] : seconds[slot] ) << 32) | rank[slot];
+			if ( heap.size() < k )
+				heap.add(key);
+			else if ( key < heap.peek() ) {
+				heap.poll();
+				heap.add(key);
+			}
+		}
+		long[] keys = new long[heap.size()];
+		for (int i = keys.length - 1; i >= 0; i--)
+			keys[i] = heap.poll();
+		return slotsOfRanks(keys);
+	}
+
+	/**
+	 * Each student's place in ID order:  IDs that are all digits by their
+	 * value, before any others, which are in {@code String} order.  This is
+	 * the tie-breaker for the lists by seconds and for a {@code SortOrder}.
+	 *
+	 * @return
+	 * 		By slot, 0 for the first ID (all different)
+	 */
+	int[] idRanks() {
+		if ( idsRanked == size )
+			return idRank;
+		long[] numeric = new long[size];		// -1 if the ID isn't all digits
+		Integer[] slots = new Integer[size];
+		for (int slot = 0; slot < size; slot++) {
+			numeric[slot] = numeric(getId(slot));
+			slots[slot] = slot;
+		}
+		Comparator<Integer> byId = (a, b) -> {
+			if ( numeric[a] >= 0 && numeric[b] >= 0 && numeric[a] != numeric[b] )
+				return Long.compare(numeric[a], numeric[b]);
+			if ( ( numeric[a] >= 0 ) != ( numeric[b] >= 0 ) )
+				return numeric[a] >= 0 ? -1 : 1;		// Numbers first
+			return getId(a).compareTo(getId(b));
+		};
+		if ( size >= PARALLEL_SORT )
+			Arrays.parallelSort(slots, byId);
+		else
+			Arrays.sort(slots, byId);
+		idOrder = new int[size];
+		idRank = new int[size];
+		for (int i = 0; i < size; i++) {
+			idOrder[i] = slots[i];
+			idRank[slots[i]] = i;
+		}
+		idsRanked = size;
+		return idRank;
+	}
+
+	/*
+	 * The ID as a number, or -1 if it isn't all digits (or is too long to be a long)
+	 */
+	private static long numeric(String id) {
+		if ( id.isEmpty() || id.length() > 18 )
+			return -1;
+		long n = 0;
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if ( c < '0' || c > '9' )
+				return -1;
+			n = n * 10 + ( c - '0' );
+		}
+		return n;
+	}
+
+	/*
+	 * Sort the slots by team (then slot), and note where each team starts
+	 */
+	private void group() {
+		if ( grouped == size )
+			return;
+		long[] keys = new long[size];
+		for (int slot = 0; slot < size; slot++)
+			keys[slot] = ((long) teams[slot] << 32) | slot;
+		sort(keys);
+		byTeam = slotsOf(keys);
+		int distinct = 0;
+		int[] starts = new int[size + 1];
+		int[] list = new int[size];
+		for (int i = 0; i < size; i++) {
+			int team = teams[byTeam[i]];
+			if ( distinct == 0 || list[distinct - 1] != team ) {
+				list[distinct] = team;
+				starts[distinct++] = i;
+			}
+		}
+		starts[distinct] = size;
+		teamList = Arrays.copyOf(list, distinct);
+		teamStart = Arrays.copyOf(starts, distinct + 1);
+		grouped = size;
+	}
+
+	private static void sort(long[] keys) {
+		if ( keys.length >= PARALLEL_SORT )
+			Arrays.parallelSort(keys);
+		else
+			Arrays.sort(keys);
+	}
+
+	private static int[] slotsOf(long[] keys) {
+		int[] slots = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			slots[i] = (int) keys[i];
+		return slots;
+	}
+
+	/*
+	 * The slots of keys whose low half is an ID rank
+	 */
+	private int[] slotsOfRanks(long[] keys) {
+		int[] slots = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			slots[i] = idOrder[(int) keys[i]];
+		return slots;
+	}
+}
@@ -1,9 +1,15 @@
 package io.github.gorpong.hoursexport;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.poi.EncryptedDocumentException;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
@@ -13,9 +19,20 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 /**
  * Scan the Excel hours class export file and build structure of People to Teams.
@@ -26,7 +43,10 @@ import java.io.IOException;
  * @author Gordon Galligher - gorpong@gmail.com
  */
 public class Teams {
-	private HashMap<Integer, ArrayList<Student>> _teams = new HashMap<>();
+	private StudentStore store = new StudentStore();
+	private HashMap<Integer, ArrayList<Student>> sorted = new HashMap<>();	// Each team's Students, once asked for
+	private SortOrder sortOrder = null;		// Null for most hours first
+	private int[] ranks = null;				// Each slot's place in sortOrder, once asked for
 	private String fileName;
 	private ConfigProperties config;
 	
@@ -34,6 +54,30 @@ public class Teams {
 	private String columnName  = null; private final String defColName = "Name";
 	private String columnID    = null; private final String defColID   = "empno";
 	private String columnTeam  = null; private final String defColTeam = "Department";
+	private String columnDate  = null; private final String defColDate = "date";		// Optional
+	private String columnPunchTime = null; private final String defColPunchTime = "punch_time";
+	private String columnPunchType = null; private final String defColPunchType = "punch_type";	// Optional
+	private String columnScanner = null; private final String defColScanner = "scanner";			// Optional
+
+	private static final int EXCEL_EPOCH_DAY = 25569;	// 1/1/1970 as an Excel date
+	private static final DateTimeFormatter US_DATE = DateTimeFormatter.ofPattern("M/d/yyyy");
+
+	private long aggregationBudget = 0;			// Bytes of totals to keep in memory, 0 for no limit
+	private boolean pipeline = false;			// Read .xlsx rows on their own thread
+	private boolean allSheets = false;			// Every sheet with the columns, not just the first
+	private boolean punches = false;			// A raw log of clock-in/clock-out punches, not hours
+	private int[] firstRows = null;				// Row each student was first seen on, for one sheet of allSheets
+	private List<SheetStats> sheetStats = new ArrayList<>();
+	private HoursStats stats = null;			// Worked out when first asked for
+	private BuddyPunches buddies = BuddyPunches.none();	// Found once a punch log's students are counted
+	private PunchLog punchLog = null;			// The punch log, until then
+	private String rosterFile = null;			// Names and teams to count students under, by ID
+	private Roster roster = null;				// Loaded when the export is parsed
+	private int statsSize = -1;					// How many students there were then
+	private SpillingAggregator aggregator = null;	// Only while parsing with a budget
+	private ExportValidator validator = new ExportValidator();
+	private Diagnostics diagnostics = new Diagnostics();		// Bad rows, printed when the parse is done
+	private static final String UNREADABLE = "Missing cell, or the wrong type of cell";
 	
 	/**
 	 * Construct the Teams object for parsing the {@code file} to get hours.
@@ -50,10 +94,59 @@ public class Teams {
 		columnName  = config.getConfig("inputColumnName", defColName);
 		columnID    = config.getConfig("inputColumnID", defColID);
 		columnTeam  = config.getConfig("inputColumnTeam", defColTeam);
+		columnDate  = config.getConfig("inputColumnDate", defColDate);
+		pipeline = Boolean.parseBoolean(config.getConfig("pipeline", "false"));
+		allSheets = Boolean.parseBoolean(config.getConfig("allSheets", "false"));
+		columnPunchTime = config.getConfig("inputColumnPunchTime", defColPunchTime);
+		columnPunchType = config.getConfig("inputColumnPunchType", defColPunchType);
+		columnScanner = config.getConfig("inputColumnScanner", defColScanner);
+		String format = config.getConfig("inputFormat");
+		punches = format != null && format.trim().equalsIgnoreCase("punches");
+		if ( punches && allSheets ) {
+			System.err.println("Config Error:  allSheets doesn't apply to inputFormat=punches, reading the first sheet");
+			allSheets = false;
+		}
+		rosterFile = config.getConfig("rosterFile");
+		String order = config.getConfig("sortOrder");
+		if ( order != null && ! order.trim().isEmpty() ) {
+			try {
+				sortOrder = SortOrder.parse(order, config.getConfig("sortLocale"));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Config Error:  sortOrder " + e.getMessage() + ", sorting by hours");
+			}
+		}
+		String budget = config.getConfig("aggregationBudget");
+		if ( budget != null ) {
+			try {
+				aggregationBudget = SpillingAggregator.parseSize(budget);
+			} catch (NumberFormatException e) {
+				System.err.println("Config Error:  aggregationBudget is not a size:  " + budget + ", not limiting memory");
+			}
+		}
+	}
+
+	/**
+	 * Construct the Teams object for data that doesn't come from a file, use
+	 * one of the {@code parseExcel} methods that takes the data directly.
+	 * 
+	 * @param cfg
+	 * 		The configuration object for grabbing things like column name
+	 */
+	public Teams(ConfigProperties cfg) {
+		this(null, cfg);
 	}
 	
 	/**
 	 * Parse the Excel file for this instance and create the data structure holding the information.
+	 * Each row is checked as it's read, see {@code getValidator()} for the problems found.  Rows
+	 * that can't be used are summed up on {@code System.err} at the end.
+	 * 
+	 * With an {@code aggregationBudget} configured, an .xlsx file is read a row at
+	 * a time rather than as a whole workbook, and the per-student totals are
+	 * spilled to disk (under {@code spillDirectory}, or the temp directory) each
+	 * time they grow past the budget, then merged back once the file is read.
+	 * With {@code pipeline} configured, an .xlsx file is also read a row at a
+	 * time, on a thread of its own while the rows are totaled on this one.
 	 * 
 	 * @throws IOException
 	 * 			Error when closing workbook 
@@ -66,51 +159,680 @@ public class Teams {
 	 * 
 	 */
 	public void parseExcel() throws EncryptedDocumentException, InvalidFormatException, IOException {
-		Workbook workbook = WorkbookFactory.create(new File(fileName));
-		Sheet sheet = workbook.getSheetAt(0);
-
-		int colName  = findColumn(sheet, columnName);
-		int colHours = findColumn(sheet, columnHours);
-		int colID    = findColumn(sheet, columnID);
-		int colTeam  = findColumn(sheet, columnTeam);
-		if ( colName < 0 || colHours < 0 || colID < 0 || colTeam < 0 ) {
+		PipelineEvents.Parse event = new PipelineEvents.Parse();
+		event.start();
+		File file = new File(fileName);
+		boolean byRow = ! allSheets && ! punches && ( aggregationBudget > 0 || pipeline ) && isOOXML(file);
+		File bySheet = allSheets && isOOXML(file) ? file : null;
+		// Read-only, or POI writes the export back when it's closed (and jobs of a batch can share one)
+		parse(byRow, bySheet, () -> WorkbookFactory.create(file, null, true), h -> XlsxRowReader.read(file, h), event);
+		event.source = fileName;
+		event.bytesRead = file.length();
+		event.finish();
+	}
+
+	/**
+	 * Parse Excel data (.xls or .xlsx) read from {@code in} rather than from the
+	 * file for this instance.  The type is found from the first bytes of the
+	 * data, not from a name.  The stream is read to the end but not closed.
+	 * {@code aggregationBudget} and {@code pipeline} apply the same as for a
+	 * file, but an .xlsx stream is unzipped in to memory first either way.
+	 * 
+	 * @param in
+	 * 		The stream holding the Excel workbook
+	 * @throws IOException
+	 * 			Error reading the stream or closing the workbook
+	 * @throws InvalidFormatException
+	 *  		The stream doesn't hold an Excel workbook
+	 * @throws EncryptedDocumentException
+	 * 		 	Workbook in stream is encrypted
+	 * @throws IllegalStateException
+	 * 			Workbook doesn't have columns we're looking to find
+	 */
+	public void parseExcel(InputStream in) throws EncryptedDocumentException, InvalidFormatException, IOException {
+		parseStream(FileMagic.prepareToCheckMagic(in), "stream");
+	}
+
+	/**
+	 * Same as {@code parseExcel(InputStream)} for Excel data that's already
+	 * in memory, e.g., an upload.  The array is read where it is, not copied.
+	 * 
+	 * @param data
+	 * 		The bytes of the Excel workbook
+	 */
+	public void parseExcel(byte[] data) throws EncryptedDocumentException, InvalidFormatException, IOException {
+		parseExcel(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Same as {@code parseExcel(InputStream)} for the remaining bytes of
+	 * {@code data}, which may be a direct or memory-mapped buffer.  The bytes
+	 * are read where they are, not copied, and the buffer's position is left
+	 * alone.
+	 * 
+	 * @param data
+	 * 		The buffer holding the Excel workbook
+	 */
+	public void parseExcel(ByteBuffer data) throws EncryptedDocumentException, InvalidFormatException, IOException {
+		parseStream(new ByteBufferInputStream(data), "buffer");
+	}
+
+	/**
+	 * Same as {@code parseExcel(InputStream)} for Excel data read from
+	 * {@code channel}, e.g., a socket.  The channel is read to the end but not
+	 * closed.
+	 * 
+	 * @param channel
+	 * 		The channel the Excel workbook comes from
+	 */
+	public void parseExcel(ReadableByteChannel channel) throws EncryptedDocumentException, InvalidFormatException, IOException {
+		parseStream(new BufferedInputStream(Channels.newInputStream(channel)), "channel");
+	}
+
+	/*
+	 * The stream versions of parseExcel(), {@code in} has to support mark()
+	 */
+	private void parseStream(InputStream in, String source) throws InvalidFormatException, IOException {
+		PipelineEvents.Parse event = new PipelineEvents.Parse();
+		event.start();
+		CountingInputStream counted = new CountingInputStream(in);
+		FileMagic magic = FileMagic.valueOf(counted);
+		if ( magic != FileMagic.OOXML && magic != FileMagic.OLE2 )
+			throw new InvalidFormatException("The " + source + " doesn't hold an .xls or .xlsx workbook");
+		boolean byRow = ! allSheets && ! punches && ( aggregationBudget > 0 || pipeline ) && magic == FileMagic.OOXML;
+		parse(byRow, null, () -> WorkbookFactory.create(counted), h -> XlsxRowReader.read(counted, h), event);
+		event.source = source;
+		event.bytesRead = counted.getCount();
+		event.finish();
+	}
+
+	/*
+	 * Opens the whole workbook
+	 */
+	private interface WorkbookSource {
+		Workbook open() throws IOException, InvalidFormatException;
+	}
+
+	/*
+	 * Parse from either the whole workbook, (an .xlsx with a budget or the
+	 * pipeline) a row at a time or (an .xlsx file with allSheets, {@code
+	 * bySheet}) a sheet per worker, then merge any spilled totals
+	 */
+	private void parse(boolean byRow, File bySheet, WorkbookSource workbook, XlsxRowReader.Source rows,
+			PipelineEvents.Parse event) throws InvalidFormatException, IOException {
+		if ( rosterFile != null && roster == null )
+			roster = Roster.load(Paths.get(rosterFile), rosterCacheDirectory(), diagnostics,
+					config.getConfig("rosterColumnID", columnID), config.getConfig("rosterColumnName", columnName),
+					config.getConfig("rosterColumnTeam", columnTeam));
+		if ( aggregationBudget > 0 && ! allSheets )
+			aggregator = new SpillingAggregator(aggregationBudget, spillDirectory(), validator);
+		try {
+			if ( byRow )
+				parseRows(rows, event);
+			else if ( bySheet != null )
+				parseSheets(bySheet, event);
+			else
+				parseWorkbook(workbook.open(), event);
+			if ( aggregator != null )
+				mergeTotals(event);
+			if ( punchLog != null )
+				buddies = BuddyPunches.find(punchLog, store, (int) punchSetting("buddyPunchSeconds", 10),
+						(int) punchSetting("buddyPunchTimes", 3));
+		} finally {
+			punchLog = null;
+			if ( aggregator != null ) {
+				aggregator.close();
+				aggregator = null;
+			}
+			diagnostics.flush();
+		}
+	}
+
+	/*
+	 * Build the data structure from the first sheet of the workbook (or, with
+	 * allSheets, every sheet that has the columns), then close it.  The row,
+	 * team and student counts are filled in to {@code event}.
+	 */
+	private void parseWorkbook(Workbook workbook, PipelineEvents.Parse event) throws IOException {
+		if ( allSheets ) {
+			parseSheets(workbook, event);
+		} else if ( punches ) {
+			parsePunches(workbook.getSheetAt(0), event);
+		} else {
+			Sheet sheet = workbook.getSheetAt(0);
+			int[] cols = findColumns(sheet);
+			String missing = missingColumns(cols);
+			if ( missing != null )
+				throw new IllegalStateException(missing);
+			parseSheet(sheet, cols, event);
+		}
+		workbook.close();
+		event.teams = store.getTeams().length;
+		event.students = store.size();
+	}
+
+	/*
+	 * The name, hours, ID, team and date columns of the sheet, -1 for any it
+	 * doesn't have
+	 */
+	private int[] findColumns(Sheet sheet) {
+		String[] labels = { columnName, columnHours, columnID, columnTeam, columnDate };
+		int[] cols = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+			cols[i] = sheet.getRow(0) == null ? -1 : findColumn(sheet, labels[i]);
+		return cols;
+	}
+
+	/*
+	 * The complaint about the columns that are missing, or null if only the
+	 * date column (optional) is
+	 */
+	private String missingColumns(int[] cols) {
+		if ( cols[0] >= 0 && cols[1] >= 0 && cols[2] >= 0 && cols[3] >= 0 )
+			return null;
+		String msg = "Can't find appropriate columns, missing:  ";
+		if ( cols[0] < 0 ) msg += columnName + " ";
+		if ( cols[1] < 0 ) msg += columnHours + " ";
+		if ( cols[2] < 0 ) msg += columnID + " ";
+		if ( cols[3] < 0 ) msg += columnTeam;
+		return msg;
+	}
+
+	/*
+	 * Add the rows of one sheet, {@code cols} from findColumns()
+	 */
+	private void parseSheet(Sheet sheet, int[] cols, PipelineEvents.Parse event) throws IOException {
+		int colName = cols[0], colHours = cols[1], colID = cols[2], colTeam = cols[3], colDate = cols[4];
+		for ( Row row : sheet ) {
+			if ( row.getRowNum() == 0 )
+				continue;
+			event.rows++;
+			Cell teamCell = row.getCell(colTeam);
+			int team = CellDecoder.team(teamCell);
+			if ( team == CellDecoder.NOT_A_NUMBER && ! onRoster(CellDecoder.string(row.getCell(colID))) ) {
+				invalidTeam(row.getRowNum(), teamCell == null ? null : teamCell.toString());
+				event.rejectedRows++;
+				continue;
+			}
+			String name = CellDecoder.string(row.getCell(colName));
+			String id = CellDecoder.string(row.getCell(colID));
+			double hours = CellDecoder.number(row.getCell(colHours));
+			if ( name == null || id == null || Double.isNaN(hours) ) {		// Wrong cell type or missing cell
+				unreadable(row.getRowNum());
+				event.rejectedRows++;
+				continue;
+			}
+			if ( ! addRow(row.getRowNum(), team, name, id, Student.toSeconds(hours),
+					colDate < 0 ? DailySeconds.NO_DAY : CellDecoder.day(row.getCell(colDate))) )
+				event.rejectedRows++;
+		}
+	}
+
+	/*
+	 * inputFormat=punches:  read the clock-in and clock-out punches from the
+	 * sheet, then add each student's seconds for each day from pairing them up
+	 * (see PunchLog).  The problems found pairing them are checked in with the
+	 * rest.  The log is kept to look for the students punching together (see
+	 * BuddyPunches) once they've all been counted.
+	 */
+	private void parsePunches(Sheet sheet, PipelineEvents.Parse event) throws IOException {
+		String[] labels = { columnName, columnID, columnTeam, columnPunchTime, columnPunchType, columnScanner };
+		int[] cols = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+			cols[i] = sheet.getRow(0) == null ? -1 : findColumn(sheet, labels[i]);
+		int colName = cols[0], colID = cols[1], colTeam = cols[2], colTime = cols[3], colType = cols[4], colScanner = cols[5];
+		if ( colName < 0 || colID < 0 || colTeam < 0 || colTime < 0 ) {
 			String msg = "Can't find appropriate columns, missing:  ";
 			if ( colName < 0 ) msg += columnName + " ";
-			if ( colHours <0 ) msg += columnHours + " ";
-			if ( colID < 0 )   msg += columnID + " ";
-			if ( colTeam < 0 ) msg += columnTeam;
-			throw new IllegalStateException(msg);
-		}
-		Integer team = 0;
-		Student student;
-		String tm = null;
+			if ( colID < 0 ) msg += columnID + " ";
+			if ( colTeam < 0 ) msg += columnTeam + " ";
+			if ( colTime < 0 ) msg += columnPunchTime;
+			throw new IllegalStateException(msg.trim());
+		}
+		PunchLog log = new PunchLog(punchSetting("punchMaxHours", 12), punchSetting("punchDoubleMinutes", 2),
+				punchSetting("openPunchHours", 0));
 		for ( Row row : sheet ) {
 			if ( row.getRowNum() == 0 )
 				continue;
-			try {
-				tm = row.getCell(colTeam).getStringCellValue();
-				team = Integer.parseInt(tm);
-			} catch (Exception e) {
-				System.err.println("Parse Error:  row "+row.getRowNum()+", invalid Team number:  " + tm);
+			event.rows++;
+			Cell teamCell = row.getCell(colTeam);
+			int team = CellDecoder.team(teamCell);
+			if ( team == CellDecoder.NOT_A_NUMBER && ! onRoster(CellDecoder.string(row.getCell(colID))) ) {
+				invalidTeam(row.getRowNum(), teamCell == null ? null : teamCell.toString());
+				event.rejectedRows++;
 				continue;
 			}
-			try {
-				student = Student.getStudent(row.getCell(colName).getStringCellValue(),
-						row.getCell(colID).getStringCellValue(),
-						row.getCell(colHours).getNumericCellValue());
-				if ( _teams.containsKey(team) ) {
-					if ( ! _teams.get(team).contains(student) )
-						_teams.get(team).add(student);
-				} else {
-					ArrayList<Student> ppl = new ArrayList<Student>();
-					ppl.add(student);
-					_teams.put(team, ppl);
+			String name = CellDecoder.string(row.getCell(colName));
+			String id = CellDecoder.string(row.getCell(colID));
+			long time = CellDecoder.time(row.getCell(colTime));
+			if ( name == null || id == null || time == PunchLog.NO_TIME ) {
+				unreadable(row.getRowNum());
+				event.rejectedRows++;
+				continue;
+			}
+			byte type = colType < 0 ? PunchLog.UNKNOWN : PunchLog.parseType(CellDecoder.string(row.getCell(colType)));
+			String scanner = colScanner < 0 ? null : CellDecoder.string(row.getCell(colScanner));
+			log.add(row.getRowNum(), team, name, id, time, type, scanner);
+		}
+		log.compute(new PunchLog.Sink() {
+			public void seconds(int rowNum, int team, String name, String id, int seconds, int day) throws IOException {
+				addRow(rowNum, team, name, id, seconds, day);
+			}
+			public void problem(ExportValidator.Kind kind, int rowNum, String id, String detail) {
+				validator.note(kind, rowNum, id, detail);
+			}
+		});
+		punchLog = log;
+	}
+
+	/*
+	 * One of the numbers for pairing up punches, {@code def} if it isn't set (or isn't a number)
+	 */
+	private double punchSetting(String key, double def) {
+		String val = config.getConfig(key);
+		if ( val == null )
+			return def;
+		try {
+			return Double.parseDouble(val.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Config Error:  " + key + " is not a number:  " + val + ", using " + def);
+			return def;
+		}
+	}
+
+	/*
+	 * allSheets for an .xls (or an .xlsx that isn't a file):  each sheet with
+	 * the columns is parsed in to a Teams of its own (its own students, checks
+	 * and diagnostics), which is merged in to this one before the next sheet
+	 * is read.  Sheets without the columns are skipped, with a note.  The
+	 * sheets all belong to the one POI Workbook, which isn't safe to read from
+	 * more than one thread, so this is done one sheet at a time.
+	 */
+	private void parseSheets(Workbook workbook, PipelineEvents.Parse event) throws IOException {
+		List<Sheet> sheets = new ArrayList<>();
+		List<int[]> columns = new ArrayList<>();
+		String missing = null;
+		for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+			Sheet sheet = workbook.getSheetAt(i);
+			int[] cols = findColumns(sheet);
+			String problem = missingColumns(cols);
+			if ( problem == null ) {
+				sheets.add(sheet);
+				columns.add(cols);
+			} else {
+				diagnostics.report("Parse Error:  sheet \"%s\" skipped.  %s", sheet.getSheetName(), problem);
+				if ( missing == null )
+					missing = problem;
+			}
+		}
+		if ( sheets.isEmpty() )
+			throw new IllegalStateException(missing + " (in every sheet)");
+
+		for (int i = 0; i < sheets.size(); i++)
+			addPart(parsePart(sheets.get(i), columns.get(i)), event);
+	}
+
+	/*
+	 * allSheets for an .xlsx file:  each sheet is streamed on a worker of its
+	 * own, from its own OPCPackage and XlsxRowReader so that nothing of POI's
+	 * is shared between them, in to a Teams of its own.  Those are merged in
+	 * to this one in sheet order, so it comes out the same as one at a time.
+	 * A sheet without the columns is found out by its worker, and skipped
+	 * with a note.  (Each worker reads the shared strings for itself.)
+	 */
+	private void parseSheets(File file, PipelineEvents.Parse event) throws IOException, InvalidFormatException {
+		List<String> names = XlsxRowReader.sheetNames(file);
+		if ( names.isEmpty() )
+			throw new InvalidFormatException("No worksheets in " + file);
+		String missing = null;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(names.size(), Runtime.getRuntime().availableProcessors()));
+		try {
+			List<Future<Teams>> parts = new ArrayList<>();
+			for (int i = 0; i < names.size(); i++) {
+				int sheet = i;
+				parts.add(pool.submit(() -> streamPart(file, sheet, names.get(sheet))));
+			}
+			for (int i = 0; i < parts.size(); i++) {
+				Teams part;
+				try {
+					part = parts.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted reading sheet " + names.get(i), e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if ( cause instanceof IllegalStateException ) {		// The sheet doesn't have the columns
+						diagnostics.report("Parse Error:  sheet \"%s\" skipped.  %s", names.get(i), cause.getMessage());
+						if ( missing == null )
+							missing = cause.getMessage();
+						continue;
+					}
+					if ( cause instanceof IOException )
+						throw (IOException) cause;
+					if ( cause instanceof InvalidFormatException )
+						throw (InvalidFormatException) cause;
+					if ( cause instanceof RuntimeException )
+						throw (RuntimeException) cause;
+					throw new IOException("Error reading sheet " + names.get(i), cause);
 				}
-			} catch (IllegalStateException e) {
-				System.err.println("Cannot parse row " + row.getRowNum() + " to get appropriate data");
+				addPart(part, event);
 			}
+		} finally {
+			pool.shutdownNow();
+		}
+		if ( sheetStats.isEmpty() )
+			throw new IllegalStateException(missing + " (in every sheet)");
+		event.teams = store.getTeams().length;
+		event.students = store.size();
+	}
+
+	/*
+	 * Parse one sheet of the Workbook for allSheets
+	 */
+	private Teams parsePart(Sheet sheet, int[] cols) throws IOException {
+		PipelineEvents.ParseSheet event = new PipelineEvents.ParseSheet();
+		event.start();
+		long start = System.nanoTime();
+		Teams part = newPart();
+		part.parseSheet(sheet, cols, event);
+		finishPart(part, sheet.getSheetName(), event, start);
+		return part;
+	}
+
+	/*
+	 * Stream one sheet of an .xlsx file for allSheets, on a worker.  Throws
+	 * IllegalStateException if the sheet doesn't have the columns.
+	 */
+	private Teams streamPart(File file, int sheet, String name) throws IOException, InvalidFormatException {
+		PipelineEvents.ParseSheet event = new PipelineEvents.ParseSheet();
+		event.start();
+		long start = System.nanoTime();
+		Teams part = newPart();
+		int[] cols = { -1, -1, -1, -1, -1 };
+		try {
+			part.readRows(h -> XlsxRowReader.read(file, sheet, h), cols, event);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		String missing = missingColumns(cols);
+		if ( missing != null )		// No header row, or no rows at all
+			throw new IllegalStateException(missing);
+		finishPart(part, name, event, start);
+		return part;
+	}
+
+	/*
+	 * An empty Teams for one sheet of allSheets
+	 */
+	private Teams newPart() {
+		Teams part = new Teams(config);
+		part.roster = roster;
+		part.firstRows = new int[64];
+		return part;
+	}
+
+	/*
+	 * Finish the sheet's event and note its stats in {@code part}
+	 */
+	private static void finishPart(Teams part, String name, PipelineEvents.ParseSheet event, long start) {
+		event.source = name;
+		event.teams = part.store.getTeams().length;
+		event.students = part.store.size();
+		event.finish();
+		part.sheetStats.add(new SheetStats(name, event.rows, event.rejectedRows, event.students,
+				(System.nanoTime() - start) / 1000000));
+	}
+
+	/*
+	 * Count a finished sheet's rows and merge its students in to this one
+	 */
+	private void addPart(Teams part, PipelineEvents.Parse event) {
+		SheetStats stats = part.sheetStats.get(0);
+		sheetStats.add(stats);
+		event.rows += stats.rows;
+		event.rejectedRows += stats.rejectedRows;
+		mergePart(part, stats.name);
+	}
+
+	/*
+	 * Fold one sheet's students in to this one's.  Their names, teams and
+	 * days are checked against what the sheets before it had, the same
+	 * checks as for each row, at the row the student was first seen on in
+	 * the sheet.
+	 */
+	private void mergePart(Teams part, String sheetName) {
+		validator.addAll(part.validator, sheetName);
+		part.diagnostics.flush();
+		StudentStore from = part.store;
+		for (int s = 0; s < from.size(); s++) {
+			String id = from.getId(s);
+			String name = from.getName(s);
+			int team = from.getTeam(s);
+			DailySeconds days = from.getDaily(s);
+			int slot = store.slotOf(id);
+			if ( slot < 0 ) {
+				slot = store.add(id, name, team);
+				store.addSeconds(slot, from.getSeconds(s), DailySeconds.NO_DAY);
+				store.setDaily(slot, days);
+				continue;
+			}
+			int row = part.firstRows[s];
+			validator.check(row, id, name, team, 0, DailySeconds.NO_DAY, store.getName(slot), store.getTeam(slot));
+			int undated = from.getSeconds(s);
+			for (int i = 0; days != null && i < days.size(); i++) {
+				int day = days.getDay(i);
+				undated -= days.getSeconds(i);
+				validator.checkDay(row, id, day, store.addSeconds(slot, days.getSeconds(i), day));
+			}
+			store.addSeconds(slot, undated, DailySeconds.NO_DAY);
+		}
+		sorted.clear();
+		ranks = null;
+	}
+
+	/*
+	 * Same as parseWorkbook(), but reading the rows of an .xlsx as they
+	 * stream by.  Cells are decoded by the same CellDecoder rules.
+	 */
+	private void parseRows(XlsxRowReader.Source rows, PipelineEvents.Parse event) throws IOException, InvalidFormatException {
+		int[] cols = new int[5];	// Name, hours, ID, team, date
+		try {
+			readRows(rows, cols, event);
+		} catch (UncheckedIOException e) {		// From a spill inside the row handler
+			throw e.getCause();
+		}
+	}
+
+	private void readRows(XlsxRowReader.Source rows, int[] cols, PipelineEvents.Parse event) throws IOException, InvalidFormatException {
+		XlsxRowReader.RowHandler handler = (rowNum, values, types) -> {
+			if ( rowNum == 0 ) {
+				String[] labels = { columnName, columnHours, columnID, columnTeam, columnDate };
+				for (int i = 0; i < labels.length; i++) {
+					cols[i] = -1;
+					for (int c = 0; c < values.length; c++) {
+						if ( types[c] == CellType.STRING && values[c].equals(labels[i]) ) {
+							cols[i] = c;
+							break;
+						}
+					}
+				}
+				String missing = missingColumns(cols);
+				if ( missing != null )
+					throw new IllegalStateException(missing);
+				return;
+			}
+			event.rows++;
+			int team = CellDecoder.team(valueAt(values, cols[3]), typeAt(types, cols[3]));
+			if ( team == CellDecoder.NOT_A_NUMBER
+					&& ! onRoster(CellDecoder.string(valueAt(values, cols[2]), typeAt(types, cols[2]))) ) {
+				invalidTeam(rowNum, valueAt(values, cols[3]));
+				event.rejectedRows++;
+				return;
+			}
+			String name = CellDecoder.string(valueAt(values, cols[0]), typeAt(types, cols[0]));
+			String id = CellDecoder.string(valueAt(values, cols[2]), typeAt(types, cols[2]));
+			double hours = CellDecoder.number(valueAt(values, cols[1]), typeAt(types, cols[1]));
+			if ( name == null || id == null || Double.isNaN(hours) ) {
+				unreadable(rowNum);
+				event.rejectedRows++;
+				return;
+			}
+			try {
+				if ( ! addRow(rowNum, team, name, id, Student.toSeconds(hours),
+						CellDecoder.day(valueAt(values, cols[4]), typeAt(types, cols[4]))) )
+					event.rejectedRows++;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		if ( pipeline )
+			RowPipeline.read(rows, handler);
+		else
+			rows.read(handler);
+	}
+
+	/*
+	 * The value or type in column {@code col} of a streamed row, null if the
+	 * row has no such cell (or there's no such column)
+	 */
+	private static String valueAt(String[] values, int col) {
+		return col >= 0 && col < values.length ? values[col] : null;
+	}
+
+	private static CellType typeAt(CellType[] types, int col) {
+		return col >= 0 && col < types.length ? types[col] : null;
+	}
+
+	/*
+	 * Whether the roster has this ID, and so the team for it, since the row's own can't be read
+	 */
+	private boolean onRoster(String id) {
+		return roster != null && id != null && roster.find(id) != Roster.NOT_FOUND;
+	}
+
+	private void invalidTeam(int rowNum, String tm) {
+		diagnostics.report("Parse Error:  row %d, invalid Team number:  %s", rowNum, tm);
+		validator.rejected(ExportValidator.Kind.INVALID_TEAM, rowNum, "Team \"" + tm + "\"");
+	}
+
+	private void unreadable(int rowNum) {
+		diagnostics.report("Cannot parse row %d to get appropriate data", rowNum);
+		validator.rejected(ExportValidator.Kind.UNREADABLE_ROW, rowNum, UNREADABLE);
+	}
+
+	/*
+	 * Check and count the seconds from one row, either straight in to the
+	 * student store, or in to the spilling totals when there's a memory
+	 * budget.  A student only goes on the team they were first seen on, and
+	 * false is returned if the validator left the row out.
+	 *
+	 * With a roster, a student on it is counted under the roster's name and
+	 * team instead of the row's.  The roster's are only looked up the first
+	 * time, after that they're the ones in the store.  A student who isn't on
+	 * it is reported (once) and counted as the export has them.
+	 */
+	private boolean addRow(int rowNum, int team, String name, String id, int seconds, int day) throws IOException {
+		int entry = roster == null ? Roster.NOT_FOUND : roster.find(id);
+		if ( roster != null && entry == Roster.NOT_FOUND )
+			validator.notOnRoster(rowNum, id, name, team);
+		if ( aggregator != null ) {
+			if ( entry != Roster.NOT_FOUND )
+				return aggregator.add(rowNum, roster.getTeam(entry), roster.getName(entry), id, seconds, day);
+			return aggregator.add(rowNum, team, name, id, seconds, day);
+		}
+		int slot = store.slotOf(id);
+		if ( entry != Roster.NOT_FOUND ) {
+			name = slot < 0 ? roster.getName(entry) : store.getName(slot);
+			team = slot < 0 ? roster.getTeam(entry) : store.getTeam(slot);
+		}
+		int home = slot < 0
+				? validator.check(rowNum, id, name, team, seconds, day, null, ExportValidator.NO_TEAM)
+				: validator.check(rowNum, id, name, team, seconds, day, store.getName(slot), store.getTeam(slot));
+		if ( home == ExportValidator.NO_TEAM )
+			return false;
+		if ( slot < 0 ) {
+			slot = store.add(id, name, home);
+			if ( firstRows != null ) {
+				if ( slot == firstRows.length )
+					firstRows = Arrays.copyOf(firstRows, slot * 2);
+				firstRows[slot] = rowNum;
+			}
+		}
+		int total = store.addSeconds(slot, seconds, day);
+		if ( day != DailySeconds.NO_DAY )
+			validator.checkDay(rowNum, id, day, total);
+		sorted.clear();
+		ranks = null;
+		return true;
+	}
+
+	/*
+	 * Build the student store from the spilled totals.  Each merged total goes
+	 * straight in to the store as it comes off the runs, so only the store and
+	 * one student per run are held at once, and only each student's first row
+	 * is kept on the side.  The slots are then put back in the order the
+	 * students were first seen, the same as reading straight in to memory
+	 * would have.
+	 */
+	private void mergeTotals(PipelineEvents.Parse event) throws IOException {
+		int[][] seen = { new int[64] };		// By slot, the row the student was first seen on
+		aggregator.merge(e -> {
+			int slot = store.add(e.id, e.name, e.team);
+			store.addSeconds(slot, e.seconds, DailySeconds.NO_DAY);
+			if ( e.daily != null && e.daily.size() > 0 )
+				store.setDaily(slot, e.daily);
+			if ( slot == seen[0].length )
+				seen[0] = Arrays.copyOf(seen[0], slot * 2);
+			seen[0][slot] = e.firstRow;
+		});
+		store.reorder(seen[0]);
+		sorted.clear();
+		ranks = null;
+		event.teams = store.getTeams().length;
+		event.students = store.size();
+		event.spills = aggregator.getSpills();
+		event.spilledBytes = aggregator.getSpilledBytes();
+	}
+
+	/*
+	 * An Excel date as an epoch day
+	 */
+	static int excelDay(double date) {
+		return (int) Math.floor(date) - EXCEL_EPOCH_DAY;
+	}
+
+	/*
+	 * A yyyy-mm-dd or m/d/yyyy date as an epoch day, or NO_DAY if it isn't one
+	 */
+	static int parseDay(String value) {
+		String date = value.trim();
+		if ( date.isEmpty() || ! Character.isDigit(date.charAt(0)) )
+			return DailySeconds.NO_DAY;		// Blank or words, don't bother the parser
+		try {
+			if ( date.indexOf('/') > 0 )
+				return (int) LocalDate.parse(date, US_DATE).toEpochDay();
+			return (int) LocalDate.parse(date).toEpochDay();
+		} catch (DateTimeParseException e) {
+			return DailySeconds.NO_DAY;		// Not a date we know, just leave it out of the breakdown
+		}
+	}
+
+	private Path spillDirectory() {
+		return Paths.get(config.getConfig("spillDirectory", System.getProperty("java.io.tmpdir")));
+	}
+
+	/*
+	 * Where the roster's hash table is saved between runs
+	 */
+	private Path rosterCacheDirectory() {
+		String dir = config.getConfig("rosterCacheDirectory");
+		return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("java.io.tmpdir"), "VBHoursExport");
+	}
+
+	private static boolean isOOXML(File file) throws IOException {
+		try ( InputStream in = new BufferedInputStream(new FileInputStream(file)) ) {
+			return FileMagic.valueOf(in) == FileMagic.OOXML;
 		}
-		workbook.close();
 	}
 
 	/**
@@ -121,14 +843,18 @@ public class Teams {
 	 */
 	public ArrayList<Integer> getTeams() {
 		ArrayList<Integer> teams = new ArrayList<Integer>();
-		teams.addAll(_teams.keySet());
-		Collections.sort(teams);
+		for (int team : store.getTeams())
+			teams.add(team);
 		return teams;
 	}
 	
 	/**
 	 * Get the list of {@code Students} for a specific team, sorted by the number
-	 * of hours worked in descending order (e.g., most hours to least).
+	 * of hours worked in descending order (e.g., most hours to least, then by
+	 * student ID), or in the {@code sortOrder} from the configuration if there
+	 * is one.  The
+	 * {@code Students} are views of the student store made the first time the
+	 * team is asked for, later calls return the same list.
 	 * 
 	 * @param team
 	 * 		The team from which to get the sorted list of {@code Students}
@@ -136,13 +862,127 @@ public class Teams {
 	 * 		The sorted list of {@code Students} (or null if error)
 	 */
 	public ArrayList<Student> getHoursByTeam(int team) {
-		try {
-			ArrayList<Student> sortedList = _teams.get(team);
-			sortedList.sort((a, b) -> a.compareTo(b));
+		ArrayList<Student> sortedList = sorted.get(team);
+		if ( sortedList != null )
 			return sortedList;
-		} catch (NullPointerException e) {
+		PipelineEvents.Sort event = new PipelineEvents.Sort();
+		event.start();
+		if ( sortOrder != null && ranks == null )
+			ranks = sortOrder.rank(store);
+		int[] slots = sortOrder == null ? store.sortedBySeconds(team) : store.sortedByRank(team, ranks);
+		if ( slots == null )
 			return null;
+		sortedList = new ArrayList<>(slots.length);
+		for (int slot : slots)
+			sortedList.add(view(slot));
+		sorted.put(team, sortedList);
+		event.team = team;
+		event.students = sortedList.size();
+		event.finish();
+		return sortedList;
+	}
+
+	/**
+	 * The {@code k} students with the most hours across every team, most first.
+	 * Students with the same hours are in ID order, the same as in
+	 * {@code getHoursByTeam}.  Only the {@code k} are kept as the students are
+	 * looked through, so this is cheaper than sorting everyone.
+	 * 
+	 * @param k
+	 * 		How many students
+	 * @return
+	 * 		Up to {@code k} students, with their teams
+	 */
+	public List<Ranked> getTop(int k) {
+		return ranked(store.ranked(k, true));
+	}
+
+	/**
+	 * The {@code k} students with the fewest hours across every team, fewest
+	 * first (same as {@code getTop} otherwise).
+	 * 
+	 * @param k
+	 * 		How many students
+	 * @return
+	 * 		Up to {@code k} students, with their teams
+	 */
+	public List<Ranked> getBottom(int k) {
+		return ranked(store.ranked(k, false));
+	}
+
+	/**
+	 * Same as {@code getTop(k)}, for one team.
+	 * 
+	 * @param team
+	 * 		The team
+	 * @param k
+	 * 		How many students
+	 * @return
+	 * 		Up to {@code k} students (or null if there's no such team)
+	 */
+	public List<Student> getTop(int team, int k) {
+		return students(store.ranked(team, k, true));
+	}
+
+	/**
+	 * Same as {@code getBottom(k)}, for one team.
+	 * 
+	 * @param team
+	 * 		The team
+	 * @param k
+	 * 		How many students
+	 * @return
+	 * 		Up to {@code k} students (or null if there's no such team)
+	 */
+	public List<Student> getBottom(int team, int k) {
+		return students(store.ranked(team, k, false));
+	}
+
+	/**
+	 * A student on a leaderboard, along with the team they're on.
+	 */
+	public static class Ranked {
+		private final int team;
+		private final Student student;
+
+		Ranked(int team, Student student) {
+			this.team = team;
+			this.student = student;
+		}
+
+		public int getTeam() {
+			return team;
 		}
+		public Student getStudent() {
+			return student;
+		}
+		public String toString() {
+			return team + ":" + student;
+		}
+	}
+
+	private List<Ranked> ranked(int[] slots) {
+		List<Ranked> list = new ArrayList<>(slots.length);
+		for (int slot : slots)
+			list.add(new Ranked(store.getTeam(slot), view(slot)));
+		return list;
+	}
+
+	private List<Student> students(int[] slots) {
+		if ( slots == null )
+			return null;
+		List<Student> list = new ArrayList<>(slots.length);
+		for (int slot : slots)
+			list.add(view(slot));
+		return list;
+	}
+
+	/*
+	 * A Student for one slot of the store
+	 */
+	private Student view(int slot) {
+		return new Student(store.getName(slot), store.getId(slot), store.getSeconds(slot), store.getDaily(slot),
+				store.getStrings(), store.getIdRef(slot), store.getNameRef(slot));
 	}
 
 	/**
@@ -155,8 +995,122 @@ public class Teams {
 		}
 	}
 
+	/**
+	 * @return
+	 * 		The dictionary of student IDs and names, for the ints in the {@code Students}
+	 */
+	StringDictionary getStrings() {
+		return store.getStrings();
+	}
+
+	/*
+	 * The parsed students themselves, e.g., for joining two weeks by ID
+	 */
+	StudentStore getStore() {
+		return store;
+	}
+
+	/**
+	 * The totals, means, medians and 90th percentiles of the students' hours by
+	 * team and for the whole program.  Worked out the first time they're asked
+	 * for after the parse, later calls return the same stats.
+	 * 
+	 * @return
+	 * 		The stats
+	 */
+	public HoursStats getStats() {
+		if ( stats == null || statsSize != store.size() ) {
+			stats = HoursStats.of(this);
+			statsSize = store.size();
+		}
+		return stats;
+	}
+
+	/**
+	 * @return
+	 * 		The students who keep punching in or out together, from an
+	 * 		{@code inputFormat=punches} log (none for any other export)
+	 */
+	public BuddyPunches getBuddyPunches() {
+		return buddies;
+	}
+
+	/**
+	 * @return
+	 * 		The problems found in the export while it was parsed
+	 */
+	public ExportValidator getValidator() {
+		return validator;
+	}
+
+	/**
+	 * @return
+	 * 		The roster the students were looked up in, or null if there wasn't one
+	 */
+	Roster getRoster() {
+		return roster;
+	}
+
+	/**
+	 * @return
+	 * 		With {@code allSheets}, what was read from each sheet, in order (empty otherwise)
+	 */
+	public List<SheetStats> getSheetStats() {
+		return sheetStats;
+	}
+
+	/**
+	 * What was read from one sheet of the export, with {@code allSheets}.
+	 */
+	public static class SheetStats {
+		private final String name;
+		private final int rows;
+		private final int rejectedRows;
+		private final int students;
+		private final long millis;
+
+		SheetStats(String name, int rows, int rejectedRows, int students, long millis) {
+			this.name = name;
+			this.rows = rows;
+			this.rejectedRows = rejectedRows;
+			this.students = students;
+			this.millis = millis;
+		}
+
+		public String getName() {
+			return name;
+		}
+		public int getRows() {
+			return rows;
+		}
+		public int getRejectedRows() {
+			return rejectedRows;
+		}
+		/**
+		 * @return
+		 * 		The students on the sheet (some may be on other sheets too)
+		 */
+		public int getStudents() {
+			return students;
+		}
+		/**
+		 * @return
+		 * 		How long reading the sheet took (on its own worker for an
+		 * 		.xlsx file, so these can overlap)
+		 */
+		public long getMillis() {
+			return millis;
+		}
+		public String toString() {
+			return String.format("%s:  %d rows (%d rejected), %d students, %d ms", name, rows, rejectedRows, students, millis);
+		}
+	}
+
 	public Map<Integer, List<Student>> getTeamsData() {
-		return new HashMap<>(_teams); 
+		HashMap<Integer, List<Student>> data = new HashMap<>();
+		for (int team : store.getTeams())
+			data.put(team, getHoursByTeam(team));
+		return data;
 	}
 
 	/**
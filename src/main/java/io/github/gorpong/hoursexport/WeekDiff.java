@@ -0,0 +1,241 @@
+package io.github.gorpong.hoursexport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What changed between last week's export and this week's:  the students who
+ * are new, the ones who are missing, the ones whose hours went up or down,
+ * and the ones whose hours crossed over the limit or under the minimum (for a
+ * new student, the ones who start out over or under).
+ *
+ * The two are joined by student ID in one pass over this week's students,
+ * looking each one up in last week's {@code StudentStore} (which is already a
+ * hash of the IDs) and marking the ones found; whoever wasn't marked is
+ * missing.  That's linear in the two roster sizes, with nothing sorted but
+ * the changes themselves.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+public class WeekDiff {
+
+	public enum Kind {
+		NEW("New"),
+		MISSING("Missing"),
+		INCREASED("Increased"),
+		DECREASED("Decreased");
+
+		private final String label;
+
+		Kind(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * Whether a student's hours moved across one of the thresholds.
+	 */
+	public enum Crossing {
+		NONE(""),
+		OVER_LIMIT("Went over the limit"),
+		UNDER_MINIMUM("Dropped under the minimum"),
+		BACK_IN_RANGE("Back in range");
+
+		private final String label;
+
+		Crossing(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * One student who changed.
+	 */
+	public static class Change {
+		private final Kind kind;
+		private final Crossing crossing;
+		private final int team;
+		private final String id;
+		private final String name;
+		private final int previousSeconds;
+		private final int currentSeconds;
+
+		Change(Kind kind, Crossing crossing, int team, String id, String name, int previousSeconds, int currentSeconds) {
+			this.kind = kind;
+			this.crossing = crossing;
+			this.team = team;
+			this.id = id;
+			this.name = name;
+			this.previousSeconds = previousSeconds;
+			this.currentSeconds = currentSeconds;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+		public Crossing getCrossing() {
+			return crossing;
+		}
+		/**
+		 * @return
+		 * 		The team this week (last week's, for a missing student)
+		 */
+		public int getTeam() {
+			return team;
+		}
+		public String getId() {
+			return id;
+		}
+		/**
+		 * @return
+		 * 		The name the way the rest of the report shows it, e.g., "Doe, John"
+		 */
+		public String getName() {
+			return name;
+		}
+		/**
+		 * @return
+		 * 		Last week's seconds, 0 for a new student
+		 */
+		public int getPreviousSeconds() {
+			return previousSeconds;
+		}
+		/**
+		 * @return
+		 * 		This week's seconds, 0 for a missing student
+		 */
+		public int getCurrentSeconds() {
+			return currentSeconds;
+		}
+		public int getDeltaSeconds() {
+			return currentSeconds - previousSeconds;
+		}
+		public String toString() {
+			return kind + ":" + team + ":" + id + ":" + previousSeconds + "->" + currentSeconds
+					+ ( crossing == Crossing.NONE ? "" : ":" + crossing );
+		}
+	}
+
+	private final List<Change> changes = new ArrayList<>();
+	private final int[] counts = new int[Kind.values().length];
+	private final int[] crossings = new int[Crossing.values().length];
+
+	private WeekDiff() {
+	}
+
+	/**
+	 * Compare this week's students with last week's.
+	 *
+	 * @param current
+	 * 		This week's parsed export
+	 * @param previous
+	 * 		Last week's parsed export
+	 * @param lowSeconds
+	 * 		Under this many seconds is too few (the same as the report's low threshold)
+	 * @param highSeconds
+	 * 		Over this many seconds is too many
+	 * @return
+	 * 		The changes, grouped by kind and in team order within each kind
+	 */
+	public static WeekDiff compare(Teams current, Teams previous, int lowSeconds, int highSeconds) {
+		WeekDiff diff = new WeekDiff();
+		StudentStore now = current.getStore();
+		StudentStore before = previous.getStore();
+		boolean[] matched = new boolean[before.size()];
+		for (int s = 0; s < now.size(); s++) {
+			String id = now.getId(s);
+			int seconds = now.getSeconds(s);
+			int p = before.slotOf(id);
+			if ( p < 0 ) {
+				int band = band(seconds, lowSeconds, highSeconds);
+				diff.add(Kind.NEW, band > 0 ? Crossing.OVER_LIMIT : band < 0 ? Crossing.UNDER_MINIMUM : Crossing.NONE,
+						now.getTeam(s), id, now.getName(s), 0, seconds);
+				continue;
+			}
+			matched[p] = true;
+			int was = before.getSeconds(p);
+			if ( was == seconds )
+				continue;
+			diff.add(seconds > was ? Kind.INCREASED : Kind.DECREASED, crossing(was, seconds, lowSeconds, highSeconds),
+					now.getTeam(s), id, now.getName(s), was, seconds);
+		}
+		for (int p = 0; p < matched.length; p++) {
+			if ( ! matched[p] )
+				diff.add(Kind.MISSING, Crossing.NONE, before.getTeam(p), before.getId(p), before.getName(p),
+						before.getSeconds(p), 0);
+		}
+		// Stable, so students stay in the order they were first seen within a team
+		Collections.sort(diff.changes, (a, b) -> a.kind != b.kind
+				? a.kind.compareTo(b.kind) : Integer.compare(a.team, b.team));
+		return diff;
+	}
+
+	private static Crossing crossing(int was, int now, int low, int high) {
+		int before = band(was, low, high);
+		int after = band(now, low, high);
+		if ( before == after )
+			return Crossing.NONE;
+		return after > 0 ? Crossing.OVER_LIMIT : after < 0 ? Crossing.UNDER_MINIMUM : Crossing.BACK_IN_RANGE;
+	}
+
+	/*
+	 * -1 under the minimum, 1 over the limit, 0 in between
+	 */
+	private static int band(int seconds, int low, int high) {
+		return seconds > high ? 1 : seconds < low ? -1 : 0;
+	}
+
+	private void add(Kind kind, Crossing crossing, int team, String id, String name, int was, int now) {
+		changes.add(new Change(kind, crossing, team, id, Student.formatName(name), was, now));
+		counts[kind.ordinal()]++;
+		crossings[crossing.ordinal()]++;
+	}
+
+	/**
+	 * @return
+	 * 		Every student who changed, grouped by kind and in team order within each
+	 */
+	public List<Change> getChanges() {
+		return Collections.unmodifiableList(changes);
+	}
+
+	public int getCount(Kind kind) {
+		return counts[kind.ordinal()];
+	}
+
+	public int getCount(Crossing crossing) {
+		return crossings[crossing.ordinal()];
+	}
+
+	/**
+	 * @return
+	 * 		e.g., "3 New, 1 Missing, 2 Went over the limit"
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		for (Kind kind : Kind.values()) {
+			if ( counts[kind.ordinal()] == 0 )
+				continue;
+			if ( sb.length() > 0 )
+				sb.append(", ");
+			sb.append(counts[kind.ordinal()]).append(' ').append(kind.getLabel());
+		}
+		for (Crossing crossing : Crossing.values()) {
+			if ( crossing == Crossing.NONE || crossings[crossing.ordinal()] == 0 )
+				continue;
+			if ( sb.length() > 0 )
+				sb.append(", ");
+			sb.append(crossings[crossing.ordinal()]).append(' ').append(crossing.getLabel());
+		}
+		return sb.length() == 0 ? "no changes" : sb.toString();
+	}
+}
@@ -0,0 +1,272 @@
+package io.github.gorpong.hoursexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Read the first sheet (or any one sheet) of an .xlsx file a row at a time
+ * straight from the XML, rather than building the whole workbook in memory the
+ * way {@code WorkbookFactory} does.  Each read opens its own package, so
+ * separate sheets of one file can be read on separate threads.  Only the cell values and their types are
+ * kept, and only for the current row.
+ *
+ * @author Gordon Galligher - gorpong@gmail.com
+ */
+class XlsxRowReader {
+
+	/**
+	 * Gets each row of the sheet in order.  {@code values} and {@code types}
+	 * are indexed by column and are only good until the next call; a column
+	 * with no cell in the row is null in both.
+	 */
+	interface RowHandler {
+		void row(int rowNum, String[] values, CellType[] types);
+	}
+
+	/**
+	 * Where the rows come from, e.g., {@code handler -> read(file, handler)}.
+	 */
+	interface Source {
+		void read(RowHandler handler) throws IOException, InvalidFormatException;
+	}
+
+	private XlsxRowReader() {
+	}
+
+	/**
+	 * Read the first sheet of {@code file}, passing each row to {@code handler}.
+	 *
+	 * @param file
+	 * 		The .xlsx file
+	 * @param handler
+	 * 		Where to send the rows
+	 * @throws IOException
+	 * 		Error reading the file
+	 * @throws InvalidFormatException
+	 * 		The file isn't an .xlsx workbook
+	 */
+	static void read(File file, RowHandler handler) throws IOException, InvalidFormatException {
+		read(file, 0, handler);
+	}
+
+	/**
+	 * Read sheet number {@code sheet} of {@code file} (from 0, in the
+	 * workbook's order), passing each row to {@code handler}.
+	 *
+	 * @param file
+	 * 		The .xlsx file
+	 * @param sheet
+	 * 		Which sheet, see {@code sheetNames()}
+	 * @param handler
+	 * 		Where to send the rows
+	 * @throws IOException
+	 * 		Error reading the file
+	 * @throws InvalidFormatException
+	 * 		The file isn't an .xlsx workbook, or has no such sheet
+	 */
+	static void read(File file, int sheet, RowHandler handler) throws IOException, InvalidFormatException {
+		try ( OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ) ) {
+			read(pkg, file.toString(), sheet, handler);
+		}
+	}
+
+	/**
+	 * @param file
+	 * 		The .xlsx file
+	 * @return
+	 * 		The names of its sheets, in the workbook's order
+	 * @throws IOException
+	 * 		Error reading the file
+	 * @throws InvalidFormatException
+	 * 		The file isn't an .xlsx workbook
+	 */
+	static List<String> sheetNames(File file) throws IOException, InvalidFormatException {
+		try ( OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ) ) {
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+			List<String> names = new ArrayList<>();
+			while ( sheets.hasNext() ) {
+				sheets.next().close();
+				names.add(sheets.getSheetName());
+			}
+			return names;
+		} catch (OpenXML4JException e) {
+			throw new InvalidFormatException("Can't read " + file + ":  " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Read the first sheet of the .xlsx workbook in {@code in}, passing each
+	 * row to {@code handler}.  The stream is read to the end but not closed.
+	 *
+	 * @param in
+	 * 		The stream holding the .xlsx workbook
+	 * @param handler
+	 * 		Where to send the rows
+	 * @throws IOException
+	 * 		Error reading the stream
+	 * @throws InvalidFormatException
+	 * 		The stream doesn't hold an .xlsx workbook
+	 */
+	static void read(InputStream in, RowHandler handler) throws IOException, InvalidFormatException {
+		OPCPackage pkg = OPCPackage.open(in);
+		try {
+			read(pkg, "stream", 0, handler);
+		} finally {
+			pkg.revert();		// Nothing to save, and close() would try to
+		}
+	}
+
+	private static void read(OPCPackage pkg, String source, int which, RowHandler handler) throws IOException, InvalidFormatException {
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+			Iterator<InputStream> sheets = reader.getSheetsData();
+			for (int i = 0; i < which && sheets.hasNext(); i++)
+				sheets.next().close();
+			if ( ! sheets.hasNext() )
+				throw new InvalidFormatException(( which == 0 ? "No worksheets" : "No sheet " + which ) + " in " + source);
+			try ( InputStream sheet = sheets.next() ) {
+				XMLReader parser = SAXHelper.newXMLReader();
+				parser.setContentHandler(new SheetHandler(strings, handler));
+				parser.parse(new InputSource(sheet));
+			}
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new InvalidFormatException("Can't read " + source + ":  " + e.getMessage());
+		}
+	}
+
+	/*
+	 * SAX handler for the <sheetData> part of a worksheet:  <row r="n"> holding
+	 * <c r="A1" t="type"> cells with either a <v> value or an <is><t> inline string.
+	 */
+	private static class SheetHandler extends DefaultHandler {
+		private final ReadOnlySharedStringsTable strings;
+		private final RowHandler handler;
+		private final StringBuilder text = new StringBuilder();
+		private String[] values = new String[16];
+		private CellType[] types = new CellType[16];
+		private int rowNum = -1;
+		private int width = 0;
+		private int column = -1;
+		private String cellType;
+		private boolean inValue = false;
+
+		SheetHandler(ReadOnlySharedStringsTable strings, RowHandler handler) {
+			this.strings = strings;
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attrs) {
+			switch (localName) {
+			case "row":
+				String r = attrs.getValue("r");
+				rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+				width = 0;
+				column = -1;
+				break;
+			case "c":
+				String ref = attrs.getValue("r");
+				column = ref != null ? columnOf(ref) : column + 1;
+				cellType = attrs.getValue("t");
+				text.setLength(0);
+				store(column, null, CellType.BLANK);
+				break;
+			case "v":
+			case "t":
+				inValue = true;
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if ( inValue )
+				text.append(ch, start, length);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			switch (localName) {
+			case "v":
+			case "t":
+				inValue = false;
+				break;
+			case "c":
+				finishCell();
+				break;
+			case "row":
+				handler.row(rowNum, values, types);
+				Arrays.fill(values, 0, width, null);
+				Arrays.fill(types, 0, width, null);
+				break;
+			default:
+				break;
+			}
+		}
+
+		/*
+		 * Turn the collected text into the value the usermodel would give for the cell
+		 */
+		private void finishCell() {
+			if ( text.length() == 0 && ! "inlineStr".equals(cellType) )
+				return;		// Left as BLANK
+			String value = text.toString();
+			if ( cellType == null || cellType.equals("n") ) {
+				store(column, value, CellType.NUMERIC);
+			} else if ( cellType.equals("s") ) {
+				store(column, strings.getEntryAt(Integer.parseInt(value)), CellType.STRING);
+			} else if ( cellType.equals("inlineStr") || cellType.equals("str") ) {
+				store(column, value, CellType.STRING);
+			} else if ( cellType.equals("b") ) {
+				store(column, value, CellType.BOOLEAN);
+			} else {
+				store(column, value, CellType.ERROR);
+			}
+		}
+
+		private void store(int col, String value, CellType type) {
+			if ( col >= values.length ) {
+				int size = Math.max(col + 1, values.length * 2);
+				values = Arrays.copyOf(values, size);
+				types = Arrays.copyOf(types, size);
+			}
+			values[col] = value;
+			types[col] = type;
+			width = Math.max(width, col + 1);
+		}
+	}
+
+	/*
+	 * Column index of a cell reference, e.g. "AB12" is 27
+	 */
+	static int columnOf(String ref) {
+		int col = 0;
+		for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++)
+			col = col * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+		return col - 1;
+	}
+}
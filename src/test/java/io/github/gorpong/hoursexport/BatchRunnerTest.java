@@ -0,0 +1,135 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Batch Manifest Tests")
+class BatchRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tempDir.resolve("batch.properties"), ("coachesStartRow=3\ncoachesTopRow=1\ncoachesColumn-1=1\n"
+                + "parentsStartRow=3\nparentsTopRow=1\nparentsColumn-1=1\n").getBytes());
+    }
+
+    // Same students in every export, only the hours differ
+    private void createExport(String name, double hours) throws IOException {
+        try (Workbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(tempDir.resolve(name))) {
+            Sheet sheet = wb.createSheet("Export");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Department");
+            header.createCell(1).setCellValue("Name");
+            header.createCell(2).setCellValue("empno");
+            header.createCell(3).setCellValue("workday_w");
+            for (int i = 1; i <= 3; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("1");
+                row.createCell(1).setCellValue("Student " + i);
+                row.createCell(2).setCellValue("10" + i);
+                row.createCell(3).setCellValue(hours);
+            }
+            wb.write(out);
+        }
+    }
+
+    private double firstHours(String output) throws Exception {
+        try (Workbook wb = WorkbookFactory.create(tempDir.resolve(output).toFile())) {
+            return wb.getSheet("Coaches").getRow(5).getCell(2).getNumericCellValue();
+        }
+    }
+
+    @Test
+    void testReadManifest() throws IOException {
+        Path manifest = tempDir.resolve("jobs.txt");
+        Files.write(manifest, ("# input, config, output, low, high\n\n"
+                + "week1.xlsx, batch.properties, week1-out.xlsx, 2, 8\n"
+                + "week2.xlsx,, week2-out.xls\n").getBytes());
+        List<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest);
+        assertEquals(2, jobs.size());
+        assertEquals(3, jobs.get(0).line);
+        assertEquals(tempDir.resolve("week1.xlsx").toString(), jobs.get(0).input);
+        assertEquals("8", jobs.get(0).high);
+        assertNull(jobs.get(1).config);
+        assertNull(jobs.get(1).low);
+        assertNull(jobs.get(0).previous);
+    }
+
+    @Test
+    void testPreviousAddsChanges() throws Exception {
+        createExport("week1.xlsx", 1);
+        createExport("week2.xlsx", 2);
+        Path manifest = tempDir.resolve("jobs.txt");
+        Files.write(manifest, ("week2.xlsx, batch.properties, out2.xlsx,,, week1.xlsx\n"
+                + "week2.xlsx, batch.properties, plain.xlsx\n").getBytes());
+        List<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest);
+        assertEquals(tempDir.resolve("week1.xlsx").toString(), jobs.get(0).previous);
+
+        byte[] week2 = Files.readAllBytes(tempDir.resolve("week2.xlsx"));
+        List<BatchRunner.Result> results = new BatchRunner(2).run(jobs);
+        assertTrue(results.get(0).isSuccess(), results.get(0).getError());
+        assertTrue(results.get(1).isSuccess(), results.get(1).getError());
+        assertArrayEquals(week2, Files.readAllBytes(tempDir.resolve("week2.xlsx")), "Both jobs read it, neither wrote it");
+        try (Workbook wb = WorkbookFactory.create(tempDir.resolve("out2.xlsx").toFile())) {
+            Sheet changes = wb.getSheet("Changes");
+            assertNotNull(changes);
+            assertEquals("Increased", changes.getRow(4).getCell(0).getStringCellValue());
+            assertEquals(3, changes.getRow(4).getCell(1).getNumericCellValue());
+        }
+        try (Workbook wb = WorkbookFactory.create(tempDir.resolve("plain.xlsx").toFile())) {
+            assertNull(wb.getSheet("Changes"));
+        }
+    }
+
+    @Test
+    void testBadManifestLine() throws IOException {
+        Path manifest = tempDir.resolve("bad.txt");
+        Files.write(manifest, "week1.xlsx\n".getBytes());
+        assertThrows(IllegalArgumentException.class, () -> BatchRunner.readManifest(manifest));
+    }
+
+    @Test
+    void testJobsRunIsolated() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (int week = 1; week <= 6; week++) {
+            createExport("week" + week + ".xlsx", week);
+            lines.append("week" + week + ".xlsx, batch.properties, out" + week + (week % 2 == 0 ? ".xls" : ".xlsx") + "\n");
+        }
+        lines.append("missing.xlsx, batch.properties, never.xlsx\n");
+        Path manifest = tempDir.resolve("jobs.txt");
+        Files.write(manifest, lines.toString().getBytes());
+
+        List<BatchRunner.Result> results = new BatchRunner(4).run(BatchRunner.readManifest(manifest));
+        assertEquals(7, results.size());
+        for (int week = 1; week <= 6; week++) {
+            assertTrue(results.get(week - 1).isSuccess(), results.get(week - 1).getError());
+            assertEquals(3, results.get(week - 1).getStudents());
+            // Hours aren't added together across jobs sharing the same student IDs
+            assertEquals(week, firstHours("out" + week + (week % 2 == 0 ? ".xls" : ".xlsx")), 0.001);
+        }
+        assertFalse(results.get(6).isSuccess());
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        BatchRunner.printResults(results, 10, new PrintStream(table));
+        assertTrue(table.toString().contains("7 jobs, 1 failed"));
+    }
+}
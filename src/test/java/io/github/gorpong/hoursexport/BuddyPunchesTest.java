@@ -0,0 +1,221 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Buddy Punch Tests")
+class BuddyPunchesTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final long MONDAY = LocalDate.of(2024, 3, 4).toEpochDay() * 86400;
+
+    private static void punch(PunchLog log, String id, long seconds, byte type, String scanner) throws Exception {
+        log.add(1, 1, "Student " + id, id, seconds, type, scanner);
+    }
+
+    @Test
+    void testPairsPunchingTogether() throws Exception {
+        PunchLog log = new PunchLog(12, 2, 0);
+        for (int day = 0; day < 4; day++) {
+            long in = MONDAY + day * 86400L + 15 * 3600;
+            // One card scanned right after the other, in and out, every day
+            punch(log, "X1", in, PunchLog.IN, "Door");
+            punch(log, "Y2", in + 4, PunchLog.IN, "Door");
+            punch(log, "Y2", in + 6, PunchLog.IN, "Door");		// A double punch is the same time
+            punch(log, "X1", in + 7200, PunchLog.OUT, "Door");
+            punch(log, "Y2", in + 7203, PunchLog.OUT, "Door");
+            // Together at different scanners doesn't count
+            punch(log, "P3", in + 100, PunchLog.IN, "Door");
+            punch(log, "Q4", in + 101, PunchLog.IN, "Gym");
+            // Close, but not close enough
+            punch(log, "R5", in + 300, PunchLog.IN, "Door");
+            punch(log, "S6", in + 311, PunchLog.IN, "Door");
+        }
+        // Arrived together just once
+        punch(log, "T7", MONDAY + 16 * 3600, PunchLog.IN, "Door");
+        punch(log, "U8", MONDAY + 16 * 3600 + 2, PunchLog.IN, "Door");
+
+        BuddyPunches buddies = BuddyPunches.find(log, new StudentStore(), 10, 3);
+        assertEquals(1, buddies.getPairs().size(), buddies.getPairs().toString());
+        BuddyPunches.Pair pair = buddies.getPairs().get(0);
+        assertEquals("X1", pair.getId(0));
+        assertEquals("Y2", pair.getId(1));
+        assertEquals(8, pair.getTimes());
+        assertEquals(4, pair.getDays());
+        assertEquals(3.5, pair.getAverageGapSeconds(), 1e-9);
+        assertEquals(1, pair.getTeam(1));
+
+        List<BuddyPunches.Pair> all = BuddyPunches.find(log, new StudentStore(), 10, 1).getPairs();
+        assertEquals(2, all.size());
+        assertEquals("T7", all.get(1).getId(0));
+        assertTrue(BuddyPunches.find(log, new StudentStore(), 0, 1).getPairs().isEmpty());
+        assertEquals(2, BuddyPunches.find(log, new StudentStore(), 15, 4).getPairs().size(), "R5 and S6 within 15 seconds");
+    }
+
+    @Test
+    void testAcrossMidnight() throws Exception {
+        PunchLog log = new PunchLog(12, 2, 0);
+        for (int night = 0; night < 3; night++) {
+            long midnight = MONDAY + ( night + 1 ) * 86400L;
+            punch(log, "X1", midnight - 3, PunchLog.OUT, "Door");
+            punch(log, "Y2", midnight + 2, PunchLog.OUT, "Door");
+        }
+        BuddyPunches.Pair pair = BuddyPunches.find(log, new StudentStore(), 10, 3).getPairs().get(0);
+        assertEquals(3, pair.getTimes());
+        assertEquals(3, pair.getDays());
+        assertEquals(5.0, pair.getAverageGapSeconds(), 1e-9);
+    }
+
+    @Test
+    void testNamesAndTeamsAsCounted() throws Exception {
+        PunchLog log = new PunchLog(12, 2, 0);
+        for (int day = 0; day < 3; day++) {
+            long in = MONDAY + day * 86400L + 15 * 3600;
+            log.add(1, 1, "Smith John", "X1", in, PunchLog.IN, "Door");
+            log.add(1, 1, "Jane Roe", "Y2", in + 2, PunchLog.IN, "Door");
+        }
+        StudentStore store = new StudentStore();
+        store.add("X1", "John Smith", 7);
+        BuddyPunches.Pair pair = BuddyPunches.find(log, store, 10, 3).getPairs().get(0);
+        assertEquals("Smith, John", pair.getName(0));
+        assertEquals(7, pair.getTeam(0));
+        // Not counted, so the log's
+        assertEquals("Roe, Jane", pair.getName(1));
+        assertEquals(1, pair.getTeam(1));
+    }
+
+    @Test
+    void testSameAsComparingEveryPunch() throws Exception {
+        Random random = new Random(48);
+        PunchLog log = new PunchLog(12, 2, 0);
+        int n = 12000;
+        long[] times = new long[n];
+        int[] students = new int[n];
+        int[] scanners = new int[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = MONDAY + random.nextInt(5) * 86400L + 14 * 3600 + random.nextInt(4 * 3600);
+            students[i] = random.nextInt(800);
+            scanners[i] = random.nextInt(3);
+            punch(log, "S" + students[i], times[i], PunchLog.UNKNOWN, "Scanner " + scanners[i]);
+        }
+        int window = 5;
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++)
+                if ( students[i] != students[j] && scanners[i] == scanners[j]
+                        && Math.abs(times[i] - times[j]) <= window ) {
+                    int a = Math.min(students[i], students[j]);
+                    int b = Math.max(students[i], students[j]);
+                    String first = "S" + a, second = "S" + b;
+                    expected.add(first.compareTo(second) < 0 ? first + "/" + second : second + "/" + first);
+                }
+        assertFalse(expected.isEmpty());
+
+        Set<String> found = new HashSet<>();
+        for (BuddyPunches.Pair pair : BuddyPunches.find(log, new StudentStore(), window, 1).getPairs()) {
+            assertTrue(pair.getTimes() >= 1);
+            assertTrue(pair.getDays() <= pair.getTimes());
+            assertTrue(pair.getAverageGapSeconds() <= window);
+            found.add(pair.getId(0) + "/" + pair.getId(1));
+        }
+        assertEquals(expected, found);
+    }
+
+    @Test
+    void testBuddyPunchesSheet() throws Exception {
+        Path file = tempDir.resolve("punches.xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file.toFile())) {
+            Sheet sheet = wb.createSheet("Punches");
+            String[] header = { "Department", "Name", "empno", "punch_time", "punch_type", "scanner" };
+            Row row = sheet.createRow(0);
+            for (int c = 0; c < header.length; c++)
+                row.createCell(c).setCellValue(header[c]);
+            int r = 1;
+            for (int day = 4; day <= 6; day++) {
+                String date = "2024-03-0" + day + " ";
+                String[][] punches = {
+                        { "6209", "John Doe", "100", date + "15:00:00", "In", "Door" },
+                        { "4545", "Jane Roe", "200", date + "15:00:03", "In", "Door" },
+                        { "6209", "John Doe", "100", date + "17:00:00", "Out", "Door" },
+                        { "4545", "Jane Roe", "200", date + "17:00:05", "Out", "Door" },
+                };
+                for (String[] punch : punches) {
+                    row = sheet.createRow(r++);
+                    row.createCell(0).setCellValue(Double.parseDouble(punch[0]));
+                    for (int c = 1; c < punch.length; c++)
+                        row.createCell(c).setCellValue(punch[c]);
+                }
+            }
+            wb.write(out);
+        }
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("inputFormat", "punches");
+        Teams teams = new Teams(file.toString(), cfg);
+        teams.parseExcel();
+        assertEquals(360 * 60, teams.getHoursByTeam(6209).get(0).getSeconds());
+        assertEquals(1, teams.getBuddyPunches().getPairs().size());
+
+        Output out = Output.create(false, cfg, 3.0, 7.0);
+        out.createSheet(teams, SheetType.BUDDY_PUNCHES);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.write(bytes);
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Sheet sheet = wb.getSheet("Buddy Punches");
+            assertTrue(sheet.getRow(0).getCell(0).getStringCellValue().startsWith("COACHES ONLY"));
+            Row pair = sheet.getRow(4);
+            assertEquals(6209, (int) pair.getCell(0).getNumericCellValue());
+            assertEquals("100", pair.getCell(1).getStringCellValue());
+            assertEquals("Doe, John", pair.getCell(2).getStringCellValue());
+            assertEquals("200", pair.getCell(4).getStringCellValue());
+            assertEquals(6, (int) pair.getCell(6).getNumericCellValue());
+            assertEquals(3, (int) pair.getCell(7).getNumericCellValue());
+            assertEquals(4.0, pair.getCell(8).getNumericCellValue(), 1e-9);
+            assertNull(sheet.getRow(5));
+        }
+
+        // With a roster, the roster's name and team
+        Path roster = tempDir.resolve("roster.csv");
+        Files.write(roster, "empno,Name,Department\n100,\"Smith, Ann\",4545\n".getBytes(StandardCharsets.UTF_8));
+        cfg.setConfig("rosterFile", roster.toString());
+        cfg.setConfig("rosterCacheDirectory", tempDir.resolve("cache").toString());
+        teams = new Teams(file.toString(), cfg);
+        teams.parseExcel();
+        BuddyPunches.Pair pair = teams.getBuddyPunches().getPairs().get(0);
+        assertEquals("Smith, Ann", pair.getName(0));
+        assertEquals(4545, pair.getTeam(0));
+
+        // Not a punch log, no sheet
+        Path export = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(50).seed(48).write(export);
+        Teams hours = new Teams(export.toString(), new ConfigProperties());
+        hours.parseExcel();
+        assertTrue(hours.getBuddyPunches().getPairs().isEmpty());
+        out = Output.create(false, new ConfigProperties(), 3.0, 7.0);
+        out.createSheet(hours, SheetType.BUDDY_PUNCHES);
+        assertNull(out.getWorkbook().getSheet("Buddy Punches"));
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Cell Decoding and Diagnostics Tests")
+class CellDecoderTest {
+
+    @Test
+    void testParseInt() {
+        assertEquals(12, CellDecoder.parseInt("12"));
+        assertEquals(12, CellDecoder.parseInt(" 12\t"));
+        assertEquals(-3, CellDecoder.parseInt("-3"));
+        assertEquals(7, CellDecoder.parseInt("+7"));
+        assertEquals(Integer.MAX_VALUE, CellDecoder.parseInt("2147483647"));
+        for (String bad : new String[] { null, "", " ", "TBD", "1.5", "12a", "-", "2147483648", "99999999999" })
+            assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.parseInt(bad), "\"" + bad + "\"");
+    }
+
+    @Test
+    void testWorkbookCells() throws Exception {
+        try (Workbook wb = new XSSFWorkbook()) {
+            Row row = wb.createSheet().createRow(0);
+            row.createCell(0).setCellValue("6201");
+            row.createCell(1).setCellValue(6202.0);
+            row.createCell(2).setCellValue(6202.5);
+            row.createCell(3).setCellFormula("6200+3");
+            row.createCell(4);
+            row.createCell(5).setCellValue("Department");
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+            assertEquals(6201, CellDecoder.team(row.getCell(0)));
+            assertEquals(6202, CellDecoder.team(row.getCell(1)));
+            assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.team(row.getCell(2)));
+            assertEquals(6203, CellDecoder.team(row.getCell(3)));
+            assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.team(row.getCell(4)));
+            assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.team(row.getCell(5)));		// A repeated header
+            assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.team(row.getCell(9)));
+
+            assertEquals("6201", CellDecoder.string(row.getCell(0)));
+            assertNull(CellDecoder.string(row.getCell(1)));
+            assertEquals("", CellDecoder.string(row.getCell(4)));
+            assertNull(CellDecoder.string(null));
+
+            assertEquals(6202.5, CellDecoder.number(row.getCell(2)));
+            assertEquals(6203.0, CellDecoder.number(row.getCell(3)));
+            assertEquals(0.0, CellDecoder.number(row.getCell(4)));
+            assertTrue(Double.isNaN(CellDecoder.number(row.getCell(0))));
+            assertTrue(Double.isNaN(CellDecoder.number(null)));
+        }
+    }
+
+    @Test
+    void testStreamedValues() {
+        assertEquals(42, CellDecoder.team("42", CellType.STRING));
+        assertEquals(42, CellDecoder.team("42.0", CellType.NUMERIC));
+        assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.team("TRUE", CellType.BOOLEAN));
+        assertEquals(CellDecoder.NOT_A_NUMBER, CellDecoder.team(null, null));
+        assertEquals(1.25, CellDecoder.number("1.25", CellType.NUMERIC));
+        assertTrue(Double.isNaN(CellDecoder.number("n/a", CellType.STRING)));
+        assertEquals(17777, CellDecoder.day("2018-09-03", CellType.STRING));
+        assertEquals(17777, CellDecoder.day("43346", CellType.NUMERIC));
+        assertEquals(DailySeconds.NO_DAY, CellDecoder.day("next week", CellType.STRING));
+    }
+
+    @Test
+    void testDiagnosticsAreLimited() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Diagnostics diag = new Diagnostics(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        for (int i = 0; i < 5000; i++)
+            diag.report("Parse Error:  row %d, invalid Team number:  %s", i, "TBD");
+        assertEquals(5000, diag.getCount());
+        assertEquals(0, bytes.size(), "Nothing printed until the flush");
+        diag.flush();
+        String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(Diagnostics.MAX_SHOWN + 1, lines.length);
+        assertEquals("Parse Error:  row 0, invalid Team number:  TBD", lines[0]);
+        assertEquals("Parse Error:  4980 more rows had problems, not shown", lines[lines.length - 1]);
+
+        bytes.reset();
+        diag.flush();
+        assertEquals(0, bytes.size());
+    }
+}
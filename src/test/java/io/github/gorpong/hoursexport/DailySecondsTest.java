@@ -0,0 +1,123 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Totals in Seconds and Daily Breakdown Tests")
+class DailySecondsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final int MON = (int) LocalDate.of(2018, 9, 3).toEpochDay();
+
+    @Test
+    void testAddKeepsDaysInOrder() {
+        DailySeconds daily = new DailySeconds();
+        for (int d : new int[] { 4, 0, 2, 6, 1, 5, 3 })
+            daily.add(MON + d, 10 * (d + 1));
+        daily.add(MON + 2, 5);
+        assertEquals(7, daily.size());
+        for (int i = 0; i < daily.size(); i++)
+            assertEquals(MON + i, daily.getDay(i));
+        assertEquals(35, daily.getSecondsForDay(MON + 2));
+        assertEquals(0, daily.getSecondsForDay(MON + 9));
+        assertEquals(285, daily.total());
+        assertEquals(LocalDate.of(2018, 9, 3), daily.getDate(0));
+    }
+
+    /*
+     * Ten 0.1 hour rows for ID 1 over three days (one as an Excel date, one
+     * with no date), and a row for ID 2 on a second team.
+     */
+    private Path export(String name, Workbook wb) throws Exception {
+        Sheet sheet = wb.createSheet("Export");
+        Row header = sheet.createRow(0);
+        String[] labels = { "Department", "Name", "empno", "workday_w", "date" };
+        for (int c = 0; c < labels.length; c++)
+            header.createCell(c).setCellValue(labels[c]);
+        for (int r = 1; r <= 11; r++) {
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r == 11 ? "12" : "11");
+            row.createCell(1).setCellValue(r == 11 ? "Smith, Ann" : "Bob, Joe");
+            row.createCell(2).setCellValue(r == 11 ? "2" : "1");
+            row.createCell(3).setCellValue(r == 11 ? 2.5 : 0.1);
+            if ( r <= 4 )
+                row.createCell(4).setCellValue("2018-09-03");
+            else if ( r <= 8 )
+                row.createCell(4).setCellValue(43347.0);		// 9/4/2018
+            else if ( r <= 9 )
+                row.createCell(4).setCellValue("9/5/2018");
+        }
+        Path file = tempDir.resolve(name);
+        try (OutputStream out = new FileOutputStream(file.toFile())) {
+            wb.write(out);
+        }
+        wb.close();
+        return file;
+    }
+
+    @Test
+    void testParseBreaksDownByDay() throws Exception {
+        Path[] files = { export("daily.xlsx", new XSSFWorkbook()), export("daily.xls", new HSSFWorkbook()) };
+        for (Path file : files) {
+            for (String budget : new String[] { null, "1K" }) {
+                ConfigProperties cfg = new ConfigProperties();
+                if ( budget != null ) {
+                    cfg.setConfig("aggregationBudget", budget);
+                    cfg.setConfig("spillDirectory", tempDir.toString());
+                }
+                Teams teams = new Teams(file.toString(), cfg);
+                teams.parseExcel();
+
+                Student joe = teams.getHoursByTeam(11).get(0);
+                assertEquals(60 * 60, joe.getSeconds());
+                DailySeconds daily = joe.getDaily();
+                assertEquals(3, daily.size(), file + " " + budget);
+                assertEquals(24 * 60, daily.getSecondsForDay(MON));
+                assertEquals(24 * 60, daily.getSecondsForDay(MON + 1));
+                assertEquals(6 * 60, daily.getSecondsForDay(MON + 2));
+                assertEquals(150 * 60, teams.getHoursByTeam(12).get(0).getSeconds());
+                assertNull(teams.getHoursByTeam(12).get(0).getDaily());
+            }
+        }
+    }
+
+    @Test
+    void testThresholdsAndDailySheet() throws Exception {
+        Teams teams = new Teams(export("sheet.xlsx", new XSSFWorkbook()).toString(), new ConfigProperties());
+        teams.parseExcel();
+
+        // Ten 0.1 hour rows are exactly the 1 hour low threshold, not under it
+        Output out = Output.create(false, new ConfigProperties(), 1.0, 2.0);
+        out.createSheet(teams, SheetType.DAILY);
+        assertEquals(0, out.getLowCount());
+
+        Sheet sheet = out.getWorkbook().getSheet("Daily");
+        assertNotNull(sheet);
+        Row titles = sheet.getRow(2);
+        assertEquals("Name", titles.getCell(1).getStringCellValue());
+        assertEquals("Total", titles.getCell(5).getStringCellValue());
+        Row joe = sheet.getRow(3);
+        assertEquals(11, (int) joe.getCell(0).getNumericCellValue());
+        assertEquals(0.4, joe.getCell(2).getNumericCellValue(), 1e-9);
+        assertEquals(0.1, joe.getCell(4).getNumericCellValue(), 1e-9);
+        assertEquals(1.0, joe.getCell(5).getNumericCellValue(), 1e-9);
+        assertEquals("Smith, Ann", sheet.getRow(4).getCell(1).getStringCellValue());
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Synthetic Export Generator Tests")
+class ExportGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Teams parse(Path file) throws Exception {
+        Teams teams = new Teams(file.toString(), new ConfigProperties());
+        teams.parseExcel();
+        return teams;
+    }
+
+    @Test
+    void testGeneratedXlsxParses() throws Exception {
+        ExportGenerator gen = new ExportGenerator().students(40).teams(4, 6200).rowsPerStudent(3);
+        Path file = tempDir.resolve("export.xlsx");
+        gen.write(file);
+        assertEquals(120, gen.getRowsWritten());
+
+        Teams teams = parse(file);
+        assertEquals(List.of(6200, 6201, 6202, 6203), teams.getTeams());
+        assertEquals(10, teams.getHoursByTeam(6201).size());
+        for (Student s : teams.getHoursByTeam(6200))
+            assertTrue(s.getHours() > 0.7 && s.getHours() < 12.0);
+    }
+
+    @Test
+    void testNameFormats() throws Exception {
+        ExportGenerator gen = new ExportGenerator().students(2).teams(1, 1);
+        assertEquals("Adams, Aiden", gen.nameOf(0));
+        assertEquals("Amara Adams", gen.nameOf(1));
+        gen.nameFormat(ExportGenerator.NameFormat.FIRST_LAST);
+        assertEquals("Aiden Adams", gen.nameOf(0));
+
+        // Both forms end up the same way on the report
+        Path file = tempDir.resolve("names.xls");
+        gen.nameFormat(ExportGenerator.NameFormat.MIXED).write(file);
+        Teams teams = parse(file);
+        for (Student s : teams.getHoursByTeam(1))
+            assertTrue(s.getName().startsWith("Adams, "));
+    }
+
+    @Test
+    void testMalformedRowsSkipped() throws Exception {
+        ExportGenerator gen = new ExportGenerator().students(200).teams(5, 1).rowsPerStudent(2)
+                .malformedRate(0.25).seed(7);
+        Path file = tempDir.resolve("dirty.xlsx");
+        gen.write(file);
+        assertTrue(gen.getMalformedRows() > 50 && gen.getMalformedRows() < 150);
+
+        Teams teams = parse(file);
+        int students = 0;
+        for (Integer team : teams.getTeams())
+            students += teams.getHoursByTeam(team).size();
+        assertTrue(students > 150 && students <= 200);
+    }
+
+    @Test
+    void testCsv() throws IOException {
+        ExportGenerator gen = new ExportGenerator().students(3).rowsPerStudent(2).nameFormat(ExportGenerator.NameFormat.LAST_FIRST);
+        Path file = tempDir.resolve("export.csv");
+        gen.write(file);
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(7, lines.size());
+        assertEquals("empno,Name,Department,workday_w", lines.get(0));
+        assertTrue(lines.get(1).startsWith("100000,\"Adams, Aiden\",1000,"));
+    }
+
+    @Test
+    void testXlsRowLimit() {
+        ExportGenerator gen = new ExportGenerator().students(70000).rowsPerStudent(1);
+        assertThrows(IllegalArgumentException.class, () -> gen.write(tempDir.resolve("big.xls")));
+        // Checked before anything is written, rather than failing part way through the file
+        ExportGenerator huge = new ExportGenerator().students(350000).rowsPerStudent(3);
+        assertThrows(IllegalArgumentException.class, () -> huge.write(tempDir.resolve("huge.xlsx")));
+        assertFalse(Files.exists(tempDir.resolve("huge.xlsx")));
+    }
+}
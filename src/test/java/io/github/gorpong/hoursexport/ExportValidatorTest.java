@@ -0,0 +1,130 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.ExportValidator.Kind;
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Export Validation Tests")
+class ExportValidatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final Object[][] ROWS = {
+        // Team, Name, ID, hours, date
+        { "1", "Doe, John", "100", 2.0, "2018-09-03" },
+        { "1", "Doe, Jane", "200", 3.0, "2018-09-03" },
+        { "2", "Doe, John", "100", 1.0, "2018-09-04" },		// Second team
+        { "1", "Doe, Johnny", "100", 1.0, "2018-09-04" },	// Different name
+        { "1", "Doe, Jane", "200", -2.0, "2018-09-04" },	// Negative
+        { "1", "Doe, Jane", "200", 20.0, "2018-09-05" },
+        { "1", "Doe, Jane", "200", 5.0, "2018-09-05" },		// 25 hours that day
+        { "1", "Doe, Jane", "200", 1.0, "2018-09-05" },		// Only noted once
+        { "TBD", "Roe, Rick", "300", 1.0, "2018-09-05" },	// Bad team
+        { "3", "Roe, Rick", "300", 30.0, null },			// No date, 30 hours in a row
+    };
+
+    private Path export() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        try (Workbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file.toFile())) {
+            Sheet sheet = wb.createSheet("Export");
+            Row header = sheet.createRow(0);
+            String[] labels = { "Department", "Name", "empno", "workday_w", "date" };
+            for (int c = 0; c < labels.length; c++)
+                header.createCell(c).setCellValue(labels[c]);
+            for (int r = 0; r < ROWS.length; r++) {
+                Row row = sheet.createRow(r + 1);
+                for (int c = 0; c < 5; c++) {
+                    if ( ROWS[r][c] instanceof Double )
+                        row.createCell(c).setCellValue((Double) ROWS[r][c]);
+                    else if ( ROWS[r][c] != null )
+                        row.createCell(c).setCellValue((String) ROWS[r][c]);
+                }
+            }
+            wb.write(out);
+        }
+        return file;
+    }
+
+    private Teams parse(Path file, String budget) throws Exception {
+        ConfigProperties cfg = new ConfigProperties();
+        if ( budget != null ) {
+            cfg.setConfig("aggregationBudget", budget);
+            cfg.setConfig("spillDirectory", tempDir.toString());
+        }
+        Teams teams = new Teams(file.toString(), cfg);
+        teams.parseExcel();
+        return teams;
+    }
+
+    @Test
+    void testAnomaliesFoundWhileParsing() throws Exception {
+        Path file = export();
+        for (String budget : new String[] { null, "1" }) {
+            Teams teams = parse(file, budget);
+            ExportValidator v = teams.getValidator();
+            assertEquals(1, v.getCount(Kind.MULTIPLE_TEAMS), "budget " + budget);
+            assertEquals(1, v.getCount(Kind.NAME_MISMATCH));
+            assertEquals(1, v.getCount(Kind.NEGATIVE_HOURS));
+            assertEquals(2, v.getCount(Kind.IMPOSSIBLE_HOURS));
+            assertEquals(1, v.getCount(Kind.INVALID_TEAM));
+            assertEquals(6, v.getTotal());
+
+            // John stays on team 1 only, with all of his hours
+            assertEquals(List.of(1, 3), teams.getTeams());
+            List<Student> one = teams.getHoursByTeam(1);
+            assertEquals(2, one.size());
+            assertEquals("200", one.get(0).getId());
+            assertEquals(29.0, one.get(0).getHours());		// Negative row left out
+            assertEquals(4.0, one.get(1).getHours());
+        }
+    }
+
+    @Test
+    void testAnomaliesInRowOrder() throws Exception {
+        List<ExportValidator.Anomaly> list = parse(export(), null).getValidator().getAnomalies();
+        assertEquals(Kind.MULTIPLE_TEAMS, list.get(0).getKind());
+        assertEquals(3, list.get(0).getRow());
+        assertEquals("100", list.get(0).getId());
+        assertEquals(Kind.NAME_MISMATCH, list.get(1).getKind());
+        assertEquals(Kind.IMPOSSIBLE_HOURS, list.get(3).getKind());
+        assertEquals(7, list.get(3).getRow());
+        assertNull(list.get(4).getId());
+        assertEquals("1 Invalid team, 1 Name mismatch, 1 Negative hours, 2 Over 24 hours in a day, 1 On multiple teams",
+                parse(export(), null).getValidator().summary());
+    }
+
+    @Test
+    void testAnomaliesSheet() throws Exception {
+        Teams teams = parse(export(), null);
+        Output out = Output.create(false, new ConfigProperties(), 3.0, 7.0);
+        out.createSheet(teams, SheetType.ANOMALIES);
+        Sheet sheet = out.getWorkbook().getSheet("Anomalies");
+        assertNotNull(sheet);
+        assertEquals("Invalid team", sheet.getRow(2).getCell(0).getStringCellValue());
+        assertEquals(1, (int) sheet.getRow(2).getCell(1).getNumericCellValue());
+        // Five kinds counted, a blank row, the titles, then the first anomaly as Excel numbers the rows
+        assertEquals("Row", sheet.getRow(8).getCell(0).getStringCellValue());
+        assertEquals(4, (int) sheet.getRow(9).getCell(0).getNumericCellValue());
+        assertEquals("On multiple teams", sheet.getRow(9).getCell(2).getStringCellValue());
+
+        // A clean export doesn't get the sheet
+        Output clean = Output.create(false, new ConfigProperties(), 3.0, 7.0);
+        clean.createSheet(new Teams(new ConfigProperties()), SheetType.ANOMALIES);
+        assertNull(clean.getWorkbook().getSheet("Anomalies"));
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Hours Index Tests")
+class HoursIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Teams parse() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(3000).teams(7, 4000).rowsPerStudent(3).malformedRate(0.01).seed(45).write(file);
+        Teams teams = new Teams(file.toString(), new ConfigProperties());
+        teams.parseExcel();
+        return teams;
+    }
+
+    @Test
+    void testIndexAnswersLikeTheTeams() throws Exception {
+        Teams teams = parse();
+        Path file = tempDir.resolve("hours.idx");
+        HoursIndex.write(teams, file);
+        HoursIndex index = HoursIndex.open(file);
+
+        List<Student> everyone = new ArrayList<>();
+        long total = 0;
+        for (Integer team : teams.getTeams()) {
+            List<Student> students = teams.getHoursByTeam(team);
+            int[] indexed = index.getTeamStudents(team);
+            assertEquals(students.size(), indexed.length);
+            long seconds = 0;
+            for (int i = 0; i < indexed.length; i++) {
+                Student s = students.get(i);
+                assertEquals(s.getId(), index.getId(indexed[i]), "Same order as the report");
+                assertEquals(s.getSeconds(), index.getSeconds(indexed[i]));
+                seconds += s.getSeconds();
+
+                int found = index.find(s.getId());
+                assertEquals(indexed[i], found);
+                assertEquals((int) team, index.getTeam(found));
+                assertEquals(s.getName(), new Student(index.getName(found), s.getId(), 0, null).getName());
+            }
+            assertEquals(seconds, index.getTeamSeconds(team));
+            everyone.addAll(students);
+            total += seconds;
+        }
+        assertEquals(everyone.size(), index.size());
+        assertEquals(teams.getTeams().size(), index.teamCount());
+        assertEquals(total, index.getTotalSeconds());
+
+        assertEquals(-1, index.find("no such student"));
+        assertNull(index.getTeamStudents(1));
+        assertEquals(-1, index.getTeamSeconds(1));
+
+        for (int limit : new int[] { -1, 0, 60, 180, 420, 100000 }) {
+            int over = 0;
+            int under = 0;
+            for (Student s : everyone) {
+                over += s.getSeconds() > limit ? 1 : 0;
+                under += s.getSeconds() < limit ? 1 : 0;
+            }
+            int[] overList = index.over(limit);
+            int[] underList = index.under(limit);
+            assertEquals(over, overList.length, "over " + limit);
+            assertEquals(under, underList.length, "under " + limit);
+            for (int i = 1; i < overList.length; i++)
+                assertTrue(index.getSeconds(overList[i - 1]) >= index.getSeconds(overList[i]));
+            for (int i = 1; i < underList.length; i++)
+                assertTrue(index.getSeconds(underList[i - 1]) <= index.getSeconds(underList[i]));
+            if ( over > 0 )
+                assertTrue(index.getSeconds(overList[over - 1]) > limit);
+        }
+    }
+
+    @Test
+    void testQueryCommand() throws Exception {
+        Teams teams = parse();
+        Path file = tempDir.resolve("hours.idx");
+        HoursIndex.write(teams, file);
+        int team = teams.getTeams().get(0);
+        Student top = teams.getHoursByTeam(team).get(0);
+
+        PrintStream saved = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try {
+            HoursMain.main(new String[] { "query", "--index", file.toString(), "--id", top.getId(), "--team",
+                    String.valueOf(team) });
+        } finally {
+            System.setOut(saved);
+        }
+        String[] lines = bytes.toString().split("\\R");
+        assertTrue(lines[0].startsWith(top.getId()), lines[0]);
+        assertTrue(lines[0].contains(top.getName()));
+        assertTrue(lines[0].contains(String.format("%.2f hours", top.getHours())));
+        assertTrue(lines[1].startsWith("Team " + team + ":  " + teams.getHoursByTeam(team).size() + " students"),
+                lines[1]);
+        assertEquals(2 + teams.getHoursByTeam(team).size(), lines.length);
+    }
+
+    @Test
+    void testNotAnIndex() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(10).seed(1).write(file);
+        IOException e = assertThrows(IOException.class, () -> HoursIndex.open(file));
+        assertEquals("Not an hours index", e.getMessage());
+
+        Path cut = tempDir.resolve("cut.idx");
+        HoursIndex.write(parse(), cut);
+        byte[] data = Files.readAllBytes(cut);
+        Files.write(cut, Arrays.copyOf(data, data.length - 10));
+        e = assertThrows(IOException.class, () -> HoursIndex.open(cut));
+        assertEquals("Hours index is truncated or damaged", e.getMessage());
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Hours Statistics Tests")
+class HoursStatsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSketchQuantiles() {
+        Random random = new Random(46);
+        int[] values = new int[20000];
+        QuantileSketch sketch = new QuantileSketch();
+        QuantileSketch[] parts = { new QuantileSketch(), new QuantileSketch(), new QuantileSketch() };
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 50 == 0 ? 0 : 30 + random.nextInt(600) + (random.nextInt(10) == 0 ? 2000 : 0);
+            sketch.add(values[i]);
+            parts[i % 3].add(values[i]);
+            sum += values[i];
+        }
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : new double[] { 0.0, 0.01, 0.1, 0.5, 0.9, 0.99, 1.0 }) {
+            double exact = HoursStats.quantile(sorted, q);
+            assertEquals(exact, sketch.quantile(q), exact * QuantileSketch.ACCURACY + 1e-9, "q=" + q);
+        }
+        assertEquals(values.length, sketch.getCount());
+        assertEquals(sum, sketch.getSum());
+        assertEquals(0, sketch.getMin());
+        assertEquals(sorted[sorted.length - 1], sketch.getMax());
+
+        // Merged in any order it's the same sketch
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(parts[2]);
+        merged.merge(new QuantileSketch());
+        merged.merge(parts[0]);
+        merged.merge(parts[1]);
+        for (double q = 0; q <= 1.0; q += 0.05)
+            assertEquals(sketch.quantile(q), merged.quantile(q), "q=" + q);
+        assertEquals(sketch.getSum(), merged.getSum());
+        assertEquals(sketch.getMax(), merged.getMax());
+
+        QuantileSketch empty = new QuantileSketch();
+        assertEquals(0, empty.quantile(0.5));
+        assertEquals(0, empty.getMin());
+        assertEquals(0, empty.getMean());
+    }
+
+    @Test
+    void testQuantilesInterpolate() {
+        int[] sorted = { 120, 240, 360, 480 };
+        assertEquals(300, HoursStats.quantile(sorted, 0.5), 1e-9);
+        assertEquals(444, HoursStats.quantile(sorted, 0.9), 1e-9);
+        assertEquals(120, HoursStats.quantile(sorted, 0.0), 1e-9);
+        assertEquals(480, HoursStats.quantile(sorted, 1.0), 1e-9);
+        assertEquals(0, HoursStats.quantile(new int[0], 0.5));
+
+        QuantileSketch sketch = new QuantileSketch();
+        for (int seconds : sorted)
+            sketch.add(seconds);
+        assertEquals(300, sketch.quantile(0.5), 300 * QuantileSketch.ACCURACY);
+    }
+
+    private Teams parse(int seed) throws Exception {
+        Path file = tempDir.resolve("export" + seed + ".xlsx");
+        new ExportGenerator().students(1500).teams(2, 1).rowsPerStudent(4).seed(seed).write(file);
+        Teams teams = new Teams(file.toString(), new ConfigProperties());
+        teams.parseExcel();
+        return teams;
+    }
+
+    @Test
+    void testTeamAndProgramStats() throws Exception {
+        Teams teams = parse(46);
+        HoursStats stats = teams.getStats();
+        assertSame(stats, teams.getStats());
+        assertEquals(teams.getTeams(), stats.getTeams());
+        int students = 0;
+        long seconds = 0;
+        for (Integer team : teams.getTeams()) {
+            List<Student> list = teams.getHoursByTeam(team);
+            HoursStats.Summary summary = stats.getTeam(team);
+            long teamSeconds = 0;
+            for (Student s : list)
+                teamSeconds += s.getSeconds();
+            assertEquals(list.size(), summary.getStudents());
+            assertEquals(teamSeconds / 3600.0, summary.getTotalHours(), 1e-9);
+            assertEquals(teamSeconds / 3600.0 / list.size(), summary.getMeanHours(), 1e-9);
+            assertEquals(list.get(0).getHours(), summary.getMaxHours(), 1e-9);
+            assertEquals(list.get(list.size() - 1).getHours(), summary.getMinHours(), 1e-9);
+            // One export's are exact
+            int[] sorted = list.stream().mapToInt(Student::getSeconds).sorted().toArray();
+            assertEquals(HoursStats.quantile(sorted, 0.5) / 3600.0, summary.getMedianHours(), 1e-9);
+            assertEquals(HoursStats.quantile(sorted, 0.9) / 3600.0, summary.getPercentileHours(90), 1e-9);
+            students += list.size();
+            seconds += teamSeconds;
+        }
+        assertEquals(students, stats.getProgram().getStudents());
+        assertEquals(seconds / 3600.0, stats.getProgram().getTotalHours(), 1e-9);
+        assertNull(stats.getTeam(-1));
+
+        HoursStats both = HoursStats.empty();
+        both.merge(stats);
+        assertEquals(stats.getProgram().getMedianHours(), both.getProgram().getMedianHours(), 1e-9);
+        both.merge(parse(47).getStats());
+        assertEquals(2 * students, both.getProgram().getStudents(), "Different students in the two exports");
+        assertEquals(stats.getTeams(), both.getTeams());
+    }
+
+    @Test
+    void testSummaryRowsAndSheet() throws Exception {
+        Teams teams = parse(46);
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("coachesStartRow", "1");
+        cfg.setConfig("coachesTopRow", "1,2");
+        cfg.setConfig("coachesColumn-1", "0");
+        cfg.setConfig("coachesColumn-2", "4");
+        cfg.setConfig("statistics", "true");
+        Output out = Output.create(false, cfg, 3.0, 7.0);
+        out.createSheet(teams, SheetType.COACHES);
+        out.createSheet(teams, SheetType.SUMMARY);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.write(bytes);
+
+        HoursStats.Summary one = teams.getStats().getTeam(1);
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Sheet coaches = wb.getSheet("Coaches");
+            int after = 3 + teams.getHoursByTeam(1).size();		// Headers in row 2, students from row 3
+            assertEquals("Total", coaches.getRow(after).getCell(0).getStringCellValue());
+            assertEquals(Math.round(one.getTotalHours() * 100) / 100.0,
+                    coaches.getRow(after).getCell(1).getNumericCellValue(), 1e-9);
+            assertEquals("90th Percentile", coaches.getRow(after + 3).getCell(0).getStringCellValue());
+            assertEquals(Math.round(one.getPercentileHours(90) * 100) / 100.0,
+                    coaches.getRow(after + 3).getCell(1).getNumericCellValue(), 1e-9);
+
+            Sheet summary = wb.getSheet("Summary");
+            assertEquals("Median", summary.getRow(2).getCell(4).getStringCellValue());
+            assertEquals("1", summary.getRow(3).getCell(0).getStringCellValue());
+            assertEquals(one.getStudents(), (long) summary.getRow(3).getCell(1).getNumericCellValue());
+            Row program = summary.getRow(5);
+            assertEquals("Program", program.getCell(0).getStringCellValue());
+            assertEquals(teams.getStats().getProgram().getStudents(), (long) program.getCell(1).getNumericCellValue());
+        }
+
+        // Off by default
+        out = Output.create(false, new ConfigProperties(), 3.0, 7.0);
+        out.createSheet(teams, SheetType.SUMMARY);
+        assertNull(out.getWorkbook().getSheet("Summary"));
+    }
+}
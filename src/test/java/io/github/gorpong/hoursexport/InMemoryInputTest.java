@@ -0,0 +1,98 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.EmptyFileException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("In-memory Input Tests")
+class InMemoryInputTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> describe(Teams teams) {
+        List<String> out = new ArrayList<>();
+        for (Integer team : teams.getTeams())
+            for (Student s : teams.getHoursByTeam(team))
+                out.add(team + "/" + s.getId() + "/" + s.getName() + "/" + s.getSeconds());
+        return out;
+    }
+
+    @Test
+    void testEveryInputGivesSameTeams() throws Exception {
+        // Named the wrong way around, the type has to come from the bytes
+        for (String name : new String[] { "export.xls", "export.xlsx" }) {
+            Path file = tempDir.resolve(name);
+            new ExportGenerator().students(200).teams(4, 100).rowsPerStudent(3).malformedRate(0.02).seed(9)
+                    .write(file, name.endsWith(".xls") ? ExportGenerator.Format.XLSX : ExportGenerator.Format.XLS);
+            byte[] data = Files.readAllBytes(file);
+
+            Teams fromFile = new Teams(file.toString(), new ConfigProperties());
+            fromFile.parseExcel();
+            List<String> expected = describe(fromFile);
+            assertFalse(expected.isEmpty());
+
+            Teams teams = new Teams(new ConfigProperties());
+            teams.parseExcel(data);
+            assertEquals(expected, describe(teams), name + " byte[]");
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 10);
+            direct.position(10);
+            direct.put(data);
+            direct.position(10);
+            teams = new Teams(new ConfigProperties());
+            teams.parseExcel(direct);
+            assertEquals(expected, describe(teams), name + " ByteBuffer");
+            assertEquals(10, direct.position(), "Position left alone");
+
+            teams = new Teams(new ConfigProperties());
+            teams.parseExcel(Channels.newChannel(new ByteArrayInputStream(data)));
+            assertEquals(expected, describe(teams), name + " channel");
+
+            for (String setting : new String[] { "pipeline", "aggregationBudget" }) {
+                ConfigProperties cfg = new ConfigProperties();
+                cfg.setConfig(setting, setting.equals("pipeline") ? "true" : "4K");
+                cfg.setConfig("spillDirectory", tempDir.toString());
+                teams = new Teams(cfg);
+                teams.parseExcel(new ByteArrayInputStream(data));
+                assertEquals(expected, describe(teams), name + " " + setting);
+            }
+        }
+    }
+
+    @Test
+    void testNotAWorkbook() {
+        Teams teams = new Teams(new ConfigProperties());
+        assertThrows(InvalidFormatException.class, () -> teams.parseExcel("empno,Name\n1,Doe".getBytes()));
+        assertThrows(EmptyFileException.class, () -> teams.parseExcel(new byte[0]));
+    }
+
+    @Test
+    void testByteBufferInputStream() throws Exception {
+        ByteBuffer buf = ByteBuffer.wrap("0123456789".getBytes(), 2, 6);
+        ByteBufferInputStream in = new ByteBufferInputStream(buf);
+        assertEquals(6, in.available());
+        assertEquals('2', in.read());
+        in.mark(100);
+        byte[] b = new byte[10];
+        assertEquals(5, in.read(b, 0, 10));
+        assertEquals("34567", new String(b, 0, 5));
+        assertEquals(-1, in.read());
+        in.reset();
+        assertEquals(2, in.skip(2));
+        assertEquals('5', in.read());
+        assertEquals(2, buf.position());
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Leaderboard Tests")
+class LeaderboardTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Teams parse() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(500).teams(8, 6200).rowsPerStudent(3).seed(3).write(file);
+        Teams teams = new Teams(file.toString(), new ConfigProperties());
+        teams.parseExcel();
+        return teams;
+    }
+
+    /*
+     * Everyone, sorted the way the per-team lists are (most first, first seen first)
+     */
+    private static List<Student> everyone(Teams teams) {
+        List<Student> all = new ArrayList<>();
+        for (Integer team : teams.getTeams())
+            all.addAll(teams.getHoursByTeam(team));
+        all.sort((a, b) -> a.compareTo(b));
+        return all;
+    }
+
+    @Test
+    void testTopAndBottomMatchFullSort() throws Exception {
+        Teams teams = parse();
+        List<Student> all = everyone(teams);
+        List<Teams.Ranked> top = teams.getTop(10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(all.get(i).getSeconds(), top.get(i).getStudent().getSeconds());
+        List<Teams.Ranked> bottom = teams.getBottom(10);
+        for (int i = 0; i < 10; i++)
+            assertEquals(all.get(all.size() - 1 - i).getSeconds(), bottom.get(i).getStudent().getSeconds());
+        assertEquals(top.get(0).getStudent().getSeconds(), teams.getHoursByTeam(top.get(0).getTeam()).get(0).getSeconds());
+
+        assertEquals(all.size(), teams.getTop(all.size() + 5).size());
+        assertTrue(teams.getTop(0).isEmpty());
+    }
+
+    @Test
+    void testPerTeam() throws Exception {
+        Teams teams = parse();
+        for (Integer team : teams.getTeams()) {
+            List<Student> sorted = teams.getHoursByTeam(team);
+            List<Student> top = teams.getTop(team, 3);
+            List<Student> bottom = teams.getBottom(team, 3);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(sorted.get(i).getId(), top.get(i).getId());
+                assertEquals(sorted.get(sorted.size() - 1 - i).getSeconds(), bottom.get(i).getSeconds());
+            }
+        }
+        assertNull(teams.getTop(1, 3));
+    }
+
+    @Test
+    void testLeaderboardSheet() throws Exception {
+        Teams teams = parse();
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("leaderboardSize", "5");
+        Output out = Output.create(false, cfg, 3.0, 7.0);
+        out.createSheet(teams, SheetType.LEADERBOARD);
+        Sheet sheet = out.getWorkbook().getSheet("Leaderboard");
+        assertNotNull(sheet);
+        assertEquals("Top 5", sheet.getRow(2).getCell(0).getStringCellValue());
+        assertEquals("Bottom 5", sheet.getRow(2).getCell(5).getStringCellValue());
+        Teams.Ranked first = teams.getTop(1).get(0);
+        assertEquals(1, (int) sheet.getRow(4).getCell(0).getNumericCellValue());
+        assertEquals(first.getTeam(), (int) sheet.getRow(4).getCell(1).getNumericCellValue());
+        assertEquals(first.getStudent().getName(), sheet.getRow(4).getCell(2).getStringCellValue());
+        assertEquals(5, (int) sheet.getRow(8).getCell(5).getNumericCellValue());
+        assertNull(sheet.getRow(9));
+
+        // Not configured, no sheet
+        Output plain = Output.create(false, new ConfigProperties(), 3.0, 7.0);
+        plain.createSheet(teams, SheetType.LEADERBOARD);
+        assertNull(plain.getWorkbook().getSheet("Leaderboard"));
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Multi-sheet Parse Tests")
+class MultiSheetTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> describe(Teams teams) {
+        List<String> out = new ArrayList<>();
+        for (Integer team : teams.getTeams()) {
+            for (Student s : teams.getHoursByTeam(team)) {
+                DailySeconds daily = s.getDaily();
+                out.add(team + "/" + s.getId() + "/" + s.getName() + "/" + s.getSeconds() + "/"
+                        + (daily == null ? 0 : daily.size()));
+            }
+        }
+        return out;
+    }
+
+    private static void copy(Row from, Row to) {
+        for (Cell c : from) {
+            Cell cell = to.createCell(c.getColumnIndex());
+            switch (c.getCellTypeEnum()) {
+                case NUMERIC: cell.setCellValue(c.getNumericCellValue()); break;
+                case STRING:  cell.setCellValue(c.getStringCellValue()); break;
+                default:      break;
+            }
+        }
+    }
+
+    private static Teams allSheets(byte[] data) throws Exception {
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("allSheets", "true");
+        Teams teams = new Teams(cfg);
+        teams.parseExcel(data);
+        return teams;
+    }
+
+    @Test
+    void testSplitExportGivesSameTeams() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(400).teams(5, 300).rowsPerStudent(6).malformedRate(0.02).seed(21).write(file);
+        Teams whole = new Teams(file.toString(), new ConfigProperties());
+        whole.parseExcel();
+
+        // The same rows split across three sheets, with a sheet of notes in the middle
+        byte[] split;
+        try (InputStream in = new FileInputStream(file.toFile()); Workbook src = new XSSFWorkbook(in);
+                Workbook wb = new XSSFWorkbook()) {
+            Sheet rows = src.getSheetAt(0);
+            int last = rows.getLastRowNum();
+            int[] ends = { last / 3, 2 * last / 3, last };
+            int from = 1;
+            for (int part = 0; part < 3; part++) {
+                Sheet sheet = wb.createSheet("Week " + (part + 1));
+                copy(rows.getRow(0), sheet.createRow(0));
+                for (int r = from; r <= ends[part]; r++)
+                    if ( rows.getRow(r) != null )
+                        copy(rows.getRow(r), sheet.createRow(sheet.getLastRowNum() + 1));
+                from = ends[part] + 1;
+                if ( part == 0 )
+                    wb.createSheet("Notes").createRow(0).createCell(0).setCellValue("Nothing to see here");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            wb.write(bytes);
+            split = bytes.toByteArray();
+        }
+
+        Teams teams = allSheets(split);
+        assertEquals(describe(whole), describe(teams));
+        assertEquals(whole.getValidator().getCount(ExportValidator.Kind.UNREADABLE_ROW)
+                + whole.getValidator().getCount(ExportValidator.Kind.INVALID_TEAM),
+                teams.getValidator().getCount(ExportValidator.Kind.UNREADABLE_ROW)
+                + teams.getValidator().getCount(ExportValidator.Kind.INVALID_TEAM));
+
+        List<Teams.SheetStats> stats = teams.getSheetStats();
+        assertEquals(3, stats.size());
+        assertEquals("Week 1", stats.get(0).getName());
+        assertEquals("Week 3", stats.get(2).getName());
+        int rows = 0;
+        for (Teams.SheetStats s : stats)
+            rows += s.getRows();
+        assertEquals(400 * 6, rows);
+        assertTrue(whole.getSheetStats().isEmpty());
+
+        // From a file each sheet is streamed on a worker of its own, and it has to come out the same
+        Path splitFile = Files.write(tempDir.resolve("split.xlsx"), split);
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("allSheets", "true");
+        Teams streamed = new Teams(splitFile.toString(), cfg);
+        streamed.parseExcel();
+        assertEquals(describe(whole), describe(streamed));
+        assertEquals(teams.getValidator().getCount(ExportValidator.Kind.UNREADABLE_ROW),
+                streamed.getValidator().getCount(ExportValidator.Kind.UNREADABLE_ROW));
+        List<Teams.SheetStats> streamedStats = streamed.getSheetStats();
+        assertEquals(3, streamedStats.size(), "The notes sheet is skipped");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(stats.get(i).getName(), streamedStats.get(i).getName());
+            assertEquals(stats.get(i).getRows(), streamedStats.get(i).getRows());
+            assertEquals(stats.get(i).getStudents(), streamedStats.get(i).getStudents());
+        }
+    }
+
+    @Test
+    void testChecksAcrossSheets() throws Exception {
+        byte[] data;
+        try (Workbook wb = new XSSFWorkbook()) {
+            String[][][] sheets = {
+                { { "1", "Doe, John", "100", "5" }, { "1", "Roe, Rick", "200", "2" } },
+                { { "2", "Doe, John", "100", "3" }, { "1", "Roe, Richard", "200", "1" }, { "2", "Poe, Ed", "300", "4" } },
+            };
+            for (int i = 0; i < sheets.length; i++) {
+                Sheet sheet = wb.createSheet("Sheet" + i);
+                Row header = sheet.createRow(0);
+                header.createCell(0).setCellValue("Department");
+                header.createCell(1).setCellValue("Name");
+                header.createCell(2).setCellValue("empno");
+                header.createCell(3).setCellValue("workday_w");
+                for (String[] r : sheets[i]) {
+                    Row row = sheet.createRow(sheet.getLastRowNum() + 1);
+                    for (int c = 0; c < 3; c++)
+                        row.createCell(c).setCellValue(r[c]);
+                    row.createCell(3).setCellValue(Double.parseDouble(r[3]));
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            wb.write(bytes);
+            data = bytes.toByteArray();
+        }
+
+        Teams teams = allSheets(data);
+        List<Student> one = teams.getHoursByTeam(1);
+        assertEquals(2, one.size());
+        assertEquals("100", one.get(0).getId());
+        assertEquals(8.0, one.get(0).getHours(), 0.001, "Stays on the first sheet's team");
+        assertEquals(3.0, one.get(1).getHours(), 0.001);
+        assertEquals(1, teams.getHoursByTeam(2).size());
+        ExportValidator v = teams.getValidator();
+        assertEquals(1, v.getCount(ExportValidator.Kind.MULTIPLE_TEAMS));
+        assertEquals(1, v.getCount(ExportValidator.Kind.NAME_MISMATCH));
+    }
+}
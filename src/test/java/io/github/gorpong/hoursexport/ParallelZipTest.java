@@ -0,0 +1,151 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Parallel Zip Tests")
+class ParallelZipTest {
+
+    @TempDir
+    Path tempDir;
+
+    /*
+     * Some entries:  empty, small, several chunks of XML-ish text, and
+     * several chunks of noise that won't compress
+     */
+    private static Map<String, byte[]> entries() {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("[Content_Types].xml", new byte[0]);
+        entries.put("xl/styles.xml", "<styleSheet/>".getBytes());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 5 * ParallelZipOutputStream.CHUNK + 17; i++)
+            sb.append("<row r=\"").append(i).append("\"><c t=\"s\"><v>").append(i % 97).append("</v></c></row>");
+        entries.put("xl/worksheets/sheet1.xml", sb.toString().getBytes());
+        byte[] noise = new byte[3 * ParallelZipOutputStream.CHUNK];
+        new Random(1).nextBytes(noise);
+        entries.put("xl/media/noise.bin", noise);
+        return entries;
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries, int level, int threads) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ParallelZipOutputStream zip = new ParallelZipOutputStream(bytes, level, threads)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                byte[] b = e.getValue();
+                for (int off = 0; off < b.length; off += 1000)		// In uneven writes
+                    zip.write(b, off, Math.min(1000, b.length - off));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testEntriesReadBack() throws Exception {
+        Map<String, byte[]> entries = entries();
+        int stored = 0;
+        int fast = 0;
+        for (int level : new int[] { 0, 1, 6, 9 }) {
+            for (int threads : new int[] { 1, 4 }) {
+                byte[] zip = zip(entries, level, threads);
+                if ( level == 0 )
+                    stored = zip.length;
+                else if ( level == 1 )
+                    fast = zip.length;
+
+                try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+                    for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                        ZipEntry entry = in.getNextEntry();
+                        assertEquals(e.getKey(), entry.getName());
+                        assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+                        assertArrayEquals(e.getValue(), in.readAllBytes(), "level " + level + " " + e.getKey());
+                    }
+                    assertNull(in.getNextEntry());
+                }
+
+                Path file = tempDir.resolve("level" + level + ".zip");
+                Files.write(file, zip);
+                try (ZipFile zf = new ZipFile(file.toFile())) {		// Through the central directory
+                    assertEquals(entries.size(), zf.size());
+                    for (Map.Entry<String, byte[]> e : entries.entrySet())
+                        assertArrayEquals(e.getValue(), zf.getInputStream(zf.getEntry(e.getKey())).readAllBytes());
+                }
+            }
+        }
+        assertTrue(fast < stored / 2, "The text compresses");
+    }
+
+    @Test
+    void testEntryWrittenAsItGoes() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[ParallelZipOutputStream.CHUNK];
+        new Random(2).nextBytes(chunk);
+        try (ParallelZipOutputStream zip = new ParallelZipOutputStream(bytes, 0, 1)) {
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+            for (int i = 0; i < 20; i++)
+                zip.write(chunk);
+            // No more than 2 * threads + 2 pieces are held back, the rest are already out
+            assertTrue(bytes.size() > 10 * chunk.length, "Written before the entry closed:  " + bytes.size());
+            zip.closeEntry();
+        }
+        byte[] zip = bytes.toByteArray();
+        assertEquals(0x0808, ( zip[6] & 0xff ) | ( zip[7] & 0xff ) << 8, "Sizes in a data descriptor");
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            in.getNextEntry();
+            assertEquals(20L * chunk.length, in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    void testBadLevel() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelZipOutputStream(new ByteArrayOutputStream(), 10, 1));
+    }
+
+    @Test
+    void testWorkbookAtEachLevel() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(300).teams(2, 1).rowsPerStudent(2).seed(4).write(file);
+        Teams teams = new Teams(file.toString(), new ConfigProperties());
+        teams.parseExcel();
+
+        for (String level : new String[] { "0", "1", "9" }) {
+            ConfigProperties cfg = new ConfigProperties();
+            cfg.setConfig("coachesStartRow", "1");
+            cfg.setConfig("coachesTopRow", "1,2");
+            cfg.setConfig("coachesColumn-1", "0");
+            cfg.setConfig("coachesColumn-2", "3");
+            cfg.setConfig("compressionLevel", level);
+            Output out = Output.create(false, cfg, 3.0, 7.0);
+            out.createSheet(teams, SheetType.COACHES);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            out.write(bytes);
+
+            try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+                Sheet sheet = wb.getSheet("Coaches");
+                assertEquals("Team 2", sheet.getRow(2).getCell(3).getStringCellValue());
+                Student first = teams.getHoursByTeam(1).get(0);
+                assertEquals(first.getName(), sheet.getRow(3).getCell(0).getStringCellValue());
+                assertEquals(first.getHours(), sheet.getRow(3).getCell(1).getNumericCellValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("JFR Phase Profiling Tests")
+class PhaseProfilerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testBreakdownCoversEveryPhase() throws Exception {
+        Path export = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(30).teams(3, 1).rowsPerStudent(2).malformedRate(0.1).write(export);
+        Path props = tempDir.resolve("profile.properties");
+        Files.write(props, "coachesStartRow=3\ncoachesTopRow=1,2\ncoachesColumn-1=1\ncoachesColumn-2=4\n".getBytes());
+        Path jfr = tempDir.resolve("run.jfr");
+
+        PhaseProfiler profiler = PhaseProfiler.start(jfr);
+        ConfigProperties config = new ConfigProperties();
+        config.getPropValues(props.toString());
+        Teams teams = new Teams(export.toString(), config);
+        teams.parseExcel();
+        Output out = Output.initialize(tempDir.resolve("report.xlsx").toString(), config, 1.0, 5.0);
+        out.createSheet(teams, SheetType.COACHES);
+        out.close();
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        profiler.stop(new PrintStream(text));
+        String report = text.toString();
+
+        assertTrue(Files.size(jfr) > 0);
+        for (String phase : new String[] { "Config Load", "Parse", "Sort", "Create Sheet", "Auto-size Columns", "Write" })
+            assertTrue(report.contains(phase), "Missing phase " + phase + " in:\n" + report);
+        // 60 rows read from the export, some rejected
+        assertTrue(report.matches("(?s).*Parse\\s+1\\s+\\S+\\s+\\d+\\s+60\\s+[1-9]\\d*\\s+[1-9]\\d*.*"), report);
+    }
+}
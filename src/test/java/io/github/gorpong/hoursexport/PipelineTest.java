@@ -0,0 +1,96 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Pipelined Read/Write Tests")
+class PipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPipelinedRowsMatchDirectRead() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(400).teams(5, 6200).rowsPerStudent(12).malformedRate(0.05).seed(8).write(file);
+
+        List<String> direct = new ArrayList<>();
+        XlsxRowReader.read(file.toFile(), (r, v, t) -> direct.add(r + Arrays.toString(v) + Arrays.toString(t)));
+        List<String> piped = new ArrayList<>();
+        RowPipeline.read(file.toFile(), (r, v, t) -> piped.add(r + Arrays.toString(v) + Arrays.toString(t)));
+        assertTrue(direct.size() > RowPipeline.BATCH * RowPipeline.DEPTH);
+        assertEquals(direct.size(), piped.size());
+        for (int i = 0; i < direct.size(); i++)
+            assertEquals(direct.get(i).replaceAll("(, null)+\\]", "]"), piped.get(i).replaceAll("(, null)+\\]", "]"));
+
+        // Same teams either way
+        Teams plain = new Teams(file.toString(), new ConfigProperties());
+        plain.parseExcel();
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("pipeline", "true");
+        Teams pipelined = new Teams(file.toString(), cfg);
+        pipelined.parseExcel();
+        assertEquals(plain.getTeams(), pipelined.getTeams());
+        for (Integer team : plain.getTeams())
+            assertEquals(plain.getHoursByTeam(team).toString(), pipelined.getHoursByTeam(team).toString());
+    }
+
+    @Test
+    void testHandlerFailureStopsReader() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(400).rowsPerStudent(10).seed(2).write(file);
+        int[] seen = { 0 };
+        IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+                RowPipeline.read(file.toFile(), (r, v, t) -> {
+                    if ( ++seen[0] == 10 )
+                        throw new IllegalStateException("stop");
+                }));
+        assertEquals("stop", e.getMessage());
+        assertEquals(10, seen[0]);
+
+        Path notExcel = Files.writeString(tempDir.resolve("notes.xlsx"), "not a workbook");
+        assertThrows(Exception.class, () -> RowPipeline.read(notExcel.toFile(), (r, v, t) -> fail()));
+    }
+
+    @Test
+    void testAsyncOutputWritesEverything() throws Exception {
+        byte[] data = new byte[AsyncOutputStream.CHUNK * AsyncOutputStream.DEPTH * 3 + 17];
+        new Random(4).nextBytes(data);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (AsyncOutputStream out = new AsyncOutputStream(sink)) {
+            out.write(data[0]);
+            out.write(data, 1, 1000);
+            out.write(data, 1001, data.length - 1001);
+        }
+        assertArrayEquals(data, sink.toByteArray());
+    }
+
+    @Test
+    void testAsyncOutputReportsWriteErrors() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> {
+            try (AsyncOutputStream out = new AsyncOutputStream(broken)) {
+                out.write(new byte[AsyncOutputStream.CHUNK * 20]);
+            }
+        });
+        assertEquals("disk full", e.getMessage());
+    }
+}
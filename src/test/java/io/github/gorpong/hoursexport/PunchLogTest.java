@@ -0,0 +1,226 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.ExportValidator.Kind;
+
+@DisplayName("Punch Log Tests")
+class PunchLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final int MONDAY = (int) LocalDate.of(2024, 3, 4).toEpochDay();
+
+    /*
+     * Each punch is { team, name, id, time, type }, type null for a log without the column
+     */
+    private Teams parse(List<String[]> punches, ConfigProperties cfg) throws Exception {
+        boolean typed = punches.get(0)[4] != null;
+        Path file = tempDir.resolve("punches.xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file.toFile())) {
+            Sheet sheet = wb.createSheet("Punches");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Department");
+            header.createCell(1).setCellValue("Name");
+            header.createCell(2).setCellValue("empno");
+            header.createCell(3).setCellValue("punch_time");
+            if ( typed )
+                header.createCell(4).setCellValue("punch_type");
+            int r = 1;
+            for (String[] punch : punches) {
+                Row row = sheet.createRow(r++);
+                row.createCell(0).setCellValue(Double.parseDouble(punch[0]));
+                row.createCell(1).setCellValue(punch[1]);
+                row.createCell(2).setCellValue(punch[2]);
+                row.createCell(3).setCellValue(punch[3]);
+                if ( typed )
+                    row.createCell(4).setCellValue(punch[4]);
+            }
+            wb.write(out);
+        }
+        cfg.setConfig("inputFormat", "punches");
+        Teams teams = new Teams(file.toString(), cfg);
+        teams.parseExcel();
+        return teams;
+    }
+
+    private static Student find(Teams teams, String id) {
+        for (Integer team : teams.getTeams())
+            for (Student s : teams.getHoursByTeam(team))
+                if ( s.getId().equals(id) )
+                    return s;
+        return null;
+    }
+
+    @Test
+    void testPairingAndRules() throws Exception {
+        List<String[]> punches = new ArrayList<>();
+        // A normal day, with a double punch at the scanner, and another the next day
+        punches.add(new String[] { "1", "Ann Able", "A1", "2024-03-04 15:00", "In" });
+        punches.add(new String[] { "1", "Ann Able", "A1", "2024-03-04 15:01", "In" });
+        punches.add(new String[] { "1", "Ann Able", "A1", "2024-03-04 17:00", "Out" });
+        punches.add(new String[] { "1", "Ann Able", "A1", "3/5/2024 15:00", "Clock In" });
+        punches.add(new String[] { "1", "Ann Able", "A1", "3/5/2024 16:30:00", "Clock Out" });
+        // In at two scanners, the overlap is only counted once
+        punches.add(new String[] { "2", "Bob Baker", "B2", "2024-03-04 15:00", "I" });
+        punches.add(new String[] { "2", "Bob Baker", "B2", "2024-03-04 15:30", "I" });
+        punches.add(new String[] { "2", "Bob Baker", "B2", "2024-03-04 17:00", "O" });
+        punches.add(new String[] { "2", "Bob Baker", "B2", "2024-03-04 17:10", "O" });
+        // Forgot to clock out, then a clock-out the next day with nothing open
+        punches.add(new String[] { "2", "Cal Cole", "C3", "2024-03-04 15:00", "In" });
+        punches.add(new String[] { "2", "Cal Cole", "C3", "2024-03-05 16:00", "Out" });
+        // Not a punch type in a typed log
+        punches.add(new String[] { "1", "Dee Dunn", "D4", "2024-03-04 15:00", "In" });
+        punches.add(new String[] { "1", "Dee Dunn", "D4", "2024-03-04 16:00", "Break" });
+        punches.add(new String[] { "1", "Dee Dunn", "D4", "2024-03-04 16:00", "Out" });
+        Collections.shuffle(punches, new Random(47));		// Scanners don't log in order
+
+        Teams teams = parse(punches, new ConfigProperties());
+        Student ann = find(teams, "A1");
+        assertEquals(210 * 60, ann.getSeconds());
+        assertEquals(120 * 60, ann.getDaily().getSecondsForDay(MONDAY));
+        assertEquals(90 * 60, ann.getDaily().getSecondsForDay(MONDAY + 1));
+        assertEquals(130 * 60, find(teams, "B2").getSeconds());
+        assertEquals(0, find(teams, "C3").getSeconds(), "The forgotten clock-out isn't counted by default");
+        assertEquals(60 * 60, find(teams, "D4").getSeconds());
+        assertEquals(2, teams.getHoursByTeam(1).size());
+        assertEquals(2, teams.getHoursByTeam(2).size());
+
+        ExportValidator checks = teams.getValidator();
+        assertEquals(1, checks.getCount(Kind.DOUBLE_PUNCH));
+        assertEquals(1, checks.getCount(Kind.OPEN_PUNCH));
+        assertEquals(1, checks.getCount(Kind.ORPHAN_PUNCH));
+        assertEquals(1, checks.getCount(Kind.UNREADABLE_ROW));
+        for (ExportValidator.Anomaly a : checks.getAnomalies())
+            if ( a.getKind() == Kind.OPEN_PUNCH )
+                assertEquals("C3", a.getId());
+
+        // Count a forgotten clock-out as an hour
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("openPunchHours", "1");
+        teams = parse(punches, cfg);
+        assertEquals(60 * 60, find(teams, "C3").getSeconds());
+        assertEquals(60 * 60, find(teams, "C3").getDaily().getSecondsForDay(MONDAY));
+    }
+
+    @Test
+    void testUntypedLogAlternates() throws Exception {
+        List<String[]> punches = new ArrayList<>();
+        punches.add(new String[] { "3", "Eve Ellis", "E5", "2024-03-04 15:00", null });
+        punches.add(new String[] { "3", "Eve Ellis", "E5", "2024-03-04 15:00:30", null });		// Double punch
+        punches.add(new String[] { "3", "Eve Ellis", "E5", "2024-03-04 16:45", null });
+        punches.add(new String[] { "3", "Eve Ellis", "E5", "2024-03-06 15:00", null });
+        punches.add(new String[] { "3", "Eve Ellis", "E5", "2024-03-06 15:30", null });
+        punches.add(new String[] { "3", "Eve Ellis", "E5", "2024-03-07 15:00", null });		// Never clocked out
+        punches.add(new String[] { "3", "Fay Ford", "F6", "not a time", null });
+
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("openPunchHours", "2");
+        Teams teams = parse(punches, cfg);
+        Student eve = find(teams, "E5");
+        assertEquals((105 + 30 + 120) * 60, eve.getSeconds());
+        assertEquals(105 * 60, eve.getDaily().getSecondsForDay(MONDAY));
+        assertEquals(30 * 60, eve.getDaily().getSecondsForDay(MONDAY + 2));
+        assertEquals(120 * 60, eve.getDaily().getSecondsForDay(MONDAY + 3));
+        assertNull(find(teams, "F6"));
+        ExportValidator checks = teams.getValidator();
+        assertEquals(1, checks.getCount(Kind.DOUBLE_PUNCH));
+        assertEquals(1, checks.getCount(Kind.OPEN_PUNCH));
+        assertEquals(0, checks.getCount(Kind.ORPHAN_PUNCH));
+        assertEquals(1, checks.getCount(Kind.UNREADABLE_ROW));
+    }
+
+    @Test
+    void testNoHeaderRow() throws Exception {
+        Path file = tempDir.resolve("headless.xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file.toFile())) {
+            Row row = wb.createSheet("Punches").createRow(1);		// Nothing in the first row
+            row.createCell(0).setCellValue("E5");
+            wb.write(out);
+        }
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("inputFormat", "punches");
+        Teams teams = new Teams(file.toString(), cfg);
+        IllegalStateException e = assertThrows(IllegalStateException.class, teams::parseExcel);
+        assertTrue(e.getMessage().startsWith("Can't find appropriate columns"), e.getMessage());
+    }
+
+    @Test
+    void testLargeLog() throws IOException {
+        // Enough punches for the parallel sort, each student's sessions known up front
+        Random random = new Random(47);
+        PunchLog log = new PunchLog(12, 2, 0);
+        List<long[]> punches = new ArrayList<>();		// { student, seconds, type }
+        Map<String, Integer> expected = new HashMap<>();
+        long monday = MONDAY * 86400L;
+        for (int s = 0; s < 1000; s++) {
+            int total = 0;
+            for (int day = 0; day < 6; day++) {
+                long in = monday + day * 86400L + 14 * 3600 + random.nextInt(7200);
+                int minutes = 30 + random.nextInt(240);
+                punches.add(new long[] { s, in, PunchLog.IN });
+                punches.add(new long[] { s, in + minutes * 60, PunchLog.OUT });
+                total += minutes * 60;
+            }
+            expected.put("S" + s, total);
+        }
+        Collections.shuffle(punches, random);
+        int row = 1;
+        for (long[] p : punches)
+            log.add(row++, 1 + (int) p[0] % 5, "Student " + p[0], "S" + p[0], p[1], (byte) p[2], null);
+        assertTrue(log.size() >= StudentStore.PARALLEL_SORT);
+
+        Map<String, Integer> totals = new HashMap<>();
+        Map<String, Integer> days = new HashMap<>();
+        log.compute(new PunchLog.Sink() {
+            public void seconds(int r, int team, String name, String id, int seconds, int day) {
+                totals.merge(id, seconds, Integer::sum);
+                days.merge(id, 1, Integer::sum);
+            }
+            public void problem(Kind kind, int r, String id, String detail) {
+                fail(kind + " " + id + " " + detail);
+            }
+        });
+        assertEquals(expected, totals);
+        for (int d : days.values())
+            assertEquals(6, d);
+    }
+
+    @Test
+    void testParsing() {
+        assertEquals(LocalDate.of(2024, 3, 4).toEpochDay() * 86400 + 15 * 3600 + 5 * 60,
+                PunchLog.parseTime("3/4/2024 15:05"));
+        assertEquals(PunchLog.parseTime("2024-03-04T15:05:00"), PunchLog.parseTime(" 2024-03-04 15:05 "));
+        assertEquals(PunchLog.NO_TIME, PunchLog.parseTime("Monday"));
+        assertEquals(PunchLog.NO_TIME, PunchLog.parseTime("2024-03-04"));
+        // Excel's 3/4/2024 15:00
+        assertEquals(PunchLog.parseTime("2024-03-04 15:00"), PunchLog.excelSeconds(45355.625));
+
+        assertEquals(PunchLog.IN, PunchLog.parseType("Clock In"));
+        assertEquals(PunchLog.IN, PunchLog.parseType("i"));
+        assertEquals(PunchLog.OUT, PunchLog.parseType(" OUT "));
+        assertEquals(PunchLog.OUT, PunchLog.parseType("o"));
+        assertEquals(PunchLog.UNKNOWN, PunchLog.parseType("Break"));
+        assertEquals(PunchLog.UNKNOWN, PunchLog.parseType(null));
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+@DisplayName("Reloadable Configuration Tests")
+public class ReloadableConfigTest {
+    @TempDir
+    Path tempDir;
+
+    private Path propFile;
+    private ConfigProperties config;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        propFile = tempDir.resolve("reload.properties");
+        Files.write(propFile, ("hoursLowThreshold=3\nhoursHighThreshold=7\n"
+                + "coachesTopRow=1,2\ncoachesColumn-1=1\ncoachesColumn-2=4\n").getBytes());
+        config = new ConfigProperties();
+        config.getPropValues(propFile.toString());
+    }
+
+    @Test
+    public void testSnapshotIsLoadedConfig() throws IOException {
+        try (ReloadableConfig holder = ReloadableConfig.watch(config)) {
+            assertSame(config, holder.snapshot());
+            assertEquals("7", holder.snapshot().getConfig("hoursHighThreshold"));
+        }
+    }
+
+    @Test
+    public void testPicksUpEdits() throws Exception {
+        try (ReloadableConfig holder = ReloadableConfig.watch(config)) {
+            ConfigProperties before = holder.snapshot();
+            Files.write(propFile, "hoursLowThreshold=2\nhoursHighThreshold=9\n".getBytes());
+
+            long deadline = System.currentTimeMillis() + 15000;
+            while ( holder.getReloadCount() == 0 && System.currentTimeMillis() < deadline )
+                Thread.sleep(50);
+
+            assertEquals("9", holder.snapshot().getConfig("hoursHighThreshold"));
+            // Earlier snapshot is never modified by the swap
+            assertEquals("7", before.getConfig("hoursHighThreshold"));
+        }
+    }
+
+    @Test
+    public void testOverridesKeptOnReload() throws IOException {
+        config.setConfig("rosterFile", "roster.csv");
+        try (ReloadableConfig holder = ReloadableConfig.watch(config, Map.of("rosterFile", "roster.csv"))) {
+            Files.write(propFile, "hoursLowThreshold=2\nhoursHighThreshold=9\nrosterFile=other.csv\n".getBytes());
+            assertTrue(holder.reload());
+            assertEquals("9", holder.snapshot().getConfig("hoursHighThreshold"));
+            assertEquals("roster.csv", holder.snapshot().getConfig("rosterFile"), "The command line's wins");
+        }
+    }
+
+    @Test
+    public void testInvalidFileKeepsPrevious() throws IOException {
+        try (ReloadableConfig holder = ReloadableConfig.watch(config)) {
+            Files.write(propFile, "hoursHighThreshold=lots\ncoachesTopRow=1\n".getBytes());
+            assertFalse(holder.reload());
+            assertSame(config, holder.snapshot());
+        }
+    }
+
+    @Test
+    public void testEmptyFileKeepsPrevious() throws IOException {
+        try (ReloadableConfig holder = ReloadableConfig.watch(config)) {
+            Files.write(propFile, new byte[0]);
+            assertFalse(holder.reload());
+            assertSame(config, holder.snapshot());
+        }
+        assertFalse(ReloadableConfig.validate(new ConfigProperties()).isEmpty());
+    }
+
+    @Test
+    public void testEachSettingChecked() {
+        config.setConfig("leaderboardSize", "lots");
+        config.setConfig("compressionLevel", "10");
+        config.setConfig("inputFormat", "csv");
+        config.setConfig("sortOrder", "height");
+        assertEquals(4, ReloadableConfig.validate(config).size(), ReloadableConfig.validate(config).toString());
+        config.setConfig("leaderboardSize", "10");
+        config.setConfig("compressionLevel", "1");
+        config.setConfig("inputFormat", "Punches");
+        config.setConfig("sortOrder", "name, id");
+        config.setConfig("sortLocale", "fr-CA");
+        assertTrue(ReloadableConfig.validate(config).isEmpty());
+    }
+
+    @Test
+    public void testValidateFindsMissingColumn() throws IOException {
+        config.setConfig("coachesMidRow", "3");
+        assertEquals(1, ReloadableConfig.validate(config).size());
+        config.setConfig("coachesColumn-3", "7");
+        assertTrue(ReloadableConfig.validate(config).isEmpty());
+    }
+
+    @Test
+    public void testClasspathConfigCannotBeWatched() throws IOException {
+        ConfigProperties cpConfig = new ConfigProperties();
+        cpConfig.getPropValues("sample.properties");
+        assertThrows(IllegalStateException.class, () -> ReloadableConfig.watch(cpConfig));
+    }
+}
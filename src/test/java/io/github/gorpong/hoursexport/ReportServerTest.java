@@ -0,0 +1,155 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Embedded HTTP Report Service Tests")
+class ReportServerTest {
+
+    private ReportServer server;
+    private HttpClient client;
+    private byte[] export;
+    private ConfigProperties config;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config = new ConfigProperties();
+        config.setConfig("coachesStartRow", "3");
+        config.setConfig("coachesTopRow", "1,2");
+        config.setConfig("coachesColumn-1", "1");
+        config.setConfig("coachesColumn-2", "4");
+        config.setConfig("parentsStartRow", "3");
+        config.setConfig("parentsTopRow", "1,2");
+        config.setConfig("parentsColumn-1", "1");
+        config.setConfig("parentsColumn-2", "5");
+        server = ReportServer.start(new InetSocketAddress("localhost", 0), () -> config, 1 << 20);
+        client = HttpClient.newHttpClient();
+        export = createExport();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private byte[] createExport() throws IOException {
+        try (Workbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Export");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Department");
+            header.createCell(1).setCellValue("Name");
+            header.createCell(2).setCellValue("empno");
+            header.createCell(3).setCellValue("workday_w");
+            String[][] data = { { "1", "John Doe", "123" }, { "1", "Jane Doe", "456" }, { "2", "Bob Smith", "789" } };
+            for (int i = 0; i < data.length; i++) {
+                Row row = sheet.createRow(i + 1);
+                row.createCell(0).setCellValue(data[i][0]);
+                row.createCell(1).setCellValue(data[i][1]);
+                row.createCell(2).setCellValue(data[i][2]);
+                row.createCell(3).setCellValue(2.0 + i * 3);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            wb.write(bytes);
+            return bytes.toByteArray();
+        }
+    }
+
+    private HttpResponse<byte[]> post(String query, String contentType, byte[] body) throws Exception {
+        HttpRequest.Builder req = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + server.getPort() + "/report" + query))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if ( contentType != null )
+            req.header("Content-Type", contentType);
+        return client.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Test
+    void testUploadReturnsReport() throws Exception {
+        HttpResponse<byte[]> resp = post("", "application/octet-stream", export);
+        assertEquals(200, resp.statusCode());
+        try (Workbook report = WorkbookFactory.create(new ByteArrayInputStream(resp.body()))) {
+            assertEquals("Coaches", report.getSheetAt(0).getSheetName());
+            assertEquals("Parents", report.getSheetAt(1).getSheetName());
+            // Team 1 sorted by hours, Jane Doe (5 hours) before John Doe (2 hours)
+            assertEquals("Doe, Jane", report.getSheetAt(0).getRow(5).getCell(1).getStringCellValue());
+            assertEquals("789", report.getSheetAt(1).getRow(5).getCell(5).getStringCellValue());
+        }
+    }
+
+    @Test
+    void testIdenticalUploadServedFromCache() throws Exception {
+        assertEquals("MISS", post("", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+        assertEquals("HIT", post("", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+        // Different options are a different report
+        assertEquals("MISS", post("?format=xls", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+    }
+
+    @Test
+    void testCacheBoundedBySize() throws Exception {
+        post("", null, export);
+        long one = server.getCacheSize();
+        assertTrue(one > 0);
+        // Room for one and a half reports
+        server.stop();
+        server = ReportServer.start(new InetSocketAddress("localhost", 0), () -> config, one + one / 2);
+        assertEquals("MISS", post("?low=1", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+        assertEquals("MISS", post("?low=2", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+        assertTrue(server.getCacheSize() <= one + one / 2);
+        // The first one was dropped to make room for the second
+        assertEquals("MISS", post("?low=1", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+        assertEquals("HIT", post("?low=1", null, export).headers().firstValue("X-Report-Cache").orElse(""));
+    }
+
+    @Test
+    void testMultipartUpload() throws Exception {
+        String boundary = "----VBHoursBoundary";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"export\"; filename=\"hours.xlsx\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        body.write(export);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        HttpResponse<byte[]> resp = post("?format=xls", "multipart/form-data; boundary=" + boundary, body.toByteArray());
+        assertEquals(200, resp.statusCode());
+        try (Workbook report = WorkbookFactory.create(new ByteArrayInputStream(resp.body()))) {
+            assertEquals(2, report.getNumberOfSheets());
+        }
+    }
+
+    @Test
+    void testBadUploadRejected() throws Exception {
+        assertEquals(400, post("", null, "not a spreadsheet".getBytes()).statusCode());
+        assertEquals(400, post("?low=abc", null, export).statusCode());
+    }
+
+    @Test
+    void testFormAndMethod() throws Exception {
+        HttpResponse<String> form = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + server.getPort() + "/")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, form.statusCode());
+        assertTrue(form.body().contains("multipart/form-data"));
+
+        HttpResponse<String> get = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + server.getPort() + "/report")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, get.statusCode());
+    }
+}
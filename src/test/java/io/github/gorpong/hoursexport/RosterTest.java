@@ -0,0 +1,193 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.ExportValidator.Kind;
+
+@DisplayName("Roster Tests")
+class RosterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Teams parse(Path export, ConfigProperties cfg) throws Exception {
+        Teams teams = new Teams(export.toString(), cfg);
+        teams.parseExcel();
+        return teams;
+    }
+
+    private static Map<String, Student> byId(Teams teams) {
+        Map<String, Student> students = new HashMap<>();
+        for (Integer team : teams.getTeams())
+            for (Student s : teams.getHoursByTeam(team))
+                students.put(s.getId(), s);
+        return students;
+    }
+
+    private static Map<String, Integer> teamById(Teams teams) {
+        Map<String, Integer> teamOf = new HashMap<>();
+        for (Integer team : teams.getTeams())
+            for (Student s : teams.getHoursByTeam(team))
+                teamOf.put(s.getId(), team);
+        return teamOf;
+    }
+
+    @Test
+    void testRosterNamesAndTeams() throws Exception {
+        Path export = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(400).teams(4, 100).rowsPerStudent(3).seed(49).write(export);
+        Map<String, Student> plain = byId(parse(export, new ConfigProperties()));
+
+        // Everyone but every tenth student, renamed, and every seventh on team 999
+        List<String> ids = new ArrayList<>(plain.keySet());
+        ids.sort(null);
+        StringBuilder csv = new StringBuilder("\uFEFFGrade,empno,Name,Department\r\n");
+        int left = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            if ( i % 10 == 0 ) {
+                left++;
+                continue;
+            }
+            csv.append("9,").append(ids.get(i)).append(",\"Roster, Kid ").append(i).append("\",")
+                    .append(i % 7 == 0 ? 999 : 100 + i % 4).append("\r\n");
+        }
+        csv.append("\r\n");
+        Path roster = tempDir.resolve("roster.csv");
+        Files.write(roster, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("rosterFile", roster.toString());
+        cfg.setConfig("rosterCacheDirectory", tempDir.resolve("cache").toString());
+        Teams teams = parse(export, cfg);
+        assertFalse(teams.getRoster().wasCached());
+        assertEquals(ids.size() - left, teams.getRoster().size());
+        assertTrue(Files.exists(Roster.savedAs(roster, tempDir.resolve("cache"))));
+        assertFalse(Files.exists(tempDir.resolve("roster.csv.idx")), "Not next to the roster");
+        Map<String, Student> joined = byId(teams);
+        Map<String, Integer> teamOf = teamById(teams);
+        assertEquals(plain.size(), joined.size());
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            assertEquals(plain.get(id).getSeconds(), joined.get(id).getSeconds(), id);
+            if ( i % 10 == 0 ) {
+                assertEquals(plain.get(id).getName(), joined.get(id).getName());
+            } else {
+                assertEquals("Roster, Kid " + i, joined.get(id).getName());
+                assertEquals(i % 7 == 0 ? 999 : 100 + i % 4, (int) teamOf.get(id));
+            }
+        }
+        assertEquals(left, teams.getValidator().getCount(Kind.NOT_ON_ROSTER), "Once per ID, not per row");
+        assertEquals(0, teams.getValidator().getCount(Kind.NAME_MISMATCH));
+
+        // The next run uses the saved roster, and reading the rows as they stream by joins the same way
+        cfg.setConfig("pipeline", "true");
+        Teams streamed = parse(export, cfg);
+        assertTrue(streamed.getRoster().wasCached());
+        assertEquals(teamOf, teamById(streamed));
+        assertEquals(left, streamed.getValidator().getCount(Kind.NOT_ON_ROSTER));
+
+        // A changed roster is read again
+        Files.write(roster, csv.toString().replace("Roster, Kid 1\"", "Roster, Kid One\"")
+                .getBytes(StandardCharsets.UTF_8));
+        teams = parse(export, cfg);
+        assertFalse(teams.getRoster().wasCached());
+        assertEquals("Roster, Kid One", byId(teams).get(ids.get(1)).getName());
+        assertTrue(parse(export, cfg).getRoster().wasCached());
+    }
+
+    @Test
+    void testWorkbookRoster() throws Exception {
+        Path file = tempDir.resolve("roster.xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file.toFile())) {
+            Sheet sheet = wb.createSheet("Roster");
+            Row row = sheet.createRow(0);
+            row.createCell(0).setCellValue("Student ID");
+            row.createCell(1).setCellValue("Student");
+            row.createCell(2).setCellValue("Team");
+            row = sheet.createRow(1);
+            row.createCell(0).setCellValue(123456);		// Typed in as a number
+            row.createCell(1).setCellValue("Jane Roe");
+            row.createCell(2).setCellValue(6209);
+            row = sheet.createRow(2);
+            row.createCell(0).setCellValue("A-77");
+            row.createCell(1).setCellValue("Doe, John");
+            row.createCell(2).setCellValue("4545");
+            row = sheet.createRow(3);
+            row.createCell(0).setCellValue("A-77");		// Already on it
+            row.createCell(1).setCellValue("John Doe");
+            row.createCell(2).setCellValue(1);
+            row = sheet.createRow(4);
+            row.createCell(0).setCellValue("B-1");		// No team
+            row.createCell(1).setCellValue("Nobody");
+            row = sheet.createRow(5);
+            row.createCell(0).setCellValue("Zoë-日本");
+            row.createCell(1).setCellValue("Zoë Ng");
+            row.createCell(2).setCellValue(17);
+            wb.write(out);
+        }
+        Path cache = tempDir.resolve("cache");
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Diagnostics diagnostics = new Diagnostics(new PrintStream(err, true, StandardCharsets.UTF_8));
+        Roster roster = Roster.load(file, cache, diagnostics, "Student ID", "Student", "Team");
+        assertEquals(2, diagnostics.getCount());
+        diagnostics.flush();
+        String[] skipped = err.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals("Parse Error:  roster roster.xlsx row 4 skipped, A-77 is already on the roster", skipped[0]);
+        assertEquals("Parse Error:  roster roster.xlsx row 5 skipped, it needs an ID, name and team", skipped[1]);
+        assertEquals(3, roster.size());
+        assertEquals(17, roster.getTeam(roster.find("Zoë-日本")));
+        assertEquals(Roster.NOT_FOUND, roster.find("Zoë-日"));
+        assertEquals(Roster.NOT_FOUND, roster.find("Zoe-日本"));
+        int jane = roster.find("123456");
+        assertEquals("Jane Roe", roster.getName(jane));
+        assertEquals(6209, roster.getTeam(jane));
+        assertEquals("123456", roster.getId(jane));
+        assertEquals(4545, roster.getTeam(roster.find("A-77")));
+        assertEquals(Roster.NOT_FOUND, roster.find("B-1"));
+        assertEquals(Roster.NOT_FOUND, roster.find("no one"));
+
+        assertTrue(Roster.load(file, cache, diagnostics, "Student ID", "Student", "Team").wasCached());
+        assertFalse(Roster.load(file, cache, diagnostics, "Student ID", "Team", "Team").wasCached(), "Different columns");
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> Roster.load(file, cache, diagnostics, "empno", "Student", "Department"));
+        assertTrue(e.getMessage().endsWith("missing:  empno Department"), e.getMessage());
+
+        // A damaged saved roster is read again
+        Path saved = Roster.savedAs(file, cache);
+        byte[] data = Files.readAllBytes(saved);
+        Files.write(saved, Arrays.copyOf(data, 20));
+        roster = Roster.load(file, cache, diagnostics, "Student ID", "Student", "Team");
+        assertFalse(roster.wasCached());
+        assertEquals(3, roster.size());
+        assertTrue(Roster.load(file, cache, diagnostics, "Student ID", "Student", "Team").wasCached());
+        assertNotEquals(saved, Roster.savedAs(tempDir.resolve("other").resolve("roster.xlsx"), cache),
+                "Same name somewhere else");
+
+        // Characters past the 16-bit ones are looked up as their pair of chars
+        Path csv = tempDir.resolve("emoji.csv");
+        Files.write(csv, "empno,Name,Department\nV-\uD83C\uDFD0,Vic Ball,12\n".getBytes(StandardCharsets.UTF_8));
+        roster = Roster.load(csv, cache, diagnostics, "empno", "Name", "Department");
+        assertEquals(12, roster.getTeam(roster.find("V-\uD83C\uDFD0")));
+        assertEquals(Roster.NOT_FOUND, roster.find("V-\uD83C\uDFD1"));
+    }
+}
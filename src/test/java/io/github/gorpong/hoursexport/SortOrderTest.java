@@ -0,0 +1,149 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Sort Order Tests")
+class SortOrderTest {
+
+    @TempDir
+    Path tempDir;
+
+    /*
+     * Each student is { id, name, team, seconds }, added in the order given
+     */
+    private static StudentStore store(List<String[]> students) {
+        StudentStore store = new StudentStore();
+        for (String[] s : students)
+            store.addSeconds(store.add(s[0], s[1], Integer.parseInt(s[2])), Integer.parseInt(s[3]), DailySeconds.NO_DAY);
+        return store;
+    }
+
+    private static List<String> ids(StudentStore store, int team, String spec) {
+        int[] rank = SortOrder.parse(spec, null).rank(store);
+        List<String> ids = new ArrayList<>();
+        for (int slot : store.sortedByRank(team, rank))
+            ids.add(store.getId(slot));
+        return ids;
+    }
+
+    private static List<String[]> sample() {
+        List<String[]> students = new ArrayList<>();
+        students.add(new String[] { "10", "Zeller, Amy", "1", "120" });
+        students.add(new String[] { "9", "émile, Bea", "1", "60" });
+        students.add(new String[] { "A-3", "Adams, Cal", "1", "120" });
+        students.add(new String[] { "100", "Dee Baker", "1", "60" });
+        students.add(new String[] { "2", "ADAMS, Ann", "1", "120" });
+        students.add(new String[] { "55", "Other Team", "2", "500" });
+        return students;
+    }
+
+    @Test
+    void testOrders() {
+        StudentStore store = store(sample());
+        // Accents and case sort the way people alphabetize, not by code point, same names by ID
+        assertEquals(List.of("2", "A-3", "100", "9", "10"), ids(store, 1, "name"));
+        assertEquals(List.of("10", "9", "100", "A-3", "2"), ids(store, 1, "name desc"));
+        assertEquals(List.of("10", "2", "9", "A-3", "100"), ids(store, 1, "first"));
+        // Numeric IDs by value, before the others
+        assertEquals(List.of("2", "9", "10", "100", "A-3"), ids(store, 1, "id"));
+        // Hours ties broken by name, then by ID
+        assertEquals(List.of("2", "A-3", "10", "100", "9"), ids(store, 1, "hours, last, first"));
+        assertEquals(List.of("2", "10", "A-3", "9", "100"), ids(store, 1, "hours"));
+        assertEquals(List.of("9", "100", "2", "10", "A-3"), ids(store, 1, " Hours ASC "));
+        assertEquals(List.of("55"), ids(store, 2, "team, name"));
+        assertNull(store.sortedByRank(3, SortOrder.parse("id", null).rank(store)));
+        assertEquals("hours desc, last", SortOrder.parse("hours,last asc", "en-US").toString());
+    }
+
+    @Test
+    void testSameOrderWhateverTheRowOrder() {
+        List<String[]> students = sample();
+        List<String> expected = ids(store(students), 1, "hours desc, name");
+        // Without a sortOrder, ties in hours go by ID
+        List<String> byHours = List.of("2", "10", "A-3", "9", "100");
+        Random random = new Random(50);
+        for (int i = 0; i < 10; i++) {
+            Collections.shuffle(students, random);
+            StudentStore store = store(students);
+            assertEquals(expected, ids(store, 1, "hours desc, name"));
+            List<String> plain = new ArrayList<>();
+            for (int slot : store.sortedBySeconds(1))
+                plain.add(store.getId(slot));
+            assertEquals(byHours, plain);
+        }
+    }
+
+    @Test
+    void testLargeRosterMatchesCollator() {
+        // Enough students for the parallel sort, compared the slow way
+        Random random = new Random(50);
+        String[] last = { "Smith", "smith", "Šmid", "O'Neil", "Oneil", "de la Cruz", "Delacruz", "Ånes", "Anes", "Zhu" };
+        List<String[]> students = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            students.add(new String[] { String.valueOf(random.nextInt(1000000)) + "-" + i,
+                    last[random.nextInt(last.length)] + random.nextInt(50) + ", Kid" + random.nextInt(20),
+                    String.valueOf(1 + random.nextInt(3)), String.valueOf(random.nextInt(40) * 30) });
+        StudentStore store = store(students);
+        assertTrue(store.size() >= StudentStore.PARALLEL_SORT);
+
+        Collator collator = Collator.getInstance(Locale.US);
+        collator.setStrength(Collator.SECONDARY);
+        Comparator<String[]> byName = (a, b) -> {
+            String[] x = a[1].split(", "), y = b[1].split(", ");
+            int c = collator.compare(x[0], y[0]);
+            return c != 0 ? c : collator.compare(x[1], y[1]);
+        };
+        Comparator<String[]> expected = Comparator.<String[]>comparingInt(s -> -Integer.parseInt(s[3]))
+                .thenComparing(byName).thenComparing(s -> s[0]);
+        for (int team = 1; team <= 3; team++) {
+            List<String> want = new ArrayList<>();
+            final String t = String.valueOf(team);
+            students.stream().filter(s -> s[2].equals(t)).sorted(expected).forEach(s -> want.add(s[0]));
+            assertEquals(want, ids(store, team, "hours, name"), "Team " + team);
+        }
+    }
+
+    @Test
+    void testTeamsSortOrder() throws Exception {
+        Path export = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(300).teams(3, 100).rowsPerStudent(2).seed(50).write(export);
+        ConfigProperties cfg = new ConfigProperties();
+        cfg.setConfig("sortOrder", "id");
+        Teams teams = new Teams(export.toString(), cfg);
+        teams.parseExcel();
+        for (Integer team : teams.getTeams()) {
+            List<Student> list = teams.getHoursByTeam(team);
+            for (int i = 1; i < list.size(); i++)
+                assertTrue(Long.parseLong(list.get(i - 1).getId()) < Long.parseLong(list.get(i).getId()));
+        }
+
+        // A bad order is left at most hours first
+        cfg.setConfig("sortOrder", "height");
+        teams = new Teams(export.toString(), cfg);
+        teams.parseExcel();
+        List<Student> list = teams.getHoursByTeam(teams.getTeams().get(0));
+        for (int i = 1; i < list.size(); i++)
+            assertTrue(list.get(i - 1).getSeconds() >= list.get(i).getSeconds());
+    }
+
+    @Test
+    void testBadSpecs() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> SortOrder.parse("height", null));
+        assertTrue(e.getMessage().contains("height"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> SortOrder.parse("name upward", null));
+        assertThrows(IllegalArgumentException.class, () -> SortOrder.parse(" , ", null));
+    }
+}
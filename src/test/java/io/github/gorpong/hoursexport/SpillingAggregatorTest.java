@@ -0,0 +1,95 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Spill-to-disk Aggregation Tests")
+class SpillingAggregatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParseSize() {
+        assertEquals(65536, SpillingAggregator.parseSize("65536"));
+        assertEquals(512 * 1024, SpillingAggregator.parseSize("512k"));
+        assertEquals(64L << 20, SpillingAggregator.parseSize(" 64M "));
+        assertEquals(1L << 30, SpillingAggregator.parseSize("1G"));
+        assertThrows(NumberFormatException.class, () -> SpillingAggregator.parseSize("lots"));
+        assertThrows(NumberFormatException.class, () -> SpillingAggregator.parseSize("0"));
+    }
+
+    @Test
+    void testSpilledTotalsMergeBack() throws Exception {
+        Map<String, SpillingAggregator.Entry> merged = new HashMap<>();
+        ExportValidator validator = new ExportValidator();
+        try (SpillingAggregator agg = new SpillingAggregator(2048, tempDir, validator)) {
+            int row = 1;
+            for (int pass = 0; pass < 3; pass++) {
+                for (int s = 0; s < 100; s++)
+                    agg.add(row++, 10 + s % 3, "Student " + s, "ID" + s, 90, DailySeconds.NO_DAY);
+            }
+            agg.add(row++, 99, "Renamed", "ID7", 120, DailySeconds.NO_DAY);	// Other team and name, after a spill
+            assertTrue(agg.getSpills() > 1);
+            agg.merge(e -> assertNull(merged.put(e.id, e)));
+            assertTrue(agg.getSpilledBytes() > 0);
+        }
+        try (Stream<Path> left = Files.list(tempDir)) {
+            assertEquals(0, left.count(), "Run files should be removed");
+        }
+
+        assertEquals(100, merged.size());
+        assertEquals(270, merged.get("ID3").seconds);
+        SpillingAggregator.Entry seven = merged.get("ID7");
+        assertEquals(390, seven.seconds);
+        assertEquals("Student 7", seven.name);
+        assertEquals(8, seven.firstRow);
+        assertEquals(11, seven.team);
+        assertEquals(1, validator.getCount(ExportValidator.Kind.NAME_MISMATCH));
+        assertEquals(1, validator.getCount(ExportValidator.Kind.MULTIPLE_TEAMS));
+        assertEquals("ID7", validator.getAnomalies().get(0).getId());
+    }
+
+    @Test
+    void testBudgetGivesSameTeamsAsInMemory() throws Exception {
+        for (String name : new String[] { "export.xlsx", "export.xls" }) {
+            Path file = tempDir.resolve(name);
+            new ExportGenerator().students(300).teams(6, 4500).rowsPerStudent(4).malformedRate(0.05).seed(11)
+                    .write(file);
+
+            Teams plain = new Teams(file.toString(), new ConfigProperties());
+            plain.parseExcel();
+
+            ConfigProperties cfg = new ConfigProperties();
+            cfg.setConfig("aggregationBudget", "4K");
+            cfg.setConfig("spillDirectory", tempDir.toString());
+            Teams spilled = new Teams(file.toString(), cfg);
+            spilled.parseExcel();
+
+            assertEquals(plain.getTeams(), spilled.getTeams(), name);
+            for (Integer team : plain.getTeams())
+                assertEquals(describe(plain.getHoursByTeam(team)), describe(spilled.getHoursByTeam(team)), name);
+        }
+        try (Stream<Path> left = Files.list(tempDir)) {
+            assertEquals(2, left.count(), "Only the exports should be left");
+        }
+    }
+
+    private static List<String> describe(List<Student> students) {
+        List<String> out = new ArrayList<>();
+        for (Student s : students)
+            out.add(s.getId() + "/" + s.getName() + "/" + String.format("%.6f", s.getHours()));
+        return out;
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("String Dictionary / Shared Strings Tests")
+class StringDictionaryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testIntern() {
+        StringDictionary dict = new StringDictionary();
+        assertEquals(0, dict.intern("100"));
+        assertEquals(1, dict.intern("Doe, John"));
+        assertEquals(0, dict.intern(new String("100")));
+        assertEquals(1, dict.find("Doe, John"));
+        assertEquals(-1, dict.find("200"));
+        assertEquals("Doe, John", dict.get(1));
+        assertEquals(2, dict.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i + 2, dict.intern("ID" + i));
+        assertEquals("ID999", dict.get(1001));
+    }
+
+    @Test
+    void testStoreFindsStudentsThroughDictionary() {
+        StudentStore store = new StudentStore();
+        int a = store.add("100", "200", 1);        // A name that looks like someone else's ID
+        assertEquals(-1, store.slotOf("200"));
+        int b = store.add("200", "Roe, Rick", 1);
+        assertEquals(a, store.slotOf("100"));
+        assertEquals(b, store.slotOf("200"));
+        assertEquals(store.getNameRef(a), store.getIdRef(b));
+        assertEquals("200", store.getName(a));
+    }
+
+    @Test
+    void testReportStringsAreSharedOnce() throws Exception {
+        Path file = tempDir.resolve("export.xlsx");
+        new ExportGenerator().students(200).teams(2, 1).rowsPerStudent(2).seed(6).write(file);
+        Teams teams = new Teams(file.toString(), new ConfigProperties());
+        teams.parseExcel();
+
+        ConfigProperties cfg = new ConfigProperties();
+        for (String type : new String[] { "coaches", "parents" }) {
+            cfg.setConfig(type + "StartRow", "1");
+            cfg.setConfig(type + "TopRow", "1,2");
+            cfg.setConfig(type + "Column-1", "0");
+            cfg.setConfig(type + "Column-2", "4");
+        }
+        Output out = Output.create(false, cfg, 3.0, 7.0);
+        out.createSheet(teams, SheetType.COACHES);
+        out.createSheet(teams, SheetType.PARENTS);
+        // Only each string's first cell went through addEntry(), the rest were given its index
+        int added = ((XSSFWorkbook) out.getWorkbook()).getSharedStringSource().getCount();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.write(bytes);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < wb.getSharedStringSource().getUniqueCount(); i++)
+                assertTrue(seen.add(wb.getSharedStringSource().getEntryAt(i).getT()), "Each string only once");
+            int cells = 0;
+            for (Sheet sheet : wb)
+                for (Row r : sheet)
+                    for (Cell c : r)
+                        if ( c.getCellTypeEnum() == CellType.STRING )
+                            cells++;
+            assertEquals(seen.size(), added, "Nothing but first uses added through POI");
+            assertTrue(added < cells);
+            assertEquals(cells, wb.getSharedStringSource().getCount(), "Every string cell counted once written");
+
+            Sheet coaches = wb.getSheet("Coaches");
+            Sheet parents = wb.getSheet("Parents");
+            assertEquals("Team 1", coaches.getRow(2).getCell(0).getStringCellValue());
+            assertEquals("Hours", parents.getRow(2).getCell(2).getStringCellValue());
+            int row = 3;
+            for (Student p : teams.getHoursByTeam(1)) {
+                Row c = coaches.getRow(row);
+                Row q = parents.getRow(row++);
+                assertEquals(p.getName(), c.getCell(0).getStringCellValue());
+                assertEquals(p.getHours(), c.getCell(1).getNumericCellValue());
+                Cell id = q.getCell(0);
+                assertEquals(p.getId(), id.getStringCellValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Student Store Tests")
+class StudentStoreTest {
+
+    @Test
+    void testTotalsAndDays() {
+        StudentStore store = new StudentStore();
+        int joe = store.add("100", "Bob, Joe", 7);
+        assertEquals(joe, store.slotOf("100"));
+        assertEquals(-1, store.slotOf("200"));
+        assertEquals(90, store.addSeconds(joe, 90, DailySeconds.NO_DAY));
+        assertNull(store.getDaily(joe));
+        assertEquals(30, store.addSeconds(joe, 30, 17777));
+        assertEquals(45, store.addSeconds(joe, 15, 17777));
+        assertEquals(135, store.getSeconds(joe));
+        assertEquals(7, store.getTeam(joe));
+        assertEquals("Bob, Joe", store.getName(joe));
+    }
+
+    @Test
+    void testTeamOrderBreaksTiesById() {
+        StudentStore store = new StudentStore();
+        String[] ids = { "30", "12", "ID2", "7", "9" };
+        int[] seconds = { 60, 120, 60, 30, 120 };
+        for (int i = 0; i < seconds.length; i++)
+            store.addSeconds(store.add(ids[i], "Student " + i, i == 3 ? 2 : 5), seconds[i], DailySeconds.NO_DAY);
+        assertArrayEquals(new int[] { 2, 5 }, store.getTeams());
+        // Numeric IDs by value, before the others
+        assertArrayEquals(new int[] { 4, 1, 0, 2 }, store.sortedBySeconds(5));
+        assertArrayEquals(new int[] { 3 }, store.sortedBySeconds(2));
+        assertNull(store.sortedBySeconds(9));
+        assertArrayEquals(new int[] { 3, 2, 4, 0, 1 }, store.idRanks());
+
+        assertArrayEquals(new int[] { 4, 1 }, store.ranked(2, true));
+        assertArrayEquals(new int[] { 3, 0, 2 }, store.ranked(3, false));
+        assertArrayEquals(new int[] { 0, 2, 4 }, store.ranked(5, 3, false));
+        assertArrayEquals(new int[0], store.ranked(0, true));
+
+        // Adding regroups the teams and ranks the new IDs
+        store.addSeconds(store.add("1", "Student 5", 5), 120, DailySeconds.NO_DAY);
+        assertArrayEquals(new int[] { 5, 4, 1, 0, 2 }, store.sortedBySeconds(5));
+        store.add("ID6", "Student 6", -1);
+        assertArrayEquals(new int[] { -1, 2, 5 }, store.getTeams());
+    }
+
+    @Test
+    void testLargeRosterMatchesSort() {
+        int students = StudentStore.PARALLEL_SORT * 3;
+        Random rand = new Random(5);
+        StudentStore store = new StudentStore();
+        HashMap<Integer, List<Student>> expected = new HashMap<>();
+        for (int i = 0; i < students; i++) {
+            int team = rand.nextInt(3);
+            int secs = rand.nextInt(50) * 15;
+            store.addSeconds(store.add("ID" + i, "Student " + i, team), secs, DailySeconds.NO_DAY);
+            expected.computeIfAbsent(team, t -> new ArrayList<>()).add(new Student("Student " + i, "ID" + i, secs, null));
+        }
+        for (int team = 0; team < 3; team++) {
+            List<Student> list = expected.get(team);
+            list.sort((a, b) -> a.compareTo(b) != 0 ? a.compareTo(b) : a.getId().compareTo(b.getId()));
+            int[] slots = store.sortedBySeconds(team);
+            assertEquals(list.size(), slots.length);
+            for (int i = 0; i < slots.length; i++)
+                assertEquals(list.get(i).getId(), store.getId(slots[i]));
+        }
+    }
+}
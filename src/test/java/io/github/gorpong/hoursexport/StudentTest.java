@@ -29,19 +29,32 @@ class StudentTest {
 	    logger.setUseParentHandlers(false);
     }
 
+    private StudentStore store;
+
     @BeforeEach
     void setUp() {
         if (!setupPrinted) {
             logger.info("Setting up test environment");
             setupPrinted = true;
         }
-        Student.clearStudents();
+        store = new StudentStore();
+    }
+
+    /*
+     * Add a row's hours for a student, the way Teams does, and view them
+     */
+    private Student add(String name, String id, double hours) {
+        int slot = store.slotOf(id);
+        if ( slot < 0 )
+            slot = store.add(id, name, 1);
+        store.addSeconds(slot, Student.toSeconds(hours), DailySeconds.NO_DAY);
+        return new Student(store.getName(slot), id, store.getSeconds(slot), store.getDaily(slot));
     }
 
     @Test
-    void testGetStudent_NewStudent() {
-        logger.info("Running testGetStudent_NewStudent");
-        Student person = Student.getStudent("Joe Bob", "xyz123", 5.5);
+    void testNewStudent() {
+        logger.info("Running testNewStudent");
+        Student person = add("Joe Bob", "xyz123", 5.5);
         assertNotNull(person);
         assertEquals("Bob", person.getName().split(",")[0]);
         assertEquals("xyz123", person.getId());
@@ -49,30 +62,44 @@ class StudentTest {
     }
 
     @Test
-    void testGetStudent_ExistingStudent() {
-        logger.info("Running testGetStudent_ExistingStudent");
-        Student person1 = Student.getStudent("Joe Bob", "xyz123", 5.5);
-        Student person2 = Student.getStudent("Joe Bob", "xyz123", 2.5);
-        assertEquals(person1, person2);
+    void testExistingStudent() {
+        logger.info("Running testExistingStudent");
+        Student person1 = add("Joe Bob", "xyz123", 5.5);
+        Student person2 = add("Joe Bob", "xyz123", 2.5);
+        assertEquals(person1.getId(), person2.getId());
+        assertEquals(1, store.size());
         assertEquals(8.0, person2.getHours(), 0.01);
     }
 
     @Test
     void testCompareTo() {
         logger.info("Running testCompareTo");
-        Student person1 = Student.getStudent("Joe Bob", "xyz123", 10.0);
-        Student person2 = Student.getStudent("Jane Doe", "abc456", 5.0);
-        Student person3 = Student.getStudent("John Smith", "def789", 10.0);
+        Student person1 = add("Joe Bob", "xyz123", 10.0);
+        Student person2 = add("Jane Doe", "abc456", 5.0);
+        Student person3 = add("John Smith", "def789", 10.0);
 
         assertEquals(-1, person1.compareTo(person2));
         assertEquals(0, person1.compareTo(person3));
         assertEquals(1, person2.compareTo(person1));
     }
 
+    @Test
+    void testHoursAddUpExactly() {
+        Student person = null;
+        for (int i = 0; i < 10; i++)
+            person = add("Joe Bob", "xyz123", 0.1);
+        assertEquals(3600, person.getSeconds());
+        assertEquals(1.0, person.getHours());
+
+        for (int i = 0; i < 5; i++)
+            person = add("Ann Lee", "abc456", 0.51);
+        assertEquals(2.55, person.getHours(), "Not 2.5833, as rounding each row to a minute gave");
+    }
+
     @Test
     void testToString() {
         logger.info("Running testToString");
-        Student person = Student.getStudent("Bob, Joe", "xyz123", 5.5);
+        Student person = add("Bob, Joe", "xyz123", 5.5);
         assertEquals("[Joe Bob:xyz123:5.5]", person.toString());
     }
 }
@@ -23,6 +23,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import static org.mockito.Mockito.mockStatic;
@@ -60,9 +61,6 @@ class TeamsTest {
 		setupPrinted = true;
 	    }
 
-        // Clear out the Student's list each time
-        Student.clearStudents();
-        
         // Create a mock workbook and sheet
         workbook = new XSSFWorkbook();
         sheet = workbook.createSheet("TestSheet");
@@ -78,7 +76,7 @@ class TeamsTest {
 
         // Mock WorkbookFactory.create
         workbookFactoryMock = mockStatic(WorkbookFactory.class);
-        workbookFactoryMock.when(() -> WorkbookFactory.create(any(File.class))).thenReturn(workbook);
+        workbookFactoryMock.when(() -> WorkbookFactory.create(any(File.class), isNull(), eq(true))).thenReturn(workbook);
     }
 
     // Refactor the creation of the mock spreadsheet for each test
@@ -0,0 +1,145 @@
+package io.github.gorpong.hoursexport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.github.gorpong.hoursexport.Output.SheetType;
+
+@DisplayName("Week-over-week Changes Tests")
+class WeekDiffTest {
+
+    /*
+     * Parse an export with one row per { team, name, id, hours }
+     */
+    private static Teams parse(String[][] rows) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Workbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Department");
+            header.createCell(1).setCellValue("Name");
+            header.createCell(2).setCellValue("empno");
+            header.createCell(3).setCellValue("workday_w");
+            for (String[] r : rows) {
+                Row row = sheet.createRow(sheet.getLastRowNum() + 1);
+                for (int c = 0; c < 3; c++)
+                    row.createCell(c).setCellValue(r[c]);
+                row.createCell(3).setCellValue(Double.parseDouble(r[3]));
+            }
+            wb.write(bytes);
+        }
+        Teams teams = new Teams(new ConfigProperties());
+        teams.parseExcel(bytes.toByteArray());
+        return teams;
+    }
+
+    private static Teams lastWeek() throws Exception {
+        return parse(new String[][] {
+            { "1", "Doe, John", "100", "5" },
+            { "1", "Roe, Rick", "200", "6" },
+            { "2", "Poe, Ed", "300", "2" },
+            { "2", "Loe, Al", "400", "4" },
+            { "2", "Moe, Sam", "500", "4" },
+        });
+    }
+
+    private static Teams thisWeek() throws Exception {
+        return parse(new String[][] {
+            { "1", "Doe, John", "100", "5" },		// Same
+            { "1", "Roe, Rick", "200", "8" },		// Up and over the limit
+            { "2", "Poe, Ed", "300", "4" },			// Up and back in range
+            { "2", "Loe, Al", "400", "1" },			// Down and under the minimum
+            { "1", "Zoe, Ann", "600", "9" },		// New and over the limit
+        });
+    }
+
+    @Test
+    void testCompare() throws Exception {
+        WeekDiff diff = WeekDiff.compare(thisWeek(), lastWeek(), Student.toSeconds(3.0), Student.toSeconds(7.0));
+        List<WeekDiff.Change> changes = diff.getChanges();
+        assertEquals(5, changes.size());
+        assertEquals("NEW:1:600:0->32400:OVER_LIMIT", changes.get(0).toString());
+        assertEquals("MISSING:2:500:14400->0", changes.get(1).toString());
+        assertEquals("INCREASED:1:200:21600->28800:OVER_LIMIT", changes.get(2).toString());
+        assertEquals("INCREASED:2:300:7200->14400:BACK_IN_RANGE", changes.get(3).toString());
+        assertEquals("DECREASED:2:400:14400->3600:UNDER_MINIMUM", changes.get(4).toString());
+        assertEquals("Moe, Sam", changes.get(1).getName());
+        assertEquals(-3 * 3600, changes.get(4).getDeltaSeconds());
+        assertEquals(2, diff.getCount(WeekDiff.Kind.INCREASED));
+        assertEquals(2, diff.getCount(WeekDiff.Crossing.OVER_LIMIT));
+        assertEquals("1 New, 1 Missing, 2 Increased, 1 Decreased, 2 Went over the limit, "
+                + "1 Dropped under the minimum, 1 Back in range", diff.summary());
+
+        WeekDiff same = WeekDiff.compare(lastWeek(), lastWeek(), 3 * 3600, 7 * 3600);
+        assertTrue(same.getChanges().isEmpty());
+        assertEquals("no changes", same.summary());
+    }
+
+    @Test
+    void testNewStudentsOutOfRange() throws Exception {
+        Teams current = parse(new String[][] {
+            { "1", "Doe, John", "100", "5" },
+            { "1", "Zoe, Ann", "600", "1" },		// New and under the minimum
+            { "2", "Poe, Ed", "700", "4" },			// New and in range
+        });
+        WeekDiff diff = WeekDiff.compare(current, lastWeek(), Student.toSeconds(3.0), Student.toSeconds(7.0));
+        List<WeekDiff.Change> changes = diff.getChanges();
+        assertEquals("NEW:1:600:0->3600:UNDER_MINIMUM", changes.get(0).toString());
+        assertEquals("NEW:2:700:0->14400", changes.get(1).toString());
+        assertEquals(1, diff.getCount(WeekDiff.Crossing.UNDER_MINIMUM));
+    }
+
+    @Test
+    void testLargeRosterIsOnePass() throws Exception {
+        // Not a timing test, just that a big join gives the right counts
+        Teams current = new Teams(new ConfigProperties());
+        Teams previous = new Teams(new ConfigProperties());
+        for (int i = 0; i < 50000; i++) {
+            previous.getStore().addSeconds(previous.getStore().add("ID" + i, "S " + i, i % 10), 60, DailySeconds.NO_DAY);
+            int id = i + 1000;		// 1,000 dropped off and 1,000 new
+            current.getStore().addSeconds(current.getStore().add("ID" + id, "S " + id, id % 10), i % 2 == 0 ? 60 : 90,
+                    DailySeconds.NO_DAY);
+        }
+        WeekDiff diff = WeekDiff.compare(current, previous, 0, 10000);
+        assertEquals(1000, diff.getCount(WeekDiff.Kind.NEW));
+        assertEquals(1000, diff.getCount(WeekDiff.Kind.MISSING));
+        assertEquals(24500, diff.getCount(WeekDiff.Kind.INCREASED));
+        assertEquals(0, diff.getCount(WeekDiff.Kind.DECREASED));
+    }
+
+    @Test
+    void testChangesSheet() throws Exception {
+        Teams teams = thisWeek();
+        Output out = Output.create(false, new ConfigProperties(), 3.0, 7.0);
+        out.createSheet(teams, SheetType.CHANGES);
+        assertNull(out.getWorkbook().getSheet("Changes"), "No sheet without last week");
+        out.setPrevious(lastWeek());
+        out.createSheet(teams, SheetType.CHANGES);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.write(bytes);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Sheet sheet = wb.getSheet("Changes");
+            assertEquals("New", sheet.getRow(2).getCell(0).getStringCellValue());
+            assertEquals(1, sheet.getRow(2).getCell(1).getNumericCellValue());
+            int titles = 2 + WeekDiff.Kind.values().length + 3 + 1;		// Kinds, three crossings, a blank
+            assertEquals("Change", sheet.getRow(titles).getCell(0).getStringCellValue());
+            Row first = sheet.getRow(titles + 1);
+            assertEquals("Zoe, Ann", first.getCell(2).getStringCellValue());
+            assertEquals(9.0, first.getCell(5).getNumericCellValue(), 0.001);
+            assertEquals("Went over the limit", first.getCell(7).getStringCellValue());
+            assertEquals("Decreased", sheet.getRow(titles + 5).getCell(0).getStringCellValue());
+            assertEquals(-3.0, sheet.getRow(titles + 5).getCell(6).getNumericCellValue(), 0.001);
+        }
+    }
+}